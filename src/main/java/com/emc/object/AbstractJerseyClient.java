@@ -26,6 +26,7 @@
  */
 package com.emc.object;
 
+import com.emc.object.util.JfrEvents;
 import com.emc.object.util.RestUtil;
 import com.emc.rest.smart.jersey.SizeOverrideWriter;
 import com.sun.jersey.api.client.Client;
@@ -56,8 +57,31 @@ public abstract class AbstractJerseyClient {
         return response;
     }
 
-    @SuppressWarnings("unchecked")
     protected ClientResponse executeRequest(Client client, ObjectRequest request) {
+        Object event = JfrEvents.begin(JfrEvents.Type.REQUEST);
+        if (event == null) return sendRequest(client, request);
+
+        // the filter chain fills in the host
+        request.property(JfrEvents.PROPERTY_EVENT, event);
+        long bytes = -1;
+        String detail = null;
+        try {
+            ClientResponse response = sendRequest(client, request);
+            Long contentLength = request instanceof EntityRequest ? ((EntityRequest) request).getContentLength() : null;
+            bytes = contentLength != null ? contentLength : response.getLength();
+            detail = String.valueOf(response.getStatus());
+            return response;
+        } catch (RuntimeException e) {
+            detail = e.toString();
+            throw e;
+        } finally {
+            request.getProperties().remove(JfrEvents.PROPERTY_EVENT);
+            JfrEvents.commit(event, getBucketName(request), getOperationName(request), null, bytes, detail);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClientResponse sendRequest(Client client, ObjectRequest request) {
         try {
             if (request.getMethod().isRequiresEntity()) {
                 String contentType = RestUtil.DEFAULT_CONTENT_TYPE;
@@ -119,6 +143,21 @@ public abstract class AbstractJerseyClient {
         return responseEntity;
     }
 
+    /**
+     * Returns a short name for the kind of request (used to label metrics and events).
+     */
+    protected String getOperationName(ObjectRequest request) {
+        String subresource = request.getSubresource();
+        return subresource == null ? request.getMethod().name() : request.getMethod().name() + " ?" + subresource;
+    }
+
+    /**
+     * Returns the bucket (or equivalent container) a request targets, if any.
+     */
+    protected String getBucketName(ObjectRequest request) {
+        return null;
+    }
+
     protected void fillResponseEntity(Object responseEntity, ClientResponse response) {
         if (responseEntity instanceof ObjectResponse)
             ((ObjectResponse) responseEntity).setHeaders(response.getHeaders());
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link PartTuningStrategy} that adjusts concurrency and part size based on observed throughput.
+ * <p>
+ * Concurrency is tuned by hill-climbing: after each sample (at least <code>2 x concurrency</code> completed parts
+ * and {@link #getSampleIntervalMillis() sampleIntervalMillis}), the aggregate throughput of the sample is compared to
+ * the previous one. If it has not dropped by more than {@link #getTolerance() tolerance}, concurrency keeps moving in
+ * the same direction; otherwise the direction is reversed. Concurrency stays between {@link #getMinConcurrency()} and
+ * {@link #getMaxConcurrency()}.
+ * <p>
+ * When {@link #isAdaptPartSize() adaptPartSize} is enabled, the part size is chosen so that a single part takes
+ * roughly {@link #getTargetPartDurationMillis() targetPartDurationMillis} at the per-part throughput observed so far.
+ * The part size can change by at most a factor of 2 per completed part and stays between
+ * {@link #getMinPartSize()} and {@link #getMaxPartSize()}.
+ * <p>
+ * Instances hold the state of a single transfer and should not be reused across concurrent transfers.
+ */
+public class AdaptivePartTuningStrategy implements PartTuningStrategy {
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePartTuningStrategy.class);
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+    public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 2000;
+    public static final double DEFAULT_TOLERANCE = 0.05;
+    public static final long DEFAULT_TARGET_PART_DURATION_MILLIS = 5000;
+    public static final long DEFAULT_MIN_PART_SIZE = LargeFileUploader.MIN_PART_SIZE;
+    public static final long DEFAULT_MAX_PART_SIZE = 512 * 1024 * 1024;
+
+    // smoothing factor for per-part throughput
+    private static final double RATE_WEIGHT = 0.3;
+
+    private int minConcurrency = 1;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private long sampleIntervalMillis = DEFAULT_SAMPLE_INTERVAL_MILLIS;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private boolean adaptPartSize = true;
+    private long targetPartDurationMillis = DEFAULT_TARGET_PART_DURATION_MILLIS;
+    private long minPartSize = DEFAULT_MIN_PART_SIZE;
+    private long maxPartSize = DEFAULT_MAX_PART_SIZE;
+
+    // transfer state
+    private int concurrency;
+    private int direction;
+    private long partSize;
+    private double partRate; // bytes per second, per part
+    private double lastThroughput;
+    private long sampleStart;
+    private long sampleBytes;
+    private int sampleParts;
+
+    @Override
+    public synchronized void start(long totalSize, long partSize, int concurrency) {
+        if (minConcurrency < 1) throw new IllegalArgumentException("minConcurrency must be at least 1");
+        if (maxConcurrency < minConcurrency)
+            throw new IllegalArgumentException("maxConcurrency must be at least minConcurrency");
+        if (minPartSize > maxPartSize) throw new IllegalArgumentException("minPartSize cannot exceed maxPartSize");
+
+        this.concurrency = clamp(concurrency, minConcurrency, maxConcurrency);
+        this.direction = 1;
+        this.partSize = partSize;
+        this.partRate = 0;
+        this.lastThroughput = 0;
+        this.sampleStart = System.nanoTime();
+        this.sampleBytes = 0;
+        this.sampleParts = 0;
+    }
+
+    @Override
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public synchronized long getNextPartSize() {
+        return partSize;
+    }
+
+    @Override
+    public boolean isVariablePartSize() {
+        return adaptPartSize;
+    }
+
+    @Override
+    public synchronized void partCompleted(long partSize, long durationNanos) {
+        if (durationNanos <= 0 || partSize <= 0) return;
+
+        // per-part throughput (exponentially smoothed)
+        double rate = partSize * 1e9 / durationNanos;
+        partRate = partRate == 0 ? rate : partRate + RATE_WEIGHT * (rate - partRate);
+
+        // aggregate throughput (hill-climbing on concurrency)
+        sampleBytes += partSize;
+        sampleParts++;
+        long now = System.nanoTime();
+        long elapsed = now - sampleStart;
+        if (sampleParts >= concurrency * 2 && elapsed >= sampleIntervalMillis * 1000000L) {
+            double throughput = sampleBytes * 1e9 / elapsed;
+            if (lastThroughput > 0 && throughput < lastThroughput * (1 - tolerance)) direction = -direction;
+            int newConcurrency = clamp(concurrency + direction, minConcurrency, maxConcurrency);
+            // bounce off the limits
+            if (newConcurrency == concurrency) direction = -direction;
+            log.debug("sample throughput: {} B/s (previous: {} B/s); concurrency {} -> {}",
+                    (long) throughput, (long) lastThroughput, concurrency, newConcurrency);
+            concurrency = newConcurrency;
+            lastThroughput = throughput;
+            sampleStart = now;
+            sampleBytes = 0;
+            sampleParts = 0;
+        }
+
+        if (adaptPartSize) {
+            long target = (long) (partRate * targetPartDurationMillis / 1000);
+            target = Math.max(this.partSize / 2, Math.min(this.partSize * 2, target));
+            this.partSize = Math.max(minPartSize, Math.min(maxPartSize, target));
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    /**
+     * The lowest concurrency this strategy will use. Default is 1
+     */
+    public void setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * The highest concurrency this strategy will use (this is also the size of the transfer's thread pool). Default
+     * is {@link #DEFAULT_MAX_CONCURRENCY}
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public long getSampleIntervalMillis() {
+        return sampleIntervalMillis;
+    }
+
+    /**
+     * The minimum time between concurrency adjustments. Default is {@link #DEFAULT_SAMPLE_INTERVAL_MILLIS}
+     */
+    public void setSampleIntervalMillis(long sampleIntervalMillis) {
+        this.sampleIntervalMillis = sampleIntervalMillis;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * The fractional drop in throughput between samples that causes the concurrency direction to reverse. Default is
+     * {@link #DEFAULT_TOLERANCE}
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public boolean isAdaptPartSize() {
+        return adaptPartSize;
+    }
+
+    /**
+     * Whether to adjust the part size during the transfer. Note that uploads cannot be paused when this is enabled.
+     * Default is true
+     */
+    public void setAdaptPartSize(boolean adaptPartSize) {
+        this.adaptPartSize = adaptPartSize;
+    }
+
+    public long getTargetPartDurationMillis() {
+        return targetPartDurationMillis;
+    }
+
+    /**
+     * The desired transfer time of a single part, used to choose the part size. Default is
+     * {@link #DEFAULT_TARGET_PART_DURATION_MILLIS}
+     */
+    public void setTargetPartDurationMillis(long targetPartDurationMillis) {
+        this.targetPartDurationMillis = targetPartDurationMillis;
+    }
+
+    public long getMinPartSize() {
+        return minPartSize;
+    }
+
+    /**
+     * The smallest part size this strategy will choose. Default is {@link #DEFAULT_MIN_PART_SIZE}
+     */
+    public void setMinPartSize(long minPartSize) {
+        this.minPartSize = minPartSize;
+    }
+
+    public long getMaxPartSize() {
+        return maxPartSize;
+    }
+
+    /**
+     * The largest part size this strategy will choose. Default is {@link #DEFAULT_MAX_PART_SIZE}
+     */
+    public void setMaxPartSize(long maxPartSize) {
+        this.maxPartSize = maxPartSize;
+    }
+
+    /**
+     * @see #setMinConcurrency(int)
+     */
+    public AdaptivePartTuningStrategy withMinConcurrency(int minConcurrency) {
+        setMinConcurrency(minConcurrency);
+        return this;
+    }
+
+    /**
+     * @see #setMaxConcurrency(int)
+     */
+    public AdaptivePartTuningStrategy withMaxConcurrency(int maxConcurrency) {
+        setMaxConcurrency(maxConcurrency);
+        return this;
+    }
+
+    /**
+     * @see #setSampleIntervalMillis(long)
+     */
+    public AdaptivePartTuningStrategy withSampleIntervalMillis(long sampleIntervalMillis) {
+        setSampleIntervalMillis(sampleIntervalMillis);
+        return this;
+    }
+
+    /**
+     * @see #setTolerance(double)
+     */
+    public AdaptivePartTuningStrategy withTolerance(double tolerance) {
+        setTolerance(tolerance);
+        return this;
+    }
+
+    /**
+     * @see #setAdaptPartSize(boolean)
+     */
+    public AdaptivePartTuningStrategy withAdaptPartSize(boolean adaptPartSize) {
+        setAdaptPartSize(adaptPartSize);
+        return this;
+    }
+
+    /**
+     * @see #setTargetPartDurationMillis(long)
+     */
+    public AdaptivePartTuningStrategy withTargetPartDurationMillis(long targetPartDurationMillis) {
+        setTargetPartDurationMillis(targetPartDurationMillis);
+        return this;
+    }
+
+    /**
+     * @see #setMinPartSize(long)
+     */
+    public AdaptivePartTuningStrategy withMinPartSize(long minPartSize) {
+        setMinPartSize(minPartSize);
+        return this;
+    }
+
+    /**
+     * @see #setMaxPartSize(long)
+     */
+    public AdaptivePartTuningStrategy withMaxPartSize(long maxPartSize) {
+        setMaxPartSize(maxPartSize);
+        return this;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes a payload in the aws-chunked format as it is written, signing each chunk with an {@link S3ChunkSigner}:
+ * <pre>
+ * hex(chunk-size);chunk-signature=signature\r\n
+ * chunk-data\r\n
+ * </pre>
+ * Only one chunk is buffered at a time. Closing the stream writes the last (partial) chunk and the final empty chunk
+ * before closing the underlying stream. Note that {@link #flush()} will not write a partial chunk.
+ */
+public class AwsChunkedOutputStream extends FilterOutputStream {
+    private static final byte[] CHUNK_SIGNATURE = ";chunk-signature=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int SIGNATURE_LENGTH = 64; // hex-encoded SHA-256
+
+    /**
+     * Returns the encoded size of a payload of <code>decodedLength</code> bytes (this is the content-length of the
+     * request).
+     */
+    public static long getEncodedLength(long decodedLength, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        long fullChunks = decodedLength / chunkSize;
+        int remainder = (int) (decodedLength % chunkSize);
+        long length = fullChunks * getEncodedChunkLength(chunkSize);
+        if (remainder > 0) length += getEncodedChunkLength(remainder);
+        return length + getEncodedChunkLength(0);
+    }
+
+    private static long getEncodedChunkLength(int size) {
+        return Integer.toHexString(size).length() + CHUNK_SIGNATURE.length + SIGNATURE_LENGTH + CRLF.length
+                + size + CRLF.length;
+    }
+
+    private final S3ChunkSigner chunkSigner;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    public AwsChunkedOutputStream(OutputStream out, S3ChunkSigner chunkSigner, int chunkSize) {
+        super(out);
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.chunkSigner = chunkSigner;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (closed) throw new IOException("stream is closed");
+        if (count == buffer.length) flushChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("stream is closed");
+        while (len > 0) {
+            if (count == 0 && len >= buffer.length) {
+                // full chunk available in the caller's array; no need to copy it
+                writeChunk(b, off, buffer.length);
+                off += buffer.length;
+                len -= buffer.length;
+            } else {
+                int size = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, size);
+                count += size;
+                off += size;
+                len -= size;
+                if (count == buffer.length) flushChunk();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (count > 0) flushChunk();
+            writeChunk(buffer, 0, 0); // final chunk
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeChunk(byte[] data, int offset, int length) throws IOException {
+        String signature = chunkSigner.signChunk(data, offset, length);
+        out.write(Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CHUNK_SIGNATURE);
+        out.write(signature.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(data, offset, length);
+        out.write(CRLF);
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.AbstractDeleteResult;
+import com.emc.object.s3.bean.DeleteError;
+import com.emc.object.s3.bean.DeleteObjectsResult;
+import com.emc.object.s3.bean.ObjectKey;
+import com.emc.object.s3.request.DeleteObjectsRequest;
+import com.emc.object.s3.request.ListObjectsRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Deletes a stream of keys from a bucket by packing them into multi-object delete batches (up to
+ * {@link #MAX_BATCH_SIZE} keys each) and running several batches concurrently. Keys are pulled from the source only as
+ * fast as batches complete, so the source may be a lazy listing (see {@link #deletePrefix(String)}) or a file of any
+ * size.
+ * <p>
+ * Batches are sent in quiet mode, so responses only contain the keys that failed. Only those keys are retried (up to
+ * {@link #getMaxRetries() maxRetries} times, after {@link #getRetryDelay() retryDelay}ms); they are packed into later
+ * batches along with new keys. Keys that still fail are reported by {@link #getFailures()}.
+ * <p>
+ * A deleter may only be run once.
+ */
+public class BulkDeleter {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkDeleter.class);
+
+    public static final int MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_DELAY = 1000; // ms
+
+    private S3Client s3Client;
+    private String bucket;
+    private int threads = DEFAULT_THREADS;
+    private int batchSize = MAX_BATCH_SIZE;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+    private Boolean bypassGovernanceRetention;
+
+    private final AtomicLong keysDeleted = new AtomicLong(), batchesSent = new AtomicLong(), keysRetried = new AtomicLong();
+    private final Queue<DeleteError> failures = new ConcurrentLinkedQueue<>();
+    private final DelayQueue<PendingKey> retryQueue = new DelayQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchFinished = lock.newCondition();
+    private int batchesInFlight;
+    private volatile long startTime, endTime;
+
+    public BulkDeleter(S3Client s3Client, String bucket) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Lists and deletes every object under <code>prefix</code> (versions are not deleted; in a versioned bucket this
+     * creates delete markers).
+     */
+    public void deletePrefix(String prefix) {
+        try (Stream<String> keys = s3Client.streamObjects(new ListObjectsRequest(bucket).withPrefix(prefix))
+                .map(object -> object.getKey())) {
+            delete(keys);
+        }
+    }
+
+    /**
+     * Deletes every key in <code>keys</code>.
+     */
+    public void delete(Stream<String> keys) {
+        final Iterator<String> iterator = keys.iterator();
+        deleteObjects(new Iterator<ObjectKey>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public ObjectKey next() {
+                return new ObjectKey(iterator.next());
+            }
+        });
+    }
+
+    /**
+     * Deletes every key (or key version) from <code>keys</code>, blocking until all batches are finished. Throws a
+     * RuntimeException if any key could not be deleted (see {@link #getFailures()} for the details).
+     */
+    public void deleteObjects(Iterator<ObjectKey> keys) {
+        if (startTime != 0) throw new IllegalStateException("this deleter has already been run");
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<PendingKey> batch = new ArrayList<>(batchSize);
+            while (true) {
+                // failed keys go first, so they are not starved by the source
+                PendingKey retry;
+                while (batch.size() < batchSize && (retry = retryQueue.poll()) != null) batch.add(retry);
+                while (batch.size() < batchSize && keys.hasNext()) batch.add(new PendingKey(keys.next(), 0));
+
+                if (batch.size() == batchSize || (!batch.isEmpty() && !keys.hasNext() && retryQueue.peek() == null)) {
+                    submitBatch(executor, batch);
+                    batch = new ArrayList<>(batchSize);
+                } else if (!keys.hasNext()) {
+                    // wait for retries to come due or for the remaining batches to finish
+                    lock.lock();
+                    try {
+                        if (batchesInFlight == 0 && retryQueue.isEmpty() && batch.isEmpty()) break;
+                        PendingKey next = retryQueue.peek();
+                        if (next != null) batchFinished.await(next.getDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                        else if (batchesInFlight > 0) batchFinished.await();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted during bulk delete", e);
+        } finally {
+            executor.shutdownNow();
+            endTime = System.nanoTime();
+        }
+
+        log.info("deleted {} keys in {} batches ({} retries) in {}ms: {} keys/s, {} failures", keysDeleted.get(),
+                batchesSent.get(), keysRetried.get(), TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()),
+                String.format("%.1f", getKeysPerSecond()), failures.size());
+
+        if (!failures.isEmpty()) {
+            DeleteError first = failures.peek();
+            throw new RuntimeException(failures.size() + " key(s) could not be deleted (first: " + first.getKey() + ": "
+                    + first.getCode() + " - " + first.getMessage() + ")");
+        }
+    }
+
+    // blocks while all threads are busy
+    private void submitBatch(ExecutorService executor, final List<PendingKey> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (batchesInFlight >= threads) batchFinished.await();
+            batchesInFlight++;
+        } finally {
+            lock.unlock();
+        }
+        executor.execute(() -> {
+            try {
+                deleteBatch(batch);
+            } finally {
+                lock.lock();
+                try {
+                    batchesInFlight--;
+                    batchFinished.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    private void deleteBatch(List<PendingKey> batch) {
+        List<ObjectKey> keys = new ArrayList<>(batch.size());
+        for (PendingKey pending : batch) keys.add(pending.key);
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucket).withKeys(keys)
+                .withBypassGovernanceRetention(bypassGovernanceRetention);
+        request.getDeleteObjects().setQuiet(true);
+
+        DeleteObjectsResult result;
+        try {
+            result = s3Client.deleteObjects(request);
+            batchesSent.incrementAndGet();
+        } catch (RuntimeException e) {
+            // the request itself failed (after the client's own retries); every key in it failed
+            log.warn("delete batch failed", e);
+            String code = e instanceof S3Exception ? ((S3Exception) e).getErrorCode() : e.getClass().getSimpleName();
+            for (PendingKey pending : batch) fail(pending, code, e.getMessage());
+            return;
+        }
+
+        // quiet mode only reports errors; everything else was deleted
+        Map<String, PendingKey> pendingByKey = new HashMap<>();
+        for (PendingKey pending : batch) pendingByKey.put(pending.id(), pending);
+        int errors = 0;
+        for (AbstractDeleteResult deleteResult : result.getResults()) {
+            if (!(deleteResult instanceof DeleteError)) continue;
+            DeleteError error = (DeleteError) deleteResult;
+            PendingKey pending = pendingByKey.get(id(error.getKey(), error.getVersionId()));
+            if (pending == null) pending = new PendingKey(new ObjectKey(error.getKey(), error.getVersionId()), maxRetries);
+            fail(pending, error.getCode(), error.getMessage());
+            errors++;
+        }
+        keysDeleted.addAndGet(batch.size() - errors);
+    }
+
+    private void fail(PendingKey pending, String code, String message) {
+        if (pending.attempts < maxRetries) {
+            keysRetried.incrementAndGet();
+            retryQueue.add(new PendingKey(pending.key, pending.attempts + 1));
+            lock.lock();
+            try {
+                batchFinished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            DeleteError error = new DeleteError();
+            error.setKey(pending.key.getKey());
+            error.setVersionId(pending.key.getVersionId());
+            error.setCode(code);
+            error.setMessage(message);
+            failures.add(error);
+        }
+    }
+
+    private static String id(String key, String versionId) {
+        return versionId == null ? key : key + '\0' + versionId;
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of batches sent concurrently. Default is {@link #DEFAULT_THREADS}
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of keys per batch. Default (and maximum) is {@link #MAX_BATCH_SIZE}
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the number of times a key that fails to delete is retried. Default is {@link #DEFAULT_MAX_RETRIES}
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Sets the time (in ms) to wait before retrying a key that failed to delete. Default is
+     * {@link #DEFAULT_RETRY_DELAY}
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public Boolean getBypassGovernanceRetention() {
+        return bypassGovernanceRetention;
+    }
+
+    public void setBypassGovernanceRetention(Boolean bypassGovernanceRetention) {
+        this.bypassGovernanceRetention = bypassGovernanceRetention;
+    }
+
+    public long getKeysDeleted() {
+        return keysDeleted.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getKeysRetried() {
+        return keysRetried.get();
+    }
+
+    /**
+     * Returns the keys that could not be deleted (after all retries), with the error code and message of the last
+     * attempt.
+     */
+    public List<DeleteError> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    /**
+     * Returns the time spent so far (or in total, once finished) in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        if (startTime == 0) return 0;
+        return (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+    }
+
+    /**
+     * Returns the aggregate throughput in keys deleted per second (so far, or in total once finished).
+     */
+    public double getKeysPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : keysDeleted.get() * 1e9 / elapsed;
+    }
+
+    public BulkDeleter withThreads(int threads) {
+        setThreads(threads);
+        return this;
+    }
+
+    public BulkDeleter withBatchSize(int batchSize) {
+        setBatchSize(batchSize);
+        return this;
+    }
+
+    public BulkDeleter withMaxRetries(int maxRetries) {
+        setMaxRetries(maxRetries);
+        return this;
+    }
+
+    public BulkDeleter withRetryDelay(long retryDelay) {
+        setRetryDelay(retryDelay);
+        return this;
+    }
+
+    public BulkDeleter withBypassGovernanceRetention(Boolean bypassGovernanceRetention) {
+        setBypassGovernanceRetention(bypassGovernanceRetention);
+        return this;
+    }
+
+    private class PendingKey implements Delayed {
+        private final ObjectKey key;
+        private final int attempts;
+        private final long dueTime;
+
+        PendingKey(ObjectKey key, int attempts) {
+            this.key = key;
+            this.attempts = attempts;
+            this.dueTime = attempts == 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelay);
+        }
+
+        String id() {
+            return BulkDeleter.id(key.getKey(), key.getVersionId());
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueTime, ((PendingKey) other).dueTime);
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.CanonicalUser;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.bean.StorageClass;
+import com.emc.object.util.RestUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact, append-only container for large object listings. Instead of one {@link S3Object} bean per object (with
+ * its own <code>Date</code>, <code>Long</code>, ETag string and owner), values are stored in columns:
+ * <ul>
+ * <li>keys are front-coded UTF-8 (each key stores only the bytes that differ from the previous key), with a full key
+ * every {@link #BLOCK_SIZE} entries for random access</li>
+ * <li>sizes and last-modified times are 8-byte longs</li>
+ * <li>MD5 ETags are 16 binary bytes (other ETags, i.e. from multipart uploads, are kept as strings)</li>
+ * <li>owners and storage classes are dictionary-encoded</li>
+ * </ul>
+ * Objects must be added in listing (UTF-8 binary) key order, which is the order returned by list-objects. This allows
+ * {@link #indexOf(String) key lookup} and {@link #withPrefix(String) prefix ranges} by binary search.
+ * <p>
+ * Columns are stored in fixed-size chunks, either on the heap or (see {@link #offHeap()}) in direct buffers, which
+ * keeps very large listings out of the heap altogether (direct memory is limited by
+ * <code>-XX:MaxDirectMemorySize</code> and is freed when the listing is garbage-collected).
+ * <p>
+ * To fill a listing without ever creating a page of beans, pass {@link #add(S3Object)} as the consumer to
+ * {@link S3Client#listObjects(com.emc.object.s3.request.ListObjectsRequest, java.util.function.Consumer)}.
+ * <p>
+ * This class is not thread-safe for writes; once filled, it may be read from multiple threads.
+ */
+public class CompactObjectListing implements Iterable<S3Object> {
+    public static final int BLOCK_SIZE = 16;
+
+    static final int CHUNK_SIZE = 1 << 20; // a multiple of every fixed column width, so values never span chunks
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int ETAG_NULL = 0, ETAG_QUOTED_MD5 = 1, ETAG_MD5 = 2, ETAG_OTHER = 3;
+    private static final StorageClass[] STORAGE_CLASSES = StorageClass.values();
+
+    /**
+     * Creates a listing that stores its columns in direct (off-heap) buffers.
+     */
+    public static CompactObjectListing offHeap() {
+        return new CompactObjectListing(true);
+    }
+
+    private final ByteStore keys, sizes, lastModified, eTags, owners, flags;
+    private long[] blockOffsets = new long[16];
+    private final Map<Integer, String> otherETags = new HashMap<>();
+    private final List<CanonicalUser> ownerDictionary = new ArrayList<>();
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+    private byte[] lastKey = new byte[0];
+    private int size;
+
+    public CompactObjectListing() {
+        this(false);
+    }
+
+    public CompactObjectListing(boolean direct) {
+        keys = new ByteStore(direct);
+        sizes = new ByteStore(direct);
+        lastModified = new ByteStore(direct);
+        eTags = new ByteStore(direct);
+        owners = new ByteStore(direct);
+        flags = new ByteStore(direct);
+    }
+
+    /**
+     * Appends an object. Its key must sort after the last key added.
+     */
+    public void add(S3Object object) {
+        byte[] key = object.getKey().getBytes(StandardCharsets.UTF_8);
+        if (size > 0 && compare(key, lastKey) <= 0)
+            throw new IllegalArgumentException("keys must be added in order (" + object.getKey() + " is not after the last key)");
+        if (size == Integer.MAX_VALUE) throw new IllegalStateException("listing is full");
+
+        // keys: full key at the start of each block, otherwise only what differs from the previous key
+        int shared = 0;
+        if (size % BLOCK_SIZE == 0) {
+            int block = size / BLOCK_SIZE;
+            if (block == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+            blockOffsets[block] = keys.size();
+        } else {
+            int max = Math.min(key.length, lastKey.length);
+            while (shared < max && key[shared] == lastKey[shared]) shared++;
+        }
+        keys.putVarInt(shared);
+        keys.putVarInt(key.length - shared);
+        keys.put(key, shared, key.length - shared);
+        lastKey = key;
+
+        sizes.putLong(object.getSize() == null ? NULL_LONG : object.getSize());
+        lastModified.putLong(object.getLastModified() == null ? NULL_LONG : object.getLastModified().getTime());
+        int eTagFormat = putETag(object.getETag());
+        owners.putInt(ownerId(object.getOwner()));
+        int storageClass = object.getStorageClass() == null ? 0 : object.getStorageClass().ordinal() + 1;
+        flags.put((byte) (eTagFormat | storageClass << 2));
+        size++;
+    }
+
+    /**
+     * Appends all objects in a list-objects page.
+     */
+    public void addAll(ListObjectsResult result) {
+        for (S3Object object : result.getObjects()) add(object);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getKey(int index) {
+        checkIndex(index);
+        KeyCursor cursor = new KeyCursor();
+        cursor.seek(index);
+        return cursor.keyString();
+    }
+
+    public Long getSize(int index) {
+        checkIndex(index);
+        long value = sizes.getLong((long) index * 8);
+        return value == NULL_LONG ? null : value;
+    }
+
+    public Date getLastModified(int index) {
+        checkIndex(index);
+        long value = lastModified.getLong((long) index * 8);
+        return value == NULL_LONG ? null : new Date(value);
+    }
+
+    public String getETag(int index) {
+        checkIndex(index);
+        int format = flags.get(index) & 0x3;
+        if (format == ETAG_NULL) return null;
+        if (format == ETAG_OTHER) return otherETags.get(index);
+        byte[] md5 = new byte[16];
+        eTags.get((long) index * 16, md5, 0, 16);
+        String hex = toHex(md5);
+        return format == ETAG_QUOTED_MD5 ? "\"" + hex + "\"" : hex;
+    }
+
+    public StorageClass getStorageClass(int index) {
+        checkIndex(index);
+        int storageClass = (flags.get(index) & 0xff) >>> 2;
+        return storageClass == 0 ? null : STORAGE_CLASSES[storageClass - 1];
+    }
+
+    public CanonicalUser getOwner(int index) {
+        checkIndex(index);
+        int id = owners.getInt((long) index * 4);
+        return id < 0 ? null : ownerDictionary.get(id);
+    }
+
+    /**
+     * Returns a detached {@link S3Object} bean for the object at <code>index</code>.
+     */
+    public S3Object get(int index) {
+        checkIndex(index);
+        return copy(new View(index));
+    }
+
+    /**
+     * Returns the index of <code>key</code>, or <code>-(insertion point) - 1</code> if it is not in the listing (as
+     * {@link Arrays#binarySearch(Object[], Object)} does).
+     */
+    public int indexOf(String key) {
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(target);
+        if (index < size) {
+            KeyCursor cursor = new KeyCursor();
+            cursor.seek(index);
+            if (compare(cursor.key, cursor.length, target) == 0) return index;
+        }
+        return -index - 1;
+    }
+
+    /**
+     * Returns the objects whose keys start with <code>prefix</code>. Like {@link #iterator()}, the returned objects
+     * are flyweight views.
+     */
+    public Iterable<S3Object> withPrefix(String prefix) {
+        byte[] start = prefix.getBytes(StandardCharsets.UTF_8);
+        final int from = lowerBound(start);
+        // the first key past the prefix is the first key >= the prefix with its last non-0xff byte incremented
+        int end = start.length;
+        while (end > 0 && start[end - 1] == (byte) 0xff) end--;
+        final int to;
+        if (end == 0) {
+            to = size;
+        } else {
+            byte[] after = Arrays.copyOf(start, end);
+            after[end - 1]++;
+            to = lowerBound(after);
+        }
+        return () -> new ViewIterator(from, to);
+    }
+
+    /**
+     * Iterates over all objects in key order. To avoid creating an object per entry, the iterator returns the same
+     * flyweight view each time, repositioned to the next entry; use {@link #get(int)} to keep a copy.
+     */
+    @Override
+    public Iterator<S3Object> iterator() {
+        return new ViewIterator(0, size);
+    }
+
+    /**
+     * Returns the approximate number of bytes used to store this listing (excluding owner and non-MD5 ETag strings).
+     */
+    public long getMemoryUsage() {
+        return keys.capacity() + sizes.capacity() + lastModified.capacity() + eTags.capacity() + owners.capacity()
+                + flags.capacity() + blockOffsets.length * 8L;
+    }
+
+    private int putETag(String eTag) {
+        if (eTag == null) {
+            eTags.put(new byte[16], 0, 16);
+            return ETAG_NULL;
+        }
+        boolean quoted = eTag.length() == 34 && eTag.charAt(0) == '"' && eTag.charAt(33) == '"';
+        byte[] md5 = fromHex(quoted ? eTag.substring(1, 33) : eTag);
+        if (md5 == null) {
+            eTags.put(new byte[16], 0, 16);
+            otherETags.put(size, eTag);
+            return ETAG_OTHER;
+        }
+        eTags.put(md5, 0, 16);
+        return quoted ? ETAG_QUOTED_MD5 : ETAG_MD5;
+    }
+
+    private int ownerId(CanonicalUser owner) {
+        if (owner == null) return -1;
+        String key = owner.getId() + '\0' + owner.getDisplayName();
+        Integer id = ownerIds.get(key);
+        if (id == null) {
+            id = ownerDictionary.size();
+            ownerDictionary.add(owner);
+            ownerIds.put(key, id);
+        }
+        return id;
+    }
+
+    // returns the index of the first key >= target
+    private int lowerBound(byte[] target) {
+        if (size == 0) return 0;
+
+        // find the last block whose first key is <= target
+        int low = 0, high = (size - 1) / BLOCK_SIZE;
+        KeyCursor cursor = new KeyCursor();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            cursor.seek(mid * BLOCK_SIZE);
+            if (compare(cursor.key, cursor.length, target) <= 0) low = mid;
+            else high = mid - 1;
+        }
+
+        int index = low * BLOCK_SIZE;
+        cursor.seek(index);
+        while (compare(cursor.key, cursor.length, target) < 0) {
+            if (++index == size) break;
+            cursor.next();
+        }
+        return index;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+    }
+
+    private static S3Object copy(S3Object view) {
+        S3Object object = new S3Object();
+        object.setKey(view.getKey());
+        object.setSize(view.getSize());
+        object.setLastModified(view.getLastModified());
+        object.setETag(view.getETag());
+        object.setStorageClass(view.getStorageClass());
+        object.setOwner(view.getOwner());
+        return object;
+    }
+
+    // unsigned byte order, which is UTF-8 binary (listing) order
+    private static int compare(byte[] a, byte[] b) {
+        return compare(a, a.length, b);
+    }
+
+    private static int compare(byte[] a, int aLength, byte[] b) {
+        int length = Math.min(aLength, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return aLength - b.length;
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() != 32) return null;
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16), low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) return null;
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        // only lower-case hex round-trips exactly
+        return toHex(bytes).equals(hex) ? bytes : null;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Decodes front-coded keys, either from the start of a block or sequentially.
+     */
+    private class KeyCursor {
+        private byte[] key = new byte[64];
+        private final long[] varInt = new long[1];
+        private int length;
+        private long position; // of the next record
+        private int index = -1;
+        private String keyString;
+
+        void seek(int target) {
+            if (index < 0 || target < index || target / BLOCK_SIZE != index / BLOCK_SIZE) {
+                position = blockOffsets[target / BLOCK_SIZE];
+                index = target / BLOCK_SIZE * BLOCK_SIZE - 1;
+            }
+            while (index < target) next();
+        }
+
+        void next() {
+            position = keys.getVarInt(position, varInt);
+            int shared = (int) varInt[0];
+            position = keys.getVarInt(position, varInt);
+            int suffix = (int) varInt[0];
+            length = shared + suffix;
+            if (length > key.length) key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+            keys.get(position, key, shared, suffix);
+            position += suffix;
+            index++;
+            keyString = null;
+        }
+
+        String keyString() {
+            if (keyString == null) keyString = new String(key, 0, length, StandardCharsets.UTF_8);
+            return keyString;
+        }
+    }
+
+    /**
+     * A read-only {@link S3Object} backed by the columns of this listing.
+     */
+    private class View extends S3Object {
+        private final KeyCursor cursor = new KeyCursor();
+        private int index;
+
+        View(int index) {
+            moveTo(index);
+        }
+
+        void moveTo(int index) {
+            this.index = index;
+            cursor.seek(index);
+        }
+
+        @Override
+        public String getKey() {
+            return cursor.keyString();
+        }
+
+        @Override
+        public Date getLastModified() {
+            return CompactObjectListing.this.getLastModified(index);
+        }
+
+        @Override
+        public String getETag() {
+            return CompactObjectListing.this.getETag(index);
+        }
+
+        @Override
+        public String getRawETag() {
+            return RestUtil.stripQuotes(getETag());
+        }
+
+        @Override
+        public Long getSize() {
+            return CompactObjectListing.this.getSize(index);
+        }
+
+        @Override
+        public StorageClass getStorageClass() {
+            return CompactObjectListing.this.getStorageClass(index);
+        }
+
+        @Override
+        public CanonicalUser getOwner() {
+            return CompactObjectListing.this.getOwner(index);
+        }
+
+        @Override
+        public void setKey(String key) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+
+        @Override
+        public void setLastModified(Date lastModified) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+
+        @Override
+        public void setETag(String eTag) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+
+        @Override
+        public void setSize(Long size) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+
+        @Override
+        public void setStorageClass(StorageClass storageClass) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+
+        @Override
+        public void setOwner(CanonicalUser owner) {
+            throw new UnsupportedOperationException("listing views are read-only");
+        }
+    }
+
+    private class ViewIterator implements Iterator<S3Object> {
+        private final int end;
+        private int next;
+        private View view;
+
+        ViewIterator(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public S3Object next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (view == null) view = new View(next);
+            else view.moveTo(next);
+            next++;
+            return view;
+        }
+    }
+
+    /**
+     * An append-only byte store made of fixed-size heap or direct buffers.
+     */
+    private static class ByteStore {
+        private final boolean direct;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private long size;
+
+        ByteStore(boolean direct) {
+            this.direct = direct;
+        }
+
+        long size() {
+            return size;
+        }
+
+        long capacity() {
+            return (long) chunks.size() * CHUNK_SIZE;
+        }
+
+        private ByteBuffer chunkFor(long position) {
+            int chunk = (int) (position / CHUNK_SIZE);
+            while (chunk >= chunks.size())
+                chunks.add(direct ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+            return chunks.get(chunk);
+        }
+
+        void put(byte b) {
+            chunkFor(size).put((int) (size % CHUNK_SIZE), b);
+            size++;
+        }
+
+        void put(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer chunk = chunkFor(size);
+                int chunkOffset = (int) (size % CHUNK_SIZE), count = Math.min(length, CHUNK_SIZE - chunkOffset);
+                ByteBuffer slice = chunk.duplicate();
+                slice.position(chunkOffset);
+                slice.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+                size += count;
+            }
+        }
+
+        void putLong(long value) {
+            chunkFor(size).putLong((int) (size % CHUNK_SIZE), value);
+            size += 8;
+        }
+
+        void putInt(int value) {
+            chunkFor(size).putInt((int) (size % CHUNK_SIZE), value);
+            size += 4;
+        }
+
+        void putVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                put((byte) (value & 0x7f | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        byte get(long position) {
+            return chunks.get((int) (position / CHUNK_SIZE)).get((int) (position % CHUNK_SIZE));
+        }
+
+        void get(long position, byte[] dest, int offset, int length) {
+            while (length > 0) {
+                int chunkOffset = (int) (position % CHUNK_SIZE), count = Math.min(length, CHUNK_SIZE - chunkOffset);
+                ByteBuffer slice = chunks.get((int) (position / CHUNK_SIZE)).duplicate();
+                slice.position(chunkOffset);
+                slice.get(dest, offset, count);
+                offset += count;
+                length -= count;
+                position += count;
+            }
+        }
+
+        long getLong(long position) {
+            return chunks.get((int) (position / CHUNK_SIZE)).getLong((int) (position % CHUNK_SIZE));
+        }
+
+        int getInt(long position) {
+            return chunks.get((int) (position / CHUNK_SIZE)).getInt((int) (position % CHUNK_SIZE));
+        }
+
+        // reads an unsigned varint into value[0] and returns the position after it
+        long getVarInt(long position, long[] value) {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = get(position++);
+                result |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value[0] = result;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.request.ListObjectsRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Downloads every object under a bucket prefix into a local directory tree. Keys are split into directories on
+ * <code>/</code>, and each level of the tree is listed in parallel. Keys ending in <code>/</code> become (empty)
+ * directories. Keys that would resolve outside the target directory (i.e. containing <code>..</code> segments) fail.
+ * <p>
+ * Small objects are streamed to their files through a reused buffer with a single
+ * {@link S3Client#readObjectStream(String, String, com.emc.object.Range)}; large objects are downloaded with
+ * {@link LargeFileDownloader}.
+ *
+ * @see DirectoryTransfer
+ */
+public class DirectoryDownloader extends DirectoryTransfer<DirectoryDownloader> {
+
+    /**
+     * Creates a new DirectoryDownloader that will use <code>s3Client</code> to download every object under
+     * <code>bucket/prefix</code> into <code>directory</code>, as <code>directory/relativePath</code>.
+     */
+    public DirectoryDownloader(S3Client s3Client, String bucket, String prefix, File directory) {
+        super(s3Client, bucket, prefix, directory);
+    }
+
+    /**
+     * Downloads the tree, blocking until every object has been downloaded or has failed.
+     *
+     * @see DirectoryTransfer#transfer()
+     */
+    public void download() {
+        if (!getDirectory().isDirectory() && !getDirectory().mkdirs())
+            throw new IllegalArgumentException("could not create directory " + getDirectory());
+        transfer();
+    }
+
+    @Override
+    protected void scan(String relativePath) throws Exception {
+        ListObjectsRequest request = new ListObjectsRequest(getBucket())
+                .withPrefix(getKey(relativePath)).withDelimiter("/");
+        ListObjectsResult result = getS3Client().listObjects(request);
+        while (true) {
+            for (String commonPrefix : result.getCommonPrefixes()) {
+                submitScan(commonPrefix.substring(getPrefix().length()));
+            }
+            for (S3Object object : result.getObjects()) {
+                String entryPath = object.getKey().substring(getPrefix().length());
+                if (entryPath.isEmpty()) continue; // the prefix itself
+                if (entryPath.endsWith("/")) Files.createDirectories(resolve(entryPath).toPath());
+                else submitFile(entryPath, object.getSize());
+            }
+            if (!result.isTruncated()) break;
+            result = getS3Client().listMoreObjects(result);
+        }
+    }
+
+    @Override
+    protected void transferLargeFile(String relativePath, long size) throws Exception {
+        LargeFileDownloader downloader = new LargeFileDownloader(getS3Client(), getBucket(), getKey(relativePath),
+                prepareFile(relativePath));
+        if (getTransferManager() != null) getTransferManager().download(downloader).get();
+        else downloader.download();
+    }
+
+    @Override
+    protected void transferSmallFile(String relativePath, long size, byte[] buffer) throws IOException {
+        File file = prepareFile(relativePath);
+        try (InputStream in = getS3Client().readObjectStream(getBucket(), getKey(relativePath), null);
+             OutputStream out = Files.newOutputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private File prepareFile(String relativePath) throws IOException {
+        File file = resolve(relativePath);
+        Files.createDirectories(file.getParentFile().toPath());
+        return file;
+    }
+
+    private File resolve(String relativePath) throws IOException {
+        Path root = getDirectory().toPath().toAbsolutePath().normalize();
+        Path path = getFile(relativePath).toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(root) || path.equals(root))
+            throw new IOException(relativePath + " resolves outside of " + getDirectory());
+        return path.toFile();
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for transferring a local directory tree to or from a bucket prefix. The tree is walked in parallel on a
+ * small scan pool, and each file is handed to a transfer pool as soon as it is found, so listing, reading, signing
+ * and network I/O overlap. Files smaller than {@link #getLargeFileThreshold() largeFileThreshold} are sent with a
+ * single request through reused buffers; larger files are routed through {@link LargeFileUploader} or
+ * {@link LargeFileDownloader} (via a {@link TransferManager}, if one is set).
+ * <p>
+ * Relative paths always use <code>/</code> as the separator, and the key of each file is <code>prefix +
+ * relativePath</code>. A failed file does not stop the transfer; all failures are collected and reported together
+ * when the transfer finishes.
+ */
+public abstract class DirectoryTransfer<T extends DirectoryTransfer<T>> implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryTransfer.class);
+
+    public static final int DEFAULT_THREADS = 32;
+    public static final int DEFAULT_SCAN_THREADS = 4;
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 16 * 1024 * 1024; // 16MB
+
+    static final int MIN_BUFFER_SIZE = 64 * 1024; // 64KB
+
+    private S3Client s3Client;
+    private String bucket;
+    private String prefix;
+    private File directory;
+
+    private int threads = DEFAULT_THREADS;
+    private int scanThreads = DEFAULT_SCAN_THREADS;
+    private long largeFileThreshold = DEFAULT_LARGE_FILE_THRESHOLD;
+    private int maxQueuedFiles = -1;
+    private TransferManager transferManager;
+
+    private final AtomicLong filesTransferred = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+    private final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private ExecutorService scanExecutor;
+    private ExecutorService transferExecutor;
+    private Semaphore queuedFiles;
+    private volatile long startTime, endTime;
+
+    protected DirectoryTransfer(S3Client s3Client, String bucket, String prefix, File directory) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix == null ? "" : prefix;
+        this.directory = directory;
+    }
+
+    @Override
+    public void run() {
+        transfer();
+    }
+
+    /**
+     * Walks the tree and transfers every file, blocking until all are finished. Throws a RuntimeException if any file
+     * failed (the first failure is the cause; see {@link #getFailures()} for the rest). May only be called once.
+     */
+    protected void transfer() {
+        if (startTime != 0) throw new IllegalStateException("this transfer has already been started");
+        startTime = System.nanoTime();
+        scanExecutor = Executors.newFixedThreadPool(scanThreads);
+        transferExecutor = Executors.newFixedThreadPool(threads);
+        queuedFiles = new Semaphore(getMaxQueuedFiles());
+        try {
+            submitScan("");
+            completion.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted during directory transfer", e);
+        } finally {
+            scanExecutor.shutdownNow();
+            transferExecutor.shutdownNow();
+            endTime = System.nanoTime();
+        }
+
+        log.info("transferred {} files ({} bytes) in {}ms: {} files/s, {} bytes/s, {} failures", filesTransferred.get(),
+                bytesTransferred.get(), TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()),
+                String.format("%.1f", getFilesPerSecond()), String.format("%.0f", getBytesPerSecond()), failures.size());
+
+        if (!failures.isEmpty())
+            throw new RuntimeException(failures.size() + " file(s) failed to transfer", failures.values().iterator().next());
+    }
+
+    /**
+     * Lists the directory at <code>relativePath</code> (empty for the root, otherwise ending in <code>/</code>),
+     * calling {@link #submitScan(String)} for each subdirectory and {@link #submitFile(String, long)} for each file.
+     */
+    protected abstract void scan(String relativePath) throws Exception;
+
+    /**
+     * Transfers a file of at least {@link #getLargeFileThreshold() largeFileThreshold} bytes.
+     */
+    protected abstract void transferLargeFile(String relativePath, long size) throws Exception;
+
+    /**
+     * Transfers a file smaller than {@link #getLargeFileThreshold() largeFileThreshold} with a single request, using
+     * <code>buffer</code> (at least <code>size</code> bytes, but possibly larger) to hold or copy the data.
+     */
+    protected abstract void transferSmallFile(String relativePath, long size, byte[] buffer) throws Exception;
+
+    protected void submitScan(final String relativePath) {
+        submitTask(scanExecutor, relativePath, () -> scan(relativePath));
+    }
+
+    /**
+     * Queues a file for transfer. Blocks while {@link #getMaxQueuedFiles() maxQueuedFiles} are already queued, so
+     * the scanners cannot run arbitrarily far ahead of the transfers.
+     */
+    protected void submitFile(final String relativePath, final long size) throws InterruptedException {
+        queuedFiles.acquire();
+        try {
+            submitTask(transferExecutor, relativePath, () -> {
+                try {
+                    if (size >= largeFileThreshold) {
+                        transferLargeFile(relativePath, size);
+                    } else {
+                        byte[] buffer = borrowBuffer(size);
+                        try {
+                            transferSmallFile(relativePath, size, buffer);
+                        } finally {
+                            bufferPool.offer(buffer);
+                        }
+                    }
+                    filesTransferred.incrementAndGet();
+                    bytesTransferred.addAndGet(size);
+                } finally {
+                    queuedFiles.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedFiles.release();
+            throw e;
+        }
+    }
+
+    private void submitTask(Executor executor, final String relativePath, final TransferTask task) {
+        pendingTasks.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.warn("failed to transfer {}", relativePath, t);
+                    failures.put(relativePath, t);
+                } finally {
+                    taskDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            taskDone();
+            throw e;
+        }
+    }
+
+    private void taskDone() {
+        if (pendingTasks.decrementAndGet() == 0) completion.countDown();
+    }
+
+    private byte[] borrowBuffer(long size) {
+        byte[] buffer = bufferPool.poll();
+        if (buffer == null || buffer.length < size) {
+            // round up to a power of two, so a handful of sizes serve most files
+            long length = MIN_BUFFER_SIZE;
+            while (length < size) length <<= 1;
+            buffer = new byte[(int) Math.min(length, largeFileThreshold)];
+        }
+        return buffer;
+    }
+
+    protected String getKey(String relativePath) {
+        return prefix + relativePath;
+    }
+
+    protected File getFile(String relativePath) {
+        return new File(directory, relativePath.replace('/', File.separatorChar));
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of files transferred in parallel. Default is {@link #DEFAULT_THREADS}
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    /**
+     * Sets the number of directories listed in parallel. Default is {@link #DEFAULT_SCAN_THREADS}
+     */
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public long getLargeFileThreshold() {
+        return largeFileThreshold;
+    }
+
+    /**
+     * Sets the size at or above which files are transferred by a {@link LargeFileUploader} or
+     * {@link LargeFileDownloader} instead of a single buffered request. Default is
+     * {@link #DEFAULT_LARGE_FILE_THRESHOLD}. Up to <code>threads</code> buffers of this size may be held at once
+     */
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        if (largeFileThreshold > LargeFileUploader.MAX_BUFFERED_PART_SIZE)
+            throw new IllegalArgumentException("largeFileThreshold cannot exceed "
+                    + LargeFileUploader.MAX_BUFFERED_PART_SIZE);
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
+    /**
+     * Returns the maximum number of files that may be found but not yet transferred. If not set explicitly, this is
+     * <code>threads * 4</code>
+     */
+    public int getMaxQueuedFiles() {
+        return maxQueuedFiles > 0 ? maxQueuedFiles : threads * 4;
+    }
+
+    public void setMaxQueuedFiles(int maxQueuedFiles) {
+        this.maxQueuedFiles = maxQueuedFiles;
+    }
+
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+
+    /**
+     * Sets a manager to run large files through, so their part requests share its limits. Default is null (each
+     * large file uses its own part pool)
+     */
+    public void setTransferManager(TransferManager transferManager) {
+        this.transferManager = transferManager;
+    }
+
+    public long getFilesTransferred() {
+        return filesTransferred.get();
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * Returns the files that failed to transfer (keyed by relative path) and the cause of each failure.
+     */
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns the time spent so far (or in total, once finished) in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        if (startTime == 0) return 0;
+        return (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+    }
+
+    /**
+     * Returns the aggregate throughput in files per second (so far, or in total once finished).
+     */
+    public double getFilesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : filesTransferred.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Returns the aggregate throughput in bytes per second (so far, or in total once finished).
+     */
+    public double getBytesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : bytesTransferred.get() * 1e9 / elapsed;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T withThreads(int threads) {
+        setThreads(threads);
+        return (T) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T withScanThreads(int scanThreads) {
+        setScanThreads(scanThreads);
+        return (T) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T withLargeFileThreshold(long largeFileThreshold) {
+        setLargeFileThreshold(largeFileThreshold);
+        return (T) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T withMaxQueuedFiles(int maxQueuedFiles) {
+        setMaxQueuedFiles(maxQueuedFiles);
+        return (T) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T withTransferManager(TransferManager transferManager) {
+        setTransferManager(transferManager);
+        return (T) this;
+    }
+
+    private interface TransferTask {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.request.PutObjectRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Uploads a local directory tree to a bucket prefix. Empty directories are not represented in the bucket.
+ * Symbolic links to files are followed; symbolic links to directories are skipped to avoid cycles.
+ * <p>
+ * Small files are read into a reused buffer and sent with a single {@link S3Client#putObject(PutObjectRequest)};
+ * since the buffered entity is repeatable, its Content-MD5 (if enabled) is computed without another copy. Large
+ * files are sent with {@link LargeFileUploader}.
+ *
+ * @see DirectoryTransfer
+ */
+public class DirectoryUploader extends DirectoryTransfer<DirectoryUploader> {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryUploader.class);
+
+    /**
+     * Creates a new DirectoryUploader that will use <code>s3Client</code> to upload every file under
+     * <code>directory</code> to <code>bucket</code>, with keys of <code>prefix + relativePath</code>.
+     */
+    public DirectoryUploader(S3Client s3Client, String bucket, String prefix, File directory) {
+        super(s3Client, bucket, prefix, directory);
+    }
+
+    /**
+     * Uploads the tree, blocking until every file has been uploaded or has failed.
+     *
+     * @see DirectoryTransfer#transfer()
+     */
+    public void upload() {
+        if (!getDirectory().isDirectory())
+            throw new IllegalArgumentException(getDirectory() + " is not a directory");
+        transfer();
+    }
+
+    @Override
+    protected void scan(String relativePath) throws Exception {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(getFile(relativePath).toPath())) {
+            for (Path entry : entries) {
+                String entryPath = relativePath + entry.getFileName().toString();
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isSymbolicLink()) attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                else if (attributes.isDirectory()) {
+                    submitScan(entryPath + "/");
+                    continue;
+                }
+
+                if (attributes.isRegularFile()) submitFile(entryPath, attributes.size());
+                else log.debug("skipping {} (not a regular file)", entry);
+            }
+        }
+    }
+
+    @Override
+    protected void transferLargeFile(String relativePath, long size) {
+        LargeFileUploader uploader = new LargeFileUploader(getS3Client(), getBucket(), getKey(relativePath),
+                getFile(relativePath));
+        if (getTransferManager() != null) getTransferManager().upload(uploader).waitForCompletion();
+        else uploader.upload();
+    }
+
+    @Override
+    protected void transferSmallFile(String relativePath, long size, byte[] buffer) throws IOException {
+        int length = (int) size;
+        try (InputStream in = Files.newInputStream(getFile(relativePath).toPath())) {
+            int read, offset = 0;
+            while (offset < length && (read = in.read(buffer, offset, length - offset)) >= 0) {
+                offset += read;
+            }
+            if (offset < length) throw new EOFException(relativePath + " was truncated during upload");
+        }
+
+        S3ObjectMetadata metadata = new S3ObjectMetadata().withContentLength(length);
+        PutObjectRequest request = new PutObjectRequest(getBucket(), getKey(relativePath),
+                new ByteArrayInputStream(buffer, 0, length)).withObjectMetadata(metadata);
+        getS3Client().putObject(request);
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.GetObjectResult;
+import com.emc.object.s3.request.GetObjectRequest;
+import com.emc.object.util.RestUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A read-through cache of whole objects on local disk, for objects that are read often but change rarely (models,
+ * configuration bundles, etc.). The first read of an object downloads its body and response headers into
+ * <code>cacheDir</code>. Later reads send a conditional GET with <code>If-None-Match</code> and, when the server
+ * answers 304 (Not Modified), are served from the local copy. Set {@link #setRevalidateAfter(long) revalidateAfter}
+ * to skip revalidation for recently checked objects altogether.
+ * <p>
+ * The cache is bounded by {@link #setMaxSize(long) maxSize} (in bytes); least-recently used objects are removed
+ * first. Concurrent reads of the same uncached object share a single download. The index is rebuilt from
+ * <code>cacheDir</code> on construction, so the cache survives restarts. Only one instance should use a given
+ * directory at a time.
+ * <p>
+ * Each version of an object is written to its own pair of files (<code>&lt;id&gt;.&lt;version&gt;.data</code>, then
+ * <code>.meta</code>), which are published in the index before the files of the previous version are deleted. A
+ * reader therefore always gets a body that matches the headers it was given, and a crash at any point leaves either
+ * the old or the new version on disk (incomplete files are cleaned up on the next start). Streams, files and buffers
+ * handed out by this class stay readable after the entry is replaced or evicted on platforms that allow open files to
+ * be deleted (i.e. POSIX); on Windows, eviction of an open file is deferred.
+ */
+public class DiskObjectCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskObjectCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024; // 1GB
+    public static final long DEFAULT_MMAP_THRESHOLD = 1024 * 1024; // 1MB
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_PREFIX = "fill";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int META_VERSION = 1;
+
+    private final S3Client s3Client;
+    private final File cacheDir;
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private long revalidateAfter = 0;
+    private long mmapThreshold = DEFAULT_MMAP_THRESHOLD;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<Entry>> fills = new ConcurrentHashMap<>();
+    // distinguishes the files of successive versions of an object (seeded with the time so it is unique across runs)
+    private final AtomicLong nextVersion = new AtomicLong(System.currentTimeMillis());
+    private long cachedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache in <code>cacheDir</code> (created if necessary) that reads through <code>s3Client</code>.
+     * Objects already in the directory are added to the index.
+     */
+    public DiskObjectCache(S3Client s3Client, File cacheDir) {
+        this.s3Client = s3Client;
+        this.cacheDir = cacheDir;
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+            throw new IllegalArgumentException("cannot create cache directory: " + cacheDir.getPath());
+        load();
+    }
+
+    /**
+     * Returns the object with its metadata. The caller must close the stream.
+     */
+    public GetObjectResult<InputStream> getObject(String bucket, String key) {
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = getEntry(bucket, key);
+            try {
+                GetObjectResult<InputStream> result = new GetObjectResult<>();
+                result.setHeaders(entry.headers);
+                result.setObject(new FileInputStream(entry.dataFile));
+                return result;
+            } catch (FileNotFoundException e) {
+                retryOrThrow(entry, attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream of the object's content. The caller must close the stream.
+     */
+    public InputStream readObjectStream(String bucket, String key) {
+        return getObject(bucket, key).getObject();
+    }
+
+    /**
+     * Returns the object's content as a read-only buffer. Objects of at least
+     * {@link #setMmapThreshold(long) mmapThreshold} bytes are memory-mapped from the cache file; smaller objects
+     * are read onto the heap.
+     */
+    public ByteBuffer readObjectBuffer(String bucket, String key) {
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = getEntry(bucket, key);
+            if (entry.size > Integer.MAX_VALUE)
+                throw new IllegalStateException(String.format("%s/%s is too large for a single buffer (%,d bytes); " +
+                        "use readObjectStream instead", bucket, key, entry.size));
+            try (FileChannel channel = FileChannel.open(entry.dataFile.toPath(), StandardOpenOption.READ)) {
+                if (entry.size >= mmapThreshold) {
+                    // the mapping stays valid after the channel is closed
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, entry.size);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) entry.size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) throw new EOFException("cache file is truncated");
+                }
+                buffer.flip();
+                return buffer.asReadOnlyBuffer();
+            } catch (NoSuchFileException e) {
+                retryOrThrow(entry, attempt, e);
+            } catch (IOException e) {
+                throw new RuntimeException("error reading cache file for " + bucket + "/" + key, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the object's metadata from the cache (revalidating or downloading the object as necessary).
+     */
+    public S3ObjectMetadata getObjectMetadata(String bucket, String key) {
+        return S3ObjectMetadata.fromHeaders(getEntry(bucket, key).headers);
+    }
+
+    /**
+     * Removes an object from the cache. Use this after changing the object through another client if you have set
+     * {@link #setRevalidateAfter(long) revalidateAfter}.
+     */
+    public void invalidate(String bucket, String key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.remove(cacheKey(bucket, key));
+            if (entry != null) cachedBytes -= entry.size;
+        }
+        if (entry != null) delete(entry);
+    }
+
+    /**
+     * Removes every object from the cache.
+     */
+    public void clear() {
+        List<Entry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            cachedBytes = 0;
+        }
+        for (Entry entry : removed) {
+            delete(entry);
+        }
+    }
+
+    private void retryOrThrow(Entry entry, int attempt, IOException e) {
+        // the entry was replaced or evicted between lookup and open; drop it and look again
+        synchronized (entries) {
+            if (entries.remove(entry.id, entry)) cachedBytes -= entry.size;
+        }
+        if (attempt >= 2) throw new RuntimeException("cache file disappeared: " + entry.dataFile.getPath(), e);
+    }
+
+    Entry getEntry(String bucket, String key) {
+        String id = cacheKey(bucket, key);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+        if (entry != null && revalidateAfter > 0 && !entry.loaded
+                && System.nanoTime() - entry.validated < TimeUnit.MILLISECONDS.toNanos(revalidateAfter)) {
+            hits.increment();
+            return entry;
+        }
+
+        // only one thread fetches a given key; the rest wait for its result
+        CompletableFuture<Entry> fill = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = fills.putIfAbsent(id, fill);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        try {
+            Entry result = fetch(id, bucket, key, entry);
+            fill.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            fill.completeExceptionally(e);
+            throw e;
+        } finally {
+            fills.remove(id, fill);
+        }
+    }
+
+    private Entry fetch(String id, String bucket, String key, Entry cached) {
+        GetObjectRequest<?> request = new GetObjectRequest<>(bucket, key);
+        String eTag = cached == null ? null : S3ObjectMetadata.fromHeaders(cached.headers).getETag();
+        if (eTag != null) request.withIfNoneMatch(eTag);
+
+        GetObjectResult<InputStream> result;
+        try {
+            result = s3Client.getObject(request, InputStream.class);
+        } catch (S3Exception e) {
+            if (e.getHttpCode() == RestUtil.STATUS_NOT_FOUND && cached != null) invalidate(bucket, key);
+            throw e;
+        }
+
+        if (result == null) { // 304 (not modified)
+            if (cached == null) throw new IllegalStateException("unexpected 304 for unconditional GET");
+            revalidations.increment();
+            cached.validated = System.nanoTime();
+            cached.loaded = false;
+            return cached;
+        }
+
+        misses.increment();
+        // a new pair of files, so readers of the previous version are not affected
+        String baseName = id + "." + Long.toString(nextVersion.incrementAndGet(), 36);
+        File dataFile = new File(cacheDir, baseName + DATA_SUFFIX), metaFile = new File(cacheDir, baseName + META_SUFFIX);
+        Entry entry;
+        try {
+            // the metadata file is written last, so its presence means the data file is complete
+            long size = write(dataFile, result.getObject());
+            entry = new Entry(id, bucket, key, result.getHeaders(), size, dataFile, metaFile);
+            writeMetadata(entry);
+        } catch (IOException e) {
+            if (!dataFile.delete() && dataFile.exists()) dataFile.deleteOnExit();
+            throw new RuntimeException("error caching " + bucket + "/" + key, e);
+        }
+
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Entry old = entries.put(id, entry);
+            if (old != null) {
+                cachedBytes -= old.size;
+                evicted.add(old); // superseded; not counted as an eviction
+            }
+            cachedBytes += entry.size;
+            for (Iterator<Entry> i = entries.values().iterator(); cachedBytes > maxSize && i.hasNext(); ) {
+                Entry eldest = i.next();
+                if (eldest == entry) continue; // always keep what we just fetched
+                i.remove();
+                cachedBytes -= eldest.size;
+                evicted.add(eldest);
+                evictions.increment();
+            }
+        }
+        for (Entry old : evicted) {
+            delete(old);
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the stream to a temporary file, then moves it into place so readers never see a partial file.
+     */
+    private long write(File target, InputStream content) throws IOException {
+        File tempFile = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, cacheDir);
+        try {
+            long size;
+            try (InputStream in = content) {
+                size = Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempFile.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) tempFile.deleteOnExit();
+        }
+    }
+
+    private void writeMetadata(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(META_VERSION);
+            out.writeUTF(entry.bucket);
+            out.writeUTF(entry.key);
+            out.writeLong(entry.size);
+            out.writeInt(entry.headers.size());
+            for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeInt(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+        write(entry.metaFile, new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    // the data file has the same name as the metadata file, with a different suffix
+    private File dataFileFor(File metaFile) {
+        String name = metaFile.getName();
+        return new File(cacheDir, name.substring(0, name.length() - META_SUFFIX.length()) + DATA_SUFFIX);
+    }
+
+    private Entry readMetadata(File metaFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)))) {
+            if (in.readInt() != META_VERSION) throw new IOException("unknown metadata version");
+            String bucket = in.readUTF(), key = in.readUTF();
+            long size = in.readLong();
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                List<String> values = new ArrayList<>();
+                for (int j = in.readInt(); j > 0; j--) {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, values);
+            }
+            return new Entry(cacheKey(bucket, key), bucket, key, headers, size, dataFileFor(metaFile), metaFile);
+        }
+    }
+
+    private void load() {
+        File[] metaFiles = cacheDir.listFiles((dir, name) -> name.endsWith(META_SUFFIX));
+        if (metaFiles == null) return;
+        // oldest first, so the most recently written objects are the last to be evicted (and, if a previous run
+        // stopped before deleting a superseded version, the newest version of an object wins)
+        Arrays.sort(metaFiles, Comparator.comparingLong(File::lastModified));
+        Set<File> dataFiles = new HashSet<>();
+        synchronized (entries) {
+            for (File metaFile : metaFiles) {
+                try {
+                    Entry entry = readMetadata(metaFile);
+                    if (!entry.dataFile.isFile() || entry.dataFile.length() != entry.size)
+                        throw new IOException("data file is missing or incomplete");
+                    entry.loaded = true; // always revalidate objects cached by a previous run
+                    Entry old = entries.put(entry.id, entry);
+                    if (old != null) {
+                        cachedBytes -= old.size;
+                        dataFiles.remove(old.dataFile);
+                        delete(old);
+                    }
+                    cachedBytes += entry.size;
+                    dataFiles.add(entry.dataFile);
+                } catch (IOException e) {
+                    log.warn("discarding unreadable cache entry {}: {}", metaFile.getName(), e.getMessage());
+                    dataFileFor(metaFile).delete();
+                    metaFile.delete();
+                }
+            }
+        }
+
+        // remove data files that never got their metadata and temp files left by an interrupted fill
+        File[] leftovers = cacheDir.listFiles((dir, name) -> name.endsWith(DATA_SUFFIX)
+                || (name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX)));
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                if (!dataFiles.contains(file) && file.delete()) log.debug("removed leftover cache file {}", file);
+            }
+        }
+        log.debug("loaded {} cached objects ({} bytes) from {}", entries.size(), cachedBytes, cacheDir);
+    }
+
+    private void delete(Entry entry) {
+        // every version has its own files, so these are never shared with a newer entry
+        if (!entry.metaFile.delete() && entry.metaFile.exists())
+            log.debug("could not delete {}", entry.metaFile);
+        if (!entry.dataFile.delete() && entry.dataFile.exists()) {
+            log.debug("could not delete {} (still open?); will delete on exit", entry.dataFile);
+            entry.dataFile.deleteOnExit();
+        }
+    }
+
+    static String cacheKey(String bucket, String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bucket.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '/');
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes kept in the cache. An object larger than this is still cached (and evicts
+     * everything else) until the next object is fetched. Default is {@link #DEFAULT_MAX_SIZE}
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getRevalidateAfter() {
+        return revalidateAfter;
+    }
+
+    /**
+     * Cached objects that were downloaded or revalidated less than this many milliseconds ago are served without
+     * contacting the server at all. Default is 0 (every read is revalidated)
+     */
+    public void setRevalidateAfter(long revalidateAfter) {
+        this.revalidateAfter = revalidateAfter;
+    }
+
+    public long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
+    /**
+     * Objects of at least this many bytes are memory-mapped by {@link #readObjectBuffer(String, String)}. Default is
+     * {@link #DEFAULT_MMAP_THRESHOLD}
+     */
+    public void setMmapThreshold(long mmapThreshold) {
+        this.mmapThreshold = mmapThreshold;
+    }
+
+    /**
+     * Returns the number of reads served without contacting the server (see {@link #setRevalidateAfter(long)}).
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of reads served from disk after the server confirmed the object is unchanged.
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * Returns the number of objects downloaded.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public DiskObjectCache withMaxSize(long maxSize) {
+        setMaxSize(maxSize);
+        return this;
+    }
+
+    public DiskObjectCache withRevalidateAfter(long revalidateAfter) {
+        setRevalidateAfter(revalidateAfter);
+        return this;
+    }
+
+    public DiskObjectCache withMmapThreshold(long mmapThreshold) {
+        setMmapThreshold(mmapThreshold);
+        return this;
+    }
+
+    static final class Entry {
+        final String id;
+        final String bucket;
+        final String key;
+        final Map<String, List<String>> headers;
+        final long size;
+        final File dataFile;
+        final File metaFile;
+        volatile long validated = System.nanoTime();
+        volatile boolean loaded;
+
+        Entry(String id, String bucket, String key, Map<String, List<String>> headers, long size,
+              File dataFile, File metaFile) {
+            this.id = id;
+            this.bucket = bucket;
+            this.key = key;
+            this.headers = headers == null ? Collections.<String, List<String>>emptyMap() : headers;
+            this.size = size;
+            this.dataFile = dataFile;
+            this.metaFile = metaFile;
+        }
+    }
+}
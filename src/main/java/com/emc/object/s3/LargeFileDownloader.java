@@ -27,27 +27,32 @@
 package com.emc.object.s3;
 
 import com.emc.object.Range;
+import com.emc.object.util.JfrEvents;
 import com.emc.object.util.ProgressInputStream;
 import com.emc.object.util.ProgressListener;
 import com.emc.object.util.ProgressOutputStream;
+import com.emc.object.util.ResizableSemaphore;
 import com.emc.rest.util.StreamUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Convenience class to facilitate multi-threaded download for large objects. This class will split the object
  * and download it in parts, transferring several parts simultaneously to maximize efficiency.
+ * <p>
+ * The target can be a file, or any {@link OutputStream} or {@link WritableByteChannel}. When streaming to a stream or
+ * channel, parts are downloaded into memory buffers and written to the target in order, so at most
+ * {@link #getMaxInFlightParts() maxInFlightParts} * <code>partSize</code> bytes are held in memory at once.
  */
 public class LargeFileDownloader implements Runnable, ProgressListener {
 
@@ -60,10 +65,14 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
 
     public static final int DEFAULT_THREADS = 8;
 
+    public static final long MAX_BUFFERED_PART_SIZE = Integer.MAX_VALUE - 8; // largest safe byte array
+
     private S3Client s3Client;
     private String bucket;
     private String key;
     private File file;
+    private OutputStream outputStream;
+    private WritableByteChannel outputChannel;
     private Long objectSize;
     private AtomicLong bytesTransferred = new AtomicLong();
 
@@ -72,6 +81,10 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
     private int threads = DEFAULT_THREADS;
     private ExecutorService executorService;
     private ProgressListener progressListener;
+    private PartTuningStrategy partTuningStrategy;
+    private TransferThrottle transferThrottle;
+    private int maxInFlightParts = -1;
+    private final Queue<byte[]> partBufferPool = new ConcurrentLinkedQueue<>();
 
     /**
      * Creates a new LargeFileDownloader instance that will use <code>s3Client</code> to download
@@ -84,6 +97,30 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
         this.file = file;
     }
 
+    /**
+     * Creates a new LargeFileDownloader instance that will use <code>s3Client</code> to download
+     * <code>bucket/key</code> to <code>outputStream</code>. Parts are written to the stream in order. The stream is
+     * flushed, but not closed, when the download completes.
+     */
+    public LargeFileDownloader(S3Client s3Client, String bucket, String key, OutputStream outputStream) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Creates a new LargeFileDownloader instance that will use <code>s3Client</code> to download
+     * <code>bucket/key</code> to <code>outputChannel</code>. Parts are written to the channel in order. The channel is
+     * not closed when the download completes.
+     */
+    public LargeFileDownloader(S3Client s3Client, String bucket, String key, WritableByteChannel outputChannel) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.outputChannel = outputChannel;
+    }
+
     @Override
     public void progress(long completed, long total) {
     }
@@ -125,7 +162,24 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
     }
 
     protected void doSingleDownload() throws IOException {
-        OutputStream os = new FileOutputStream(file);
+        OutputStream os;
+        if (file != null) {
+            os = new FileOutputStream(file);
+        } else {
+            // StreamUtil.copy will close the stream, but we don't own the target, so only flush it
+            os = outputStream != null ? outputStream : Channels.newOutputStream(outputChannel);
+            os = new FilterOutputStream(os) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
 
         os = new ProgressOutputStream(os, this);
 
@@ -133,6 +187,11 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
     }
 
     protected void doParallelDownload() throws Exception {
+        if (file == null) {
+            doParallelStreamDownload();
+            return;
+        }
+
         // sanity checks
         if (file.exists() && !file.canWrite())
             throw new IllegalArgumentException("cannot write to file: " + file.getPath());
@@ -143,12 +202,21 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
             partSize = MIN_PART_SIZE;
         }
 
-        // set up thread pool
+        // set up thread pool (if concurrency is tuned, make room for the most threads the strategy will use)
         boolean shutdownThreadPool = false;
         if (executorService == null) {
-            executorService = Executors.newFixedThreadPool(threads);
+            int poolSize = threads;
+            if (partTuningStrategy != null) poolSize = Math.max(threads, partTuningStrategy.getMaxConcurrency());
+            executorService = Executors.newFixedThreadPool(poolSize);
             shutdownThreadPool = true;
         }
+
+        // if tuning, only submit as many parts as the strategy's current concurrency allows
+        ResizableSemaphore partSlots = null;
+        if (partTuningStrategy != null) {
+            partTuningStrategy.start(objectSize, partSize, threads);
+            partSlots = new ResizableSemaphore(partTuningStrategy.getConcurrency());
+        }
         List<Future<Void>> futures = new ArrayList<Future<Void>>();
 
         try {
@@ -161,8 +229,21 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
             // submit all download tasks
             long offset = 0, length = partSize;
             while (offset < objectSize) {
+                if (partSlots != null) {
+                    length = getNextPartSize();
+                    partSlots.setLimit(partTuningStrategy.getConcurrency());
+                    partSlots.acquire();
+                }
                 if (offset + length > objectSize) length = objectSize - offset;
-                futures.add(executorService.submit(new DownloadPartTask(Range.fromOffsetLength(offset, length), channel)));
+                if (transferThrottle != null) {
+                    // keep waiting for a permit, but stop early if a part has already failed (get() rethrows it)
+                    while (!transferThrottle.tryAcquire(length, 1, TimeUnit.SECONDS)) {
+                        for (Future<Void> future : futures) {
+                            if (future.isDone()) future.get();
+                        }
+                    }
+                }
+                futures.add(submitPart(new DownloadPartTask(Range.fromOffsetLength(offset, length), channel), length, partSlots));
                 offset += length;
             }
 
@@ -180,6 +261,120 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
         }
     }
 
+    /*
+     * streaming mode: parts are downloaded into memory buffers in parallel and written to the target in order. the
+     * queue of pending parts acts as a bounded reorder buffer - a part that finishes early waits in its future until
+     * all the parts before it are written, and no new part is started until the oldest one is written
+     */
+    protected void doParallelStreamDownload() throws Exception {
+        if (partSize < MIN_PART_SIZE) {
+            log.warn(String.format("%,dk is below the minimum part size (%,dk). the minimum will be used instead",
+                    partSize / 1024, MIN_PART_SIZE / 1024));
+            partSize = MIN_PART_SIZE;
+        }
+        if (partSize > MAX_BUFFERED_PART_SIZE)
+            throw new IllegalArgumentException(String.format("part size (%,d) is too large to buffer (maximum is %,d)",
+                    partSize, MAX_BUFFERED_PART_SIZE));
+
+        // set up thread pool (if concurrency is tuned, make room for the most threads the strategy will use)
+        boolean shutdownThreadPool = false;
+        if (executorService == null) {
+            int poolSize = threads;
+            if (partTuningStrategy != null) poolSize = Math.max(threads, partTuningStrategy.getMaxConcurrency());
+            executorService = Executors.newFixedThreadPool(poolSize);
+            shutdownThreadPool = true;
+        }
+        if (partTuningStrategy != null) partTuningStrategy.start(objectSize, partSize, threads);
+
+        Deque<Future<ByteBuffer>> pendingParts = new ArrayDeque<>();
+        try {
+            long offset = 0;
+            while (offset < objectSize || !pendingParts.isEmpty()) {
+                // start as many parts as the window allows
+                while (offset < objectSize && pendingParts.size() < getPartWindow()) {
+                    long length = Math.min(getNextPartSize(), objectSize - offset);
+                    // only wait for a throttle permit if there is no downloaded part to write in the meantime
+                    if (transferThrottle != null && !transferThrottle.tryAcquire(length,
+                            pendingParts.isEmpty() ? Long.MAX_VALUE : 0, TimeUnit.NANOSECONDS)) break;
+                    pendingParts.add(submitPart(new BufferPartTask(Range.fromOffsetLength(offset, length)), length, null));
+                    offset += length;
+                }
+
+                // write the oldest part (blocks until it is downloaded)
+                ByteBuffer part = pendingParts.remove().get();
+                if (outputChannel != null) {
+                    while (part.hasRemaining()) outputChannel.write(part);
+                } else {
+                    outputStream.write(part.array(), 0, part.limit());
+                }
+                partBufferPool.offer(part.array());
+            }
+
+            if (outputStream != null) outputStream.flush();
+        } finally {
+            // if we failed, don't bother finishing the other parts
+            for (Future<ByteBuffer> future : pendingParts) {
+                future.cancel(true);
+            }
+            partBufferPool.clear();
+
+            // make sure all spawned threads are shut down
+            if (shutdownThreadPool) executorService.shutdown();
+        }
+    }
+
+    /*
+     * submits a part task that releases its slot and throttle permit when the task stops running (or when it is
+     * cancelled before it starts). cancelling a running part interrupts it, but its permit is held until it actually
+     * returns, so a failed transfer cannot push a shared throttle over its limit
+     */
+    private <T> Future<T> submitPart(Callable<T> task, long length, ResizableSemaphore partSlots) {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Runnable release = () -> {
+            if (partSlots != null) partSlots.release();
+            if (transferThrottle != null) transferThrottle.release(length);
+        };
+        FutureTask<T> future = new FutureTask<T>(() -> {
+            if (!claimed.compareAndSet(false, true)) return null; // already cancelled (and released)
+            try {
+                return task.call();
+            } finally {
+                release.run();
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (claimed.compareAndSet(false, true)) release.run(); // never started
+                return cancelled;
+            }
+        };
+        try {
+            executorService.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    /*
+     * the number of parts allowed in flight right now (only used in streaming mode). if a tuning strategy is set,
+     * this follows its concurrency (still capped by maxInFlightParts, if set explicitly)
+     */
+    private int getPartWindow() {
+        if (partTuningStrategy == null) return getMaxInFlightParts();
+        int window = partTuningStrategy.getConcurrency() + 1;
+        return maxInFlightParts > 0 ? Math.min(window, maxInFlightParts) : window;
+    }
+
+    private long getNextPartSize() {
+        if (partTuningStrategy == null || !partTuningStrategy.isVariablePartSize()) return partSize;
+        long size = Math.max(MIN_PART_SIZE, partTuningStrategy.getNextPartSize());
+        if (file == null) size = Math.min(size, MAX_BUFFERED_PART_SIZE);
+        return size;
+    }
+
     public S3Client getS3Client() {
         return s3Client;
     }
@@ -196,6 +391,14 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
         return file;
     }
 
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public WritableByteChannel getOutputChannel() {
+        return outputChannel;
+    }
+
     public Long getObjectSize() {
         return objectSize;
     }
@@ -261,6 +464,53 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
         this.progressListener = progressListener;
     }
 
+    /**
+     * Returns the maximum number of parts held in memory at once when streaming to an {@link OutputStream} or
+     * {@link WritableByteChannel}. If not set explicitly, this is <code>threads + 1</code>, so that one completed part
+     * can be written while the rest are downloading
+     */
+    public int getMaxInFlightParts() {
+        return maxInFlightParts > 0 ? maxInFlightParts : threads + 1;
+    }
+
+    /**
+     * Sets the maximum number of parts that may be downloading or waiting to be written at once when streaming to an
+     * {@link OutputStream} or {@link WritableByteChannel}. This caps memory use at <code>maxInFlightParts *
+     * partSize</code> bytes. Not used when downloading to a file
+     */
+    public void setMaxInFlightParts(int maxInFlightParts) {
+        this.maxInFlightParts = maxInFlightParts;
+    }
+
+    public PartTuningStrategy getPartTuningStrategy() {
+        return partTuningStrategy;
+    }
+
+    /**
+     * Sets a strategy to tune the number of concurrent part transfers and (optionally) the part size during a
+     * parallel download, using <code>threads</code> and <code>partSize</code> as starting values. The thread pool
+     * will be sized to the strategy's maximum concurrency (unless an external executor is provided). Default is null
+     * (static settings)
+     *
+     * @see AdaptivePartTuningStrategy
+     */
+    public void setPartTuningStrategy(PartTuningStrategy partTuningStrategy) {
+        this.partTuningStrategy = partTuningStrategy;
+    }
+
+    public TransferThrottle getTransferThrottle() {
+        return transferThrottle;
+    }
+
+    /**
+     * Sets a throttle that must grant a permit before each part is downloaded (in addition to the thread count and
+     * in-flight window of this download). This is set by {@link TransferManager} to share limits between many
+     * transfers. Default is null (no throttle)
+     */
+    public void setTransferThrottle(TransferThrottle transferThrottle) {
+        this.transferThrottle = transferThrottle;
+    }
+
     public LargeFileDownloader withParallelThreshold(long parallelThreshold) {
         setParallelThreshold(parallelThreshold);
         return this;
@@ -286,6 +536,21 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
         return this;
     }
 
+    public LargeFileDownloader withMaxInFlightParts(int maxInFlightParts) {
+        setMaxInFlightParts(maxInFlightParts);
+        return this;
+    }
+
+    public LargeFileDownloader withPartTuningStrategy(PartTuningStrategy partTuningStrategy) {
+        setPartTuningStrategy(partTuningStrategy);
+        return this;
+    }
+
+    public LargeFileDownloader withTransferThrottle(TransferThrottle transferThrottle) {
+        setTransferThrottle(transferThrottle);
+        return this;
+    }
+
     protected class DownloadPartTask implements Callable<Void> {
         private Range range;
         private FileChannel channel;
@@ -297,10 +562,11 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
 
         @Override
         public Void call() throws Exception {
-            InputStream is = s3Client.readObjectStream(bucket, key, range);
-
+            long start = System.nanoTime();
+            Object event = JfrEvents.begin(JfrEvents.Type.DOWNLOAD_PART);
+            InputStream is = null;
             try {
-                is = new ProgressInputStream(is, LargeFileDownloader.this);
+                is = new ProgressInputStream(s3Client.readObjectStream(bucket, key, range), LargeFileDownloader.this);
 
                 byte[] buffer = new byte[32 * 1024];
                 long pos = range.getFirst();
@@ -309,14 +575,58 @@ public class LargeFileDownloader implements Runnable, ProgressListener {
                     pos += r;
                 }
 
+                if (partTuningStrategy != null)
+                    partTuningStrategy.partCompleted(range.getLast() - range.getFirst() + 1, System.nanoTime() - start);
                 return null;
             } finally {
                 try {
-                    is.close();
+                    if (is != null) is.close();
                 } catch (Throwable t) {
                     log.warn("could not close object stream", t);
                 }
+                JfrEvents.commit(event, bucket, "DownloadPart", null, range.getLast() - range.getFirst() + 1,
+                        key + " range " + range);
             }
         }
     }
+
+    /**
+     * Downloads a range of the object into a (pooled) memory buffer. Returns a buffer whose limit is the length of
+     * the range.
+     */
+    protected class BufferPartTask implements Callable<ByteBuffer> {
+        private Range range;
+
+        public BufferPartTask(Range range) {
+            this.range = range;
+        }
+
+        @Override
+        public ByteBuffer call() throws Exception {
+            long start = System.nanoTime();
+            Object event = JfrEvents.begin(JfrEvents.Type.DOWNLOAD_PART);
+            int length = (int) (range.getLast() - range.getFirst() + 1);
+
+            // at most maxInFlightParts buffers will exist (if part sizes vary, a pooled buffer may be too small)
+            byte[] buffer = partBufferPool.poll();
+            if (buffer == null || buffer.length < length) buffer = new byte[length];
+
+            try (InputStream is = new ProgressInputStream(s3Client.readObjectStream(bucket, key, range),
+                    LargeFileDownloader.this)) {
+                int read = 0;
+                while (read < length) {
+                    int count = is.read(buffer, read, length - read);
+                    if (count == -1)
+                        throw new EOFException(String.format("object stream ended after %,d of %,d bytes in range %s",
+                                read, length, range));
+                    read += count;
+                }
+            } finally {
+                JfrEvents.commit(event, bucket, "DownloadPart", null, length, key + " range " + range);
+            }
+
+            if (partTuningStrategy != null) partTuningStrategy.partCompleted(length, System.nanoTime() - start);
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+    }
 }
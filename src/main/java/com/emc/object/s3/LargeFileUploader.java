@@ -30,22 +30,25 @@ import com.emc.object.Range;
 import com.emc.object.s3.bean.*;
 import com.emc.object.s3.lfu.*;
 import com.emc.object.s3.request.*;
+import com.emc.object.util.ByteArrayEntity;
+import com.emc.object.util.JfrEvents;
 import com.emc.object.util.ProgressInputStream;
 import com.emc.object.util.ProgressListener;
+import com.emc.object.util.RepeatableEntity;
+import com.emc.object.util.RepeatableInputStream;
+import com.emc.object.util.ResizableSemaphore;
 import com.emc.rest.util.SizedInputStream;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.DatatypeConverter;
-import java.io.File;
-import java.io.FilterInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -68,6 +71,7 @@ public class LargeFileUploader implements Runnable, ProgressListener {
     public static final long MIN_PART_SIZE = 4 * 1024 * 1024; // 4MB
     public static final long DEFAULT_PART_SIZE = 128 * 1024 * 1024; // 128MB
     public static final int MAX_PARTS = 10000;
+    public static final long MAX_BUFFERED_PART_SIZE = Integer.MAX_VALUE - 8; // largest safe byte array
 
     public static String getMpuETag(List<MultipartPartETag> partETags) {
         String aggHexString = partETags.stream().map(MultipartPartETag::getETag).collect(Collectors.joining(""));
@@ -99,6 +103,12 @@ public class LargeFileUploader implements Runnable, ProgressListener {
     private ExecutorService executorService;
     private boolean externalExecutorService;
     private ProgressListener progressListener;
+    private int maxInFlightParts = -1;
+    private boolean bufferStreamParts = false;
+    private PartQueueListener partQueueListener;
+    private PartTuningStrategy partTuningStrategy;
+    private TransferThrottle transferThrottle;
+    private final Queue<byte[]> partBufferPool = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean active = new AtomicBoolean(false);
 
     private LargeFileUploaderResumeContext resumeContext;
@@ -115,8 +125,9 @@ public class LargeFileUploader implements Runnable, ProgressListener {
 
     /**
      * Creates a new LargeFileUpload instance using the specified <code>s3Client</code> to upload
-     * from a single <code>stream</code> to <code>bucket/key</code>. Note that this type of upload is
-     * single-threaded and not very efficient.
+     * from a single <code>stream</code> to <code>bucket/key</code>. Note that by default this type of upload is
+     * single-threaded and not very efficient. To transfer parts from a stream in parallel, enable
+     * {@link #setBufferStreamParts(boolean) bufferStreamParts}.
      */
     public LargeFileUploader(S3Client s3Client, String bucket, String key, InputStream stream, long size) {
         this.s3Client = s3Client;
@@ -224,8 +235,19 @@ public class LargeFileUploader implements Runnable, ProgressListener {
     public LargeFileUpload uploadAsync() {
         // start a background thread
         ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<?> future = executor.submit(this::upload);
-        executor.shutdown();
+        try {
+            return uploadAsync(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Same as {@link #uploadAsync()}, but runs the upload (the thread that reads the source and submits parts) on
+     * <code>executor</code> instead of a new thread.
+     */
+    public LargeFileUpload uploadAsync(Executor executor) {
+        Future<?> future = CompletableFuture.runAsync(this::upload, executor);
 
         return new LargeFileUpload() {
             @Override
@@ -266,7 +288,9 @@ public class LargeFileUploader implements Runnable, ProgressListener {
                     resumeContext.setUploadId(null);
                     resumeContext.setUploadedParts(null);
                 }
-                executorService.shutdownNow(); // immediately terminates thread pool and interrupts any running threads
+                // immediately terminates thread pool and interrupts any running threads (unless the pool is shared)
+                ExecutorService partExecutor = executorService;
+                if (partExecutor != null && !externalExecutorService) partExecutor.shutdownNow();
             }
         };
     }
@@ -304,6 +328,16 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         return is;
     }
 
+    private void closeFileSource() {
+        if (multipartSource instanceof LargeFileMultipartFileSource) {
+            try {
+                ((LargeFileMultipartFileSource) multipartSource).close();
+            } catch (Throwable t) {
+                log.warn("could not close file source", t);
+            }
+        }
+    }
+
     private InputStream getSourcePartDataStream(long offset, long length) throws IOException {
         InputStream is;
         if (multipartSource != null) {
@@ -329,7 +363,8 @@ public class LargeFileUploader implements Runnable, ProgressListener {
     public void doSinglePut() {
         configure();
 
-        try (InputStream is = monitorStream(getSourceCompleteDataStream())) {
+        try (InputStream is = multipartSource != null ? getRepeatablePartDataStream(0, fullSize, null)
+                : monitorStream(getSourceCompleteDataStream())) {
             eTag = putObject(is);
         } catch (IOException e) {
             throw new RuntimeException("Error opening file", e);
@@ -338,7 +373,8 @@ public class LargeFileUploader implements Runnable, ProgressListener {
 
     /*
      * get a map of existing MPU parts from which we can resume an MPU. we can only resume an MPU if the existing
-     * part sizes and count are exactly the same as configured in this LFU instance
+     * part sizes and count are exactly the same as configured in this LFU instance (or as recorded in the resume
+     * context, if the part size was tuned)
      */
     private Map<Integer, MultipartPartETag> listUploadPartsForResume(String uploadId) {
         List<MultipartPart> existingParts = listParts(uploadId);
@@ -349,7 +385,8 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             existingParts.sort(Comparator.comparingInt(MultipartPartETag::getPartNumber));
 
             // check the parts - if any part size doesn't match, or there are more parts than expected, we cannot resume
-            int lastPart = (int) ((fullSize - 1) / partSize) + 1;
+            List<Long> partSizes = resumeContext.getPartSizes();
+            int lastPart = partSizes != null ? partSizes.size() : (int) ((fullSize - 1) / partSize) + 1;
             long lastPartSize = fullSize - ((lastPart - 1) * partSize);
             for (MultipartPart part : existingParts) {
                 if (part.getPartNumber() > lastPart) {
@@ -357,7 +394,9 @@ public class LargeFileUploader implements Runnable, ProgressListener {
                     throw new IllegalArgumentException(String.format("Too many parts in uploadId: %s: last part is %d, but saw partNumber %d",
                             uploadId, lastPart, part.getPartNumber()));
                 }
-                long expectedSize = part.getPartNumber() == lastPart ? lastPartSize : partSize;
+                long expectedSize;
+                if (partSizes != null) expectedSize = partSizes.get(part.getPartNumber() - 1);
+                else expectedSize = part.getPartNumber() == lastPart ? lastPartSize : partSize;
                 if (!part.getSize().equals(expectedSize)) {
                     // invalid upload
                     throw new IllegalArgumentException(String.format("Invalid part size detected in uploadId: %s/%d: expected %d, but saw %d",
@@ -377,6 +416,11 @@ public class LargeFileUploader implements Runnable, ProgressListener {
 
         active.set(true);
 
+        // part sizes must match the original upload to resume. they may vary if this is a new upload, or if the
+        // resume context recorded the sizes that were chosen (only parts after those will be tuned)
+        boolean tunePartSize = isPartSizeTuned() && (resumeContext == null || resumeContext.getPartSizes() != null);
+        if (partTuningStrategy != null) partTuningStrategy.start(fullSize, partSize, threads);
+
         // if calling code has specified a resume context, and did *not* provide a part list, list the parts now
         if (resumeContext != null && resumeContext.getUploadId() != null && resumeContext.getUploadedParts() == null) {
             existingMpuParts = listUploadPartsForResume(resumeContext.getUploadId());
@@ -391,43 +435,70 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         // make sure trusted part list is initialized (this will be updated as parts are uploaded)
         if (resumeContext.getUploadedParts() == null) resumeContext.setUploadedParts(new HashMap<>());
 
+        // record tuned part sizes, so the upload can be resumed with the same part boundaries if it is paused
+        if (tunePartSize && resumeContext.getPartSizes() == null) resumeContext.setPartSizes(new ArrayList<>());
+        List<Long> partSizes = resumeContext.getPartSizes();
+
+        ResizableSemaphore partSlots = new ResizableSemaphore(getPartWindow());
+        AtomicBoolean partFailed = new AtomicBoolean(false);
         List<Future<MultipartPartETag>> futures = new ArrayList<>();
         try {
-            // submit all upload tasks
-            int lastPart = (int) ((fullSize - 1) / partSize) + 1;
-            for (int partNumber = 1; partNumber <= lastPart; partNumber++) {
-                long offset = (partNumber - 1) * partSize;
-                long length = partSize;
-                if (offset + length > fullSize) length = fullSize - offset;
+            // submit upload tasks, keeping at most maxInFlightParts parts read/buffered/transferring at any time
+            // note: an empty source is still uploaded as a single (empty) part
+            long offset = 0, length;
+            for (int partNumber = 1; partNumber == 1 || offset < fullSize; partNumber++, offset += length) {
+                if (partSizes != null && partNumber <= partSizes.size()) {
+                    length = Math.min(partSizes.get(partNumber - 1), fullSize - offset);
+                } else {
+                    length = Math.min(getNextPartSize(partNumber, offset, tunePartSize), fullSize - offset);
+                    if (partSizes != null) partSizes.add(length);
+                }
 
                 // if we already have a trusted part ETag, skip this part without verifying
                 if (resumeContext.getUploadedParts().containsKey(partNumber)) {
                     log.debug("bucket {} key {} partNumber {} provided in resume context; will use the provided ETag and this part will not be verified",
                             bucket, key, partNumber);
+                    continue;
+                }
 
-                    // reuse existing MPU parts if found
-                } else if (existingMpuParts != null && existingMpuParts.containsKey(partNumber)) {
+                boolean existingPart = existingMpuParts != null && existingMpuParts.containsKey(partNumber);
+                if (existingPart && !resumeContext.isVerifyPartsFoundInTarget()) {
+                    // calling code has specified *not* to verify existing parts found in the target, so we will
+                    // trust the existing part ETag
+                    log.debug("verifyPartsFoundInTarget is false; not verifying existing part data for partNumber {} (ETag: {})",
+                            partNumber, existingMpuParts.get(partNumber).getETag());
+                    resumeContext.getUploadedParts().put(partNumber, new MultipartPartETag(partNumber, existingMpuParts.get(partNumber).getETag()));
+                    continue;
+                }
+
+                // block until there is room in the window (back-pressure); stop early if paused, aborted or failed
+                if (!acquirePartSlot(partSlots, partNumber, length, partFailed)) break;
+
+                // reader stage: buffer the part if we're reading from a shared stream
+                byte[] partData;
+                try {
+                    partData = readPartData(length);
+                } catch (IOException | RuntimeException e) {
+                    releasePartSlot(partSlots, length);
+                    throw e;
+                }
+                notifyPartQueued(partNumber, partSlots);
+
+                CompletableFuture<MultipartPartETag> future;
+                if (existingPart) {
                     log.debug("bucket {} key {} partNumber {} already exists, will be reused for multipart upload",
                             bucket, key, partNumber);
-                    // verify source part if necessary
-                    if (resumeContext.isVerifyPartsFoundInTarget()) {
-                        futures.add(CompletableFuture // need to use CompletableFuture to allow chained execution
-                                // first, verify the part ETag by re-reading form source
-                                .supplyAsync(new VerifySourcePartTask(partNumber, offset, length, existingMpuParts.get(partNumber).getRawETag()), executorService)
-                                // then, if the part is invalid (throws PartMismatchException), re-upload it (if configured to do so)
-                                .exceptionally(partMismatchHandler(resumeContext.getUploadId(), partNumber, offset, length)));
-                    } else {
-                        // calling code has specified *not* to verify existing parts found in the target, so we will
-                        // trust the existing part ETag
-                        log.debug("verifyPartsFoundInTarget is false; not verifying existing part data for partNumber {} (ETag: {})",
-                                partNumber, existingMpuParts.get(partNumber).getETag());
-                        resumeContext.getUploadedParts().put(partNumber, new MultipartPartETag(partNumber, existingMpuParts.get(partNumber).getETag()));
-                    }
-
-                    // no existing part to use, so upload this part
+                    future = CompletableFuture // need to use CompletableFuture to allow chained execution
+                            // first, verify the part ETag by re-reading form source
+                            .supplyAsync(new VerifySourcePartTask(partNumber, offset, length, existingMpuParts.get(partNumber).getRawETag(), partData), executorService)
+                            // then, if the part is invalid (throws PartMismatchException), re-upload it (if configured to do so)
+                            .exceptionally(partMismatchHandler(resumeContext.getUploadId(), partNumber, offset, length, partData));
                 } else {
-                    futures.add(executorService.submit(new UploadPartTask(resumeContext.getUploadId(), partNumber, offset, length)));
+                    // no existing part to use, so upload this part
+                    future = CompletableFuture.supplyAsync(
+                            new UploadPartTask(resumeContext.getUploadId(), partNumber, offset, length, partData)::call, executorService);
                 }
+                futures.add(future.whenComplete(releasePartSlot(partSlots, partNumber, length, partData, partFailed)));
             }
 
             // wait for threads to finish and gather parts
@@ -466,6 +537,7 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             throw new RuntimeException("error during upload", e);
         } finally {
             active.set(false);
+            partBufferPool.clear();
 
             // make sure all spawned threads are shut down
             if (!externalExecutorService) executorService.shutdownNow();
@@ -478,17 +550,20 @@ public class LargeFileUploader implements Runnable, ProgressListener {
                     log.warn("could not close stream", t);
                 }
             }
+
+            // release the shared file channel (the source will reopen it if used again)
+            closeFileSource();
         }
     }
 
-    private Function<Throwable, ? extends MultipartPartETag> partMismatchHandler(String uploadId, int partNumber, long offset, long length) {
+    private Function<Throwable, ? extends MultipartPartETag> partMismatchHandler(String uploadId, int partNumber, long offset, long length, byte[] partData) {
         return throwable -> {
             // peel off the execution exception
             if (throwable instanceof CompletionException) throwable = throwable.getCause();
             if (resumeContext.isOverwriteMismatchedParts() && throwable instanceof PartMismatchException) {
                 log.warn(throwable.getMessage()); // log details about the part that was mismatched
                 log.info("overwriting partNumber {} due to ETag mismatch", partNumber);
-                return new UploadPartTask(uploadId, partNumber, offset, length).call();
+                return new UploadPartTask(uploadId, partNumber, offset, length, partData).call();
             } else if (throwable instanceof RuntimeException) {
                 throw (RuntimeException) throwable;
             } else throw new RuntimeException(throwable);
@@ -505,14 +580,32 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         request.setCannedAcl(cannedAcl);
         s3Client.putObject(request);
 
+        active.set(true);
+
+        if (partTuningStrategy != null) partTuningStrategy.start(fullSize, partSize, threads);
+
+        ResizableSemaphore partSlots = new ResizableSemaphore(getPartWindow());
+        AtomicBoolean partFailed = new AtomicBoolean(false);
         List<Future<String>> futures = new ArrayList<>();
         try {
-            // submit all upload tasks
-            long offset = 0, length = partSize;
-            while (offset < fullSize) {
-                if (offset + length > fullSize) length = fullSize - offset;
+            // submit upload tasks, keeping at most maxInFlightParts ranges read/buffered/transferring at any time
+            long offset = 0;
+            for (int partNumber = 1; offset < fullSize; partNumber++) {
+                long length = Math.min(getNextPartSize(partNumber, offset, isPartSizeTuned()), fullSize - offset);
+
+                if (!acquirePartSlot(partSlots, partNumber, length, partFailed)) break;
+
+                byte[] partData;
+                try {
+                    partData = readPartData(length);
+                } catch (IOException | RuntimeException e) {
+                    releasePartSlot(partSlots, length);
+                    throw e;
+                }
+                notifyPartQueued(partNumber, partSlots);
 
-                futures.add(executorService.submit(new PutObjectTask(offset, length)));
+                futures.add(CompletableFuture.supplyAsync(new PutObjectTask(offset, length, partData)::call, executorService)
+                        .whenComplete(releasePartSlot(partSlots, partNumber, length, partData, partFailed)));
 
                 offset += length;
             }
@@ -532,6 +625,9 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             if (e instanceof RuntimeException) throw (RuntimeException) e;
             throw new RuntimeException("error during upload", e);
         } finally {
+            active.set(false);
+            partBufferPool.clear();
+
             // make sure all spawned threads are shut down
             if (!externalExecutorService) executorService.shutdown();
 
@@ -543,9 +639,131 @@ public class LargeFileUploader implements Runnable, ProgressListener {
                     log.warn("could not close stream", t);
                 }
             }
+
+            // release the shared file channel (the source will reopen it if used again)
+            closeFileSource();
         }
     }
 
+    /*
+     * blocks until a slot in the in-flight window is free. returns false if the upload was paused/aborted or a part
+     * has already failed, in which case no more parts should be submitted
+     */
+    private boolean acquirePartSlot(ResizableSemaphore partSlots, int partNumber, long length, AtomicBoolean partFailed) throws InterruptedException {
+        // the window may change if concurrency is being tuned
+        partSlots.setLimit(getPartWindow());
+        long waitStart = System.nanoTime();
+        // poll so that we notice a pause/abort even if no part completes (i.e. the thread pool was shut down)
+        while (!partSlots.tryAcquire(1, TimeUnit.SECONDS)) {
+            if (!active.get() || partFailed.get()) return false;
+        }
+        // then wait for a permit from the throttle (shared with other transfers)
+        if (transferThrottle != null) {
+            while (!transferThrottle.tryAcquire(length, 1, TimeUnit.SECONDS)) {
+                if (!active.get() || partFailed.get()) {
+                    partSlots.release();
+                    return false;
+                }
+            }
+        }
+        if (partQueueListener != null) partQueueListener.bufferWait(partNumber, System.nanoTime() - waitStart);
+        if (!active.get() || partFailed.get()) {
+            releasePartSlot(partSlots, length);
+            return false;
+        }
+        return true;
+    }
+
+    private void releasePartSlot(ResizableSemaphore partSlots, long length) {
+        if (transferThrottle != null) transferThrottle.release(length);
+        partSlots.release();
+    }
+
+    private void notifyPartQueued(int partNumber, ResizableSemaphore partSlots) {
+        if (partQueueListener != null) partQueueListener.partQueued(partNumber, partSlots.getInUse());
+    }
+
+    private <T> BiConsumer<T, Throwable> releasePartSlot(ResizableSemaphore partSlots, int partNumber, long length, byte[] partData, AtomicBoolean partFailed) {
+        return (result, throwable) -> {
+            if (throwable != null) partFailed.set(true);
+            // return the buffer to the pool *before* releasing the slot, so the reader stage always finds one
+            if (partData != null) partBufferPool.offer(partData);
+            releasePartSlot(partSlots, length);
+            if (partQueueListener != null) partQueueListener.partCompleted(partNumber, partSlots.getInUse());
+        };
+    }
+
+    /*
+     * the number of parts allowed in flight right now. if a tuning strategy is set, this follows its concurrency
+     * (still capped by maxInFlightParts, if set explicitly)
+     */
+    private int getPartWindow() {
+        if (partTuningStrategy == null) return getMaxInFlightParts();
+        int window = partTuningStrategy.getConcurrency() + 1;
+        return maxInFlightParts > 0 ? Math.min(window, maxInFlightParts) : window;
+    }
+
+    private boolean isPartSizeTuned() {
+        return partTuningStrategy != null && partTuningStrategy.isVariablePartSize();
+    }
+
+    /*
+     * size of the part starting at offset. the configured partSize is used unless the tuning strategy varies it, in
+     * which case the suggested size is kept within the minimum part size, the part count limit and (if buffering)
+     * the maximum buffer size
+     */
+    private long getNextPartSize(int partNumber, long offset, boolean tunePartSize) {
+        if (!tunePartSize) return partSize;
+
+        long remaining = fullSize - offset;
+        int remainingParts = MAX_PARTS - partNumber + 1;
+        long minSize = Math.max(getMinPartSize(), (remaining + remainingParts - 1) / remainingParts);
+        long size = Math.max(partTuningStrategy.getNextPartSize(), minSize);
+        if (stream != null && bufferStreamParts) size = Math.min(size, MAX_BUFFERED_PART_SIZE);
+        return size;
+    }
+
+    private void partTransferred(long length, long durationNanos) {
+        if (partTuningStrategy != null) partTuningStrategy.partCompleted(length, durationNanos);
+    }
+
+    /*
+     * reader stage: if we are buffering a shared source stream, read the next part into a pooled buffer so it can be
+     * transferred in parallel with other parts. otherwise, part data is read directly from the source by each task
+     */
+    private byte[] readPartData(long length) throws IOException {
+        if (stream == null || !bufferStreamParts) return null;
+
+        byte[] buffer = partBufferPool.poll();
+        // at most maxInFlightParts buffers will exist (if part sizes vary, a pooled buffer may be too small)
+        if (buffer == null || buffer.length < length) buffer = new byte[(int) length];
+
+        int read = 0;
+        while (read < length) {
+            int count = stream.read(buffer, read, (int) length - read);
+            if (count == -1) {
+                partBufferPool.offer(buffer);
+                throw new EOFException(String.format("source stream ended after %,d of %,d bytes in part", read, length));
+            }
+            read += count;
+        }
+        return buffer;
+    }
+
+    private InputStream getPartDataStream(long offset, long length, byte[] partData) throws IOException {
+        if (partData != null) return new ByteArrayInputStream(partData, 0, (int) length);
+        return getSourcePartDataStream(offset, length);
+    }
+
+    // buffered parts and multipart sources are reopened for a retry; only a sequential source stream is not repeatable
+    private InputStream getRepeatablePartDataStream(long offset, long length, byte[] partData) throws IOException {
+        RepeatableEntity entity = null;
+        if (partData != null) entity = new ByteArrayEntity(partData, 0, (int) length);
+        else if (multipartSource != null) entity = multipartSource.getPartEntity(offset, length);
+        if (entity == null) return monitorStream(getPartDataStream(offset, length, null));
+        return new RepeatableInputStream(entity, this);
+    }
+
     /**
      * This method should be idempotent
      */
@@ -562,9 +780,14 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             // If resuming from raw stream, make sure skipped parts are consumed from source stream
             if (resumeContext != null) resumeContext.setVerifyPartsFoundInTarget(true);
 
-            // must read stream sequentially
-            executorService = null;
-            threads = 1;
+            // unless parts are buffered, must read stream sequentially
+            if (!bufferStreamParts) {
+                if (externalExecutorService) {
+                    executorService = null;
+                    externalExecutorService = false;
+                }
+                threads = 1;
+            }
         } else {
             throw new IllegalArgumentException("must specify a file, stream, or multipartSource to read");
         }
@@ -582,6 +805,11 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             partSize = minPartSize;
         }
 
+        // stream parts are buffered in memory, so each part must fit in a byte array
+        if (stream != null && bufferStreamParts && partSize > MAX_BUFFERED_PART_SIZE)
+            throw new IllegalArgumentException(String.format("part size (%,d) is too large to buffer (maximum is %,d)",
+                    partSize, MAX_BUFFERED_PART_SIZE));
+
         if (resumeContext != null) {
             // we can only resume an MPU if the size of the source is above the MPU threshold
             if (fullSize < mpuThreshold) {
@@ -594,11 +822,13 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             }
         }
 
-        // set up thread pool
+        // set up thread pool (if concurrency is tuned, make room for the most threads the strategy will use)
         if (executorService == null) {
-            executorService = Executors.newFixedThreadPool(threads);
-        } else {
-            externalExecutorService = true;
+            int poolSize = threads;
+            if (partTuningStrategy != null && (stream == null || bufferStreamParts))
+                poolSize = Math.max(threads, partTuningStrategy.getMaxConcurrency());
+            executorService = Executors.newFixedThreadPool(poolSize);
+            externalExecutorService = false;
         }
     }
 
@@ -724,6 +954,7 @@ public class LargeFileUploader implements Runnable, ProgressListener {
      */
     public void setExecutorService(ExecutorService executorService) {
         this.executorService = executorService;
+        this.externalExecutorService = executorService != null;
     }
 
     public ProgressListener getProgressListener() {
@@ -734,6 +965,81 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         this.progressListener = progressListener;
     }
 
+    /**
+     * Returns the effective size of the in-flight window. If not set explicitly, this is one more than the number of
+     * threads, so the next part can be read while all threads are busy.
+     */
+    public int getMaxInFlightParts() {
+        return maxInFlightParts > 0 ? maxInFlightParts : threads + 1;
+    }
+
+    /**
+     * Sets the maximum number of parts that may be read, buffered or transferring at any one time. Parts are only
+     * submitted to the thread pool as slots in this window become free, so the number of pending tasks (and, when
+     * {@link #setBufferStreamParts(boolean) buffering stream parts}, the memory used by part buffers) stays flat
+     * regardless of object size. Default is <code>threads + 1</code>
+     */
+    public void setMaxInFlightParts(int maxInFlightParts) {
+        this.maxInFlightParts = maxInFlightParts;
+    }
+
+    public boolean isBufferStreamParts() {
+        return bufferStreamParts;
+    }
+
+    /**
+     * When uploading from a single stream, set this to true to read each part into a reusable memory buffer
+     * before transferring it. This allows stream parts to be transferred by all threads at once, at the cost of
+     * up to {@link #getMaxInFlightParts() maxInFlightParts} * <code>partSize</code> bytes of heap. Buffered
+     * parts are also fully retriable. Has no effect for file or multipart sources. Default is false
+     */
+    public void setBufferStreamParts(boolean bufferStreamParts) {
+        this.bufferStreamParts = bufferStreamParts;
+    }
+
+    public PartQueueListener getPartQueueListener() {
+        return partQueueListener;
+    }
+
+    /**
+     * Sets a listener to receive back-pressure metrics (queue depth and buffer wait time) from the part pipeline
+     *
+     * @see PartQueueListener
+     */
+    public void setPartQueueListener(PartQueueListener partQueueListener) {
+        this.partQueueListener = partQueueListener;
+    }
+
+    public PartTuningStrategy getPartTuningStrategy() {
+        return partTuningStrategy;
+    }
+
+    /**
+     * Sets a strategy to tune the number of concurrent part transfers and (optionally) the part size while the upload
+     * is in progress, using <code>threads</code> and <code>partSize</code> as starting values. The thread pool will
+     * be sized to the strategy's maximum concurrency (unless an external executor is provided). The part sizes chosen
+     * are recorded in the resume context, so a paused upload is resumed with the same part boundaries. Default is null
+     * (static settings)
+     *
+     * @see AdaptivePartTuningStrategy
+     */
+    public void setPartTuningStrategy(PartTuningStrategy partTuningStrategy) {
+        this.partTuningStrategy = partTuningStrategy;
+    }
+
+    public TransferThrottle getTransferThrottle() {
+        return transferThrottle;
+    }
+
+    /**
+     * Sets a throttle that must grant a permit before each part is transferred (in addition to the thread count and
+     * in-flight window of this upload). This is set by {@link TransferManager} to share limits between many
+     * transfers. Default is null (no throttle)
+     */
+    public void setTransferThrottle(TransferThrottle transferThrottle) {
+        this.transferThrottle = transferThrottle;
+    }
+
     /**
      * During an upload operation, the <code>resumeContext</code> is kept up-to-date with the uploadId and list of
      * uploaded parts.
@@ -818,6 +1124,46 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         return this;
     }
 
+    /**
+     * @see #setMaxInFlightParts(int)
+     */
+    public LargeFileUploader withMaxInFlightParts(int maxInFlightParts) {
+        setMaxInFlightParts(maxInFlightParts);
+        return this;
+    }
+
+    /**
+     * @see #setBufferStreamParts(boolean)
+     */
+    public LargeFileUploader withBufferStreamParts(boolean bufferStreamParts) {
+        setBufferStreamParts(bufferStreamParts);
+        return this;
+    }
+
+    /**
+     * @see #setPartQueueListener(PartQueueListener)
+     */
+    public LargeFileUploader withPartQueueListener(PartQueueListener partQueueListener) {
+        setPartQueueListener(partQueueListener);
+        return this;
+    }
+
+    /**
+     * @see #setPartTuningStrategy(PartTuningStrategy)
+     */
+    public LargeFileUploader withPartTuningStrategy(PartTuningStrategy partTuningStrategy) {
+        setPartTuningStrategy(partTuningStrategy);
+        return this;
+    }
+
+    /**
+     * @see #setTransferThrottle(TransferThrottle)
+     */
+    public LargeFileUploader withTransferThrottle(TransferThrottle transferThrottle) {
+        setTransferThrottle(transferThrottle);
+        return this;
+    }
+
     /**
      * @see #setResumeContext(LargeFileUploaderResumeContext)
      */
@@ -839,12 +1185,14 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         private final int partNumber;
         private final long offset;
         private final long length;
+        private final byte[] partData;
 
-        public UploadPartTask(String uploadId, int partNumber, long offset, long length) {
+        public UploadPartTask(String uploadId, int partNumber, long offset, long length, byte[] partData) {
             this.uploadId = uploadId;
             this.partNumber = partNumber;
             this.offset = offset;
             this.length = length;
+            this.partData = partData;
         }
 
         @Override
@@ -855,10 +1203,16 @@ public class LargeFileUploader implements Runnable, ProgressListener {
             } else {
                 log.debug("uploading {}/{}, uploadId: {}, partNumber {} (offset: {}, length: {})",
                         bucket, key, uploadId, partNumber, offset, length);
-                try (InputStream is = monitorStream(getSourcePartDataStream(offset, length))) {
-                    return uploadPart(uploadId, partNumber, is, length);
+                long start = System.nanoTime();
+                Object event = JfrEvents.begin(JfrEvents.Type.UPLOAD_PART);
+                try (InputStream is = getRepeatablePartDataStream(offset, length, partData)) {
+                    MultipartPartETag partETag = uploadPart(uploadId, partNumber, is, length);
+                    partTransferred(length, System.nanoTime() - start);
+                    return partETag;
                 } catch (IOException e) {
                     throw new RuntimeException(e);
+                } finally {
+                    JfrEvents.commit(event, bucket, "UploadPart", null, length, key + " part " + partNumber);
                 }
             }
         }
@@ -867,20 +1221,29 @@ public class LargeFileUploader implements Runnable, ProgressListener {
     protected class PutObjectTask implements Callable<String> {
         private final long offset;
         private final long length;
+        private final byte[] partData;
 
         public PutObjectTask(long offset, long length) {
+            this(offset, length, null);
+        }
+
+        public PutObjectTask(long offset, long length, byte[] partData) {
             this.offset = offset;
             this.length = length;
+            this.partData = partData;
         }
 
         @Override
         public String call() {
-            try (InputStream is = monitorStream(getSourcePartDataStream(offset, length))) {
+            long start = System.nanoTime();
+            try (InputStream is = getRepeatablePartDataStream(offset, length, partData)) {
                 Range range = Range.fromOffsetLength(offset, length);
 
                 PutObjectRequest request = new PutObjectRequest(bucket, key, is).withRange(range);
 
-                return s3Client.putObject(request).getETag();
+                String eTag = s3Client.putObject(request).getETag();
+                partTransferred(length, System.nanoTime() - start);
+                return eTag;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -891,12 +1254,18 @@ public class LargeFileUploader implements Runnable, ProgressListener {
         private final int partNumber;
         private final long offset, length;
         private final String uploadedETag;
+        private final byte[] partData;
 
         public VerifySourcePartTask(int partNumber, long offset, long length, String uploadedETag) {
+            this(partNumber, offset, length, uploadedETag, null);
+        }
+
+        public VerifySourcePartTask(int partNumber, long offset, long length, String uploadedETag, byte[] partData) {
             this.partNumber = partNumber;
             this.offset = offset;
             this.length = length;
             this.uploadedETag = uploadedETag;
+            this.partData = partData;
         }
 
         @Override
@@ -906,7 +1275,7 @@ public class LargeFileUploader implements Runnable, ProgressListener {
                 throw new CancellationException();
             } else {
                 log.debug("reading existing partNumber {} (offset: {}, length: {}) from source to verify data", partNumber, offset, length);
-                try (InputStream is = getSourcePartDataStream(offset, length)) {
+                try (InputStream is = getPartDataStream(offset, length, partData)) {
                     String sourceETag = DigestUtils.md5Hex(is);
                     if (!sourceETag.equals(uploadedETag)) {
                         throw new PartMismatchException(partNumber, sourceETag, uploadedETag);
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.request.ListObjectsRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lists every key under a prefix by splitting the key space into ranges and running an independent marker chain for
+ * each range on a thread pool. A sequential listing must wait for each page's marker before requesting the next page;
+ * here, each range only waits for its own pages.
+ * <p>
+ * The key space is split at:
+ * <ul>
+ * <li>caller-supplied {@link #setSplitPoints(Collection) split points}, and</li>
+ * <li>the common prefixes found by listing the top level with {@link #setSplitDelimiter(String) splitDelimiter}
+ * (<code>/</code> by default; null to disable).</li>
+ * </ul>
+ * Each range <code>(start, end]</code> is listed with <code>marker = start</code> until a key beyond
+ * <code>end</code> is seen. When a thread would otherwise sit idle, a range that is still being listed is split in
+ * two at a key between its last listed key and its end, so a skewed range (i.e. one huge prefix) is spread across
+ * threads as it is listed.
+ * <p>
+ * Results are {@link #setOrdered(boolean) ordered} by key by default; ranges are disjoint and listed in order, so this
+ * only requires holding later ranges' pages until earlier ranges are done. At most
+ * {@link #getMaxBufferedPages() maxBufferedPages} pages are held in memory (a range that is next in order is never
+ * held back). Turn ordering off to consume pages as soon as any range returns them.
+ * <p>
+ * Each call to {@link #stream()} starts a new listing; close the stream to stop listing early.
+ */
+public class ParallelBucketLister {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBucketLister.class);
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final String DEFAULT_SPLIT_DELIMITER = "/";
+
+    // highest character used when choosing a split point in an unbounded range (keys are mostly printable ASCII)
+    static final char MIN_SPLIT_CHAR = ' ', MAX_SPLIT_CHAR = '\u007f';
+
+    // the order in which S3 lists keys (by UTF-8 bytes, which is the same as by code point, but not by UTF-16 char)
+    static final Comparator<String> KEY_ORDER = ParallelBucketLister::compareKeys;
+
+    private S3Client s3Client;
+    private ListObjectsRequest request;
+    private int threads = DEFAULT_THREADS;
+    private boolean ordered = true;
+    private SortedSet<String> splitPoints = new TreeSet<>(KEY_ORDER);
+    private String splitDelimiter = DEFAULT_SPLIT_DELIMITER;
+    private int maxSplitPrefixes = -1;
+    private boolean rebalance = true;
+    private int maxBufferedPages = -1;
+
+    /**
+     * Creates a lister for all keys matching <code>request</code>'s bucket, prefix and (starting) marker, with pages of
+     * <code>request</code>'s maxKeys. Any delimiter in the request is ignored (all keys are listed).
+     */
+    public ParallelBucketLister(S3Client s3Client, ListObjectsRequest request) {
+        this.s3Client = s3Client;
+        this.request = request;
+    }
+
+    /**
+     * Starts listing and returns the keys as a lazy stream. Close the stream to stop listing early.
+     */
+    public Stream<S3Object> stream() {
+        Listing listing = new Listing();
+        listing.start();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(listing,
+                Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0)),
+                false).onClose(listing::close);
+    }
+
+    /**
+     * Returns a key that is greater than <code>low</code> and less than <code>high</code> (or, if <code>high</code>
+     * is null, less than <code>prefix + MAX_SPLIT_CHAR</code>), roughly halfway between them, or null if there is no
+     * such key with a useful spread.
+     */
+    static String midpoint(String prefix, String low, String high) {
+        if (high == null) high = prefix + MAX_SPLIT_CHAR;
+        if (compareKeys(low, high) >= 0) return null;
+
+        // find the first code point that differs (low may be a prefix of high, but not the other way around)
+        int i = 0;
+        while (i < low.length() && low.codePointAt(i) == high.codePointAt(i)) i += Character.charCount(low.codePointAt(i));
+        int lowChar = i < low.length() ? low.codePointAt(i) : MIN_SPLIT_CHAR, highChar = high.codePointAt(i);
+        int mid = between(lowChar, highChar);
+        if (mid >= 0) return low.substring(0, i) + new String(Character.toChars(mid));
+
+        // adjacent characters; split the rest of low's range instead (anything after low + its next char is < high)
+        if (i >= low.length()) return null;
+        int next = i + Character.charCount(lowChar);
+        int nextChar = next < low.length() ? low.codePointAt(next) : MIN_SPLIT_CHAR;
+        mid = between(nextChar, MAX_SPLIT_CHAR);
+        if (mid >= 0) return low.substring(0, next) + new String(Character.toChars(mid));
+        return null;
+    }
+
+    // a code point roughly halfway between low and high (exclusive) that is not a surrogate, or -1 if there is none
+    private static int between(int low, int high) {
+        int mid = (low + high) >>> 1;
+        if (mid >= Character.MIN_SURROGATE && mid <= Character.MAX_SURROGATE)
+            mid = low < Character.MIN_SURROGATE - 1 ? Character.MIN_SURROGATE - 1 : Character.MAX_SURROGATE + 1;
+        return mid > low && mid < high ? mid : -1;
+    }
+
+    /**
+     * Compares keys by code point, which is the UTF-8 byte order that S3 lists them in. {@link String#compareTo}
+     * compares UTF-16 chars, which sorts supplementary characters before U+E000-U+FFFF.
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0, length = Math.min(a.length(), b.length());
+        while (i < length && a.charAt(i) == b.charAt(i)) i++;
+        if (i == length) return a.length() - b.length();
+        // the first differing char may be part of a surrogate pair, so compare whole code points
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) i--;
+        return Integer.compare(a.codePointAt(i), b.codePointAt(i));
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public ListObjectsRequest getRequest() {
+        return request;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of ranges listed concurrently. Default is {@link #DEFAULT_THREADS}
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Set to false to return keys in whatever order their pages arrive, which avoids holding pages for ordering.
+     * Default is true
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public SortedSet<String> getSplitPoints() {
+        return splitPoints;
+    }
+
+    /**
+     * Sets keys at which to split the key space, i.e. known boundaries of evenly sized ranges. Each split point is the
+     * (inclusive) end of one range and the (exclusive) start of the next
+     */
+    public void setSplitPoints(Collection<String> splitPoints) {
+        this.splitPoints = new TreeSet<>(KEY_ORDER);
+        this.splitPoints.addAll(splitPoints);
+    }
+
+    public String getSplitDelimiter() {
+        return splitDelimiter;
+    }
+
+    /**
+     * Sets the delimiter used to discover split points: the common prefixes of a delimited listing at the top level
+     * become split points. Default is {@link #DEFAULT_SPLIT_DELIMITER}. Set to null to skip discovery
+     */
+    public void setSplitDelimiter(String splitDelimiter) {
+        this.splitDelimiter = splitDelimiter;
+    }
+
+    /**
+     * Returns the maximum number of common prefixes to discover. If not set explicitly, this is
+     * <code>threads * 16</code>
+     */
+    public int getMaxSplitPrefixes() {
+        return maxSplitPrefixes > 0 ? maxSplitPrefixes : threads * 16;
+    }
+
+    /**
+     * Sets the maximum number of common prefixes to discover. Discovery stops after the page that reaches this number;
+     * the rest of the key space is one range, which is split as it is listed
+     */
+    public void setMaxSplitPrefixes(int maxSplitPrefixes) {
+        this.maxSplitPrefixes = maxSplitPrefixes;
+    }
+
+    public boolean isRebalance() {
+        return rebalance;
+    }
+
+    /**
+     * Set to false to list each range with a single marker chain, even if other threads are idle. Default is true
+     */
+    public void setRebalance(boolean rebalance) {
+        this.rebalance = rebalance;
+    }
+
+    /**
+     * Returns the maximum number of pages held in memory. If not set explicitly, this is <code>threads * 4</code>
+     */
+    public int getMaxBufferedPages() {
+        return maxBufferedPages > 0 ? maxBufferedPages : threads * 4;
+    }
+
+    public void setMaxBufferedPages(int maxBufferedPages) {
+        this.maxBufferedPages = maxBufferedPages;
+    }
+
+    public ParallelBucketLister withThreads(int threads) {
+        setThreads(threads);
+        return this;
+    }
+
+    public ParallelBucketLister withOrdered(boolean ordered) {
+        setOrdered(ordered);
+        return this;
+    }
+
+    public ParallelBucketLister withSplitPoints(Collection<String> splitPoints) {
+        setSplitPoints(splitPoints);
+        return this;
+    }
+
+    public ParallelBucketLister withSplitDelimiter(String splitDelimiter) {
+        setSplitDelimiter(splitDelimiter);
+        return this;
+    }
+
+    public ParallelBucketLister withMaxSplitPrefixes(int maxSplitPrefixes) {
+        setMaxSplitPrefixes(maxSplitPrefixes);
+        return this;
+    }
+
+    public ParallelBucketLister withRebalance(boolean rebalance) {
+        setRebalance(rebalance);
+        return this;
+    }
+
+    public ParallelBucketLister withMaxBufferedPages(int maxBufferedPages) {
+        setMaxBufferedPages(maxBufferedPages);
+        return this;
+    }
+
+    /**
+     * A range of keys <code>(start, end]</code> under the prefix, and the pages listed from it that have not yet been
+     * consumed.
+     */
+    private class Range implements Runnable, Comparable<Range> {
+        private final String start;
+        private String end; // null = unbounded
+        private ListObjectsResult lastResult;
+        private final Deque<List<S3Object>> pages = new ArrayDeque<>();
+        private boolean running, paused, done;
+
+        private final Listing listing;
+
+        Range(Listing listing, String start, String end) {
+            this.listing = listing;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            listing.listRange(this);
+        }
+
+        // ranges with earlier keys are listed first
+        @Override
+        public int compareTo(Range other) {
+            if (start == null) return other.start == null ? 0 : -1;
+            return other.start == null ? 1 : compareKeys(start, other.start);
+        }
+    }
+
+    private class Listing implements Iterator<S3Object> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition pageAvailable = lock.newCondition();
+        private final List<Range> ranges = new ArrayList<>(); // in key order
+        private ThreadPoolExecutor executor;
+        private int bufferedPages, runningRanges;
+        private RuntimeException error;
+        private boolean closed;
+        private Iterator<S3Object> currentPage = Collections.emptyIterator();
+        private final AtomicLong pagesListed = new AtomicLong();
+        private final AtomicInteger splits = new AtomicInteger();
+
+        void start() {
+            SortedSet<String> points = new TreeSet<>(KEY_ORDER);
+            points.addAll(splitPoints);
+            if (splitDelimiter != null) points.addAll(discoverPrefixes());
+            if (request.getMarker() != null) points = points.tailSet(request.getMarker() + '\0');
+
+            String start = request.getMarker();
+            for (String point : points) {
+                ranges.add(new Range(this, start, point));
+                start = point;
+            }
+            ranges.add(new Range(this, start, null));
+            log.debug("listing {} in {} initial ranges", request.getBucketName(), ranges.size());
+
+            // daemon threads that time out when idle, so a stream that is abandoned without being closed does not
+            // keep the JVM alive
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "bucket-lister-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            lock.lock();
+            try {
+                for (Range range : ranges) submit(range);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Set<String> discoverPrefixes() {
+            Set<String> prefixes = new TreeSet<>(KEY_ORDER);
+            ListObjectsResult result = s3Client.listObjects(new ListObjectsRequest(request.getBucketName())
+                    .withPrefix(request.getPrefix()).withDelimiter(splitDelimiter).withMarker(request.getMarker())
+                    .withEncodingType(request.getEncodingType()));
+            while (true) {
+                prefixes.addAll(result.getCommonPrefixes());
+                if (!result.isTruncated() || prefixes.size() >= getMaxSplitPrefixes()) break;
+                result = s3Client.listMoreObjects(result);
+            }
+            return prefixes;
+        }
+
+        private void submit(Range range) {
+            range.running = true;
+            range.paused = false;
+            runningRanges++;
+            executor.execute(range);
+        }
+
+        // lists pages from a range until it is done or must be paused to bound memory
+        void listRange(Range range) {
+            try {
+                while (true) {
+                    ListObjectsResult result;
+                    if (range.lastResult == null) {
+                        result = s3Client.listObjects(new ListObjectsRequest(request.getBucketName())
+                                .withPrefix(request.getPrefix()).withMarker(range.start)
+                                .withMaxKeys(request.getMaxKeys()).withEncodingType(request.getEncodingType()));
+                    } else {
+                        result = s3Client.listMoreObjects(range.lastResult);
+                    }
+                    pagesListed.incrementAndGet();
+
+                    lock.lock();
+                    try {
+                        if (closed) return;
+                        range.lastResult = result;
+                        List<S3Object> page = new ArrayList<>(result.getObjects().size());
+                        boolean pastEnd = false;
+                        for (S3Object object : result.getObjects()) {
+                            if (range.end != null && compareKeys(object.getKey(), range.end) > 0) {
+                                pastEnd = true;
+                                break;
+                            }
+                            page.add(object);
+                        }
+                        if (!page.isEmpty()) {
+                            range.pages.add(page);
+                            bufferedPages++;
+                            pageAvailable.signalAll();
+                        }
+                        if (pastEnd || !result.isTruncated() || page.isEmpty()) {
+                            range.done = true;
+                            return;
+                        }
+
+                        if (rebalance && executor.getQueue().isEmpty() && runningRanges < threads)
+                            split(range, page.get(page.size() - 1).getKey());
+
+                        if (bufferedPages >= getMaxBufferedPages() && !(ordered && ranges.get(0) == range)) {
+                            range.paused = true;
+                            return;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    if (error == null) error = e;
+                    pageAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                lock.lock();
+                try {
+                    range.running = false;
+                    runningRanges--;
+                    pageAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // gives the upper part of a range's remaining keys to an idle thread
+        private void split(Range range, String lastKey) {
+            String midpoint = midpoint(request.getPrefix() == null ? "" : request.getPrefix(), lastKey, range.end);
+            if (midpoint == null) return;
+            Range upper = new Range(this, midpoint, range.end);
+            range.end = midpoint;
+            ranges.add(ranges.indexOf(range) + 1, upper);
+            splits.incrementAndGet();
+            log.debug("split range at {}", midpoint);
+            submit(upper);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentPage.hasNext()) {
+                List<S3Object> page = nextPage();
+                if (page == null) return false;
+                currentPage = page.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public S3Object next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return currentPage.next();
+        }
+
+        private List<S3Object> nextPage() {
+            lock.lock();
+            try {
+                while (true) {
+                    if (error != null) {
+                        RuntimeException e = error;
+                        close();
+                        throw e;
+                    }
+                    if (closed) return null;
+
+                    Iterator<Range> iterator = ranges.iterator();
+                    while (iterator.hasNext()) {
+                        Range range = iterator.next();
+                        if (!range.pages.isEmpty()) {
+                            bufferedPages--;
+                            List<S3Object> page = range.pages.poll();
+                            resumePausedRanges();
+                            return page;
+                        }
+                        if (range.done && !range.running) {
+                            iterator.remove();
+                            continue;
+                        }
+                        if (ordered) {
+                            // the next range in order is never held back
+                            if (range.paused) submit(range);
+                            break;
+                        }
+                    }
+
+                    if (ranges.isEmpty()) {
+                        close();
+                        return null;
+                    }
+                    pageAvailable.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void resumePausedRanges() {
+            for (Range range : ranges) {
+                if (bufferedPages >= getMaxBufferedPages()) break;
+                if (range.paused) submit(range);
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                currentPage = Collections.emptyIterator();
+                if (executor != null) executor.shutdownNow();
+                log.debug("listed {} pages with {} splits", pagesListed.get(), splits.get());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
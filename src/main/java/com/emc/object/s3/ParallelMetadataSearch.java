@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.MetadataSearchDatatype;
+import com.emc.object.s3.bean.MetadataSearchKey;
+import com.emc.object.s3.bean.MetadataSearchList;
+import com.emc.object.s3.bean.QueryObject;
+import com.emc.object.s3.bean.QueryObjectsResult;
+import com.emc.object.s3.request.QueryObjectsRequest;
+import com.emc.object.util.PrefetchingPageIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs one metadata search as several independent queries in parallel and merges their results into one lazy stream.
+ * The search is split by {@link #setPrefixes(List) key prefixes} and/or by extra
+ * {@link #setConditions(List) conditions} (i.e. ranges of an indexed attribute) that are and-ed to the query; each
+ * combination of prefix and condition is a separate query. For correct results, the prefixes (and the conditions) must
+ * be disjoint.
+ * <p>
+ * Each query pages through its results on its own marker chain, fetching up to {@link #getPrefetchDepth()
+ * prefetchDepth} pages ahead. If the request is {@link QueryObjectsRequest#setSorted(String) sorted}, the results are
+ * merged in order of the sort key (each query is already sorted by the server), comparing typed values of the sort
+ * key's datatype (see {@link #setSortDatatype(MetadataSearchDatatype)}). Otherwise results are interleaved.
+ * <p>
+ * Each call to {@link #stream()} starts a new search; close the stream to stop searching early.
+ */
+public class ParallelMetadataSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelMetadataSearch.class);
+
+    public static final int DEFAULT_THREADS = 8;
+
+    private S3Client s3Client;
+    private QueryObjectsRequest request;
+    private List<String> prefixes = new ArrayList<>();
+    private List<String> conditions = new ArrayList<>();
+    private int threads = DEFAULT_THREADS;
+    private int prefetchDepth = PrefetchingPageIterator.DEFAULT_PREFETCH_DEPTH;
+    private MetadataSearchDatatype sortDatatype;
+    private Comparator<QueryObject> comparator;
+
+    public ParallelMetadataSearch(S3Client s3Client, QueryObjectsRequest request) {
+        this.s3Client = s3Client;
+        this.request = request;
+    }
+
+    /**
+     * Starts the queries and returns the merged results as a lazy stream.
+     */
+    public Stream<QueryObject> stream() {
+        List<QueryObjectsRequest> requests = createRequests();
+        Comparator<QueryObject> order = getComparator();
+        log.debug("searching {} in {} parallel queries ({})", request.getBucketName(), requests.size(),
+                order == null ? "unsorted" : "sorted by " + request.getSorted());
+        final MergingIterator iterator = new MergingIterator(requests, order);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::close);
+    }
+
+    protected List<QueryObjectsRequest> createRequests() {
+        List<String> queryPrefixes = prefixes.isEmpty() ? Collections.singletonList(request.getPrefix()) : prefixes;
+        List<String> queries = new ArrayList<>();
+        if (conditions.isEmpty()) queries.add(request.getQuery());
+        else for (String condition : conditions) queries.add("(" + request.getQuery() + ") and (" + condition + ")");
+
+        List<QueryObjectsRequest> requests = new ArrayList<>();
+        for (String prefix : queryPrefixes) {
+            for (String query : queries) {
+                requests.add(new QueryObjectsRequest(request.getBucketName())
+                        .withQuery(query)
+                        .withPrefix(prefix)
+                        .withDelimiter(request.getDelimiter())
+                        .withAttributes(request.getAttributes())
+                        .withSorted(request.getSorted())
+                        .withIncludeOlderVersions(request.getIncludeOlderVersions())
+                        .withMaxKeys(request.getMaxKeys())
+                        .withEncodingType(request.getEncodingType()));
+            }
+        }
+        // a marker only makes sense for the single query it came from
+        if (requests.size() == 1) requests.get(0).setMarker(request.getMarker());
+        return requests;
+    }
+
+    /**
+     * Returns the comparator used to merge results, or null if results are not sorted. Unless set explicitly, results
+     * of a sorted request are compared by the typed value of the sort key (missing values last), then by object name.
+     */
+    public Comparator<QueryObject> getComparator() {
+        if (comparator != null || request.getSorted() == null) return comparator;
+
+        final String sortKey = request.getSorted();
+        final MetadataSearchDatatype datatype = sortDatatype != null ? sortDatatype : lookUpDatatype(sortKey);
+        return (o1, o2) -> {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> v1 = (Comparable<Object>) o1.getMetadataValue(sortKey, datatype);
+            Object v2 = o2.getMetadataValue(sortKey, datatype);
+            int result;
+            if (v1 == null) result = v2 == null ? 0 : 1;
+            else if (v2 == null) result = -1;
+            else result = v1.compareTo(v2);
+            if (result == 0 && o1.getObjectName() != null && o2.getObjectName() != null)
+                result = o1.getObjectName().compareTo(o2.getObjectName());
+            return result;
+        };
+    }
+
+    // finds the datatype of an indexed key (defaults to string)
+    protected MetadataSearchDatatype lookUpDatatype(String key) {
+        try {
+            MetadataSearchList keys = s3Client.listBucketMetadataSearchKeys(request.getBucketName());
+            if (keys != null && keys.getIndexableKeys() != null) {
+                for (MetadataSearchKey searchKey : keys.getIndexableKeys()) {
+                    if (key.equals(searchKey.getName()) && searchKey.getDatatype() != null)
+                        return searchKey.getDatatype();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("could not look up the datatype of sort key {}; comparing as strings", key, e);
+        }
+        return MetadataSearchDatatype.string;
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public QueryObjectsRequest getRequest() {
+        return request;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * Sets disjoint key prefixes to query in parallel (these replace the request's prefix)
+     */
+    public void setPrefixes(List<String> prefixes) {
+        this.prefixes = prefixes;
+    }
+
+    public List<String> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Sets disjoint conditions to query in parallel, i.e. <code>x-amz-meta-size&lt;1000</code> and
+     * <code>x-amz-meta-size&gt;=1000</code>. Each condition is and-ed to the request's query
+     */
+    public void setConditions(List<String> conditions) {
+        this.conditions = conditions;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used for page requests. Default is {@link #DEFAULT_THREADS}
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Sets the number of pages each query fetches ahead of the consumer. Default is
+     * {@link PrefetchingPageIterator#DEFAULT_PREFETCH_DEPTH}
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    public MetadataSearchDatatype getSortDatatype() {
+        return sortDatatype;
+    }
+
+    /**
+     * Sets the datatype of the sort key. If not set, it is looked up in the bucket's metadata search keys
+     */
+    public void setSortDatatype(MetadataSearchDatatype sortDatatype) {
+        this.sortDatatype = sortDatatype;
+    }
+
+    /**
+     * Sets a custom order for merging results. Each query's results must already be in this order
+     */
+    public void setComparator(Comparator<QueryObject> comparator) {
+        this.comparator = comparator;
+    }
+
+    public ParallelMetadataSearch withPrefixes(List<String> prefixes) {
+        setPrefixes(prefixes);
+        return this;
+    }
+
+    public ParallelMetadataSearch withConditions(List<String> conditions) {
+        setConditions(conditions);
+        return this;
+    }
+
+    public ParallelMetadataSearch withThreads(int threads) {
+        setThreads(threads);
+        return this;
+    }
+
+    public ParallelMetadataSearch withPrefetchDepth(int prefetchDepth) {
+        setPrefetchDepth(prefetchDepth);
+        return this;
+    }
+
+    public ParallelMetadataSearch withSortDatatype(MetadataSearchDatatype sortDatatype) {
+        setSortDatatype(sortDatatype);
+        return this;
+    }
+
+    public ParallelMetadataSearch withComparator(Comparator<QueryObject> comparator) {
+        setComparator(comparator);
+        return this;
+    }
+
+    /**
+     * Merges the results of several queries, either in order of a comparator (k-way merge) or round-robin.
+     */
+    private class MergingIterator implements Iterator<QueryObject> {
+        private final ExecutorService executor;
+        private final List<PrefetchingPageIterator<QueryObjectsResult, QueryObject>> sources = new ArrayList<>();
+        private final Comparator<QueryObject> comparator;
+        private final PriorityQueue<Head> heads;
+        private final Deque<Integer> roundRobin = new ArrayDeque<>();
+        private boolean started, closed;
+
+        MergingIterator(List<QueryObjectsRequest> requests, Comparator<QueryObject> comparator) {
+            this.comparator = comparator;
+            // daemon threads that time out when idle, so a stream that is abandoned without being closed does not
+            // keep the JVM alive
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "metadata-search-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.heads = comparator == null ? null : new PriorityQueue<Head>((h1, h2) -> {
+                int result = comparator.compare(h1.object, h2.object);
+                return result != 0 ? result : Integer.compare(h1.source, h2.source);
+            });
+            for (final QueryObjectsRequest request : requests) {
+                // first pages are requested right away, all in parallel
+                final CompletableFuture<QueryObjectsResult> firstPage =
+                        CompletableFuture.supplyAsync(() -> s3Client.queryObjects(request), executor);
+                sources.add(new PrefetchingPageIterator<QueryObjectsResult, QueryObject>(
+                        () -> join(firstPage),
+                        result -> result.isTruncated() ? s3Client.queryMoreObjects(result) : null,
+                        QueryObjectsResult::getObjects, executor, prefetchDepth));
+            }
+        }
+
+        private void start() {
+            started = true;
+            for (int i = 0; i < sources.size(); i++) {
+                if (comparator != null) advance(i);
+                else roundRobin.add(i);
+            }
+        }
+
+        private void advance(int source) {
+            if (sources.get(source).hasNext()) heads.add(new Head(sources.get(source).next(), source));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) return false;
+            if (!started) start();
+            boolean hasNext;
+            if (comparator != null) {
+                hasNext = !heads.isEmpty();
+            } else {
+                while (!roundRobin.isEmpty() && !sources.get(roundRobin.peek()).hasNext()) roundRobin.poll();
+                hasNext = !roundRobin.isEmpty();
+            }
+            if (!hasNext) close();
+            return hasNext;
+        }
+
+        @Override
+        public QueryObject next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (comparator != null) {
+                Head head = heads.poll();
+                advance(head.source);
+                return head.object;
+            } else {
+                int source = roundRobin.poll();
+                roundRobin.add(source);
+                return sources.get(source).next();
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            for (PrefetchingPageIterator<QueryObjectsResult, QueryObject> source : sources) source.close();
+            executor.shutdownNow();
+        }
+
+        private QueryObjectsResult join(CompletableFuture<QueryObjectsResult> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    private static class Head {
+        final QueryObject object;
+        final int source;
+
+        Head(QueryObject object, int source) {
+            this.object = object;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.Range;
+import com.emc.object.s3.bean.GetObjectResult;
+import com.emc.object.s3.request.GetObjectMetadataRequest;
+import com.emc.object.s3.request.GetObjectRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link InputStream} that reads an object (or a range of it) using several ranged GETs in parallel. While the
+ * caller consumes the current part, up to {@link #setReadAheadParts(int) readAheadParts} following parts are
+ * prefetched by a thread pool, so sequential reads of large objects are not limited to the throughput of a single
+ * connection. This is the read-side counterpart of {@link LargeFileUploader}.
+ * <p>
+ * The object's ETag is captured when the stream is first read, and every part is requested with
+ * <code>If-Match</code>, so if the object changes during the read, the stream will fail rather than mix data from two
+ * versions (unless the request already specifies an <code>If-Match</code> value). The request's other conditions
+ * (<code>If-None-Match</code>, <code>If-Modified-Since</code> and <code>If-Unmodified-Since</code>) are sent with the
+ * initial HEAD and with every part. If any condition is not met, the read fails with an {@link S3Exception} (status
+ * 412) instead of returning data.
+ * <p>
+ * Memory use is bounded by <code>(readAheadParts + 1) * partSize</code>. {@link #skip(long)} is efficient: parts that
+ * are skipped entirely are cancelled, and if the new position is outside the read-ahead window, prefetching restarts
+ * from there. Always {@link #close()} this stream to release the thread pool.
+ * <p>
+ * Configuration must be set before the first read. This class is not thread-safe (like most input streams).
+ */
+public class ParallelObjectInputStream extends InputStream {
+    private static final Logger log = LoggerFactory.getLogger(ParallelObjectInputStream.class);
+
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024; // 8MB
+    public static final int DEFAULT_READ_AHEAD_PARTS = 4;
+
+    private final S3Client s3Client;
+    private final GetObjectRequest<?> request;
+
+    private int partSize = DEFAULT_PART_SIZE;
+    private int readAheadParts = DEFAULT_READ_AHEAD_PARTS;
+    private ExecutorService executorService;
+    private boolean externalExecutorService;
+
+    // stream state
+    private boolean started;
+    private boolean closed;
+    private String eTag;
+    private long position; // absolute offset of the next byte to return
+    private long end; // absolute offset after the last byte to return
+    private long nextPartOffset; // absolute offset of the next part to submit
+    private final Deque<Part> pendingParts = new ArrayDeque<>();
+    private final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+    private Part currentPart;
+
+    /**
+     * Creates a stream that reads all of <code>bucket/key</code>.
+     */
+    public ParallelObjectInputStream(S3Client s3Client, String bucket, String key) {
+        this(s3Client, new GetObjectRequest<>(bucket, key));
+    }
+
+    /**
+     * Creates a stream that reads the object identified by <code>request</code>. The request's range (if any) limits
+     * what is read, and its version ID and conditional headers are sent with every part.
+     */
+    public ParallelObjectInputStream(S3Client s3Client, GetObjectRequest<?> request) {
+        this.s3Client = s3Client;
+        this.request = request;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (!nextPart()) return -1;
+        if (len == 0) return 0;
+
+        int index = (int) (position - currentPart.offset);
+        int count = Math.min(len, currentPart.length - index);
+        System.arraycopy(currentPart.data, index, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        start();
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, end - position);
+        position += skipped;
+
+        // release the current part if we skipped past it
+        if (currentPart != null && position >= currentPart.offset + currentPart.length) {
+            bufferPool.offer(currentPart.data);
+            currentPart = null;
+        }
+
+        // cancel any prefetched parts that we skipped entirely
+        while (!pendingParts.isEmpty() && position >= pendingParts.peek().offset + pendingParts.peek().length) {
+            pendingParts.remove().future.cancel(true);
+        }
+
+        // if we skipped past the read-ahead window, restart prefetching from the new position
+        if (nextPartOffset < position) nextPartOffset = position;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        if (currentPart == null) return 0;
+        return (int) (currentPart.offset + currentPart.length - position);
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Part part : pendingParts) {
+            part.future.cancel(true);
+        }
+        pendingParts.clear();
+        currentPart = null;
+        bufferPool.clear();
+        if (executorService != null && !externalExecutorService) executorService.shutdownNow();
+    }
+
+    /*
+     * makes sure currentPart contains the byte at position, waiting for it to be downloaded if necessary. returns
+     * false at the end of the stream
+     */
+    private boolean nextPart() throws IOException {
+        ensureOpen();
+        start();
+        if (position >= end) return false;
+        if (currentPart != null && position < currentPart.offset + currentPart.length) return true;
+
+        if (currentPart != null) bufferPool.offer(currentPart.data);
+        currentPart = null;
+
+        fillWindow();
+        Part part = pendingParts.remove();
+        try {
+            part.data = part.future.get();
+        } catch (InterruptedException e) {
+            part.future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for part " + part.range());
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) throw (IOException) t;
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            throw new IOException("error reading part " + part.range(), t);
+        }
+        currentPart = part;
+
+        // submit the next part as soon as this one is taken, so the window stays full
+        fillWindow();
+        return true;
+    }
+
+    private void fillWindow() {
+        while (nextPartOffset < end && pendingParts.size() < readAheadParts) {
+            Part part = new Part(nextPartOffset, (int) Math.min(partSize, end - nextPartOffset));
+            part.future = executorService.submit(new ReadPartTask(part));
+            pendingParts.add(part);
+            nextPartOffset += part.length;
+        }
+    }
+
+    private void start() {
+        if (started) return;
+        if (partSize <= 0) throw new IllegalArgumentException("partSize must be positive");
+        if (readAheadParts < 1) throw new IllegalArgumentException("readAheadParts must be at least 1");
+
+        // get the object size and ETag (we will require the same ETag for every part)
+        GetObjectMetadataRequest headRequest = new GetObjectMetadataRequest(request.getBucketName(), request.getKey())
+                .withVersionId(request.getVersionId()).withIfMatch(request.getIfMatch())
+                .withIfNoneMatch(request.getIfNoneMatch()).withIfModifiedSince(request.getIfModifiedSince())
+                .withIfUnmodifiedSince(request.getIfUnmodifiedSince());
+        S3ObjectMetadata metadata = s3Client.getObjectMetadata(headRequest);
+        if (metadata == null) throw preconditionFailed("a condition of the request was not met");
+        long size = metadata.getContentLength();
+        eTag = request.getIfMatch() != null ? request.getIfMatch() : metadata.getETag();
+
+        Range range = request.getRange();
+        if (range == null) {
+            position = 0;
+            end = size;
+        } else if (range.getFirst() == null) { // suffix range (last N bytes)
+            position = Math.max(0, size - range.getLast());
+            end = size;
+        } else {
+            position = range.getFirst();
+            end = range.getLast() == null ? size : Math.min(size, range.getLast() + 1);
+        }
+        if (position > end) position = end;
+        nextPartOffset = position;
+
+        if (executorService == null) {
+            // daemon threads that time out when idle, so a stream that is never closed does not keep the JVM alive
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(readAheadParts, readAheadParts, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "object-read-ahead-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executorService = pool;
+        } else {
+            externalExecutorService = true;
+        }
+        started = true;
+        log.debug("reading {}/{} [{}-{}) with {} read-ahead parts of {} bytes",
+                request.getBucketName(), request.getKey(), position, end, readAheadParts, partSize);
+    }
+
+    private static S3Exception preconditionFailed(String message) {
+        return new S3Exception(message, 412, "PreconditionFailed", null);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("stream is closed");
+    }
+
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public GetObjectRequest<?> getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns the absolute offset (in the object) of the next byte that will be read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size of each ranged GET. Default is {@link #DEFAULT_PART_SIZE}
+     */
+    public void setPartSize(int partSize) {
+        checkNotStarted();
+        this.partSize = partSize;
+    }
+
+    public int getReadAheadParts() {
+        return readAheadParts;
+    }
+
+    /**
+     * Sets the number of parts to prefetch (and the number of threads used, unless an executor is provided). Default
+     * is {@link #DEFAULT_READ_AHEAD_PARTS}
+     */
+    public void setReadAheadParts(int readAheadParts) {
+        checkNotStarted();
+        this.readAheadParts = readAheadParts;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Allows for providing a custom thread executor. An external executor will not be shut down when this stream is
+     * closed
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        checkNotStarted();
+        this.executorService = executorService;
+    }
+
+    private void checkNotStarted() {
+        if (started) throw new IllegalStateException("cannot change configuration after the stream has been read");
+    }
+
+    /**
+     * @see #setPartSize(int)
+     */
+    public ParallelObjectInputStream withPartSize(int partSize) {
+        setPartSize(partSize);
+        return this;
+    }
+
+    /**
+     * @see #setReadAheadParts(int)
+     */
+    public ParallelObjectInputStream withReadAheadParts(int readAheadParts) {
+        setReadAheadParts(readAheadParts);
+        return this;
+    }
+
+    /**
+     * @see #setExecutorService(ExecutorService)
+     */
+    public ParallelObjectInputStream withExecutorService(ExecutorService executorService) {
+        setExecutorService(executorService);
+        return this;
+    }
+
+    private static class Part {
+        final long offset;
+        final int length;
+        Future<byte[]> future;
+        byte[] data;
+
+        Part(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        Range range() {
+            return Range.fromOffsetLength(offset, length);
+        }
+    }
+
+    private class ReadPartTask implements Callable<byte[]> {
+        private final Part part;
+
+        ReadPartTask(Part part) {
+            this.part = part;
+        }
+
+        @Override
+        public byte[] call() throws Exception {
+            // pooled buffers are all partSize, except possibly the (shorter) last part
+            byte[] buffer = bufferPool.poll();
+            if (buffer == null || buffer.length < part.length) buffer = new byte[partSize];
+
+            GetObjectRequest<?> partRequest = new GetObjectRequest<>(request.getBucketName(), request.getKey())
+                    .withVersionId(request.getVersionId()).withRange(part.range()).withIfMatch(eTag)
+                    .withIfNoneMatch(request.getIfNoneMatch()).withIfModifiedSince(request.getIfModifiedSince())
+                    .withIfUnmodifiedSince(request.getIfUnmodifiedSince());
+            GetObjectResult<InputStream> result = s3Client.getObject(partRequest, InputStream.class);
+            // the client returns null when a condition fails (i.e. the object changed since the read started)
+            if (result == null) throw preconditionFailed("a condition of the request was not met for part " + part.range());
+            try (InputStream is = result.getObject()) {
+                int read = 0;
+                while (read < part.length) {
+                    int count = is.read(buffer, read, part.length - read);
+                    if (count == -1)
+                        throw new EOFException(String.format("object stream ended after %,d of %,d bytes in range %s",
+                                read, part.length, part.range()));
+                    read += count;
+                }
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+/**
+ * Strategy used by {@link LargeFileUploader} and {@link LargeFileDownloader} to choose the number of concurrent part
+ * transfers and the size of each part while a transfer is in progress. When no strategy is set, both classes use
+ * their static <code>threads</code> and <code>partSize</code> settings.
+ * <p>
+ * A strategy instance holds the state of one transfer, so it should not be shared between concurrent transfers.
+ * Implementations must be thread-safe; {@link #partCompleted(long, long)} is called from transfer threads.
+ *
+ * @see AdaptivePartTuningStrategy
+ */
+public interface PartTuningStrategy {
+    /**
+     * Called once before any parts are submitted, with the transfer's static settings as the starting point.
+     *
+     * @param totalSize   total number of bytes to transfer
+     * @param partSize    the configured (initial) part size
+     * @param concurrency the configured (initial) number of threads
+     */
+    void start(long totalSize, long partSize, int concurrency);
+
+    /**
+     * The largest value {@link #getConcurrency()} will ever return. This is used to size the thread pool.
+     */
+    int getMaxConcurrency();
+
+    /**
+     * The number of parts that should currently be transferring at once. Checked before each part is submitted.
+     */
+    int getConcurrency();
+
+    /**
+     * The size of the next part to submit. The transfer class will clamp this value to its own limits (minimum part
+     * size, maximum part count, etc.), so implementations do not need to enforce them.
+     */
+    long getNextPartSize();
+
+    /**
+     * Called after each part has been transferred successfully.
+     *
+     * @param partSize      number of bytes in the part
+     * @param durationNanos time taken to transfer the part (not including time spent waiting to be submitted)
+     */
+    void partCompleted(long partSize, long durationNanos);
+
+    /**
+     * Returns true if this strategy may change the part size during a transfer. Uploads using such a strategy record
+     * each part size in their resume context, because resuming requires the same part boundaries.
+     */
+    boolean isVariablePartSize();
+}
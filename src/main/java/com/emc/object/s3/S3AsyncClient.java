@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.Protocol;
+import com.emc.object.Range;
+import com.emc.object.s3.bean.*;
+import com.emc.object.s3.request.*;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link S3Client}. Each method is equivalent to the {@link S3Client} method of the same
+ * signature, but returns immediately with a {@link CompletableFuture} of the result (<code>Void</code> for methods
+ * that do not return a value). Any error (i.e. an {@link S3Exception}) completes the future exceptionally.
+ * <p>
+ * The same request and bean classes are used, and requests go through the same filters (signing, retries,
+ * geo-pinning, checksums, etc.) as {@link S3Client}.
+ */
+public interface S3AsyncClient {
+    /**
+     * Always call .destroy() when finished with a client to ensure that any attached resources and background processes
+     * are released/terminated (i.e. executor threads and the underlying {@link S3Client})
+     */
+    void destroy();
+
+    /**
+     * Returns the blocking client that executes requests for this client (i.e. to generate pre-signed URLs)
+     */
+    S3Client getS3Client();
+
+    CompletableFuture<ListDataNode> listDataNodes();
+
+    CompletableFuture<PingResponse> pingNode(String host);
+
+    CompletableFuture<PingResponse> pingNode(Protocol protocol, String host, int port);
+
+    CompletableFuture<ListBucketsResult> listBuckets();
+
+    CompletableFuture<ListBucketsResult> listBuckets(ListBucketsRequest request);
+
+    CompletableFuture<Boolean> bucketExists(String bucketName);
+
+    CompletableFuture<Void> createBucket(String bucketName);
+
+    CompletableFuture<Void> createBucket(CreateBucketRequest request);
+
+    CompletableFuture<BucketInfo> getBucketInfo(String bucketName);
+
+    CompletableFuture<Void> deleteBucket(String bucketName);
+
+    CompletableFuture<Void> setBucketAcl(String bucketName, AccessControlList acl);
+
+    CompletableFuture<Void> setBucketAcl(String bucketName, CannedAcl cannedAcl);
+
+    CompletableFuture<Void> setBucketAcl(SetBucketAclRequest request);
+
+    CompletableFuture<AccessControlList> getBucketAcl(String bucketName);
+
+    CompletableFuture<Void> setBucketCors(String bucketName, CorsConfiguration corsConfiguration);
+
+    CompletableFuture<CorsConfiguration> getBucketCors(String bucketName);
+
+    CompletableFuture<Void> deleteBucketCors(String bucketName);
+
+    CompletableFuture<Void> setBucketLifecycle(String bucketName, LifecycleConfiguration lifecycleConfiguration);
+
+    CompletableFuture<LifecycleConfiguration> getBucketLifecycle(String bucketName);
+
+    CompletableFuture<Void> deleteBucketLifecycle(String bucketName);
+
+    CompletableFuture<Void> setBucketPolicy(String bucketName, BucketPolicy policy);
+
+    CompletableFuture<BucketPolicy> getBucketPolicy(String bucketName);
+
+    CompletableFuture<Void> deleteBucketPolicy(String bucketName);
+
+    CompletableFuture<LocationConstraint> getBucketLocation(String bucketName);
+
+    CompletableFuture<Void> setBucketVersioning(String bucketName, VersioningConfiguration versioningConfiguration);
+
+    CompletableFuture<VersioningConfiguration> getBucketVersioning(String bucketName);
+
+    CompletableFuture<Void> setBucketStaleReadAllowed(String bucketName, boolean staleReadsAllowed);
+
+    CompletableFuture<MetadataSearchList> listSystemMetadataSearchKeys();
+
+    CompletableFuture<MetadataSearchList> listBucketMetadataSearchKeys(String bucketName);
+
+    CompletableFuture<QueryObjectsResult> queryObjects(QueryObjectsRequest request);
+
+    CompletableFuture<QueryObjectsResult> queryMoreObjects(QueryObjectsResult lastResult);
+
+    CompletableFuture<ListObjectsResult> listObjects(String bucketName);
+
+    CompletableFuture<ListObjectsResult> listObjects(String bucketName, String prefix);
+
+    CompletableFuture<ListObjectsResult> listObjects(ListObjectsRequest request);
+
+    CompletableFuture<ListObjectsResult> listMoreObjects(ListObjectsResult lastResult);
+
+    CompletableFuture<ListVersionsResult> listVersions(String bucketName, String prefix);
+
+    CompletableFuture<ListVersionsResult> listVersions(ListVersionsRequest request);
+
+    CompletableFuture<ListVersionsResult> listMoreVersions(ListVersionsResult lastResult);
+
+    CompletableFuture<Void> putObject(String bucketName, String key, Object content, String contentType);
+
+    CompletableFuture<Void> putObject(String bucketName, String key, Range range, Object content);
+
+    CompletableFuture<PutObjectResult> putObject(PutObjectRequest request);
+
+    CompletableFuture<Long> appendObject(String bucketName, String key, Object content);
+
+    CompletableFuture<CopyObjectResult> copyObject(String sourceBucketName, String sourceKey, String bucketName, String key);
+
+    CompletableFuture<CopyObjectResult> copyObject(CopyObjectRequest request);
+
+    <T> CompletableFuture<T> readObject(String bucketName, String key, Class<T> objectType);
+
+    <T> CompletableFuture<T> readObject(String bucketName, String key, String versionId, Class<T> objectType);
+
+    CompletableFuture<InputStream> readObjectStream(String bucketName, String key, Range range);
+
+    CompletableFuture<GetObjectResult<InputStream>> getObject(String bucketName, String key);
+
+    <T> CompletableFuture<GetObjectResult<T>> getObject(GetObjectRequest<?> request, Class<T> objectType);
+
+    CompletableFuture<Void> deleteObject(String bucketName, String key);
+
+    CompletableFuture<Void> deleteObject(DeleteObjectRequest request);
+
+    CompletableFuture<Void> deleteVersion(String bucketName, String key, String versionId);
+
+    CompletableFuture<DeleteObjectsResult> deleteObjects(DeleteObjectsRequest request);
+
+    CompletableFuture<Void> setObjectMetadata(String bucketName, String key, S3ObjectMetadata objectMetadata);
+
+    CompletableFuture<S3ObjectMetadata> getObjectMetadata(String bucketName, String key);
+
+    CompletableFuture<S3ObjectMetadata> getObjectMetadata(GetObjectMetadataRequest request);
+
+    CompletableFuture<Void> setObjectAcl(String bucketName, String key, AccessControlList acl);
+
+    CompletableFuture<Void> setObjectAcl(String bucketName, String key, CannedAcl cannedAcl);
+
+    CompletableFuture<Void> setObjectAcl(SetObjectAclRequest request);
+
+    CompletableFuture<AccessControlList> getObjectAcl(String bucketName, String key);
+
+    CompletableFuture<AccessControlList> getObjectAcl(GetObjectAclRequest request);
+
+    CompletableFuture<Void> extendRetentionPeriod(String bucketName, String key, Long period);
+
+    CompletableFuture<ListMultipartUploadsResult> listMultipartUploads(String bucketName);
+
+    CompletableFuture<ListMultipartUploadsResult> listMultipartUploads(ListMultipartUploadsRequest request);
+
+    CompletableFuture<String> initiateMultipartUpload(String bucketName, String key);
+
+    CompletableFuture<InitiateMultipartUploadResult> initiateMultipartUpload(InitiateMultipartUploadRequest request);
+
+    CompletableFuture<ListPartsResult> listParts(String bucketName, String key, String uploadId);
+
+    CompletableFuture<ListPartsResult> listParts(ListPartsRequest request);
+
+    CompletableFuture<MultipartPartETag> uploadPart(UploadPartRequest request);
+
+    CompletableFuture<CopyPartResult> copyPart(CopyPartRequest request);
+
+    CompletableFuture<CompleteMultipartUploadResult> completeMultipartUpload(CompleteMultipartUploadRequest request);
+
+    CompletableFuture<Void> abortMultipartUpload(AbortMultipartUploadRequest request);
+
+    CompletableFuture<Void> setObjectLockConfiguration(String bucketName, ObjectLockConfiguration objectLockConfiguration);
+
+    CompletableFuture<ObjectLockConfiguration> getObjectLockConfiguration(String bucketName);
+
+    CompletableFuture<Void> enableObjectLock(String bucketName);
+
+    CompletableFuture<Void> setObjectLegalHold(SetObjectLegalHoldRequest request);
+
+    CompletableFuture<ObjectLockLegalHold> getObjectLegalHold(GetObjectLegalHoldRequest request);
+
+    CompletableFuture<Void> setObjectRetention(SetObjectRetentionRequest request);
+
+    CompletableFuture<ObjectLockRetention> getObjectRetention(GetObjectRetentionRequest request);
+
+    CompletableFuture<CopyRangeResult> copyRange(CopyRangeRequest request);
+
+    CompletableFuture<Void> putObjectTagging(PutObjectTaggingRequest request);
+
+    CompletableFuture<ObjectTagging> getObjectTagging(GetObjectTaggingRequest request);
+
+    CompletableFuture<Void> deleteObjectTagging(DeleteObjectTaggingRequest request);
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+/**
+ * Signs the chunks of a streaming (aws-chunked) payload. Each chunk signature covers the chunk data and the signature
+ * of the previous chunk (the first chunk is chained to the signature of the request headers), so chunks must be
+ * signed in order, and the final (empty) chunk must be signed to terminate the payload.
+ * <p>
+ * An instance is only good for one pass over the payload and is not thread-safe.
+ */
+public class S3ChunkSigner {
+    private static final String HASHED_EMPTY_STRING = S3Signer.hexEncode(S3Signer.hash256(""));
+
+    private final S3SignerV4 signer;
+    private final byte[] signingKey;
+    private final String date;
+    private final String scope;
+    private final String seedSignature;
+    private String previousSignature;
+
+    S3ChunkSigner(S3SignerV4 signer, byte[] signingKey, String date, String scope, String seedSignature) {
+        this.signer = signer;
+        this.signingKey = signingKey;
+        this.date = date;
+        this.scope = scope;
+        this.seedSignature = seedSignature;
+        this.previousSignature = seedSignature;
+    }
+
+    /**
+     * Signs the next chunk of the payload and returns its (hex-encoded) signature. Pass a zero length to sign the
+     * final chunk.
+     */
+    public String signChunk(byte[] data, int offset, int length) {
+        String stringToSign = S3Constants.AWS_HMAC_SHA256_PAYLOAD_ALGORITHM + "\n" +
+                date + "\n" +
+                scope + "\n" +
+                previousSignature + "\n" +
+                HASHED_EMPTY_STRING + "\n" +
+                S3Signer.hexEncode(S3Signer.hash256(data, offset, length));
+        previousSignature = signer.getSignature(stringToSign, signingKey);
+        return previousSignature;
+    }
+
+    /**
+     * Returns the signature of the request headers, which seeds the chunk signature chain.
+     */
+    public String getSeedSignature() {
+        return seedSignature;
+    }
+}
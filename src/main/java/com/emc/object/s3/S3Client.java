@@ -30,10 +30,14 @@ import com.emc.object.Protocol;
 import com.emc.object.Range;
 import com.emc.object.s3.bean.*;
 import com.emc.object.s3.request.*;
+import com.emc.object.util.PrefetchingPageIterator;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Represents all S3 operations supported by the ECS platform of the corresponding version of this library.  Note that
@@ -242,6 +246,25 @@ public interface S3Client {
      */
     QueryObjectsResult queryMoreObjects(QueryObjectsResult lastResult);
 
+    /**
+     * Lazily queries all objects matching <code>request</code>, fetching the next page in the background while the
+     * current page is consumed. Close the stream to stop querying early
+     */
+    default Stream<QueryObject> streamQuery(QueryObjectsRequest request) {
+        return streamQuery(request, PrefetchingPageIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Lazily queries all objects matching <code>request</code>, fetching up to <code>prefetchDepth</code> pages ahead
+     * in the background. Close the stream to stop querying early
+     */
+    default Stream<QueryObject> streamQuery(QueryObjectsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<QueryObjectsResult, QueryObject>(
+                () -> queryObjects(request),
+                result -> result.isTruncated() ? queryMoreObjects(result) : null,
+                QueryObjectsResult::getObjects, PrefetchingPageIterator.sharedExecutor(), prefetchDepth).stream();
+    }
+
     /**
      * Lists all objects in <code>bucketName</code> with no restrictions
      */
@@ -257,11 +280,43 @@ public interface S3Client {
      */
     ListObjectsResult listObjects(ListObjectsRequest request);
 
+    /**
+     * Lists one page of objects using parameters specified in <code>request</code>, passing each object to
+     * <code>consumer</code> as it is parsed from the response instead of collecting it in the result
+     */
+    default ListObjectsResult listObjects(ListObjectsRequest request, Consumer<? super S3Object> consumer) {
+        ListObjectsResult result = listObjects(request);
+        if (consumer != null) {
+            result.getObjects().forEach(consumer);
+            result.setObjects(new ArrayList<>());
+        }
+        return result;
+    }
+
     /**
      * Gets the next page of objects using the results of a previous list-objects call
      */
     ListObjectsResult listMoreObjects(ListObjectsResult lastResult);
 
+    /**
+     * Lazily lists all objects matching <code>request</code>, fetching the next page in the background while the
+     * current page is consumed. Common prefixes are not included. Close the stream to stop listing early
+     */
+    default Stream<S3Object> streamObjects(ListObjectsRequest request) {
+        return streamObjects(request, PrefetchingPageIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Lazily lists all objects matching <code>request</code>, fetching up to <code>prefetchDepth</code> pages ahead
+     * in the background. Close the stream to stop listing early
+     */
+    default Stream<S3Object> streamObjects(ListObjectsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<ListObjectsResult, S3Object>(
+                () -> listObjects(request),
+                result -> result.isTruncated() ? listMoreObjects(result) : null,
+                ListObjectsResult::getObjects, PrefetchingPageIterator.sharedExecutor(), prefetchDepth).stream();
+    }
+
     /**
      * Lists all versions of all objects in <code>bucketName</code> that start with <code>prefix</code>
      */
@@ -272,11 +327,43 @@ public interface S3Client {
      */
     ListVersionsResult listVersions(ListVersionsRequest request);
 
+    /**
+     * Lists one page of versions using parameters specified in <code>request</code>, passing each version to
+     * <code>consumer</code> as it is parsed from the response instead of collecting it in the result
+     */
+    default ListVersionsResult listVersions(ListVersionsRequest request, Consumer<? super AbstractVersion> consumer) {
+        ListVersionsResult result = listVersions(request);
+        if (consumer != null) {
+            result.getVersions().forEach(consumer);
+            result.setVersions(new ArrayList<>());
+        }
+        return result;
+    }
+
     /**
      * Gets the next page of object versions using the results of a previous list-versions call
      */
     ListVersionsResult listMoreVersions(ListVersionsResult lastResult);
 
+    /**
+     * Lazily lists all versions matching <code>request</code>, fetching the next page in the background while the
+     * current page is consumed. Close the stream to stop listing early
+     */
+    default Stream<AbstractVersion> streamVersions(ListVersionsRequest request) {
+        return streamVersions(request, PrefetchingPageIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Lazily lists all versions matching <code>request</code>, fetching up to <code>prefetchDepth</code> pages ahead
+     * in the background. Close the stream to stop listing early
+     */
+    default Stream<AbstractVersion> streamVersions(ListVersionsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<ListVersionsResult, AbstractVersion>(
+                () -> listVersions(request),
+                result -> result.isTruncated() ? listMoreVersions(result) : null,
+                ListVersionsResult::getVersions, PrefetchingPageIterator.sharedExecutor(), prefetchDepth).stream();
+    }
+
     /**
      * Creates or overwrites an object in <code>bucketName</code> named <code>key</code> containing <code>content</code>
      * and having <code>contentType</code>
@@ -65,8 +65,14 @@ public class S3Config extends ObjectConfig<S3Config> {
     public static final int DEFAULT_HTTP_PORT = 9020;
     public static final int DEFAULT_HTTPS_PORT = 9021;
     public static final int DEFAULT_INITIAL_RETRY_DELAY = 1000; // ms
+    public static final int DEFAULT_MAX_RETRY_DELAY = 20000; // ms
     public static final int DEFAULT_RETRY_LIMIT = 3;
     public static final int DEFAULT_RETRY_BUFFER_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_CONTENT_MD5_BUFFER_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_METADATA_CACHE_TTL = 10000; // ms
+    public static final int DEFAULT_METADATA_CACHE_NEGATIVE_TTL = 1000; // ms
+    public static final int DEFAULT_COALESCE_MAX_BYTES = 1024 * 1024;
+    public static final int DEFAULT_ASYNC_THREADS = 64;
 
     protected static int defaultPort(Protocol protocol) {
         if (protocol == Protocol.HTTP) return DEFAULT_HTTP_PORT;
@@ -80,11 +86,22 @@ public class S3Config extends ObjectConfig<S3Config> {
     protected boolean checksumEnabled = true;
     protected boolean retryEnabled = true;
     protected int initialRetryDelay = DEFAULT_INITIAL_RETRY_DELAY;
+    protected int maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
     protected int retryLimit = DEFAULT_RETRY_LIMIT;
     protected int retryBufferSize = DEFAULT_RETRY_BUFFER_SIZE;
+    protected float retryBudgetRatio = 0.0f;
     protected float faultInjectionRate = 0.0f;
     protected boolean signMetadataSearch = true;
     protected boolean useV2Signer = true;
+    protected boolean signStreamingPayload = false;
+    protected int contentMd5BufferSize = DEFAULT_CONTENT_MD5_BUFFER_SIZE;
+    protected int metadataCacheSize = 0;
+    protected int metadataCacheTtl = DEFAULT_METADATA_CACHE_TTL;
+    protected int metadataCacheNegativeTtl = DEFAULT_METADATA_CACHE_NEGATIVE_TTL;
+    protected boolean coalesceReads = false;
+    protected int coalesceMaxBytes = DEFAULT_COALESCE_MAX_BYTES;
+    protected boolean metricsEnabled = false;
+    protected int asyncThreads = DEFAULT_ASYNC_THREADS;
 
     /**
      * Empty constructor for internal use only!
@@ -126,11 +143,22 @@ public class S3Config extends ObjectConfig<S3Config> {
         this.checksumEnabled = other.checksumEnabled;
         this.retryEnabled = other.retryEnabled;
         this.initialRetryDelay = other.initialRetryDelay;
+        this.maxRetryDelay = other.maxRetryDelay;
         this.retryLimit = other.retryLimit;
         this.retryBufferSize = other.retryBufferSize;
+        this.retryBudgetRatio = other.retryBudgetRatio;
         this.faultInjectionRate = other.faultInjectionRate;
         this.signMetadataSearch = other.signMetadataSearch;
         this.useV2Signer = other.useV2Signer;
+        this.signStreamingPayload = other.signStreamingPayload;
+        this.contentMd5BufferSize = other.contentMd5BufferSize;
+        this.metadataCacheSize = other.metadataCacheSize;
+        this.metadataCacheTtl = other.metadataCacheTtl;
+        this.metadataCacheNegativeTtl = other.metadataCacheNegativeTtl;
+        this.coalesceReads = other.coalesceReads;
+        this.coalesceMaxBytes = other.coalesceMaxBytes;
+        this.metricsEnabled = other.metricsEnabled;
+        this.asyncThreads = other.asyncThreads;
     }
 
     @Override
@@ -206,13 +234,28 @@ public class S3Config extends ObjectConfig<S3Config> {
     }
 
     /**
-     * number of milliseconds to delay before the first retry attempt after a failed request. The delay time
-     * increases by a factor of 2 after each failed request
+     * number of milliseconds to delay before the first retry attempt after a failed request. Each subsequent delay is
+     * chosen at random between this value and 3 times the previous delay (decorrelated jitter), up to
+     * {@link #setMaxRetryDelay(int) maxRetryDelay}, so that many clients failing at once do not retry in lockstep.
+     * Set to 0 to retry immediately
      */
     public void setInitialRetryDelay(int initialRetryDelay) {
         this.initialRetryDelay = initialRetryDelay;
     }
 
+    @ConfigUriProperty
+    public int getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds to delay before any retry, including delays requested by the server via
+     * a <code>Retry-After</code> header. Default is {@link #DEFAULT_MAX_RETRY_DELAY}
+     */
+    public void setMaxRetryDelay(int maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
     @ConfigUriProperty
     public int getRetryLimit() {
         return retryLimit;
@@ -239,6 +282,21 @@ public class S3Config extends ObjectConfig<S3Config> {
         this.retryBufferSize = retryBufferSize;
     }
 
+    @ConfigUriProperty
+    public float getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * Limits retries to this fraction of all requests made by a client (i.e. 0.1 allows at most one retry for every
+     * 10 requests, after an initial allowance of {@link com.emc.object.s3.jersey.RetryBudget#DEFAULT_CAPACITY}
+     * retries). Once the budget is spent, failed requests are not retried until enough requests have been made to
+     * earn more. This keeps a client from multiplying its load on a struggling cluster. Default is 0 (no budget)
+     */
+    public void setRetryBudgetRatio(float retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+
     @ConfigUriProperty
     public float getFaultInjectionRate() {
         return faultInjectionRate;
@@ -281,6 +339,138 @@ public class S3Config extends ObjectConfig<S3Config> {
         this.useV2Signer = useV2Signer;
     }
 
+    @ConfigUriProperty
+    public boolean isSignStreamingPayload() {
+        return signStreamingPayload;
+    }
+
+    /**
+     * If true, and the v4 signer is in use, uploads with a known content-length are sent with an aws-chunked
+     * (STREAMING-AWS4-HMAC-SHA256-PAYLOAD) payload, where each chunk of {@link #getChunkedEncodingSize()} bytes is
+     * signed as it is streamed. This provides signed payload integrity without buffering the object. Requests that
+     * generate a Content-MD5 header or specify a Content-Encoding are always sent with an unsigned payload.
+     * Default is false.
+     */
+    public void setSignStreamingPayload(boolean signStreamingPayload) {
+        this.signStreamingPayload = signStreamingPayload;
+    }
+
+    @ConfigUriProperty
+    public int getContentMd5BufferSize() {
+        return contentMd5BufferSize;
+    }
+
+    /**
+     * Requests that must send a Content-MD5 header (i.e. ACLs, multi-object deletes) have the MD5 computed up front
+     * when the entity can be read twice (byte[], File or a resettable stream). Otherwise, the entity is buffered to
+     * compute the MD5 before it is sent; this is the maximum number of bytes buffered in memory, after which the
+     * buffer spills over to a temporary file. Default is 2MB
+     */
+    public void setContentMd5BufferSize(int contentMd5BufferSize) {
+        this.contentMd5BufferSize = contentMd5BufferSize;
+    }
+
+    @ConfigUriProperty
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Enables a client-side cache of object metadata (HEAD object) and bucket existence (HEAD bucket) results when
+     * this is &gt; 0. This is the maximum number of entries kept; the least-recently used entries are evicted first.
+     * Entries are invalidated when this client writes, copies or deletes the object, but changes made by other
+     * clients are only seen once an entry expires (see {@link #setMetadataCacheTtl(int)}). Default is 0 (disabled)
+     */
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    @ConfigUriProperty
+    public int getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    /**
+     * How long (in milliseconds) a cached metadata result is served before it is fetched again. Default is
+     * {@link #DEFAULT_METADATA_CACHE_TTL}
+     */
+    public void setMetadataCacheTtl(int metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    @ConfigUriProperty
+    public int getMetadataCacheNegativeTtl() {
+        return metadataCacheNegativeTtl;
+    }
+
+    /**
+     * How long (in milliseconds) a "not found" result is cached. Set to 0 to disable negative caching. Default is
+     * {@link #DEFAULT_METADATA_CACHE_NEGATIVE_TTL}
+     */
+    public void setMetadataCacheNegativeTtl(int metadataCacheNegativeTtl) {
+        this.metadataCacheNegativeTtl = metadataCacheNegativeTtl;
+    }
+
+    @ConfigUriProperty
+    public boolean isCoalesceReads() {
+        return coalesceReads;
+    }
+
+    /**
+     * When enabled, concurrent identical reads (HEAD object, GET object for the whole object or a small range, GET
+     * object ACL and GET bucket location) share a single request to the server. Responses up to
+     * {@link #setCoalesceMaxBytes(int) coalesceMaxBytes} are buffered and handed to every waiting caller; callers
+     * waiting on a larger response send their own request. Requests with custom headers or request properties (i.e.
+     * from {@link com.emc.object.s3.jersey.S3EncryptionClient}) are never shared. Callers that join a shared request are not counted in
+     * the {@link #setMetricsEnabled(boolean) request metrics} (see
+     * {@link com.emc.object.s3.jersey.RequestCoalescer#getCoalesced()}). Default is false
+     */
+    public void setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+    }
+
+    @ConfigUriProperty
+    public int getCoalesceMaxBytes() {
+        return coalesceMaxBytes;
+    }
+
+    /**
+     * The largest response body (in bytes) that is buffered and shared between coalesced reads. Default is
+     * {@link #DEFAULT_COALESCE_MAX_BYTES}
+     */
+    public void setCoalesceMaxBytes(int coalesceMaxBytes) {
+        this.coalesceMaxBytes = coalesceMaxBytes;
+    }
+
+    @ConfigUriProperty
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Records latency histograms, byte counts, retries and error codes for every request, grouped by operation and
+     * host. Read them from {@link com.emc.object.s3.jersey.S3JerseyClient#getMetricsRegistry()}, which can also publish
+     * them over JMX. When disabled, the metrics filters are not installed at all. Default is false
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    @ConfigUriProperty
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    /**
+     * The number of threads in the default executor of {@link com.emc.object.s3.jersey.S3AsyncJerseyClient} on Java
+     * versions before 21, which is the most requests that can be in flight at once; further requests wait in a queue
+     * until a thread is free. On Java 21 and later, each request runs in its own virtual thread and this is ignored.
+     * Default is {@link #DEFAULT_ASYNC_THREADS}
+     */
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
     public S3Config withUseVHost(boolean useVHost) {
         setUseVHost(useVHost);
         return this;
@@ -306,6 +496,11 @@ public class S3Config extends ObjectConfig<S3Config> {
         return this;
     }
 
+    public S3Config withMaxRetryDelay(int maxRetryDelay) {
+        setMaxRetryDelay(maxRetryDelay);
+        return this;
+    }
+
     public S3Config withRetryLimit(int retryLimit) {
         setRetryLimit(retryLimit);
         return this;
@@ -316,6 +511,11 @@ public class S3Config extends ObjectConfig<S3Config> {
         return this;
     }
 
+    public S3Config withRetryBudgetRatio(float retryBudgetRatio) {
+        setRetryBudgetRatio(retryBudgetRatio);
+        return this;
+    }
+
     public S3Config withFaultInjectionRate(float faultInjectionRate) {
         setFaultInjectionRate(faultInjectionRate);
         return this;
@@ -331,6 +531,51 @@ public class S3Config extends ObjectConfig<S3Config> {
         return this;
     }
 
+    public S3Config withSignStreamingPayload(boolean signStreamingPayload) {
+        setSignStreamingPayload(signStreamingPayload);
+        return this;
+    }
+
+    public S3Config withContentMd5BufferSize(int contentMd5BufferSize) {
+        setContentMd5BufferSize(contentMd5BufferSize);
+        return this;
+    }
+
+    public S3Config withMetadataCacheSize(int metadataCacheSize) {
+        setMetadataCacheSize(metadataCacheSize);
+        return this;
+    }
+
+    public S3Config withMetadataCacheTtl(int metadataCacheTtl) {
+        setMetadataCacheTtl(metadataCacheTtl);
+        return this;
+    }
+
+    public S3Config withMetadataCacheNegativeTtl(int metadataCacheNegativeTtl) {
+        setMetadataCacheNegativeTtl(metadataCacheNegativeTtl);
+        return this;
+    }
+
+    public S3Config withCoalesceReads(boolean coalesceReads) {
+        setCoalesceReads(coalesceReads);
+        return this;
+    }
+
+    public S3Config withCoalesceMaxBytes(int coalesceMaxBytes) {
+        setCoalesceMaxBytes(coalesceMaxBytes);
+        return this;
+    }
+
+    public S3Config withMetricsEnabled(boolean metricsEnabled) {
+        setMetricsEnabled(metricsEnabled);
+        return this;
+    }
+
+    public S3Config withAsyncThreads(int asyncThreads) {
+        setAsyncThreads(asyncThreads);
+        return this;
+    }
+
     @Override
     public String toString() {
         return "S3Config{" +
@@ -339,11 +584,22 @@ public class S3Config extends ObjectConfig<S3Config> {
                 ", checksumEnabled=" + checksumEnabled +
                 ", retryEnabled=" + retryEnabled +
                 ", initialRetryDelay=" + initialRetryDelay +
+                ", maxRetryDelay=" + maxRetryDelay +
                 ", retryLimit=" + retryLimit +
                 ", retryBufferSize=" + retryBufferSize +
+                ", retryBudgetRatio=" + retryBudgetRatio +
                 ", faultInjectionRate=" + faultInjectionRate +
                 ", signMetadataSearch=" + signMetadataSearch +
                 ", useV2Signer=" + useV2Signer +
+                ", signStreamingPayload=" + signStreamingPayload +
+                ", contentMd5BufferSize=" + contentMd5BufferSize +
+                ", metadataCacheSize=" + metadataCacheSize +
+                ", metadataCacheTtl=" + metadataCacheTtl +
+                ", metadataCacheNegativeTtl=" + metadataCacheNegativeTtl +
+                ", coalesceReads=" + coalesceReads +
+                ", coalesceMaxBytes=" + coalesceMaxBytes +
+                ", metricsEnabled=" + metricsEnabled +
+                ", asyncThreads=" + asyncThreads +
                 "} " + super.toString();
     }
 }
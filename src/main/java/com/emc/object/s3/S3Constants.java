@@ -38,9 +38,12 @@ public final class S3Constants {
     public static final String AWS_DEFAULT_REGION = "us-east-1";
     public static final String AWS_V4_TERMINATOR = "aws4_request";
     public final static String AWS_HMAC_SHA256_ALGORITHM = "AWS4-HMAC-SHA256";
+    public final static String AWS_HMAC_SHA256_PAYLOAD_ALGORITHM = "AWS4-HMAC-SHA256-PAYLOAD";
     public static final String AMZ_ACL = AMZ_PREFIX + "acl";
+    public static final String AMZ_CONTENT_SHA256 = AMZ_PREFIX + "content-sha256";
     public static final String AMZ_COPY_SOURCE = AMZ_PREFIX + "copy-source";
     public static final String AMZ_DATE = AMZ_PREFIX + "date";
+    public static final String AMZ_DECODED_CONTENT_LENGTH = AMZ_PREFIX + "decoded-content-length";
     public static final String AMZ_EXPIRATION = AMZ_PREFIX + "expiration";
     public static final String AMZ_GRANT_FULL_CONTROL = AMZ_PREFIX + "grant-full-control";
     public static final String AMZ_GRANT_READ = AMZ_PREFIX + "grant-read";
@@ -56,6 +59,8 @@ public final class S3Constants {
     public static final String AMZ_SOURCE_VERSION_ID = AMZ_PREFIX + "copy-source-version-id";
     public static final String AMZ_VERSION_ID = AMZ_PREFIX + "version-id";
     public static final String AMZ_UNSIGNED_PAYLOAD= "UNSIGNED-PAYLOAD";
+    public static final String AMZ_STREAMING_PAYLOAD = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+    public static final String CONTENT_ENCODING_AWS_CHUNKED = "aws-chunked";
     public static final String AMZ_BUCKET_OBJECT_LOCK_ENABLED = AMZ_PREFIX + "bucket-object-lock-enabled";
     public static final String AMZ_OBJECT_LOCK_LEGAL_HOLD = AMZ_PREFIX + "object-lock-legal-hold";
     public static final String AMZ_OBJECT_LOCK_MODE = AMZ_PREFIX + "object-lock-mode";
@@ -101,6 +106,7 @@ public final class S3Constants {
 
     public static final String PROPERTY_BUCKET_NAME = "com.emc.object.s3.bucketName";
     public static final String PROPERTY_OBJECT_KEY = "com.emc.object.s3.objectKey";
+    public static final String PROPERTY_CHUNK_SIGNER = "com.emc.object.s3.chunkSigner";
 
     public static final String ERROR_NO_SUCH_KEY = "NoSuchKey";
     public static final String ERROR_NO_SUCH_BUCKET = "NoSuchBucket";
@@ -108,6 +114,7 @@ public final class S3Constants {
     public static final String ERROR_INTERNAL = "InternalError";
     public static final String ERROR_INVALID_ARGUMENT = "InvalidArgument";
     public static final String ERROR_METHOD_NOT_ALLOWED = "MethodNotAllowed";
+    public static final String ERROR_SLOW_DOWN = "SlowDown";
 
     public static final String HMAC_SHA_1 = "HmacSHA1";
     public static final String HMAC_SHA_256 = "HmacSHA256";
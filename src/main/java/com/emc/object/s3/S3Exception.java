@@ -32,6 +32,7 @@ public class S3Exception extends SmartClientException {
     private final int httpCode;
     private String errorCode;
     private String requestId;
+    private long retryAfter;
 
     public S3Exception(String message, int httpCode) {
         super(message);
@@ -65,6 +66,18 @@ public class S3Exception extends SmartClientException {
         return requestId;
     }
 
+    /**
+     * Returns the number of milliseconds the server asked the client to wait before retrying (from a
+     * <code>Retry-After</code> response header), or 0 if it did not say.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(long retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
     private ErrorType fromHttpCode(int httpCode) {
         return httpCode >= 400 && httpCode < 500 ? ErrorType.Client
                 : httpCode >= 500 && httpCode < 600 ? ErrorType.Service
@@ -11,7 +11,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import javax.xml.bind.DatatypeConverter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -20,10 +19,18 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class S3Signer {
     protected static final Logger log = LoggerFactory.getLogger(S3Signer.class);
 
+    // Mac and MessageDigest instances are expensive to look up, but not thread-safe, so they are pooled. A shared pool
+    // (rather than one instance per thread) still pays off when every request runs on a new (i.e. virtual) thread
+    static final int POOL_SIZE = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    private static final Map<String, Queue<Mac>> macPools = new ConcurrentHashMap<>();
+    private static final Queue<MessageDigest> sha256Pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
     protected S3Config s3Config;
 
     S3Signer(S3Config s3Config) {
@@ -59,11 +66,17 @@ public abstract class S3Signer {
     // generalized utility function to get hmac values
     protected byte[] hmac(String algorithm, byte[] secretKey, String message) {
         try {
-            Mac mac = Mac.getInstance(algorithm);
-            mac.init(new SecretKeySpec(secretKey, algorithm));
-            byte[] result = mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
-            log.debug("hmac of {} and {}:\n{}", secretKey, message, result);
-            return result;
+            Queue<Mac> pool = macPools.computeIfAbsent(algorithm, a -> new ArrayBlockingQueue<>(POOL_SIZE));
+            Mac mac = pool.poll();
+            if (mac == null) mac = Mac.getInstance(algorithm);
+            try {
+                mac.init(new SecretKeySpec(secretKey, algorithm)); // also resets the mac
+                byte[] result = mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+                log.debug("hmac of {} and {}:\n{}", secretKey, message, result);
+                return result;
+            } finally {
+                pool.offer(mac); // dropped if the pool is full
+            }
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(algorithm + " algorithm is not supported on this platform", e);
         } catch (InvalidKeyException e) {
@@ -72,14 +85,25 @@ public abstract class S3Signer {
     }
 
     protected static byte[] hash256(String stringToHash) {
-        MessageDigest digest = null;
+        byte[] data = stringToHash.getBytes(StandardCharsets.UTF_8);
+        return hash256(data, 0, data.length);
+    }
+
+    protected static byte[] hash256(byte[] data, int offset, int length) {
+        MessageDigest digest = sha256Pool.poll();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(S3Constants.SHA256);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(S3Constants.SHA256 + " algorithm is not supported on this platform", e);
+            }
+        }
         try {
-            digest = MessageDigest.getInstance(S3Constants.SHA256);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            digest.update(data, offset, length);
+            return digest.digest(); // also resets the digest, so it is ready for the next caller
+        } finally {
+            sha256Pool.offer(digest);
         }
-        byte[] hash = digest.digest(stringToHash.getBytes(StandardCharsets.UTF_8));
-        return hash;
     }
 
 
@@ -87,14 +111,8 @@ public abstract class S3Signer {
      * encode byte string to hex - required for v4 auth
      * */
     protected static String hexEncode(byte[] arg) {
-        String hexString = DatatypeConverter.printHexBinary(arg);
-        if (hexString != null) {
-            // return value of DatatypeConverter.printHexBinary is uppercase,
-            // need to convert to lowercase
-            return hexString.toLowerCase();
-        } else {
-            return null;
-        }
+        // lowercase, without the intermediate uppercase string
+        return Hex.encodeHexString(arg);
     }
 
     protected String trimAndJoin(List<Object> values, String delimiter) {
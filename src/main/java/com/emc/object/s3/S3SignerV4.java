@@ -16,12 +16,20 @@ import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class S3SignerV4 extends S3Signer {
     private static final String HEADER_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
     //The timestamp must be in UTC and in the following ISO 8601 format: YYYYMMDD'T'HHMMSS'Z'
     private static final String AMZ_DATE_FORMAT = "yyyyMMdd'T'HHmmss'Z'";
     private static final String AMZ_DATE_FORMAT_SHORT = "yyyyMMdd";
+    // formatters are immutable and thread-safe, so compile them once
+    private static final DateTimeFormatter HEADER_DATE_FORMATTER = DateTimeFormatter.ofPattern(HEADER_DATE_FORMAT).withLocale(Locale.US);
+    private static final DateTimeFormatter AMZ_DATE_FORMATTER = DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT).withLocale(Locale.US);
+    private static final DateTimeFormatter AMZ_DATE_FORMATTER_SHORT = DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT_SHORT).withLocale(Locale.US);
+    // canonical requests are built in pooled buffers (dropped if a huge request makes one grow too large)
+    private static final int MAX_REUSED_BUILDER_CAPACITY = 64 * 1024;
+    private static final Queue<StringBuilder> builderPool = new ArrayBlockingQueue<>(POOL_SIZE);
     private static final long PRESIGN_URL_MAX_EXPIRATION_SECONDS = 60 * 60 * 24 * 7;
     private static final String HASHED_EMPTY_PAYLOAD = hexEncode(hash256(""));
 
@@ -29,12 +37,38 @@ public class S3SignerV4 extends S3Signer {
         "authorization"
     ));
 
+    // the signing key only changes when the date (once a day), service or secret key changes
+    private volatile SigningKey cachedSigningKey;
+
     public S3SignerV4(S3Config s3Config) {
         super(s3Config);
     }
 
     @Override
     public void sign(ClientRequest request, String resource, Map<String, String> parameters, Map<String, List<Object>> headers) {
+        signRequest(request, resource, parameters, headers);
+    }
+
+    /**
+     * Signs the request headers for a streaming (aws-chunked) payload and returns a signer for the payload chunks,
+     * which is seeded with the request signature. The caller is responsible for setting the
+     * <code>Content-Encoding</code>, <code>x-amz-decoded-content-length</code> and (encoded) content-length of the
+     * request before calling this method, since they are all part of the signature.
+     */
+    public S3ChunkSigner signStreaming(ClientRequest request, String resource, Map<String, String> parameters,
+                                       Map<String, List<Object>> headers) {
+        RestUtil.putSingle(headers, S3Constants.AMZ_CONTENT_SHA256, S3Constants.AMZ_STREAMING_PAYLOAD);
+        String seedSignature = signRequest(request, resource, parameters, headers);
+
+        String serviceType = getServiceType();
+        String date = RestUtil.getFirstAsString(headers, S3Constants.AMZ_DATE);
+        String shortDate = getShortDate(date);
+        return new S3ChunkSigner(this, getSigningKey(shortDate, serviceType), date,
+                getScope(shortDate, serviceType), seedSignature);
+    }
+
+    private String signRequest(ClientRequest request, String resource, Map<String, String> parameters,
+                               Map<String, List<Object>> headers) {
         // # Preparation, add x-amz-date and host headers
         String date;
         String serviceType = getServiceType();
@@ -42,22 +76,21 @@ public class S3SignerV4 extends S3Signer {
         String shortDate = getShortDate(date);
         addHeadersForV4(request.getURI(), date, headers);
 
+        // canonicalize headers once (used for both the canonical request and the authorization header)
+        SortedMap<String, String> canonicalizedHeaders = getCanonicalizedHeaders(headers, parameters);
+        String signedHeaders = getSignedHeaders(canonicalizedHeaders);
+
         // #1 Create a canonical request for Signature Version 4
-        String canonicalRequest = getCanonicalRequest(request.getMethod(), request.getURI(), parameters, headers, false);
+        // the payload is not hashed up front, unless the caller has specified its hash (i.e. a streaming payload)
+        String payloadHash = RestUtil.getFirstAsString(headers, S3Constants.AMZ_CONTENT_SHA256);
+        if (payloadHash == null) payloadHash = HASHED_EMPTY_PAYLOAD;
+        String canonicalRequest = getCanonicalRequest(request.getMethod(), request.getURI(), parameters,
+                canonicalizedHeaders, signedHeaders, payloadHash);
 
         // #2 Create a string to sign for Signature Version 4
         String stringToSign = getStringToSign(request.getMethod(), resource, parameters, headers, date, serviceType, canonicalRequest);
         log.debug("StringToSign: {}", stringToSign);
 
-        // Get signed headers
-        SortedMap<String, String> canonicalizedHeaders = getCanonicalizedHeaders(headers, parameters);
-        StringBuilder signedHeaders = new StringBuilder();
-        for (String name : canonicalizedHeaders.keySet()) {
-            if (signedHeaders.length() != 0)
-                signedHeaders.append(";");
-            signedHeaders.append(name);
-        }
-
         // #3 Calculate the signature for AWS Signature Version 4
         byte[] key = getSigningKey(shortDate, serviceType);
         String signature = getSignature(stringToSign, key);
@@ -68,6 +101,7 @@ public class S3SignerV4 extends S3Signer {
                 " Credential=" + s3Config.getIdentity() + "/" + shortDate +
                 "/" + S3Constants.AWS_DEFAULT_REGION + "/" + serviceType + "/" + S3Constants.AWS_V4_TERMINATOR +
                 ", SignedHeaders=" + signedHeaders + ", " + S3Constants.PARAM_SIGNATURE + "=" + signature);
+        return signature;
     }
 
     protected void addHeadersForV4(URI uri, String date, Map<String, List<Object>> headers) {
@@ -84,6 +118,17 @@ public class S3SignerV4 extends S3Signer {
     }
 
     protected String getCanonicalRequest(String method, URI uri, Map<String, String> parameters, Map<String, List<Object>> headers, Boolean isForPresignedUrl) {
+        SortedMap<String, String> canonicalizedHeaders = getCanonicalizedHeaders(headers, parameters);
+        return getCanonicalRequest(method, uri, parameters, canonicalizedHeaders, getSignedHeaders(canonicalizedHeaders),
+                isForPresignedUrl ? S3Constants.AMZ_UNSIGNED_PAYLOAD : HASHED_EMPTY_PAYLOAD);
+    }
+
+    /**
+     * Builds the canonical request in a single pass from headers that have already been canonicalized.
+     */
+    protected String getCanonicalRequest(String method, URI uri, Map<String, String> parameters,
+                                         SortedMap<String, String> canonicalizedHeaders, String signedHeaders,
+                                         String payloadHash) {
         /*
         CanonicalRequest =
             HTTPRequestMethod + '\n' +
@@ -102,68 +147,51 @@ public class S3SignerV4 extends S3Signer {
             SignedHeaders + '\n' +
             UNSIGNED-PAYLOAD
          */
-        StringBuilder canonicalRequest = new StringBuilder();
+        StringBuilder canonicalRequest = builderPool.poll();
+        if (canonicalRequest == null) canonicalRequest = new StringBuilder(1024);
+        canonicalRequest.setLength(0);
+
         canonicalRequest.append(method).append("\n");
         // Double-slash between endpoint and resource-path is escaped into "/%2F"
         // E.g. /s3-bucket//objectPrefix/testObject1 -> /s3-bucket/%2FobjectPrefix/testObject1
         // However authentication signature is build based on non-encoded double-slash value
-        if (uri != null) {
-            String uriString = uri.toString().replaceAll("%2F", "/");
-            try {
-                uri = new URI(uriString);
-            }
-            catch(URISyntaxException e) {
-                throw new RuntimeException("Invalid URI syntax", e);
-            }
-        }
         String resource = RestUtil.getEncodedPath(uri);
+        if (resource.contains("%2F")) resource = resource.replace("%2F", "/");
         canonicalRequest.append(resource).append("\n");
-        canonicalRequest.append(getCanonicalizedQueryString(parameters));
+        appendCanonicalizedQueryString(canonicalRequest, parameters);
 
-        SortedMap<String, String> canonicalizedHeaders = getCanonicalizedHeaders(headers, parameters);
-        StringBuilder signedHeaders = new StringBuilder();
-        for (String name : canonicalizedHeaders.keySet()) {
-            canonicalRequest.append(name).append(":").append(canonicalizedHeaders.get(name).trim());
-            canonicalRequest.append("\n");
-            if (signedHeaders.length() != 0)
-                signedHeaders.append(";");
-            signedHeaders.append(name);
+        for (Map.Entry<String, String> header : canonicalizedHeaders.entrySet()) {
+            canonicalRequest.append(header.getKey()).append(":").append(header.getValue().trim()).append("\n");
         }
         canonicalRequest.append("\n");
 
-        signedHeaders.append("\n");
-        canonicalRequest.append(signedHeaders);
+        canonicalRequest.append(signedHeaders).append("\n");
+        canonicalRequest.append(payloadHash);
 
-        if(isForPresignedUrl) {
-            canonicalRequest.append(S3Constants.AMZ_UNSIGNED_PAYLOAD);
-        }
-        else {
-            canonicalRequest.append(HASHED_EMPTY_PAYLOAD);
-        }
-        log.debug("CanonicalRequest: {}", canonicalRequest);
-        return canonicalRequest.toString();
+        String result = canonicalRequest.toString();
+        if (canonicalRequest.capacity() <= MAX_REUSED_BUILDER_CAPACITY) builderPool.offer(canonicalRequest);
+        log.debug("CanonicalRequest: {}", result);
+        return result;
     }
 
-    private String getCanonicalizedQueryString(Map<String, String> parameters) {
-        StringBuilder queryString = new StringBuilder();
-        if (parameters != null & parameters.size() != 0) {
-            SortedMap<String, String> sortedParameters = new TreeMap<String, String>();
-
-            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
-                sortedParameters.put(parameter.getKey(), RestUtil.urlEncode(parameter.getValue()));
-            }
-            StringBuilder sortedQueryString = new StringBuilder();
-            for (Map.Entry<String, String> parameter : sortedParameters.entrySet()) {
-                if (sortedQueryString != null && sortedQueryString.length() != 0)
-                    sortedQueryString.append("&");
-                sortedQueryString.append(parameter.getKey()).append("=");
-                if (parameter.getValue() != null)
-                    sortedQueryString.append(parameter.getValue());
+    private void appendCanonicalizedQueryString(StringBuilder queryString, Map<String, String> parameters) {
+        if (parameters != null && !parameters.isEmpty()) {
+            // sort names (without copying into a map); values are encoded as they are appended
+            String[] names = parameters.keySet().toArray(new String[0]);
+            if (!(parameters instanceof SortedMap && ((SortedMap<String, String>) parameters).comparator() == null))
+                Arrays.sort(names);
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) queryString.append("&");
+                queryString.append(names[i]).append("=");
+                String value = parameters.get(names[i]);
+                if (value != null) queryString.append(RestUtil.urlEncode(value));
             }
-            queryString.append(sortedQueryString).append("\n");
-        } else
-            queryString.append("\n");
-        return queryString.toString();
+        }
+        queryString.append("\n");
+    }
+
+    private String getSignedHeaders(SortedMap<String, String> canonicalizedHeaders) {
+        return String.join(";", canonicalizedHeaders.keySet());
     }
 
     @Override
@@ -185,17 +213,7 @@ public class S3SignerV4 extends S3Signer {
         StringBuilder stringToSign = new StringBuilder();
         stringToSign.append(S3Constants.AWS_HMAC_SHA256_ALGORITHM).append("\n");
         stringToSign.append(date).append("\n");
-
-        // convert date format
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT).withLocale(Locale.US);
-        try {
-            LocalDateTime dateTime = LocalDateTime.parse(date, formatter);
-            date = DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT_SHORT).withLocale(Locale.US).format(dateTime);
-        }
-        catch(DateTimeException e) {
-            throw new RuntimeException("invalid date header: " + date, e);
-        }
-        stringToSign.append(getScope(date, service)).append("\n");
+        stringToSign.append(getScope(getShortDate(date), service)).append("\n");
 
         // get hashedCanonicalRequest
         byte[] hash = hash256(canonicalRequest);
@@ -206,11 +224,21 @@ public class S3SignerV4 extends S3Signer {
     }
 
     protected byte[] getSigningKey(String date, String service) {
+        String secretKey = s3Config.getSecretKey();
+        SigningKey signingKey = cachedSigningKey;
+        if (signingKey == null || !signingKey.matches(date, service, secretKey)) {
+            signingKey = new SigningKey(date, service, secretKey, deriveSigningKey(date, service, secretKey));
+            cachedSigningKey = signingKey;
+        }
+        return signingKey.key;
+    }
+
+    private byte[] deriveSigningKey(String date, String service, String secretKey) {
         return hmac(S3Constants.HMAC_SHA_256,
                 hmac(S3Constants.HMAC_SHA_256,
                         hmac(S3Constants.HMAC_SHA_256,
                                 hmac(S3Constants.HMAC_SHA_256,
-                                        (S3Constants.AWS_V4 + s3Config.getSecretKey()).getBytes(StandardCharsets.UTF_8), date),
+                                        (S3Constants.AWS_V4 + secretKey).getBytes(StandardCharsets.UTF_8), date),
                                 S3Constants.AWS_DEFAULT_REGION),
                         service),
                 S3Constants.AWS_V4_TERMINATOR
@@ -233,10 +261,9 @@ public class S3SignerV4 extends S3Signer {
         }
 
         // convert date format
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(HEADER_DATE_FORMAT).withLocale(Locale.US);
         try {
-            LocalDateTime dateTime = LocalDateTime.parse(date, formatter);
-            return DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT).withLocale(Locale.US).format(dateTime);
+            LocalDateTime dateTime = LocalDateTime.parse(date, HEADER_DATE_FORMATTER);
+            return AMZ_DATE_FORMATTER.format(dateTime);
         }
         catch(DateTimeException e) {
             throw new RuntimeException("invalid date header: " + date, e);
@@ -246,10 +273,9 @@ public class S3SignerV4 extends S3Signer {
     protected String getShortDate(String date) {
         // Date must be consistent with timestamp, so extract it
         // from previous date time format instead of get current date
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT).withLocale(Locale.US);
         try {
-            LocalDateTime dateTime = LocalDateTime.parse(date, formatter);
-            return DateTimeFormatter.ofPattern(AMZ_DATE_FORMAT_SHORT).withLocale(Locale.US).format(dateTime);
+            LocalDateTime dateTime = LocalDateTime.parse(date, AMZ_DATE_FORMATTER);
+            return AMZ_DATE_FORMATTER_SHORT.format(dateTime);
         }
         catch(DateTimeException e) {
             throw new RuntimeException("invalid date: " + date, e);
@@ -317,12 +343,7 @@ public class S3SignerV4 extends S3Signer {
         String shortDate = getShortDate(date);
 
         SortedMap<String, String> canonicalizedHeaders = getCanonicalizedHeaders(headers, parameters);
-        StringBuilder signedHeaders = new StringBuilder();
-        for (String name : canonicalizedHeaders.keySet()) {
-            if (signedHeaders.length() != 0)
-                signedHeaders.append(";");
-            signedHeaders.append(name);
-        }
+        String signedHeaders = getSignedHeaders(canonicalizedHeaders);
 
         SortedMap<String, String> sortedParameters = new TreeMap();
         for (Map.Entry<String, String> parameter : parameters.entrySet()) {
@@ -336,11 +357,11 @@ public class S3SignerV4 extends S3Signer {
                 S3Constants.AWS_V4_TERMINATOR));
         sortedParameters.put("X-Amz-Date", date);
         sortedParameters.put("X-Amz-Expires", Long.toString(generateExpiration(request.getExpirationTime())));
-        sortedParameters.put("X-Amz-SignedHeaders", RestUtil.urlDecode(signedHeaders.toString()));
+        sortedParameters.put("X-Amz-SignedHeaders", RestUtil.urlDecode(signedHeaders));
 
         // #1 Create a canonical request for Signature Version 4
-        String canonicalRequest = getCanonicalRequest(method, uri, sortedParameters, headers, true);
-        log.debug("CanonicalRequest: {}", canonicalRequest);
+        String canonicalRequest = getCanonicalRequest(method, uri, sortedParameters, canonicalizedHeaders, signedHeaders,
+                S3Constants.AMZ_UNSIGNED_PAYLOAD);
 
         // #2 Create a string to sign for Signature Version 4
         String stringToSign = getStringToSign(method, resource, parameters, headers, date, serviceType, canonicalRequest);
@@ -380,4 +401,22 @@ public class S3SignerV4 extends S3Signer {
         }
         return expirationInSeconds;
     }
-}
\ No newline at end of file
+
+    private static class SigningKey {
+        final String date;
+        final String service;
+        final String secretKey;
+        final byte[] key;
+
+        SigningKey(String date, String service, String secretKey, byte[] key) {
+            this.date = date;
+            this.service = service;
+            this.secretKey = secretKey;
+            this.key = key;
+        }
+
+        boolean matches(String date, String service, String secretKey) {
+            return this.date.equals(date) && this.service.equals(service) && Objects.equals(this.secretKey, secretKey);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.lfu.LargeFileUpload;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs many {@link LargeFileUploader} and {@link LargeFileDownloader} transfers on shared thread pools, with global
+ * limits on the number of concurrent part requests and the number of bytes in flight, and an optional limit on
+ * concurrent part requests per endpoint host. Each transfer's own settings (threads, in-flight window, part size,
+ * tuning strategy) still apply within those limits.
+ * <p>
+ * Part slots are shared fairly: when a slot frees up, it goes to the waiting transfer with the fewest parts in
+ * flight (the one that has waited longest, if there is a tie). A part that is larger than the entire byte budget is
+ * only started when no other part is in flight.
+ * <p>
+ * At most {@link #setMaxActiveTransfers(int) maxActiveTransfers} transfers run at once; any others are queued until
+ * one finishes. Pools are created when the first transfer is submitted, so configure this instance before then.
+ * Always call {@link #shutdown()} when finished with a manager.
+ */
+public class TransferManager {
+    public static final int DEFAULT_MAX_CONCURRENT_PARTS = 32;
+    public static final int DEFAULT_MAX_ACTIVE_TRANSFERS = 64;
+
+    private int maxConcurrentParts = DEFAULT_MAX_CONCURRENT_PARTS;
+    private int maxActiveTransfers = DEFAULT_MAX_ACTIVE_TRANSFERS;
+    private int maxPartsPerHost = 0;
+    private long maxInFlightBytes = 0;
+
+    private ExecutorService transferExecutor;
+    private ExecutorService partExecutor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitsChanged = lock.newCondition();
+    private final List<Job> waitingJobs = new ArrayList<>();
+    private final Map<Object, Integer> partsPerHost = new HashMap<>();
+    private int partsInFlight;
+    private long bytesInFlight;
+    private long nextTicket;
+
+    /**
+     * Starts <code>uploader</code> in the background and returns a handle to wait for, pause or abort it. Part
+     * requests run on the shared part pool (unless the uploader has its own executor) and are subject to the limits
+     * of this manager. Progress is still available from the uploader (i.e. its progress listener).
+     */
+    public LargeFileUpload upload(LargeFileUploader uploader) {
+        start();
+        if (uploader.getExecutorService() == null) uploader.setExecutorService(partExecutor);
+        uploader.setTransferThrottle(createJob(getHostKey(uploader.getS3Client())));
+        return uploader.uploadAsync(transferExecutor);
+    }
+
+    /**
+     * Starts <code>downloader</code> in the background and returns a future that completes when the download is
+     * finished. Part requests run on the shared part pool (unless the downloader has its own executor) and are
+     * subject to the limits of this manager. Progress is still available from the downloader (i.e. its progress
+     * listener).
+     */
+    public CompletableFuture<Void> download(LargeFileDownloader downloader) {
+        start();
+        if (downloader.getExecutorService() == null) downloader.setExecutorService(partExecutor);
+        downloader.setTransferThrottle(createJob(getHostKey(downloader.getS3Client())));
+        return CompletableFuture.runAsync(downloader::download, transferExecutor);
+    }
+
+    /**
+     * Stops accepting transfers. Transfers that are queued or running will complete.
+     */
+    public synchronized void shutdown() {
+        if (transferExecutor != null) {
+            transferExecutor.shutdown();
+            // part requests are still submitted by running transfers, so only shut the part pool down after them
+            ExecutorService transfers = transferExecutor, parts = partExecutor;
+            Thread thread = new Thread(() -> {
+                try {
+                    while (!transfers.awaitTermination(1, TimeUnit.MINUTES)) ; // wait for transfers
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                parts.shutdown();
+            }, "transfer-manager-shutdown");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops all transfers immediately (interrupting any running threads). Transfers will fail and uploads will not
+     * be resumable.
+     */
+    public synchronized void shutdownNow() {
+        if (transferExecutor != null) {
+            transferExecutor.shutdownNow();
+            partExecutor.shutdownNow();
+        }
+    }
+
+    protected synchronized void start() {
+        if (transferExecutor == null) {
+            transferExecutor = Executors.newFixedThreadPool(maxActiveTransfers);
+            partExecutor = Executors.newFixedThreadPool(maxConcurrentParts);
+        } else if (transferExecutor.isShutdown()) {
+            throw new IllegalStateException("transfer manager is shut down");
+        }
+    }
+
+    // other client implementations are limited per client instance
+    private Object getHostKey(S3Client s3Client) {
+        if (s3Client instanceof S3JerseyClient) {
+            String host = ((S3JerseyClient) s3Client).getS3Config().getHost();
+            if (host != null) return host;
+        }
+        return s3Client;
+    }
+
+    Job createJob(Object hostKey) {
+        return new Job(hostKey);
+    }
+
+    /*
+     * the waiting job that should get the next permit: the one with the fewest parts in flight (ties go to the
+     * longest wait), skipping jobs whose host is at its limit
+     */
+    private Job getNextJob() {
+        Job next = null;
+        for (Job job : waitingJobs) {
+            if (maxPartsPerHost > 0 && partsPerHost.getOrDefault(job.hostKey, 0) >= maxPartsPerHost) continue;
+            if (next == null || job.partsInFlight < next.partsInFlight
+                    || (job.partsInFlight == next.partsInFlight && job.ticket < next.ticket)) next = job;
+        }
+        return next;
+    }
+
+    private boolean fits(long partSize) {
+        if (partsInFlight >= maxConcurrentParts) return false;
+        return maxInFlightBytes <= 0 || partsInFlight == 0 || bytesInFlight + partSize <= maxInFlightBytes;
+    }
+
+    class Job implements TransferThrottle {
+        private final Object hostKey;
+        private int partsInFlight;
+        private long ticket = -1; // place in line (kept between attempts until a permit is granted)
+
+        Job(Object hostKey) {
+            this.hostKey = hostKey;
+        }
+
+        @Override
+        public boolean tryAcquire(long partSize, long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                if (ticket < 0) ticket = nextTicket++;
+                waitingJobs.add(this);
+                try {
+                    while (getNextJob() != this || !fits(partSize)) {
+                        if (nanos <= 0) return false;
+                        nanos = permitsChanged.awaitNanos(nanos);
+                    }
+                    ticket = -1;
+                    partsInFlight++;
+                    TransferManager.this.partsInFlight++;
+                    bytesInFlight += partSize;
+                    partsPerHost.merge(hostKey, 1, Integer::sum);
+                    return true;
+                } finally {
+                    waitingJobs.remove(this);
+                    // another job may be next in line now
+                    permitsChanged.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void release(long partSize) {
+            lock.lock();
+            try {
+                partsInFlight--;
+                TransferManager.this.partsInFlight--;
+                bytesInFlight -= partSize;
+                partsPerHost.merge(hostKey, -1, Integer::sum);
+                permitsChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of part requests currently in flight across all transfers
+     */
+    public int getPartsInFlight() {
+        lock.lock();
+        try {
+            return partsInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes in parts currently in flight across all transfers
+     */
+    public long getBytesInFlight() {
+        lock.lock();
+        try {
+            return bytesInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxConcurrentParts() {
+        return maxConcurrentParts;
+    }
+
+    /**
+     * Sets the maximum number of part requests in flight across all transfers. This is also the size of the shared
+     * part thread pool. Default is {@link #DEFAULT_MAX_CONCURRENT_PARTS}
+     */
+    public synchronized void setMaxConcurrentParts(int maxConcurrentParts) {
+        if (maxConcurrentParts <= 0) throw new IllegalArgumentException("maxConcurrentParts must be positive");
+        if (transferExecutor != null) throw new IllegalStateException("transfers have already started");
+        this.maxConcurrentParts = maxConcurrentParts;
+    }
+
+    public int getMaxActiveTransfers() {
+        return maxActiveTransfers;
+    }
+
+    /**
+     * Sets the maximum number of transfers that run at once (others are queued). Each running transfer uses one
+     * thread to read its source or write its target and submit parts. Default is
+     * {@link #DEFAULT_MAX_ACTIVE_TRANSFERS}
+     */
+    public synchronized void setMaxActiveTransfers(int maxActiveTransfers) {
+        if (maxActiveTransfers <= 0) throw new IllegalArgumentException("maxActiveTransfers must be positive");
+        if (transferExecutor != null) throw new IllegalStateException("transfers have already started");
+        this.maxActiveTransfers = maxActiveTransfers;
+    }
+
+    public int getMaxPartsPerHost() {
+        return maxPartsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of part requests in flight to any one endpoint host (the first host configured for
+     * the transfer's {@link S3JerseyClient}). With the smart-client, requests are balanced across the nodes of the
+     * target, so this effectively limits each target cluster. Default is 0 (no limit)
+     */
+    public void setMaxPartsPerHost(int maxPartsPerHost) {
+        lock.lock();
+        try {
+            this.maxPartsPerHost = maxPartsPerHost;
+            permitsChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes (the sum of the sizes of all parts) in flight across all transfers. Note that
+     * buffered parts (i.e. stream downloads or uploads with buffered stream parts) occupy this much memory. Default is
+     * 0 (no limit)
+     */
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        lock.lock();
+        try {
+            this.maxInFlightBytes = maxInFlightBytes;
+            permitsChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @see #setMaxConcurrentParts(int)
+     */
+    public TransferManager withMaxConcurrentParts(int maxConcurrentParts) {
+        setMaxConcurrentParts(maxConcurrentParts);
+        return this;
+    }
+
+    /**
+     * @see #setMaxActiveTransfers(int)
+     */
+    public TransferManager withMaxActiveTransfers(int maxActiveTransfers) {
+        setMaxActiveTransfers(maxActiveTransfers);
+        return this;
+    }
+
+    /**
+     * @see #setMaxPartsPerHost(int)
+     */
+    public TransferManager withMaxPartsPerHost(int maxPartsPerHost) {
+        setMaxPartsPerHost(maxPartsPerHost);
+        return this;
+    }
+
+    /**
+     * @see #setMaxInFlightBytes(long)
+     */
+    public TransferManager withMaxInFlightBytes(long maxInFlightBytes) {
+        setMaxInFlightBytes(maxInFlightBytes);
+        return this;
+    }
+}
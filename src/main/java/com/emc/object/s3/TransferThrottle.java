@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the part requests of a transfer ({@link LargeFileUploader} or {@link LargeFileDownloader}) beyond the
+ * transfer's own thread count and in-flight window, i.e. to share a global budget between many transfers (see
+ * {@link TransferManager}). A transfer acquires a permit for each part before the part is started and releases it
+ * when the part request completes.
+ */
+public interface TransferThrottle {
+    /**
+     * Waits up to <code>timeout</code> for a permit to transfer a part of <code>partSize</code> bytes. Returns true if
+     * the permit was acquired, or false if the time elapsed first (a zero timeout will not wait at all).
+     */
+    boolean tryAcquire(long partSize, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Releases a permit acquired for a part of <code>partSize</code> bytes.
+     */
+    void release(long partSize);
+}
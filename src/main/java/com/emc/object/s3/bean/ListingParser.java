@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.bean;
+
+import com.emc.object.util.Iso8601DateTimeAdapter;
+import com.emc.object.util.RestUtil;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pull-parses list-objects, list-versions and query-objects responses, handing each object or version to a consumer
+ * as soon as its element is read, instead of unmarshalling the whole page through JAXB and then walking it again to
+ * url-decode keys.
+ * <p>
+ * Keys are decoded according to the <code>EncodingType</code> of the response, whether or not url encoding was
+ * requested (a server may ignore the request, or encode keys without being asked). That element may come at the end
+ * of the response, so items are held back until the encoding type is known, and are decoded (if necessary) before
+ * they are handed over. If no consumer is given, items are collected into the result as usual. The header fields of
+ * the result (name, prefix, markers, etc.) are decoded once the whole response is read.
+ * <p>
+ * The parser factory is kept per thread, since factories are not guaranteed to be thread-safe.
+ */
+public final class ListingParser {
+    private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+
+    private ListingParser() {
+    }
+
+    /**
+     * Parses a list-objects response. If <code>consumer</code> is not null, each object is passed to it and not
+     * added to the result.
+     */
+    public static ListObjectsResult parseObjects(InputStream in, Consumer<? super S3Object> consumer) {
+        ListObjectsResult result = new ListObjectsResult();
+        List<CommonPrefix> prefixes = new ArrayList<>();
+        Handoff<S3Object> objects = new Handoff<>(consumer != null ? consumer : result.getObjects()::add,
+                object -> object.setKey(RestUtil.urlDecode(object.getKey(), false)));
+        Handoff<CommonPrefix> commonPrefixes = new Handoff<>(prefixes::add,
+                prefix -> prefix.setPrefix(RestUtil.urlDecode(prefix.getPrefix(), false)));
+        XMLStreamReader reader = createReader(in);
+        try {
+            reader.nextTag(); // ListBucketResult
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "Name":
+                        result.setBucketName(reader.getElementText());
+                        break;
+                    case "Prefix":
+                        result.setPrefix(reader.getElementText());
+                        break;
+                    case "Delimiter":
+                        result.setDelimiter(reader.getElementText());
+                        break;
+                    case "MaxKeys":
+                        result.setMaxKeys(Integer.valueOf(reader.getElementText().trim()));
+                        break;
+                    case "EncodingType":
+                        result.setEncodingType(parseEncodingType(reader.getElementText()));
+                        objects.encodingKnown(result.getEncodingType() == EncodingType.url);
+                        commonPrefixes.encodingKnown(result.getEncodingType() == EncodingType.url);
+                        break;
+                    case "Marker":
+                        result.setMarker(reader.getElementText());
+                        break;
+                    case "NextMarker":
+                        result.setNextMarker(reader.getElementText());
+                        break;
+                    case "IsTruncated":
+                        result.setTruncated(Boolean.parseBoolean(reader.getElementText().trim()));
+                        break;
+                    case "Contents":
+                        objects.accept(parseObject(reader));
+                        break;
+                    case "CommonPrefixes":
+                        commonPrefixes.accept(parseCommonPrefix(reader));
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("could not parse list-objects response", e);
+        } finally {
+            closeReader(reader);
+        }
+        // no EncodingType in the response means nothing was encoded
+        objects.encodingKnown(false);
+        commonPrefixes.encodingKnown(false);
+        result.set_commonPrefixes(prefixes);
+
+        if (result.getEncodingType() == EncodingType.url) {
+            result.setBucketName(RestUtil.urlDecode(result.getBucketName(), false));
+            result.setPrefix(RestUtil.urlDecode(result.getPrefix(), false));
+            result.setDelimiter(RestUtil.urlDecode(result.getDelimiter(), false));
+            result.setMarker(RestUtil.urlDecode(result.getMarker(), false));
+            result.setNextMarker(RestUtil.urlDecode(result.getNextMarker(), false));
+        }
+        return result;
+    }
+
+    /**
+     * Parses a list-versions response. If <code>consumer</code> is not null, each version (or delete marker) is
+     * passed to it and not added to the result.
+     */
+    public static ListVersionsResult parseVersions(InputStream in, Consumer<? super AbstractVersion> consumer) {
+        ListVersionsResult result = new ListVersionsResult();
+        List<CommonPrefix> prefixes = new ArrayList<>();
+        Handoff<AbstractVersion> versions = new Handoff<>(consumer != null ? consumer : result.getVersions()::add,
+                version -> version.setKey(RestUtil.urlDecode(version.getKey(), false)));
+        Handoff<CommonPrefix> commonPrefixes = new Handoff<>(prefixes::add,
+                prefix -> prefix.setPrefix(RestUtil.urlDecode(prefix.getPrefix(), false)));
+        XMLStreamReader reader = createReader(in);
+        try {
+            reader.nextTag(); // ListVersionsResult
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "Name":
+                        result.setBucketName(reader.getElementText());
+                        break;
+                    case "Prefix":
+                        result.setPrefix(reader.getElementText());
+                        break;
+                    case "Delimiter":
+                        result.setDelimiter(reader.getElementText());
+                        break;
+                    case "MaxKeys":
+                        result.setMaxKeys(Integer.valueOf(reader.getElementText().trim()));
+                        break;
+                    case "EncodingType":
+                        result.setEncodingType(parseEncodingType(reader.getElementText()));
+                        versions.encodingKnown(result.getEncodingType() == EncodingType.url);
+                        commonPrefixes.encodingKnown(result.getEncodingType() == EncodingType.url);
+                        break;
+                    case "KeyMarker":
+                        result.setKeyMarker(reader.getElementText());
+                        break;
+                    case "VersionIdMarker":
+                        result.setVersionIdMarker(reader.getElementText());
+                        break;
+                    case "NextKeyMarker":
+                        result.setNextKeyMarker(reader.getElementText());
+                        break;
+                    case "NextVersionIdMarker":
+                        result.setNextVersionIdMarker(reader.getElementText());
+                        break;
+                    case "IsTruncated":
+                        result.setTruncated(Boolean.parseBoolean(reader.getElementText().trim()));
+                        break;
+                    case "Version":
+                    case "DeleteMarker":
+                        versions.accept(parseVersion(reader));
+                        break;
+                    case "CommonPrefixes":
+                        commonPrefixes.accept(parseCommonPrefix(reader));
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("could not parse list-versions response", e);
+        } finally {
+            closeReader(reader);
+        }
+        // no EncodingType in the response means nothing was encoded
+        versions.encodingKnown(false);
+        commonPrefixes.encodingKnown(false);
+        result.set_commonPrefixes(prefixes);
+
+        if (result.getEncodingType() == EncodingType.url) {
+            result.setBucketName(RestUtil.urlDecode(result.getBucketName(), false));
+            result.setPrefix(RestUtil.urlDecode(result.getPrefix(), false));
+            result.setDelimiter(RestUtil.urlDecode(result.getDelimiter(), false));
+            result.setKeyMarker(RestUtil.urlDecode(result.getKeyMarker(), false));
+            result.setNextKeyMarker(RestUtil.urlDecode(result.getNextKeyMarker(), false));
+        }
+        return result;
+    }
+
+    /**
+     * Parses a query-objects (metadata search) response.
+     */
+    public static QueryObjectsResult parseQuery(InputStream in) {
+        QueryObjectsResult result = new QueryObjectsResult();
+        XMLStreamReader reader = createReader(in);
+        try {
+            reader.nextTag(); // BucketQueryResult
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "Name":
+                        result.setBucketName(reader.getElementText());
+                        break;
+                    case "Marker":
+                        result.setMarker(reader.getElementText());
+                        break;
+                    case "NextMarker":
+                        result.setNextMarker(reader.getElementText());
+                        break;
+                    case "MaxKeys":
+                        result.setMaxKeys(Integer.valueOf(reader.getElementText().trim()));
+                        break;
+                    case "ObjectMatches":
+                        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            if ("object".equals(reader.getLocalName())) result.getObjects().add(parseQueryObject(reader));
+                            else skipElement(reader);
+                        }
+                        break;
+                    case "CommonPrefixMatches":
+                        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            if ("PrefixGroups".equals(reader.getLocalName()))
+                                result.getPrefixGroups().add(reader.getElementText());
+                            else skipElement(reader);
+                        }
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("could not parse query-objects response", e);
+        } finally {
+            closeReader(reader);
+        }
+        return result;
+    }
+
+    private static S3Object parseObject(XMLStreamReader reader) throws XMLStreamException {
+        S3Object object = new S3Object();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "Key":
+                    object.setKey(reader.getElementText());
+                    break;
+                case "LastModified":
+                    object.setLastModified(parseDate(reader.getElementText()));
+                    break;
+                case "ETag":
+                    object.setETag(reader.getElementText());
+                    break;
+                case "Size":
+                    object.setSize(Long.valueOf(reader.getElementText().trim()));
+                    break;
+                case "StorageClass":
+                    object.setStorageClass(parseStorageClass(reader.getElementText()));
+                    break;
+                case "Owner":
+                    object.setOwner(parseOwner(reader));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return object;
+    }
+
+    private static AbstractVersion parseVersion(XMLStreamReader reader) throws XMLStreamException {
+        Version version = null;
+        AbstractVersion abstractVersion;
+        if ("Version".equals(reader.getLocalName())) abstractVersion = version = new Version();
+        else abstractVersion = new DeleteMarker();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if (version != null && name.equals("ETag")) version.setETag(reader.getElementText());
+            else if (version != null && name.equals("Size")) version.setSize(Long.valueOf(reader.getElementText().trim()));
+            else if (version != null && name.equals("StorageClass"))
+                version.setStorageClass(parseStorageClass(reader.getElementText()));
+            else if (name.equals("Key"))
+                abstractVersion.setKey(reader.getElementText());
+            else if (name.equals("VersionId")) abstractVersion.setVersionId(reader.getElementText());
+            else if (name.equals("IsLatest")) abstractVersion.setLatest(Boolean.parseBoolean(reader.getElementText().trim()));
+            else if (name.equals("LastModified")) abstractVersion.setLastModified(parseDate(reader.getElementText()));
+            else if (name.equals("Owner")) abstractVersion.setOwner(parseOwner(reader));
+            else skipElement(reader);
+        }
+        return abstractVersion;
+    }
+
+    private static CommonPrefix parseCommonPrefix(XMLStreamReader reader) throws XMLStreamException {
+        CommonPrefix prefix = new CommonPrefix();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("Prefix".equals(reader.getLocalName()))
+                prefix.setPrefix(reader.getElementText());
+            else skipElement(reader);
+        }
+        return prefix;
+    }
+
+    private static QueryObject parseQueryObject(XMLStreamReader reader) throws XMLStreamException {
+        QueryObject object = new QueryObject();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if (name.equals("objectName")) object.setObjectName(reader.getElementText());
+            else if (name.equals("objectId")) object.setObjectId(reader.getElementText());
+            else if (name.equals("versionId")) object.setVersionId(reader.getElementText());
+            else if (name.equals("queryMds")) object.getQueryMds().add(parseQueryMetadata(reader));
+            else skipElement(reader);
+        }
+        return object;
+    }
+
+    private static QueryMetadata parseQueryMetadata(XMLStreamReader reader) throws XMLStreamException {
+        QueryMetadata metadata = new QueryMetadata();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("type".equals(reader.getLocalName())) {
+                metadata.setType(parseMetadataType(reader.getElementText()));
+            } else if ("mdMap".equals(reader.getLocalName())) {
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if (!"entry".equals(reader.getLocalName())) {
+                        skipElement(reader);
+                        continue;
+                    }
+                    String key = null, value = null;
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if ("key".equals(reader.getLocalName())) key = reader.getElementText();
+                        else if ("value".equals(reader.getLocalName())) value = reader.getElementText();
+                        else skipElement(reader);
+                    }
+                    metadata.getMdMap().put(key, value);
+                }
+            } else {
+                skipElement(reader);
+            }
+        }
+        return metadata;
+    }
+
+    private static CanonicalUser parseOwner(XMLStreamReader reader) throws XMLStreamException {
+        CanonicalUser owner = new CanonicalUser();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("ID".equals(reader.getLocalName())) owner.setId(reader.getElementText());
+            else if ("DisplayName".equals(reader.getLocalName())) owner.setDisplayName(reader.getElementText());
+            else skipElement(reader);
+        }
+        return owner;
+    }
+
+    // Instant handles the common forms (with or without millis); anything else goes through the JAXB adapter
+    static Date parseDate(String value) {
+        try {
+            return Date.from(Instant.parse(value.trim()));
+        } catch (DateTimeParseException e) {
+            try {
+                return new Iso8601DateTimeAdapter().unmarshal(value);
+            } catch (Exception e2) {
+                throw new RuntimeException("invalid date: " + value, e2);
+            }
+        }
+    }
+
+    // unknown values map to null, as with JAXB
+    private static StorageClass parseStorageClass(String value) {
+        try {
+            return StorageClass.valueOf(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static QueryMetadataType parseMetadataType(String value) {
+        try {
+            return QueryMetadataType.valueOf(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static EncodingType parseEncodingType(String value) {
+        try {
+            return EncodingType.valueOf(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream in) {
+        try {
+            return inputFactory.get().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("could not create XML reader", e);
+        }
+    }
+
+    private static void closeReader(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Hands parsed items to a sink, holding them back until the encoding type of the response is known, so keys are
+     * always decoded according to the response.
+     */
+    private static final class Handoff<T> {
+        private final Consumer<? super T> sink;
+        private final Consumer<T> decoder;
+        private List<T> held = new ArrayList<>(); // items read before the encoding type is known (null once it is known)
+        private boolean urlEncoded;
+
+        Handoff(Consumer<? super T> sink, Consumer<T> decoder) {
+            this.sink = sink;
+            this.decoder = decoder;
+        }
+
+        void accept(T item) {
+            if (held != null) {
+                held.add(item);
+            } else {
+                if (urlEncoded) decoder.accept(item);
+                sink.accept(item);
+            }
+        }
+
+        void encodingKnown(boolean urlEncoded) {
+            if (held == null) return;
+            this.urlEncoded = urlEncoded;
+            List<T> items = held;
+            held = null;
+            for (T item : items) {
+                accept(item);
+            }
+        }
+    }
+}
@@ -30,12 +30,14 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.adapters.XmlAdapter;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.math.BigDecimal;
 import java.util.*;
 
 @XmlType(propOrder = {"type", "mdMap"}, namespace = "")
 public class QueryMetadata {
     private QueryMetadataType type;
     private Map<String, String> mdMap = new TreeMap<String, String>();
+    private final Map<String, TypedValue> typedValues = new HashMap<String, TypedValue>();
 
     @XmlElement(name = "type")
     public QueryMetadataType getType() {
@@ -56,6 +58,53 @@ public class QueryMetadata {
         this.mdMap = mdMap;
     }
 
+    /**
+     * Returns the value of <code>key</code> converted to <code>datatype</code> (as a String, Long, BigDecimal or Date),
+     * or null if there is no such key. Converted values are cached, so each value is only parsed once.
+     */
+    public Object getTypedValue(String key, MetadataSearchDatatype datatype) {
+        String raw = mdMap.get(key);
+        if (raw == null) return null;
+        synchronized (typedValues) {
+            TypedValue typedValue = typedValues.get(key);
+            if (typedValue == null || typedValue.datatype != datatype || !typedValue.raw.equals(raw)) {
+                typedValue = new TypedValue(raw, datatype);
+                typedValues.put(key, typedValue);
+            }
+            return typedValue.value;
+        }
+    }
+
+    private static class TypedValue {
+        final String raw;
+        final MetadataSearchDatatype datatype;
+        final Object value;
+
+        TypedValue(String raw, MetadataSearchDatatype datatype) {
+            this.raw = raw;
+            this.datatype = datatype;
+            switch (datatype) {
+                case integer:
+                    value = Long.valueOf(raw.trim());
+                    break;
+                case decimal:
+                    value = new BigDecimal(raw.trim());
+                    break;
+                case datetime:
+                    value = parseDatetime(raw.trim());
+                    break;
+                default:
+                    value = raw;
+            }
+        }
+
+        // system dates (mtime, createtime) come back as epoch milliseconds; others may be ISO-8601
+        private static Date parseDatetime(String raw) {
+            if (!raw.isEmpty() && raw.chars().allMatch(Character::isDigit)) return new Date(Long.parseLong(raw));
+            return ListingParser.parseDate(raw);
+        }
+    }
+
     public static class MapAdapter extends XmlAdapter<FlatMap, Map<String, String>> {
         @Override
         public Map<String, String> unmarshal(FlatMap v) throws Exception {
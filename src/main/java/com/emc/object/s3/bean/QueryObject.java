@@ -29,10 +29,24 @@ package com.emc.object.s3.bean;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @XmlType(propOrder = {"objectName", "objectId", "versionId", "queryMds"}, namespace = "")
 public class QueryObject {
+    // system metadata names used in queries, mapped to the names used in results
+    private static final Map<String, String> SYSTEM_METADATA_NAMES = new HashMap<String, String>();
+
+    static {
+        SYSTEM_METADATA_NAMES.put("LastModified", "mtime");
+        SYSTEM_METADATA_NAMES.put("CreateTime", "createtime");
+        SYSTEM_METADATA_NAMES.put("Size", "size");
+        SYSTEM_METADATA_NAMES.put("Owner", "owner");
+        SYSTEM_METADATA_NAMES.put("ContentType", "ctype");
+        SYSTEM_METADATA_NAMES.put("Etag", "etag");
+    }
+
     private String objectName;
     private String objectId;
     private String versionId;
@@ -72,6 +86,41 @@ public class QueryObject {
         this.queryMds = queryMds;
     }
 
+    /**
+     * Returns the raw value of the named user or system metadata, or null if it is not in the result. System metadata
+     * may be named as in a query (i.e. <code>LastModified</code>) or as in the result (<code>mtime</code>), and
+     * <code>ObjectName</code> returns the object name.
+     */
+    public String getMetadataValue(String name) {
+        if ("ObjectName".equals(name)) return objectName;
+        QueryMetadata metadata = findMetadata(name);
+        return metadata == null ? null : metadata.getMdMap().get(resultName(metadata, name));
+    }
+
+    /**
+     * Returns the value of the named metadata converted to <code>datatype</code> (see
+     * {@link QueryMetadata#getTypedValue(String, MetadataSearchDatatype)}), or null if it is not in the result.
+     */
+    public Object getMetadataValue(String name, MetadataSearchDatatype datatype) {
+        if ("ObjectName".equals(name)) return objectName;
+        QueryMetadata metadata = findMetadata(name);
+        return metadata == null ? null : metadata.getTypedValue(resultName(metadata, name), datatype);
+    }
+
+    private QueryMetadata findMetadata(String name) {
+        for (QueryMetadata metadata : queryMds) {
+            if (resultName(metadata, name) != null) return metadata;
+        }
+        return null;
+    }
+
+    private String resultName(QueryMetadata metadata, String name) {
+        if (metadata.getMdMap().containsKey(name)) return name;
+        String systemName = SYSTEM_METADATA_NAMES.get(name);
+        if (systemName != null && metadata.getMdMap().containsKey(systemName)) return systemName;
+        return null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -42,6 +42,8 @@ public class QueryObjectsResult {
     private List<String> attributes = new ArrayList<String>();
     private String sorted;
     private boolean includeOlderVersions = false;
+    private String prefix;
+    private String delimiter;
     private List<String> prefixGroups = new ArrayList<String>();
 
     @XmlElement(name = "Name")
@@ -130,6 +132,24 @@ public class QueryObjectsResult {
 
     public void setIncludeOlderVersions(boolean includeOlderVersions) { this.includeOlderVersions = includeOlderVersions; }
 
+    @XmlTransient
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @XmlTransient
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
     @XmlElementWrapper(name = "CommonPrefixMatches")
     @XmlElement(name = "PrefixGroups")
     public List<String> getPrefixGroups() {
@@ -27,12 +27,15 @@
 package com.emc.object.s3.jersey;
 
 import com.emc.object.s3.*;
+import com.emc.object.util.JfrEvents;
 import com.emc.object.util.RestUtil;
+import com.emc.rest.smart.jersey.SizeOverrideWriter;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.filter.ClientFilter;
 
+import java.util.List;
 import java.util.Map;
 
 public class AuthorizationFilter extends ClientFilter {
@@ -56,19 +59,72 @@ public class AuthorizationFilter extends ClientFilter {
         }
         // if no identity is provided, this is an anonymous client
         if (s3Config.getIdentity() != null) {
+            Object event = JfrEvents.begin(JfrEvents.Type.SIGN);
             Map<String, String> parameters = RestUtil.getQueryParameterMap(request.getURI().getRawQuery());
 
+            String bucketName = (String) request.getProperties().get(S3Constants.PROPERTY_BUCKET_NAME);
             String resource = VHostUtil.getResourceString(s3Config,
                     (String) request.getProperties().get(RestUtil.PROPERTY_NAMESPACE),
-                    (String) request.getProperties().get(S3Constants.PROPERTY_BUCKET_NAME),
+                    bucketName,
                     RestUtil.getEncodedPath(request.getURI()));
 
-            signer.sign(request,
-                    resource,
-                    parameters,
-                    request.getHeaders());
+            boolean streaming = isStreamingPayload(request);
+            if (streaming) {
+                signStreaming(request, resource, parameters);
+            } else {
+                signer.sign(request,
+                        resource,
+                        parameters,
+                        request.getHeaders());
+            }
+            if (event != null) JfrEvents.commit(event, bucketName, request.getMethod(), request.getURI().getHost(), -1,
+                    signer.getClass().getSimpleName() + (streaming ? " (streaming)" : ""));
         }
 
         return getNext().handle(request);
     }
+
+    /**
+     * A streaming (chunk-signed) payload requires a v4 signer and a known content-length, and cannot be used when
+     * the entity is otherwise encoded or must be buffered to generate a Content-MD5.
+     */
+    protected boolean isStreamingPayload(ClientRequest request) {
+        if (!s3Config.isSignStreamingPayload() || !(signer instanceof S3SignerV4)) return false;
+
+        // we have already been here (this is a retry)
+        if (request.getHeaders().containsKey(S3Constants.AMZ_DECODED_CONTENT_LENGTH)) return true;
+
+        if (request.getEntity() == null) return false;
+        Long entitySize = SizeOverrideWriter.getEntitySize();
+        if (entitySize == null || entitySize <= 0) return false;
+
+        Boolean generateMd5 = (Boolean) request.getProperties().get(RestUtil.PROPERTY_GENERATE_CONTENT_MD5);
+        if (generateMd5 != null && generateMd5) return false;
+
+        for (String header : request.getHeaders().keySet()) {
+            if (RestUtil.HEADER_CONTENT_ENCODING.equalsIgnoreCase(header)) return false;
+        }
+        return true;
+    }
+
+    protected void signStreaming(ClientRequest request, String resource, Map<String, String> parameters) {
+        Map<String, List<Object>> headers = request.getHeaders();
+
+        long decodedLength;
+        String decodedLengthHeader = RestUtil.getFirstAsString(headers, S3Constants.AMZ_DECODED_CONTENT_LENGTH);
+        if (decodedLengthHeader != null) decodedLength = Long.parseLong(decodedLengthHeader);
+        else decodedLength = SizeOverrideWriter.getEntitySize();
+        long encodedLength = AwsChunkedOutputStream.getEncodedLength(decodedLength,
+                ChunkedSigningFilter.getChunkSize(s3Config));
+
+        RestUtil.putSingle(headers, S3Constants.AMZ_DECODED_CONTENT_LENGTH, decodedLength);
+        // NOTE: Jersey will drop the content-length if it finds a "Content-Encoding" header (the check is
+        // case-sensitive), so use the lowercase name here
+        RestUtil.putSingle(headers, RestUtil.HEADER_CONTENT_ENCODING.toLowerCase(), S3Constants.CONTENT_ENCODING_AWS_CHUNKED);
+        // the entity writer (and so the request) will use the encoded length
+        SizeOverrideWriter.setEntitySize(encodedLength);
+
+        S3ChunkSigner chunkSigner = ((S3SignerV4) signer).signStreaming(request, resource, parameters, headers);
+        request.getProperties().put(S3Constants.PROPERTY_CHUNK_SIGNER, chunkSigner);
+    }
 }
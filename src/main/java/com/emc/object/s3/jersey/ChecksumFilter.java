@@ -30,12 +30,10 @@ import com.emc.object.s3.*;
 import com.emc.object.util.*;
 import com.sun.jersey.api.client.*;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.xml.bind.DatatypeConverter;
-import java.io.ByteArrayOutputStream;
-import java.io.FilterOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
@@ -53,6 +51,9 @@ public class ChecksumFilter extends ClientFilter {
 
     @Override
     public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        // adapters are only installed for this pass (a retry will install new ones)
+        ClientRequestAdapter originalAdapter = request.getAdapter();
+        ContentMd5Adapter md5Adapter = null;
         try {
             ChecksumAdapter adapter = new ChecksumAdapter(request.getAdapter());
 
@@ -63,10 +64,17 @@ public class ChecksumFilter extends ClientFilter {
             }
 
             Boolean generateMd5 = (Boolean) request.getProperties().get(RestUtil.PROPERTY_GENERATE_CONTENT_MD5);
-            if (generateMd5 != null && generateMd5) {
-                // wrap stream to generate Content-MD5 header
-                ContentMd5Adapter md5Adapter = new ContentMd5Adapter(request.getAdapter());
-                request.setAdapter(md5Adapter);
+            // if Content-MD5 is already set (i.e. this is a retry), there's nothing to do
+            if (generateMd5 != null && generateMd5 && !request.getHeaders().containsKey(RestUtil.HEADER_CONTENT_MD5)) {
+                byte[] md5 = precomputeMd5(request);
+                if (md5 != null) {
+                    // entity can be read twice, so it will be streamed directly
+                    setContentMd5(request, md5);
+                } else {
+                    // wrap stream to generate Content-MD5 header
+                    md5Adapter = new ContentMd5Adapter(request.getAdapter(), s3Config.getContentMd5BufferSize());
+                    request.setAdapter(md5Adapter);
+                }
             }
 
             // execute request
@@ -98,6 +106,65 @@ public class ChecksumFilter extends ClientFilter {
             return response;
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("fatal: MD5 algorithm not found");
+        } catch (IOException e) {
+            throw new ClientHandlerException("could not calculate Content-MD5", e);
+        } finally {
+            if (md5Adapter != null) md5Adapter.dispose();
+            request.setAdapter(originalAdapter);
+        }
+    }
+
+    /**
+     * Calculates the MD5 of the entity if it is repeatable (byte[], File, a {@link RepeatableInputStream} or a stream
+     * that can be reset to its start).
+     * Returns null if the entity must be buffered to calculate its MD5.
+     */
+    protected byte[] precomputeMd5(ClientRequest request) throws IOException {
+        // the entity is encoded as it is written, so its MD5 cannot be known ahead of time
+        Boolean encode = (Boolean) request.getProperties().get(RestUtil.PROPERTY_ENCODE_ENTITY);
+        if (encode != null && encode) return null;
+
+        Object entity = request.getEntity();
+        if (entity instanceof byte[]) {
+            return DigestUtils.md5((byte[]) entity);
+        } else if (entity instanceof File) {
+            try (InputStream is = new FileInputStream((File) entity)) {
+                return DigestUtils.md5(is);
+            }
+        } else if (entity instanceof RepeatableInputStream) {
+            // read an independent copy of the entity, leaving the entity stream untouched
+            try (InputStream is = ((RepeatableInputStream) entity).getEntity().openStream()) {
+                return DigestUtils.md5(is);
+            }
+        } else if (entity instanceof FileChannelSegment || entity instanceof ByteArrayInputStream) {
+            // these streams can be reset to any marked position without buffering
+            InputStream is = (InputStream) entity;
+            is.mark(Integer.MAX_VALUE);
+            try {
+                return DigestUtils.md5(is);
+            } finally {
+                is.reset();
+            }
+        }
+        return null;
+    }
+
+    protected void setContentMd5(ClientRequest request, byte[] md5) {
+        request.getHeaders().putSingle(RestUtil.HEADER_CONTENT_MD5, DatatypeConverter.printBase64Binary(md5));
+
+        // need to re-sign request because Content-MD5 is included in the signature!
+        if (s3Config.getIdentity() != null) {
+            Map<String, String> parameters = RestUtil.getQueryParameterMap(request.getURI().getRawQuery());
+
+            String resource = VHostUtil.getResourceString(s3Config,
+                    (String) request.getProperties().get(RestUtil.PROPERTY_NAMESPACE),
+                    (String) request.getProperties().get(S3Constants.PROPERTY_BUCKET_NAME),
+                    RestUtil.getEncodedPath(request.getURI()));
+
+            signer.sign(request,
+                    resource,
+                    parameters,
+                    request.getHeaders());
         }
     }
 
@@ -125,13 +192,15 @@ public class ChecksumFilter extends ClientFilter {
     }
 
     private class ContentMd5Adapter extends AbstractClientRequestAdapter implements CloseEventListener {
+        int memoryThreshold;
         ClientRequest request;
         OutputStream finalStream;
         RunningChecksum checksum;
-        ByteArrayOutputStream buffer;
+        FileBackedOutputStream buffer;
 
-        ContentMd5Adapter(ClientRequestAdapter parent) {
+        ContentMd5Adapter(ClientRequestAdapter parent, int memoryThreshold) {
             super(parent);
+            this.memoryThreshold = memoryThreshold;
         }
 
         @Override
@@ -140,7 +209,7 @@ public class ChecksumFilter extends ClientFilter {
             finalStream = out;
             try {
                 checksum = new RunningChecksum(ChecksumAlgorithm.MD5);
-                buffer = new ByteArrayOutputStream();
+                buffer = new FileBackedOutputStream(memoryThreshold);
                 out = new CloseNotifyOutputStream(buffer, this);
                 out = new ChecksummedOutputStream(out, checksum);
                 return getAdapter().adapt(request, out); // don't break the chain
@@ -152,26 +221,14 @@ public class ChecksumFilter extends ClientFilter {
         @Override
         public void streamClosed(CloseNotifyOutputStream stream) throws IOException {
             // add Content-MD5 (before anything is written to the final stream)
-            request.getHeaders().putSingle(RestUtil.HEADER_CONTENT_MD5,
-                    DatatypeConverter.printBase64Binary(checksum.getByteValue()));
-
-            // need to re-sign request because Content-MD5 is included in the signature!
-            if (s3Config.getIdentity() != null) {
-                Map<String, String> parameters = RestUtil.getQueryParameterMap(request.getURI().getRawQuery());
-
-                String resource = VHostUtil.getResourceString(s3Config,
-                        (String) request.getProperties().get(RestUtil.PROPERTY_NAMESPACE),
-                        (String) request.getProperties().get(S3Constants.PROPERTY_BUCKET_NAME),
-                        RestUtil.getEncodedPath(request.getURI()));
-
-                signer.sign(request,
-                        resource,
-                        parameters,
-                        request.getHeaders());
-            }
+            setContentMd5(request, checksum.getByteValue());
 
             // write the complete buffered data
-            finalStream.write(buffer.toByteArray());
+            buffer.writeTo(finalStream);
+        }
+
+        void dispose() {
+            if (buffer != null) buffer.dispose();
         }
     }
 
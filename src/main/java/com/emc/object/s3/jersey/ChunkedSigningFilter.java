@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import com.emc.object.ObjectConfig;
+import com.emc.object.s3.AwsChunkedOutputStream;
+import com.emc.object.s3.S3ChunkSigner;
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.S3Constants;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the entity of a request that was signed for a streaming payload (see
+ * {@link AuthorizationFilter#isStreamingPayload(ClientRequest)}) in the aws-chunked format, signing each chunk as it
+ * is written. This filter must run after any filter that inspects the decoded entity stream (i.e.
+ * {@link ChecksumFilter}).
+ */
+public class ChunkedSigningFilter extends ClientFilter {
+    static int getChunkSize(S3Config s3Config) {
+        int chunkSize = s3Config.getChunkedEncodingSize();
+        return chunkSize > 0 ? chunkSize : ObjectConfig.DEFAULT_CHUNKED_ENCODING_SIZE;
+    }
+
+    private S3Config s3Config;
+
+    public ChunkedSigningFilter(S3Config s3Config) {
+        this.s3Config = s3Config;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        S3ChunkSigner chunkSigner = (S3ChunkSigner) request.getProperties().get(S3Constants.PROPERTY_CHUNK_SIGNER);
+        if (chunkSigner == null) return getNext().handle(request);
+
+        // the adapter is replaced on every pass, so a retry does not encode the entity twice
+        ClientRequestAdapter adapter = request.getAdapter();
+        request.setAdapter(new ChunkedSigningAdapter(adapter, chunkSigner, getChunkSize(s3Config)));
+        try {
+            return getNext().handle(request);
+        } finally {
+            request.setAdapter(adapter);
+        }
+    }
+
+    private static class ChunkedSigningAdapter extends AbstractClientRequestAdapter {
+        private S3ChunkSigner chunkSigner;
+        private int chunkSize;
+
+        ChunkedSigningAdapter(ClientRequestAdapter parent, S3ChunkSigner chunkSigner, int chunkSize) {
+            super(parent);
+            this.chunkSigner = chunkSigner;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public OutputStream adapt(ClientRequest request, OutputStream out) throws IOException {
+            out = new AwsChunkedOutputStream(out, chunkSigner, chunkSize);
+            return getAdapter().adapt(request, out); // don't break the chain
+        }
+    }
+}
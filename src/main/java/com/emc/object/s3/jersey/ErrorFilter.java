@@ -28,6 +28,7 @@ package com.emc.object.s3.jersey;
 
 import com.emc.object.s3.S3Constants;
 import com.emc.object.s3.S3Exception;
+import com.emc.object.util.JfrEvents;
 import com.emc.object.util.RestUtil;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
@@ -48,6 +49,10 @@ public class ErrorFilter extends ClientFilter {
     private static final Logger log = LoggerFactory.getLogger(ErrorFilter.class);
 
     public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        // we are (nearly) the last filter, so the host is final
+        Object event = request.getProperties().get(JfrEvents.PROPERTY_EVENT);
+        if (event != null) JfrEvents.setHost(event, request.getURI().getHost());
+
         ClientResponse response = getNext().handle(request);
 
         if (response.getStatus() > 299) {
@@ -65,8 +70,9 @@ public class ErrorFilter extends ClientFilter {
                     }
                 }
             }
+            S3Exception error;
             if (response.hasEntity()) {
-                throw parseErrorResponse(new InputStreamReader(response.getEntityInputStream()), response.getStatus());
+                error = parseErrorResponse(new InputStreamReader(response.getEntityInputStream()), response.getStatus());
             } else {
                 // No response entity.  Don't try to parse it.
                 try {
@@ -75,14 +81,34 @@ public class ErrorFilter extends ClientFilter {
                     log.warn("could not close response after error", t);
                 }
                 Response.StatusType st = response.getStatusInfo();
-                throw new S3Exception(st.getReasonPhrase(), st.getStatusCode(), guessStatus(st.getStatusCode()),
+                error = new S3Exception(st.getReasonPhrase(), st.getStatusCode(), guessStatus(st.getStatusCode()),
                         response.getHeaders().getFirst("x-amz-request-id"));
             }
+            error.setRetryAfter(parseRetryAfter(response.getHeaders().getFirst(RestUtil.HEADER_RETRY_AFTER)));
+            throw error;
         }
 
         return response;
     }
 
+    /**
+     * Parses a <code>Retry-After</code> header, which is either a number of seconds or an HTTP date, into a number of
+     * milliseconds to wait. Returns 0 if the header is missing or invalid.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) return 0;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                return Math.max(0, RestUtil.headerParse(retryAfter.trim()).getTime() - System.currentTimeMillis());
+            } catch (RuntimeException e2) {
+                log.debug("ignoring invalid Retry-After header: {}", retryAfter);
+                return 0;
+            }
+        }
+    }
+
     private String guessStatus(int statusCode) {
         switch (statusCode) {
             case 400:
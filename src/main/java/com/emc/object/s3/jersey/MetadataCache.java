@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, least-recently-used cache of HEAD results (object metadata and bucket existence) kept by an
+ * {@link S3JerseyClient} when {@link com.emc.object.s3.S3Config#setMetadataCacheSize(int) metadataCacheSize} is set.
+ * Positive entries live for {@link com.emc.object.s3.S3Config#setMetadataCacheTtl(int) metadataCacheTtl}; "not found"
+ * results are cached separately for
+ * {@link com.emc.object.s3.S3Config#setMetadataCacheNegativeTtl(int) metadataCacheNegativeTtl}. The client
+ * invalidates entries for any object it writes, copies or deletes, so a client always sees its own changes. Each
+ * invalidation also bumps a generation number, so a HEAD request that was already in flight cannot put stale
+ * metadata back into the cache.
+ * <p>
+ * The cache holds response headers; callers are given their own metadata (or bucket info) built from them.
+ */
+public class MetadataCache {
+    private static final int GENERATION_STRIPES = 64;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<String, Entry> entries;
+    // generation numbers by hash stripe, bumped by each invalidation (guarded by entries)
+    private final long[] generations = new long[GENERATION_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize     maximum number of entries
+     * @param ttl         lifetime of a positive entry in milliseconds
+     * @param negativeTtl lifetime of a "not found" entry in milliseconds (0 disables negative caching)
+     */
+    public MetadataCache(int maxSize, long ttl, long negativeTtl) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be > 0");
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MetadataCache.Entry> eldest) {
+                if (size() <= MetadataCache.this.maxSize) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    // bucket names cannot contain ':' or '/', so these keys cannot collide across namespaces or buckets
+    static String objectKey(String namespace, String bucketName, String key) {
+        return bucketKey(namespace, bucketName) + key;
+    }
+
+    static String bucketKey(String namespace, String bucketName) {
+        return (namespace == null ? "" : namespace) + ":" + bucketName + "/";
+    }
+
+    /**
+     * Returns a case-insensitive copy of response headers, suitable for caching.
+     */
+    static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+        }
+        return copy;
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Returns the current generation of <code>key</code>. Read this before sending the request whose result will be
+     * cached, and pass it to {@link #put(String, Object, long)}; if the key was invalidated in the meantime, the
+     * result is not cached.
+     */
+    long generation(String key) {
+        synchronized (entries) {
+            return generations[stripe(key)];
+        }
+    }
+
+    /**
+     * Returns the entry for <code>key</code>, or null if there is none. A stale positive entry is still returned so
+     * the caller can revalidate it (i.e. with If-None-Match); stale "not found" entries are dropped. Only fresh
+     * entries count as hits.
+     */
+    Entry get(String key) {
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !entry.isFresh(now) && entry.isNotFound()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || !entry.isFresh(now)) misses.increment();
+        else if (entry.isNotFound()) negativeHits.increment();
+        else hits.increment();
+        return entry;
+    }
+
+    void put(String key, Object value, long generation) {
+        if (ttlNanos <= 0) return;
+        put(key, new Entry(value, System.nanoTime() + ttlNanos), generation);
+    }
+
+    void putNotFound(String key, long generation) {
+        if (negativeTtlNanos <= 0) return;
+        put(key, new Entry(null, System.nanoTime() + negativeTtlNanos), generation);
+    }
+
+    private void put(String key, Entry entry, long generation) {
+        synchronized (entries) {
+            if (generations[stripe(key)] == generation) entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Re-arms a stale entry after the server confirmed it is unchanged.
+     */
+    void revalidated(String key, Entry entry, long generation) {
+        revalidations.increment();
+        put(key, entry.value, generation);
+    }
+
+    void invalidate(String key) {
+        synchronized (entries) {
+            generations[stripe(key)]++;
+            if (entries.remove(key) != null) invalidations.increment();
+        }
+    }
+
+    /**
+     * Drops the bucket entry and every object entry in the bucket.
+     */
+    void invalidateBucket(String namespace, String bucketName) {
+        String prefix = bucketKey(namespace, bucketName);
+        synchronized (entries) {
+            for (int i = 0; i < GENERATION_STRIPES; i++) generations[i]++;
+            for (Iterator<String> i = entries.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().startsWith(prefix)) {
+                    i.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            for (int i = 0; i < GENERATION_STRIPES; i++) generations[i]++;
+            entries.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from a fresh positive entry.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups answered from a fresh "not found" entry.
+     */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that went to the server (including revalidations).
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of stale entries the server confirmed were unchanged (304 Not Modified).
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped to stay within {@link #getMaxSize()}.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped because this client changed the object or bucket.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups answered without a server round-trip.
+     */
+    public double getHitRatio() {
+        long hits = getHits() + getNegativeHits(), total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataCache{" +
+                "size=" + getSize() +
+                ", maxSize=" + maxSize +
+                ", hits=" + getHits() +
+                ", negativeHits=" + getNegativeHits() +
+                ", misses=" + getMisses() +
+                ", revalidations=" + getRevalidations() +
+                ", evictions=" + getEvictions() +
+                ", invalidations=" + getInvalidations() +
+                '}';
+    }
+
+    static final class Entry {
+        final Object value;
+        final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isFresh(long now) {
+            return now - expires < 0;
+        }
+
+        boolean isNotFound() {
+            return value == null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import com.emc.object.ObjectRequest;
+import com.emc.object.s3.S3Exception;
+import com.emc.object.s3.request.AbstractBucketRequest;
+import com.emc.object.s3.request.S3ObjectRequest;
+import com.sun.jersey.api.client.AbstractClientRequestAdapter;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientRequestAdapter;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Records per-operation request metrics into a {@link MetricsRegistry}. This filter must be the first in the chain
+ * (added last), so its timing covers everything the client does, including retries. Its companion
+ * {@link WireFilter} must be the last in the chain (added first), where it sees the final host and marks when each
+ * attempt is actually sent. The difference between the two separates client-side time (signing, checksums, retry
+ * delays) from network and server time.
+ * <p>
+ * A request's latency ends when its response body is closed or fully read, so callers that never close a response
+ * stream will not have that request counted.
+ */
+public class MetricsFilter extends ClientFilter {
+    /**
+     * Request property holding the operation name (see {@link #getOperation(ObjectRequest)}).
+     */
+    public static final String PROP_OPERATION = "com.emc.object.metrics.operation";
+
+    static final String PROP_EXCHANGE = "com.emc.object.metrics.exchange";
+
+    private final MetricsRegistry registry;
+
+    public MetricsFilter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the operation name used to group metrics for a request, i.e. "GET object", "PUT bucket?versioning" or
+     * "GET service".
+     */
+    public static String getOperation(ObjectRequest request) {
+        StringBuilder operation = new StringBuilder(request.getMethod().name());
+        if (request instanceof S3ObjectRequest) operation.append(" object");
+        else if (request instanceof AbstractBucketRequest) operation.append(" bucket");
+        else operation.append(" service");
+        String subresource = request.getSubresource();
+        if (subresource != null && !subresource.isEmpty())
+            operation.append('?').append(subresource.split("[&=]", 2)[0]);
+        return operation.toString();
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        Object operationProperty = request.getProperties().get(PROP_OPERATION);
+        String operation = operationProperty != null ? operationProperty.toString() : request.getMethod();
+        final Exchange exchange = new Exchange();
+        request.getProperties().put(PROP_EXCHANGE, exchange);
+        if (request.getEntity() != null) request.setAdapter(new CountingAdapter(request.getAdapter(), exchange));
+
+        ClientResponse response;
+        try {
+            response = getNext().handle(request);
+        } catch (RuntimeException e) {
+            OperationMetrics metrics = registry.getMetrics(operation, exchange.host);
+            metrics.failed(getErrorCode(e), System.nanoTime() - exchange.start, exchange.bytesSent,
+                    getRetryCount(request));
+            throw e;
+        }
+
+        long headersReceived = System.nanoTime();
+        final OperationMetrics metrics = registry.getMetrics(operation, exchange.host);
+        metrics.responseReceived(exchange.firstSent == 0 ? -1 : exchange.firstSent - exchange.start,
+                exchange.lastSent == 0 ? -1 : headersReceived - exchange.lastSent, getRetryCount(request));
+
+        if ("HEAD".equals(request.getMethod()) || !response.hasEntity()) {
+            metrics.completed(headersReceived - exchange.start, exchange.bytesSent, 0);
+        } else {
+            response.setEntityInputStream(new FilterInputStream(response.getEntityInputStream()) {
+                private long received;
+                private boolean done;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) complete();
+                    else received++;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read < 0) complete();
+                    else received += read;
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        complete();
+                    }
+                }
+
+                private void complete() {
+                    if (done) return;
+                    done = true;
+                    metrics.completed(System.nanoTime() - exchange.start, exchange.bytesSent, received);
+                }
+            });
+        }
+        return response;
+    }
+
+    private int getRetryCount(ClientRequest request) {
+        Object retryCount = request.getProperties().get(RetryFilter.PROP_RETRY_COUNT);
+        return retryCount instanceof Integer ? (Integer) retryCount : 0;
+    }
+
+    private String getErrorCode(RuntimeException e) {
+        Throwable t = e instanceof ClientHandlerException && e.getCause() != null ? e.getCause() : e;
+        if (t instanceof S3Exception) {
+            S3Exception se = (S3Exception) t;
+            return se.getErrorCode() != null ? se.getErrorCode() : "HTTP " + se.getHttpCode();
+        }
+        return t.getClass().getSimpleName();
+    }
+
+    /**
+     * Marks when each attempt of a request reaches the wire, and which host it is sent to. Must be the last filter in
+     * the chain (added first).
+     */
+    public static class WireFilter extends ClientFilter {
+        @Override
+        public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+            Exchange exchange = (Exchange) request.getProperties().get(PROP_EXCHANGE);
+            if (exchange != null) {
+                exchange.host = request.getURI().getHost();
+                exchange.lastSent = System.nanoTime();
+                if (exchange.firstSent == 0) exchange.firstSent = exchange.lastSent;
+            }
+            return getNext().handle(request);
+        }
+    }
+
+    /**
+     * Timing for a single request as it passes through the filter chain (always on the calling thread).
+     */
+    static final class Exchange {
+        final long start = System.nanoTime();
+        volatile long firstSent;
+        volatile long lastSent;
+        volatile String host;
+        volatile long bytesSent;
+    }
+
+    private static class CountingAdapter extends AbstractClientRequestAdapter {
+        private final Exchange exchange;
+
+        CountingAdapter(ClientRequestAdapter parent, Exchange exchange) {
+            super(parent);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public OutputStream adapt(ClientRequest request, OutputStream out) throws IOException {
+            return new FilterOutputStream(getAdapter().adapt(request, out)) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    exchange.bytesSent++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    exchange.bytesSent += len;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import com.emc.object.s3.S3Config;
+import com.emc.rest.smart.Host;
+import com.emc.rest.smart.ecs.Vdc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link OperationMetrics} recorded by a client's {@link MetricsFilter}, one per operation type and host.
+ * Read them programmatically with {@link #getSnapshot()}, or call {@link #registerMBeans(String)} to publish each one
+ * as a JMX MBean named <code>com.emc.object:type=S3Client,name=&lt;name&gt;,operation=...,host=...</code>.
+ * <p>
+ * Only requests that reach the filter chain are recorded: callers that join a request already in flight (see
+ * {@link S3Config#setCoalesceReads(boolean)}) are not counted here, but by
+ * {@link RequestCoalescer#getCoalesced()}.
+ */
+public class MetricsRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    public static final String JMX_DOMAIN = "com.emc.object";
+
+    private static final String UNKNOWN_HOST = "unknown";
+
+    private final S3Config s3Config;
+    private final ConcurrentMap<String, OperationMetrics> metrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ObjectName> mBeanNames = new ConcurrentHashMap<>();
+    private volatile String jmxName;
+
+    public MetricsRegistry(S3Config s3Config) {
+        this.s3Config = s3Config;
+    }
+
+    OperationMetrics getMetrics(String operation, String host) {
+        if (host == null) host = UNKNOWN_HOST;
+        String key = operation + " " + host;
+        OperationMetrics operationMetrics = metrics.get(key);
+        if (operationMetrics == null) {
+            OperationMetrics created = new OperationMetrics(operation, host, findVdc(host));
+            operationMetrics = metrics.putIfAbsent(key, created);
+            if (operationMetrics == null) {
+                operationMetrics = created;
+                if (jmxName != null) register(key, created);
+            }
+        }
+        return operationMetrics;
+    }
+
+    private String findVdc(String host) {
+        if (s3Config == null || s3Config.getVdcs() == null) return null;
+        for (Vdc vdc : s3Config.getVdcs()) {
+            for (Host vdcHost : vdc.getHosts()) {
+                if (vdcHost.getName().equalsIgnoreCase(host)) return vdc.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the live metrics for every operation and host seen so far.
+     */
+    public List<OperationMetrics> getOperationMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /**
+     * Returns a point-in-time copy of the metrics for every operation and host seen so far.
+     */
+    public List<OperationMetrics.Snapshot> getSnapshot() {
+        List<OperationMetrics.Snapshot> snapshot = new ArrayList<>();
+        for (OperationMetrics operationMetrics : metrics.values()) {
+            snapshot.add(operationMetrics.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Publishes every {@link OperationMetrics} (including those created later) to the platform MBean server under
+     * <code>name</code>, which must be unique among the clients in this JVM.
+     */
+    public synchronized void registerMBeans(String name) {
+        if (jmxName != null) throw new IllegalStateException("MBeans are already registered as " + jmxName);
+        jmxName = name;
+        for (String key : metrics.keySet()) {
+            register(key, metrics.get(key));
+        }
+    }
+
+    /**
+     * Removes this registry's MBeans from the platform MBean server. Called when the client is destroyed.
+     */
+    public synchronized void unregisterMBeans() {
+        if (jmxName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : mBeanNames.values()) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("could not unregister MBean {}: {}", objectName, e.toString());
+            }
+        }
+        mBeanNames.clear();
+        jmxName = null;
+    }
+
+    // registration happens in the request path (for the first request of each operation and host), so a failure is
+    // logged rather than thrown; the metrics are still recorded and visible through getSnapshot()
+    private synchronized void register(String key, OperationMetrics operationMetrics) {
+        if (jmxName == null) return; // unregistered in the meantime
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=S3Client"
+                    + ",name=" + ObjectName.quote(jmxName)
+                    + ",operation=" + ObjectName.quote(operationMetrics.getOperation())
+                    + ",host=" + ObjectName.quote(operationMetrics.getHost()));
+            if (mBeanNames.putIfAbsent(key, objectName) == null)
+                ManagementFactory.getPlatformMBeanServer().registerMBean(operationMetrics, objectName);
+        } catch (JMException | RuntimeException e) {
+            mBeanNames.remove(key);
+            log.warn("could not register MBean for {}: {}", key, e.toString());
+        }
+    }
+
+    public String getJmxName() {
+        return jmxName;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics for one operation type (i.e. "GET object", "PUT bucket?versioning") against one host, as recorded by
+ * {@link MetricsFilter}. Three latencies are tracked for each request:
+ * <ul>
+ * <li><em>latency</em>: from entering the filter chain until the response body is closed (or the error is thrown),
+ * including retries</li>
+ * <li><em>time to first byte</em>: from sending the final attempt until its response headers arrive (network, server
+ * and connection-pool time)</li>
+ * <li><em>client time</em>: from entering the filter chain until the first attempt is sent (signing, checksums and
+ * other client-side filters)</li>
+ * </ul>
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String operation;
+    private final String host;
+    private final String vdc;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram clientTime = new LatencyHistogram();
+    private final ConcurrentMap<String, LongAdder> errorCodes = new ConcurrentHashMap<>();
+
+    public OperationMetrics(String operation, String host, String vdc) {
+        this.operation = operation;
+        this.host = host;
+        this.vdc = vdc;
+    }
+
+    void responseReceived(long clientNanos, long timeToFirstByteNanos, int retryCount) {
+        if (clientNanos >= 0) clientTime.record(clientNanos);
+        if (timeToFirstByteNanos >= 0) timeToFirstByte.record(timeToFirstByteNanos);
+        retries.add(retryCount);
+    }
+
+    void completed(long latencyNanos, long sent, long received) {
+        requests.increment();
+        latency.record(latencyNanos);
+        bytesSent.add(sent);
+        bytesReceived.add(received);
+    }
+
+    void failed(String errorCode, long latencyNanos, long sent, int retryCount) {
+        completed(latencyNanos, sent, 0);
+        errors.increment();
+        retries.add(retryCount);
+        errorCodes.computeIfAbsent(errorCode, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the name of the VDC the host belongs to, or null if it is not part of a configured VDC.
+     */
+    @Override
+    public String getVdc() {
+        return vdc;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public double getLatencyMean() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return latency.getPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return latency.getPercentile(99);
+    }
+
+    @Override
+    public long getLatencyP999() {
+        return latency.getPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMax() {
+        return latency.getMax();
+    }
+
+    @Override
+    public long getTimeToFirstByteP50() {
+        return timeToFirstByte.getPercentile(50);
+    }
+
+    @Override
+    public long getTimeToFirstByteP99() {
+        return timeToFirstByte.getPercentile(99);
+    }
+
+    @Override
+    public long getClientTimeP50() {
+        return clientTime.getPercentile(50);
+    }
+
+    @Override
+    public long getClientTimeP99() {
+        return clientTime.getPercentile(99);
+    }
+
+    /**
+     * Returns the number of failures by S3 error code (or HTTP status/exception type when there is no error code).
+     */
+    @Override
+    public Map<String, Long> getErrorCodes() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errorCodes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Returns a copy of the current values that will not change as more requests are recorded.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public LatencyHistogram getClientTime() {
+        return clientTime;
+    }
+
+    @Override
+    public String toString() {
+        return toString(this);
+    }
+
+    static String toString(OperationMetricsMBean metrics) {
+        return "OperationMetrics{" +
+                "operation='" + metrics.getOperation() + '\'' +
+                ", host='" + metrics.getHost() + '\'' +
+                ", vdc='" + metrics.getVdc() + '\'' +
+                ", requests=" + metrics.getRequests() +
+                ", errors=" + metrics.getErrors() +
+                ", retries=" + metrics.getRetries() +
+                ", bytesSent=" + metrics.getBytesSent() +
+                ", bytesReceived=" + metrics.getBytesReceived() +
+                ", latencyP50=" + metrics.getLatencyP50() +
+                ", latencyP99=" + metrics.getLatencyP99() +
+                ", latencyP999=" + metrics.getLatencyP999() +
+                ", timeToFirstByteP50=" + metrics.getTimeToFirstByteP50() +
+                ", clientTimeP50=" + metrics.getClientTimeP50() +
+                ", errorCodes=" + metrics.getErrorCodes() +
+                '}';
+    }
+
+    /**
+     * Immutable copy of an {@link OperationMetrics}.
+     */
+    public static final class Snapshot implements OperationMetricsMBean {
+        private final String operation, host, vdc;
+        private final long requests, errors, retries, bytesSent, bytesReceived;
+        private final double latencyMean;
+        private final long latencyP50, latencyP99, latencyP999, latencyMax;
+        private final long timeToFirstByteP50, timeToFirstByteP99, clientTimeP50, clientTimeP99;
+        private final Map<String, Long> errorCodes;
+
+        private Snapshot(OperationMetrics metrics) {
+            operation = metrics.getOperation();
+            host = metrics.getHost();
+            vdc = metrics.getVdc();
+            requests = metrics.getRequests();
+            errors = metrics.getErrors();
+            retries = metrics.getRetries();
+            bytesSent = metrics.getBytesSent();
+            bytesReceived = metrics.getBytesReceived();
+            latencyMean = metrics.getLatencyMean();
+            latencyP50 = metrics.getLatencyP50();
+            latencyP99 = metrics.getLatencyP99();
+            latencyP999 = metrics.getLatencyP999();
+            latencyMax = metrics.getLatencyMax();
+            timeToFirstByteP50 = metrics.getTimeToFirstByteP50();
+            timeToFirstByteP99 = metrics.getTimeToFirstByteP99();
+            clientTimeP50 = metrics.getClientTimeP50();
+            clientTimeP99 = metrics.getClientTimeP99();
+            errorCodes = Collections.unmodifiableMap(metrics.getErrorCodes());
+        }
+
+        @Override
+        public String getOperation() {
+            return operation;
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public String getVdc() {
+            return vdc;
+        }
+
+        @Override
+        public long getRequests() {
+            return requests;
+        }
+
+        @Override
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public long getRetries() {
+            return retries;
+        }
+
+        @Override
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        @Override
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public double getLatencyMean() {
+            return latencyMean;
+        }
+
+        @Override
+        public long getLatencyP50() {
+            return latencyP50;
+        }
+
+        @Override
+        public long getLatencyP99() {
+            return latencyP99;
+        }
+
+        @Override
+        public long getLatencyP999() {
+            return latencyP999;
+        }
+
+        @Override
+        public long getLatencyMax() {
+            return latencyMax;
+        }
+
+        @Override
+        public long getTimeToFirstByteP50() {
+            return timeToFirstByteP50;
+        }
+
+        @Override
+        public long getTimeToFirstByteP99() {
+            return timeToFirstByteP99;
+        }
+
+        @Override
+        public long getClientTimeP50() {
+            return clientTimeP50;
+        }
+
+        @Override
+        public long getClientTimeP99() {
+            return clientTimeP99;
+        }
+
+        @Override
+        public Map<String, Long> getErrorCodes() {
+            return errorCodes;
+        }
+
+        @Override
+        public String toString() {
+            return OperationMetrics.toString(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight call between concurrent callers that make the same idempotent read ("single-flight"). The
+ * first caller for a key runs the call; callers that arrive while it is running wait for, and receive, the same
+ * result (or exception). Used by {@link S3JerseyClient} when
+ * {@link com.emc.object.s3.S3Config#setCoalesceReads(boolean) coalesceReads} is enabled, to keep a stampede of
+ * identical GET/HEAD requests from reaching the server.
+ */
+public class RequestCoalescer {
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+    private final LongAccumulator maxFanOut = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Runs <code>call</code>, unless an identical call (same <code>key</code>) is already in flight, in which case
+     * this waits for that call and returns its result. The wait can be interrupted, in which case a
+     * <code>RuntimeException</code> is thrown (and the thread's interrupt status is kept); the call itself carries on
+     * for the other callers.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            existing.waiters.incrementAndGet();
+            coalesced.increment();
+            try {
+                return (T) existing.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting for a coalesced request", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        calls.increment();
+        try {
+            T result = call.get();
+            flights.remove(key, flight);
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            maxFanOut.accumulate(flight.waiters.get());
+        }
+    }
+
+    /**
+     * Records a response that was too large to share, so waiting callers had to send their own request.
+     */
+    void oversized() {
+        oversized.increment();
+    }
+
+    /**
+     * Returns the number of calls actually made.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of callers that joined a call already in flight instead of making their own.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of shared calls whose response body was too large to hand to the callers waiting on it.
+     */
+    public long getOversized() {
+        return oversized.sum();
+    }
+
+    /**
+     * Returns the largest number of callers that joined a single call.
+     */
+    public long getMaxFanOut() {
+        return maxFanOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{" +
+                "calls=" + getCalls() +
+                ", coalesced=" + getCoalesced() +
+                ", oversized=" + getOversized() +
+                ", maxFanOut=" + getMaxFanOut() +
+                '}';
+    }
+
+    private static final class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final AtomicInteger waiters = new AtomicInteger();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that limits retries to a fraction of all requests. Each new request deposits <code>ratio</code>
+ * tokens (up to <code>capacity</code>), and each retry withdraws one token; a retry is only allowed if a whole token
+ * is available. The bucket starts full, so a client can ride out a short burst of errors before the ratio applies.
+ * Thread-safe; one budget is shared by all requests of a client.
+ */
+public class RetryBudget {
+    public static final int DEFAULT_CAPACITY = 100;
+
+    // tokens are tracked in thousandths so the bucket can be updated with a single CAS
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    public RetryBudget(float ratio) {
+        this(ratio, DEFAULT_CAPACITY);
+    }
+
+    public RetryBudget(float ratio, int capacity) {
+        if (ratio <= 0) throw new IllegalArgumentException("ratio must be positive");
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.deposit = Math.max(1, Math.round(ratio * SCALE));
+        this.capacity = capacity * SCALE;
+        this.tokens = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Records a new (first-attempt) request, earning a fraction of a retry.
+     */
+    public void requestStarted() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= capacity) return;
+        } while (!tokens.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    /**
+     * Withdraws one retry from the budget, if available.
+     *
+     * @return true if the retry may proceed, false if the budget is spent
+     */
+    public boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) return false;
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * Returns the number of retries currently available.
+     */
+    public double getAvailableRetries() {
+        return tokens.get() / (double) SCALE;
+    }
+}
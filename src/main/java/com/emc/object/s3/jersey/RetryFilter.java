@@ -27,7 +27,10 @@
 package com.emc.object.s3.jersey;
 
 import com.emc.object.s3.S3Config;
+import com.emc.object.s3.S3Constants;
 import com.emc.object.s3.S3Exception;
+import com.emc.object.util.JfrEvents;
+import com.emc.object.util.RepeatableInputStream;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
@@ -35,10 +38,26 @@ import com.sun.jersey.api.client.filter.ClientFilter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Retries requests that fail with an IOException or a retriable HTTP status (429 and all 50x except 501).
+ * <p>
+ * byte[] and File entities are simply written again. A {@link RepeatableInputStream} entity is rewound, which reopens
+ * its source, so it can be retried at any size without buffering. Any other InputStream entity is marked before each
+ * attempt and reset for a retry, so it can only be retried if the stream supports mark/reset and no more than
+ * {@link S3Config#getRetryBufferSize() retryBufferSize} bytes were read.
+ * <p>
+ * Retry delays use decorrelated jitter: each delay is chosen at random between
+ * {@link S3Config#getInitialRetryDelay() initialRetryDelay} and 3 times the previous delay, capped at
+ * {@link S3Config#getMaxRetryDelay() maxRetryDelay}. When the server throttles a request (<code>SlowDown</code>,
+ * HTTP 429 or a <code>Retry-After</code> header), the delay never shrinks and is at least as long as the server asked
+ * for (within the cap). If a {@link S3Config#getRetryBudgetRatio() retry budget} is configured, it is shared by all
+ * requests through this filter (i.e. all requests of one client).
+ */
 public class RetryFilter extends ClientFilter {
 
     private static final Logger log = LoggerFactory.getLogger(RetryFilter.class);
@@ -46,20 +65,26 @@ public class RetryFilter extends ClientFilter {
     public static final String PROP_RETRY_COUNT = "com.emc.object.retryCount";
 
     private S3Config s3Config;
+    private RetryBudget retryBudget;
+    private RetryMetrics retryMetrics = new RetryMetrics();
 
     public RetryFilter(S3Config s3Config) {
         this.s3Config = s3Config;
+        if (s3Config.getRetryBudgetRatio() > 0) retryBudget = new RetryBudget(s3Config.getRetryBudgetRatio());
     }
 
     @Override
     public ClientResponse handle(ClientRequest clientRequest) throws ClientHandlerException {
         int retryCount = 0;
+        long retryDelay = 0;
         InputStream entityStream = null;
         if (clientRequest.getEntity() instanceof InputStream) entityStream = (InputStream) clientRequest.getEntity();
+        retryMetrics.requestStarted();
+        if (retryBudget != null) retryBudget.requestStarted();
         while (true) {
             try {
                 // if using an InputStream, mark the stream so we can rewind it in case of an error
-                if (entityStream != null && entityStream.markSupported())
+                if (entityStream != null && !(entityStream instanceof RepeatableInputStream) && entityStream.markSupported())
                     entityStream.mark(s3Config.getRetryBufferSize());
 
                 return getNext().handle(clientRequest);
@@ -69,43 +94,98 @@ public class RetryFilter extends ClientFilter {
                 // in this case, the exception was wrapped by Jersey
                 if (t instanceof ClientHandlerException) t = t.getCause();
 
+                S3Exception se = null;
                 if (t instanceof S3Exception) {
-                    S3Exception se = (S3Exception) t;
+                    se = (S3Exception) t;
 
-                    // retry all 50x errors except 501 (not implemented)
-                    if (se.getHttpCode() < 500 || se.getHttpCode() == 501) throw orig;
+                    // retry 429 (too many requests) and all 50x errors except 501 (not implemented)
+                    if (se.getHttpCode() != 429 && (se.getHttpCode() < 500 || se.getHttpCode() == 501)) throw orig;
 
                     // retry all IO exceptions
                 } else if (!(t instanceof IOException)) throw orig;
 
                 // only retry retryLimit times
-                if (++retryCount > s3Config.getRetryLimit()) throw orig;
+                if (++retryCount > s3Config.getRetryLimit()) {
+                    retryMetrics.retryLimitExceeded();
+                    throw orig;
+                }
 
                 // attempt to reset InputStream
                 if (entityStream != null) {
                     try {
-                        if (!entityStream.markSupported()) throw new IOException("stream does not support mark/reset");
-                        entityStream.reset();
+                        if (entityStream instanceof RepeatableInputStream) {
+                            ((RepeatableInputStream) entityStream).rewind();
+                        } else if (!entityStream.markSupported()) {
+                            throw new IOException("stream does not support mark/reset");
+                        } else entityStream.reset();
                     } catch (IOException e) {
                         log.warn("could not reset entity stream for retry: " + e);
                         throw orig;
                     }
                 }
 
+                // don't let retries exceed the budget
+                if (retryBudget != null && !retryBudget.tryAcquireRetry()) {
+                    log.warn("retry budget exhausted; not retrying [{}]", t.toString());
+                    retryMetrics.budgetExceeded();
+                    throw orig;
+                }
+
                 // wait for retry delay
-                if (s3Config.getInitialRetryDelay() > 0) {
-                    int retryDelay = s3Config.getInitialRetryDelay() * (int) Math.pow(2, retryCount - 1);
+                Object event = JfrEvents.begin(JfrEvents.Type.RETRY);
+                boolean throttled = isThrottled(se);
+                retryDelay = getRetryDelay(retryDelay, throttled, se == null ? 0 : se.getRetryAfter());
+                if (retryDelay > 0) {
                     try {
                         log.debug("waiting {}ms before retry", retryDelay);
                         Thread.sleep(retryDelay);
                     } catch (InterruptedException e) {
                         log.warn("interrupted while waiting to retry: " + e.getMessage());
+                        Thread.currentThread().interrupt();
+                        throw orig;
                     }
                 }
+                retryMetrics.retried(retryDelay, throttled);
+                if (event != null) JfrEvents.commit(event,
+                        (String) clientRequest.getProperties().get(S3Constants.PROPERTY_BUCKET_NAME),
+                        clientRequest.getMethod(), clientRequest.getURI().getHost(), -1,
+                        "retry " + retryCount + " after " + t);
 
                 log.info("error received in response [{}], retrying ({} of {})...", new Object[] { t, retryCount, s3Config.getRetryLimit() });
                 clientRequest.getProperties().put(PROP_RETRY_COUNT, retryCount);
             }
         }
     }
+
+    /**
+     * Returns the delay before the next retry, given the previous delay (0 for the first retry), whether the server
+     * throttled the request and how long it asked the client to wait (0 if it did not say).
+     */
+    long getRetryDelay(long previousDelay, boolean throttled, long retryAfter) {
+        long delay = 0;
+        long initialDelay = s3Config.getInitialRetryDelay();
+        if (initialDelay > 0) {
+            long upperBound = Math.max(initialDelay, previousDelay * 3);
+            delay = ThreadLocalRandom.current().nextLong(initialDelay, upperBound + 1);
+        }
+        if (throttled) delay = Math.max(delay, Math.max(previousDelay, retryAfter));
+        if (s3Config.getMaxRetryDelay() > 0) delay = Math.min(delay, s3Config.getMaxRetryDelay());
+        return delay;
+    }
+
+    private boolean isThrottled(S3Exception se) {
+        return se != null && (se.getHttpCode() == 429 || se.getRetryAfter() > 0
+                || S3Constants.ERROR_SLOW_DOWN.equals(se.getErrorCode()));
+    }
+
+    public RetryMetrics getRetryMetrics() {
+        return retryMetrics;
+    }
+
+    /**
+     * Returns the retry budget shared by all requests through this filter, or null if no budget is configured.
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a delay histogram for the retries made by a client's {@link RetryFilter}. Use these to tune
+ * {@link com.emc.object.s3.S3Config#setInitialRetryDelay(int) initialRetryDelay},
+ * {@link com.emc.object.s3.S3Config#setMaxRetryDelay(int) maxRetryDelay} and
+ * {@link com.emc.object.s3.S3Config#setRetryBudgetRatio(float) retryBudgetRatio}.
+ */
+public class RetryMetrics {
+    /**
+     * Upper bounds (inclusive, in milliseconds) of the delay histogram buckets. A final bucket counts anything longer.
+     */
+    public static final long[] DELAY_BUCKETS = {0, 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retryLimitExceeded = new LongAdder();
+    private final LongAdder budgetExceeded = new LongAdder();
+    private final LongAdder totalDelay = new LongAdder();
+    private final AtomicLongArray delayCounts = new AtomicLongArray(DELAY_BUCKETS.length + 1);
+
+    void requestStarted() {
+        requests.increment();
+    }
+
+    void retried(long delay, boolean wasThrottled) {
+        retries.increment();
+        if (wasThrottled) throttled.increment();
+        totalDelay.add(delay);
+        int bucket = 0;
+        while (bucket < DELAY_BUCKETS.length && delay > DELAY_BUCKETS[bucket]) bucket++;
+        delayCounts.incrementAndGet(bucket);
+    }
+
+    void retryLimitExceeded() {
+        retryLimitExceeded.increment();
+    }
+
+    void budgetExceeded() {
+        budgetExceeded.increment();
+    }
+
+    /**
+     * Returns the number of requests made (not counting retries).
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of retries made.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the number of retries made in response to throttling (<code>SlowDown</code>, HTTP 429 or a
+     * <code>Retry-After</code> header).
+     */
+    public long getThrottledRetries() {
+        return throttled.sum();
+    }
+
+    /**
+     * Returns the number of retriable failures that were not retried because the retry limit was reached.
+     */
+    public long getRetryLimitExceeded() {
+        return retryLimitExceeded.sum();
+    }
+
+    /**
+     * Returns the number of retriable failures that were not retried because the retry budget was spent.
+     */
+    public long getBudgetExceeded() {
+        return budgetExceeded.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting to retry, in milliseconds.
+     */
+    public long getTotalDelay() {
+        return totalDelay.sum();
+    }
+
+    /**
+     * Returns the number of retry delays that fell into each bucket of {@link #DELAY_BUCKETS}, plus one final bucket
+     * for longer delays.
+     */
+    public long[] getDelayHistogram() {
+        long[] counts = new long[delayCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = delayCounts.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        long[] counts = getDelayHistogram();
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) histogram.append(", ");
+            histogram.append(i < DELAY_BUCKETS.length ? "<=" + DELAY_BUCKETS[i] : ">" + DELAY_BUCKETS[i - 1])
+                    .append("ms=").append(counts[i]);
+        }
+        return "RetryMetrics{" +
+                "requests=" + getRequests() +
+                ", retries=" + getRetries() +
+                ", throttledRetries=" + getThrottledRetries() +
+                ", retryLimitExceeded=" + getRetryLimitExceeded() +
+                ", budgetExceeded=" + getBudgetExceeded() +
+                ", totalDelay=" + getTotalDelay() +
+                ", delayHistogram={" + histogram + "}" +
+                '}';
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.jersey;
+
+import com.emc.object.Protocol;
+import com.emc.object.Range;
+import com.emc.object.s3.S3AsyncClient;
+import com.emc.object.s3.S3Client;
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.S3ObjectMetadata;
+import com.emc.object.s3.bean.*;
+import com.emc.object.s3.request.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference implementation of S3AsyncClient.
+ * <p>
+ * Requests are executed by an {@link S3Client} (by default, an {@link S3JerseyClient}) on an {@link Executor}, so
+ * they share all of its configuration and filters. The Jersey client blocks while a request is in flight, so the
+ * executor determines how many requests can be in flight at once. On Java 21 and later, the default executor runs
+ * each request in a virtual thread, so any number of requests can be pending without dedicating a platform thread to
+ * each one. On earlier versions, the default executor is a fixed pool of
+ * {@link S3Config#setAsyncThreads(int) asyncThreads} daemon threads (default {@link S3Config#DEFAULT_ASYNC_THREADS}),
+ * so at most that many requests are in flight; the rest wait in the executor's queue. You can also supply your own
+ * executor. Because virtual threads are not reused, state that is expensive to create (i.e. the <code>Mac</code> and
+ * <code>MessageDigest</code> instances used to sign requests) is kept in shared pools rather than in thread-locals.
+ * <p>
+ * Note that Jersey 1 and the Apache HttpClient connector block inside <code>synchronized</code> sections (i.e. while
+ * waiting for a pooled connection), which pins a virtual thread to its carrier thread on JVMs before Java 24. When
+ * many virtual threads are pinned at once, the carrier pool (by default, one carrier per CPU) limits how many requests
+ * make progress, so keep the connection pool large enough for your concurrency.
+ * <p>
+ * Note that the number of concurrent connections is still limited by the connection pool of the underlying client
+ * (see the <code>http.maxConnections</code> note in {@link S3JerseyClient}); requests beyond that limit will wait
+ * for a connection.
+ */
+public class S3AsyncJerseyClient implements S3AsyncClient {
+    private static final Logger log = LoggerFactory.getLogger(S3AsyncJerseyClient.class);
+
+    private final S3Client s3Client;
+    private final Executor executor;
+    private final boolean ownResources;
+
+    /**
+     * Creates a new {@link S3JerseyClient} and a default executor, both of which are destroyed by
+     * {@link #destroy()}.
+     */
+    public S3AsyncJerseyClient(S3Config s3Config) {
+        this(new S3JerseyClient(s3Config), createDefaultExecutor(s3Config.getAsyncThreads()), true);
+    }
+
+    /**
+     * Executes requests with <code>s3Client</code> on <code>executor</code>. Neither of these will be destroyed by
+     * {@link #destroy()}.
+     */
+    public S3AsyncJerseyClient(S3Client s3Client, Executor executor) {
+        this(s3Client, executor, false);
+    }
+
+    private S3AsyncJerseyClient(S3Client s3Client, Executor executor, boolean ownResources) {
+        this.s3Client = s3Client;
+        this.executor = executor;
+        this.ownResources = ownResources;
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor when the JVM supports it, otherwise a pool of
+     * {@link S3Config#DEFAULT_ASYNC_THREADS} daemon threads.
+     */
+    public static ExecutorService createDefaultExecutor() {
+        return createDefaultExecutor(S3Config.DEFAULT_ASYNC_THREADS);
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor when the JVM supports it, otherwise a pool of <code>maxThreads</code>
+     * daemon threads with an unbounded queue (idle threads time out, so an idle pool holds no threads).
+     */
+    public static ExecutorService createDefaultExecutor(int maxThreads) {
+        if (maxThreads <= 0) throw new IllegalArgumentException("maxThreads must be > 0");
+        try {
+            // Java 21+ (this library is compiled for Java 8, so look it up at runtime)
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.debug("virtual threads are not available; using a pool of {} threads", maxThreads);
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "s3-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    @Override
+    public void destroy() {
+        if (ownResources) {
+            if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdown();
+            s3Client.destroy();
+        }
+    }
+
+    @Override
+    public S3Client getS3Client() {
+        return s3Client;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public CompletableFuture<ListDataNode> listDataNodes() {
+        return CompletableFuture.supplyAsync(() -> s3Client.listDataNodes(), executor);
+    }
+
+    @Override
+    public CompletableFuture<PingResponse> pingNode(String host) {
+        return CompletableFuture.supplyAsync(() -> s3Client.pingNode(host), executor);
+    }
+
+    @Override
+    public CompletableFuture<PingResponse> pingNode(Protocol protocol, String host, int port) {
+        return CompletableFuture.supplyAsync(() -> s3Client.pingNode(protocol, host, port), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListBucketsResult> listBuckets() {
+        return CompletableFuture.supplyAsync(() -> s3Client.listBuckets(), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListBucketsResult> listBuckets(ListBucketsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listBuckets(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> bucketExists(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.bucketExists(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> createBucket(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.createBucket(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> createBucket(CreateBucketRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.createBucket(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<BucketInfo> getBucketInfo(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketInfo(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBucket(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteBucket(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketAcl(String bucketName, AccessControlList acl) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketAcl(bucketName, acl), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketAcl(String bucketName, CannedAcl cannedAcl) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketAcl(bucketName, cannedAcl), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketAcl(SetBucketAclRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketAcl(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<AccessControlList> getBucketAcl(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketAcl(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketCors(String bucketName, CorsConfiguration corsConfiguration) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketCors(bucketName, corsConfiguration), executor);
+    }
+
+    @Override
+    public CompletableFuture<CorsConfiguration> getBucketCors(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketCors(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBucketCors(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteBucketCors(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketLifecycle(String bucketName, LifecycleConfiguration lifecycleConfiguration) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketLifecycle(bucketName, lifecycleConfiguration), executor);
+    }
+
+    @Override
+    public CompletableFuture<LifecycleConfiguration> getBucketLifecycle(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketLifecycle(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBucketLifecycle(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteBucketLifecycle(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketPolicy(String bucketName, BucketPolicy policy) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketPolicy(bucketName, policy), executor);
+    }
+
+    @Override
+    public CompletableFuture<BucketPolicy> getBucketPolicy(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketPolicy(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBucketPolicy(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteBucketPolicy(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<LocationConstraint> getBucketLocation(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketLocation(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketVersioning(String bucketName, VersioningConfiguration versioningConfiguration) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketVersioning(bucketName, versioningConfiguration), executor);
+    }
+
+    @Override
+    public CompletableFuture<VersioningConfiguration> getBucketVersioning(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getBucketVersioning(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBucketStaleReadAllowed(String bucketName, boolean staleReadsAllowed) {
+        return CompletableFuture.runAsync(() -> s3Client.setBucketStaleReadAllowed(bucketName, staleReadsAllowed), executor);
+    }
+
+    @Override
+    public CompletableFuture<MetadataSearchList> listSystemMetadataSearchKeys() {
+        return CompletableFuture.supplyAsync(() -> s3Client.listSystemMetadataSearchKeys(), executor);
+    }
+
+    @Override
+    public CompletableFuture<MetadataSearchList> listBucketMetadataSearchKeys(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listBucketMetadataSearchKeys(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<QueryObjectsResult> queryObjects(QueryObjectsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.queryObjects(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<QueryObjectsResult> queryMoreObjects(QueryObjectsResult lastResult) {
+        return CompletableFuture.supplyAsync(() -> s3Client.queryMoreObjects(lastResult), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsResult> listObjects(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listObjects(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsResult> listObjects(String bucketName, String prefix) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listObjects(bucketName, prefix), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsResult> listObjects(ListObjectsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listObjects(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsResult> listMoreObjects(ListObjectsResult lastResult) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listMoreObjects(lastResult), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListVersionsResult> listVersions(String bucketName, String prefix) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listVersions(bucketName, prefix), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListVersionsResult> listVersions(ListVersionsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listVersions(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListVersionsResult> listMoreVersions(ListVersionsResult lastResult) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listMoreVersions(lastResult), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putObject(String bucketName, String key, Object content, String contentType) {
+        return CompletableFuture.runAsync(() -> s3Client.putObject(bucketName, key, content, contentType), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putObject(String bucketName, String key, Range range, Object content) {
+        return CompletableFuture.runAsync(() -> s3Client.putObject(bucketName, key, range, content), executor);
+    }
+
+    @Override
+    public CompletableFuture<PutObjectResult> putObject(PutObjectRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.putObject(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> appendObject(String bucketName, String key, Object content) {
+        return CompletableFuture.supplyAsync(() -> s3Client.appendObject(bucketName, key, content), executor);
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResult> copyObject(String sourceBucketName, String sourceKey, String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.copyObject(sourceBucketName, sourceKey, bucketName, key), executor);
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResult> copyObject(CopyObjectRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.copyObject(request), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> readObject(String bucketName, String key, Class<T> objectType) {
+        return CompletableFuture.supplyAsync(() -> s3Client.readObject(bucketName, key, objectType), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> readObject(String bucketName, String key, String versionId, Class<T> objectType) {
+        return CompletableFuture.supplyAsync(() -> s3Client.readObject(bucketName, key, versionId, objectType), executor);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> readObjectStream(String bucketName, String key, Range range) {
+        return CompletableFuture.supplyAsync(() -> s3Client.readObjectStream(bucketName, key, range), executor);
+    }
+
+    @Override
+    public CompletableFuture<GetObjectResult<InputStream>> getObject(String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObject(bucketName, key), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<GetObjectResult<T>> getObject(GetObjectRequest<?> request, Class<T> objectType) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObject(request, objectType), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteObject(String bucketName, String key) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteObject(bucketName, key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteObject(DeleteObjectRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteObject(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteVersion(String bucketName, String key, String versionId) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteVersion(bucketName, key, versionId), executor);
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectsResult> deleteObjects(DeleteObjectsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.deleteObjects(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectMetadata(String bucketName, String key, S3ObjectMetadata objectMetadata) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectMetadata(bucketName, key, objectMetadata), executor);
+    }
+
+    @Override
+    public CompletableFuture<S3ObjectMetadata> getObjectMetadata(String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectMetadata(bucketName, key), executor);
+    }
+
+    @Override
+    public CompletableFuture<S3ObjectMetadata> getObjectMetadata(GetObjectMetadataRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectMetadata(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectAcl(String bucketName, String key, AccessControlList acl) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectAcl(bucketName, key, acl), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectAcl(String bucketName, String key, CannedAcl cannedAcl) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectAcl(bucketName, key, cannedAcl), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectAcl(SetObjectAclRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectAcl(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<AccessControlList> getObjectAcl(String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectAcl(bucketName, key), executor);
+    }
+
+    @Override
+    public CompletableFuture<AccessControlList> getObjectAcl(GetObjectAclRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectAcl(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> extendRetentionPeriod(String bucketName, String key, Long period) {
+        return CompletableFuture.runAsync(() -> s3Client.extendRetentionPeriod(bucketName, key, period), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListMultipartUploadsResult> listMultipartUploads(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listMultipartUploads(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListMultipartUploadsResult> listMultipartUploads(ListMultipartUploadsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listMultipartUploads(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<String> initiateMultipartUpload(String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.initiateMultipartUpload(bucketName, key), executor);
+    }
+
+    @Override
+    public CompletableFuture<InitiateMultipartUploadResult> initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.initiateMultipartUpload(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListPartsResult> listParts(String bucketName, String key, String uploadId) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listParts(bucketName, key, uploadId), executor);
+    }
+
+    @Override
+    public CompletableFuture<ListPartsResult> listParts(ListPartsRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.listParts(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<MultipartPartETag> uploadPart(UploadPartRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.uploadPart(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<CopyPartResult> copyPart(CopyPartRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.copyPart(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<CompleteMultipartUploadResult> completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.completeMultipartUpload(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> abortMultipartUpload(AbortMultipartUploadRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.abortMultipartUpload(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectLockConfiguration(String bucketName, ObjectLockConfiguration objectLockConfiguration) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectLockConfiguration(bucketName, objectLockConfiguration), executor);
+    }
+
+    @Override
+    public CompletableFuture<ObjectLockConfiguration> getObjectLockConfiguration(String bucketName) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectLockConfiguration(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> enableObjectLock(String bucketName) {
+        return CompletableFuture.runAsync(() -> s3Client.enableObjectLock(bucketName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectLegalHold(SetObjectLegalHoldRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectLegalHold(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ObjectLockLegalHold> getObjectLegalHold(GetObjectLegalHoldRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectLegalHold(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> setObjectRetention(SetObjectRetentionRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.setObjectRetention(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ObjectLockRetention> getObjectRetention(GetObjectRetentionRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectRetention(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<CopyRangeResult> copyRange(CopyRangeRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.copyRange(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putObjectTagging(PutObjectTaggingRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.putObjectTagging(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<ObjectTagging> getObjectTagging(GetObjectTaggingRequest request) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObjectTagging(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteObjectTagging(DeleteObjectTaggingRequest request) {
+        return CompletableFuture.runAsync(() -> s3Client.deleteObjectTagging(request), executor);
+    }
+}
@@ -30,6 +30,7 @@ import com.emc.object.*;
 import com.emc.object.s3.*;
 import com.emc.object.s3.bean.*;
 import com.emc.object.s3.request.*;
+import com.emc.object.util.PrefetchingPageIterator;
 import com.emc.object.util.RestUtil;
 import com.emc.rest.smart.LoadBalancer;
 import com.emc.rest.smart.SmartConfig;
@@ -39,11 +40,18 @@ import com.emc.rest.smart.jersey.SmartFilter;
 import com.sun.jersey.api.client.*;
 import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.core.header.InBoundHeaders;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Reference implementation of S3Client.
@@ -126,6 +134,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
     protected Client client;
     protected LoadBalancer loadBalancer;
     protected S3Signer signer;
+    protected RetryFilter retryFilter;
+    protected MetadataCache metadataCache;
+    protected RequestCoalescer requestCoalescer;
+    protected MetricsRegistry metricsRegistry;
+    private ExecutorService prefetchExecutor;
 
     public S3JerseyClient(S3Config s3Config) {
         this(s3Config, null);
@@ -213,18 +226,33 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
             handler = filter.getNext();
         }
         // jersey filters
+        if (s3Config.isMetricsEnabled()) {
+            metricsRegistry = new MetricsRegistry(s3Config);
+            client.addFilter(new MetricsFilter.WireFilter()); // must see the final host and the raw response
+        }
         client.addFilter(new ErrorFilter());
         if (s3Config.getFaultInjectionRate() > 0.0f)
             client.addFilter(new FaultInjectionFilter(s3Config.getFaultInjectionRate()));
+        if (s3Config.isSignStreamingPayload() && !s3Config.isUseV2Signer())
+            client.addFilter(new ChunkedSigningFilter(s3Config)); // must wrap the entity stream outside of checksums
         if (s3Config.isChecksumEnabled()) client.addFilter(new ChecksumFilter(s3Config));
         client.addFilter(new AuthorizationFilter(s3Config));
         if (smartFilter != null) {
             client.addFilter(smartFilter);
         }
-        if (s3Config.isRetryEnabled()) client.addFilter(new RetryFilter(s3Config)); // replaces the apache retry handler
+        if (s3Config.isRetryEnabled()) {
+            retryFilter = new RetryFilter(s3Config);
+            client.addFilter(retryFilter); // replaces the apache retry handler
+        }
         if (s3Config.isGeoPinningEnabled()) client.addFilter(new GeoPinningFilter(s3Config));
         client.addFilter(new BucketFilter(s3Config));
         client.addFilter(new NamespaceFilter(s3Config));
+        if (metricsRegistry != null) client.addFilter(new MetricsFilter(metricsRegistry)); // must time everything
+
+        if (s3Config.getMetadataCacheSize() > 0)
+            metadataCache = new MetadataCache(s3Config.getMetadataCacheSize(),
+                    s3Config.getMetadataCacheTtl(), s3Config.getMetadataCacheNegativeTtl());
+        if (s3Config.isCoalesceReads()) requestCoalescer = new RequestCoalescer();
     }
 
     @Override
@@ -256,6 +284,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
      */
     @Override
     public void destroy() {
+        synchronized (this) {
+            if (prefetchExecutor != null) prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        if (metricsRegistry != null) metricsRegistry.unregisterMBeans();
         SmartClientFactory.destroy(client);
     }
 
@@ -263,6 +296,57 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
         return loadBalancer;
     }
 
+    /**
+     * Returns retry counts and delays for this client, or null if retries are disabled.
+     */
+    public RetryMetrics getRetryMetrics() {
+        return retryFilter == null ? null : retryFilter.getRetryMetrics();
+    }
+
+    /**
+     * Returns the metadata cache for this client (useful for hit/miss statistics), or null if it is disabled.
+     */
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Returns coalescing statistics for this client, or null if {@link S3Config#setCoalesceReads(boolean)
+     * coalesceReads} is disabled.
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Returns per-operation request metrics for this client, or null if {@link S3Config#setMetricsEnabled(boolean)
+     * metricsEnabled} is off.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    private void invalidateMetadata(String namespace, String bucketName, String key) {
+        if (metadataCache != null)
+            metadataCache.invalidate(MetadataCache.objectKey(cacheNamespace(namespace), bucketName, key));
+    }
+
+    // the namespace a request is sent to (its own, or this client's), so tenants never share metadata cache entries
+    private String cacheNamespace(String requestNamespace) {
+        return requestNamespace != null ? requestNamespace : s3Config.getNamespace();
+    }
+
+    // properties the request or this client always sets; they do not change what the caller gets back
+    private static final Set<String> PLAIN_PROPERTIES = new HashSet<>(Arrays.asList(S3Constants.PROPERTY_BUCKET_NAME,
+            S3Constants.PROPERTY_OBJECT_KEY, RestUtil.PROPERTY_VERIFY_READ_CHECKSUM));
+
+    // true if the caller added nothing to the request (custom headers or properties, i.e. one that keeps encryption
+    // headers) that could change the response, so it can be answered from the metadata cache or shared with other
+    // callers
+    private static boolean isPlainRequest(ObjectRequest request) {
+        return request.getCustomHeaders().isEmpty() && PLAIN_PROPERTIES.containsAll(request.getProperties().keySet());
+    }
+
     @Override
     public ListDataNode listDataNodes() {
         return executeRequest(client, new ObjectRequest(Method.GET, "", "endpoint"), ListDataNode.class);
@@ -293,8 +377,17 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public boolean bucketExists(String bucketName) {
+        String cacheKey = null;
+        long generation = 0;
+        if (metadataCache != null) {
+            cacheKey = MetadataCache.bucketKey(cacheNamespace(null), bucketName);
+            generation = metadataCache.generation(cacheKey);
+            MetadataCache.Entry entry = metadataCache.get(cacheKey);
+            if (entry != null && entry.isFresh(System.nanoTime())) return !entry.isNotFound();
+        }
         try {
-            executeAndClose(client, new GenericBucketRequest(Method.HEAD, bucketName, null));
+            ClientResponse response = executeAndClose(client, new GenericBucketRequest(Method.HEAD, bucketName, null));
+            if (cacheKey != null) metadataCache.put(cacheKey, MetadataCache.copyHeaders(response.getHeaders()), generation);
             return true;
         } catch (S3Exception e) {
             switch (e.getHttpCode()) {
@@ -302,6 +395,7 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
                 case RestUtil.STATUS_UNAUTHORIZED:
                     return true;
                 case RestUtil.STATUS_NOT_FOUND:
+                    if (cacheKey != null) metadataCache.putNotFound(cacheKey, generation);
                     return false;
                 default:
                     throw e;
@@ -317,19 +411,45 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
     @Override
     public void createBucket(CreateBucketRequest request) {
         executeAndClose(client, request);
+        if (metadataCache != null)
+            metadataCache.invalidate(MetadataCache.bucketKey(cacheNamespace(request.getNamespace()), request.getBucketName()));
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public BucketInfo getBucketInfo(String bucketName) {
         BucketInfo result = new BucketInfo();
         result.setBucketName(bucketName);
-        fillResponseEntity(result, executeAndClose(client, new GenericBucketRequest(Method.HEAD, bucketName, null)));
-        return result;
+        if (metadataCache == null) {
+            fillResponseEntity(result, executeAndClose(client, new GenericBucketRequest(Method.HEAD, bucketName, null)));
+            return result;
+        }
+
+        // shares the HEAD-bucket entry with bucketExists
+        String cacheKey = MetadataCache.bucketKey(cacheNamespace(null), bucketName);
+        long generation = metadataCache.generation(cacheKey);
+        MetadataCache.Entry entry = metadataCache.get(cacheKey);
+        if (entry != null && entry.isFresh(System.nanoTime())) {
+            if (entry.isNotFound())
+                throw new S3Exception("Not Found (cached)", RestUtil.STATUS_NOT_FOUND, S3Constants.ERROR_NO_SUCH_BUCKET, null);
+            result.setHeaders(MetadataCache.copyHeaders((Map<String, List<String>>) entry.value));
+            return result;
+        }
+        try {
+            ClientResponse response = executeAndClose(client, new GenericBucketRequest(Method.HEAD, bucketName, null));
+            fillResponseEntity(result, response);
+            metadataCache.put(cacheKey, MetadataCache.copyHeaders(response.getHeaders()), generation);
+            return result;
+        } catch (S3Exception e) {
+            if (e.getHttpCode() == RestUtil.STATUS_NOT_FOUND) metadataCache.putNotFound(cacheKey, generation);
+            throw e;
+        }
     }
 
     @Override
     public void deleteBucket(String bucketName) {
         executeAndClose(client, new GenericBucketRequest(Method.DELETE, bucketName, null));
+        if (metadataCache != null) metadataCache.invalidateBucket(cacheNamespace(null), bucketName);
     }
 
     @Override
@@ -468,11 +588,20 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("QueryObjectsRequest must contain a query expression.");
         }
-        QueryObjectsResult result = executeRequest(client, request, QueryObjectsResult.class);
+        // metadata searches can page through many large results, so they are pull-parsed like listings
+        ClientResponse response = executeRequest(client, request);
+        QueryObjectsResult result;
+        try {
+            result = ListingParser.parseQuery(response.getEntityInputStream());
+        } finally {
+            response.close();
+        }
         result.setQuery(query);
         result.setAttributes(request.getAttributes());
         result.setSorted(request.getSorted());
         result.setIncludeOlderVersions(request.getIncludeOlderVersions());
+        result.setPrefix(request.getPrefix());
+        result.setDelimiter(request.getDelimiter());
         return result;
     }
 
@@ -483,10 +612,20 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
                 .withAttributes(lastResult.getAttributes())
                 .withSorted(lastResult.getSorted())
                 .withIncludeOlderVersions(lastResult.getIncludeOlderVersions())
+                .withPrefix(lastResult.getPrefix())
+                .withDelimiter(lastResult.getDelimiter())
                 .withMaxKeys(lastResult.getMaxKeys())
                 .withMarker(lastResult.getNextMarker()));
     }
 
+    @Override
+    public Stream<QueryObject> streamQuery(final QueryObjectsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<QueryObjectsResult, QueryObject>(
+                () -> queryObjects(request),
+                result -> result.isTruncated() ? queryMoreObjects(result) : null,
+                QueryObjectsResult::getObjects, getPrefetchExecutor(), prefetchDepth).stream();
+    }
+
     @Override
     public ListObjectsResult listObjects(String bucketName) {
         return listObjects(new ListObjectsRequest(bucketName));
@@ -499,9 +638,27 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public ListObjectsResult listObjects(ListObjectsRequest request) {
-        ListObjectsResult result = executeRequest(client, request, ListObjectsResult.class);
-        if (result.isTruncated() && result.getNextMarker() == null)
-            result.setNextMarker(result.getObjects().get(result.getObjects().size() - 1).getKey());
+        return listObjects(request, null);
+    }
+
+    @Override
+    public ListObjectsResult listObjects(ListObjectsRequest request, Consumer<? super S3Object> consumer) {
+        final List<S3Object> objects = new ArrayList<>();
+        final String[] lastKey = new String[1];
+        ClientResponse response = executeRequest(client, request);
+        ListObjectsResult result;
+        try {
+            // objects are decoded according to the response before they are handed off (see ListingParser)
+            result = ListingParser.parseObjects(response.getEntityInputStream(), object -> {
+                lastKey[0] = object.getKey();
+                if (consumer != null) consumer.accept(object);
+                else objects.add(object);
+            });
+        } finally {
+            response.close();
+        }
+        if (consumer == null) result.setObjects(objects);
+        if (result.isTruncated() && result.getNextMarker() == null) result.setNextMarker(lastKey[0]);
         return result;
     }
 
@@ -515,6 +672,14 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
                 .withMarker(lastResult.getNextMarker()));
     }
 
+    @Override
+    public Stream<S3Object> streamObjects(final ListObjectsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<ListObjectsResult, S3Object>(
+                () -> listObjects(request),
+                result -> result.isTruncated() ? listMoreObjects(result) : null,
+                ListObjectsResult::getObjects, getPrefetchExecutor(), prefetchDepth).stream();
+    }
+
     @Override
     public ListVersionsResult listVersions(String bucketName, String prefix) {
         return listVersions(new ListVersionsRequest(bucketName).withPrefix(prefix));
@@ -522,7 +687,17 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public ListVersionsResult listVersions(ListVersionsRequest request) {
-        return executeRequest(client, request, ListVersionsResult.class);
+        return listVersions(request, null);
+    }
+
+    @Override
+    public ListVersionsResult listVersions(ListVersionsRequest request, Consumer<? super AbstractVersion> consumer) {
+        ClientResponse response = executeRequest(client, request);
+        try {
+            return ListingParser.parseVersions(response.getEntityInputStream(), consumer);
+        } finally {
+            response.close();
+        }
     }
 
     @Override
@@ -536,6 +711,21 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
                 .withVersionIdMarker(lastResult.getNextVersionIdMarker()));
     }
 
+    @Override
+    public Stream<AbstractVersion> streamVersions(final ListVersionsRequest request, int prefetchDepth) {
+        return new PrefetchingPageIterator<ListVersionsResult, AbstractVersion>(
+                () -> listVersions(request),
+                result -> result.isTruncated() ? listMoreVersions(result) : null,
+                ListVersionsResult::getVersions, getPrefetchExecutor(), prefetchDepth).stream();
+    }
+
+    // created on first use, since most clients never stream a listing
+    protected synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null)
+            prefetchExecutor = S3AsyncJerseyClient.createDefaultExecutor(s3Config.getAsyncThreads());
+        return prefetchExecutor;
+    }
+
     @Override
     public void putObject(String bucketName, String key, Object content, String contentType) {
         S3ObjectMetadata metadata = new S3ObjectMetadata().withContentType(contentType);
@@ -552,7 +742,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
         // enable checksum of the object
         request.property(RestUtil.PROPERTY_VERIFY_WRITE_CHECKSUM, Boolean.TRUE);
         PutObjectResult result = new PutObjectResult();
-        fillResponseEntity(result, executeAndClose(client, request));
+        try {
+            fillResponseEntity(result, executeAndClose(client, request));
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
         return result;
     }
 
@@ -569,7 +763,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public CopyObjectResult copyObject(CopyObjectRequest request) {
-        return executeRequest(client, request, CopyObjectResult.class);
+        try {
+            return executeRequest(client, request, CopyObjectResult.class);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
@@ -632,7 +830,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public void deleteObject(DeleteObjectRequest request) {
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
@@ -642,7 +844,15 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
-        return executeRequest(client, request, DeleteObjectsResult.class);
+        try {
+            return executeRequest(client, request, DeleteObjectsResult.class);
+        } finally {
+            if (metadataCache != null && request.getDeleteObjects().getKeys() != null) {
+                for (ObjectKey key : request.getDeleteObjects().getKeys()) {
+                    invalidateMetadata(request.getNamespace(), request.getBucketName(), key.getKey());
+                }
+            }
+        }
     }
 
     @Override
@@ -657,9 +867,55 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public S3ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        // only plain requests for the current version are cached
+        if (metadataCache == null || request.getVersionId() != null || request.getRange() != null
+                || request.getIfMatch() != null || request.getIfNoneMatch() != null
+                || request.getIfModifiedSince() != null || request.getIfUnmodifiedSince() != null
+                || !request.getHeaderOverrides().isEmpty() || !isPlainRequest(request)) {
+            Map<String, List<String>> headers = headObject(request);
+            return headers == null ? null : S3ObjectMetadata.fromHeaders(headers);
+        }
+
+        String cacheKey = MetadataCache.objectKey(cacheNamespace(request.getNamespace()), request.getBucketName(),
+                request.getKey());
+        long generation = metadataCache.generation(cacheKey);
+        MetadataCache.Entry entry = metadataCache.get(cacheKey);
+        GetObjectMetadataRequest headRequest = request;
+        if (entry != null) {
+            if (entry.isFresh(System.nanoTime())) {
+                if (entry.isNotFound())
+                    throw new S3Exception("Not Found (cached)", RestUtil.STATUS_NOT_FOUND, S3Constants.ERROR_NO_SUCH_KEY, null);
+                return S3ObjectMetadata.fromHeaders((Map<String, List<String>>) entry.value);
+            }
+            // stale - revalidate by ETag (using a copy, so the caller's request is left alone)
+            String eTag = RestUtil.getFirstAsString((Map<String, List<String>>) entry.value, RestUtil.HEADER_ETAG, true);
+            if (eTag != null) {
+                headRequest = new GetObjectMetadataRequest(request.getBucketName(), request.getKey()).withIfNoneMatch(eTag);
+                headRequest.setNamespace(request.getNamespace());
+            }
+        }
         try {
-            return S3ObjectMetadata.fromHeaders(executeAndClose(client, request).getHeaders());
+            Map<String, List<String>> headers = headObject(headRequest);
+            if (headers == null) { // 304 (not modified)
+                metadataCache.revalidated(cacheKey, entry, generation);
+                headers = (Map<String, List<String>>) entry.value;
+            } else {
+                headers = MetadataCache.copyHeaders(headers);
+                metadataCache.put(cacheKey, headers, generation);
+            }
+            return S3ObjectMetadata.fromHeaders(headers);
+        } catch (S3Exception e) {
+            if (e.getHttpCode() == RestUtil.STATUS_NOT_FOUND) metadataCache.putNotFound(cacheKey, generation);
+            throw e;
+        }
+    }
+
+    // returns the response headers, or null if a condition failed
+    private Map<String, List<String>> headObject(GetObjectMetadataRequest request) {
+        try {
+            return executeAndClose(client, request).getHeaders();
         } catch (S3Exception e) {
             // a 304 or 412 means If-* headers were used and a condition failed
             if (e.getHttpCode() == 304 || e.getHttpCode() == 412) return null;
@@ -696,7 +952,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
     public void extendRetentionPeriod(String bucketName, String key, Long period) {
         ObjectRequest request = new S3ObjectRequest(Method.PUT, bucketName, key, S3Constants.PARAM_RETENTION_UPDATE);
         request.addCustomHeader(RestUtil.EMC_RETENTION_PERIOD, period);
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(null, bucketName, key);
+        }
     }
 
     @Override
@@ -743,7 +1003,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
-        return executeRequest(client, request, CompleteMultipartUploadResult.class);
+        try {
+            return executeRequest(client, request, CompleteMultipartUploadResult.class);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
@@ -777,7 +1041,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public void setObjectLegalHold(SetObjectLegalHoldRequest request) {
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
@@ -792,7 +1060,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public void setObjectRetention(SetObjectRetentionRequest request) {
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
@@ -808,7 +1080,11 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
     @Override
     public CopyRangeResult copyRange(CopyRangeRequest request) {
         CopyRangeResult result = new CopyRangeResult();
-        fillResponseEntity(result, executeAndClose(client, request));
+        try {
+            fillResponseEntity(result, executeAndClose(client, request));
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
         return result;
     }
       
@@ -819,12 +1095,119 @@ public class S3JerseyClient extends AbstractJerseyClient implements S3Client {
 
     @Override
     public void putObjectTagging(PutObjectTaggingRequest request) {
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
     }
 
     @Override
     public void deleteObjectTagging(DeleteObjectTaggingRequest request) {
-        executeAndClose(client, request);
+        try {
+            executeAndClose(client, request);
+        } finally {
+            invalidateMetadata(request.getNamespace(), request.getBucketName(), request.getKey());
+        }
+    }
+
+    @Override
+    protected ClientResponse executeRequest(Client client, ObjectRequest request) {
+        // decided before the client adds its own properties
+        boolean coalesce = requestCoalescer != null && isCoalescable(request);
+        if (metricsRegistry == null) return coalesce ? executeCoalesced(client, request) : super.executeRequest(client, request);
+
+        // the operation only needs to reach the filter chain (properties are copied when the request is built), so
+        // remove it afterward; otherwise a reused request would no longer be plain
+        request.property(MetricsFilter.PROP_OPERATION, getOperationName(request));
+        try {
+            return coalesce ? executeCoalesced(client, request) : super.executeRequest(client, request);
+        } finally {
+            request.getProperties().remove(MetricsFilter.PROP_OPERATION);
+        }
+    }
+
+    @Override
+    protected String getOperationName(ObjectRequest request) {
+        return MetricsFilter.getOperation(request);
+    }
+
+    @Override
+    protected String getBucketName(ObjectRequest request) {
+        return request instanceof AbstractBucketRequest ? ((AbstractBucketRequest) request).getBucketName() : null;
+    }
+
+    private boolean isCoalescable(ObjectRequest request) {
+        // request properties change what the filters do with the response (i.e. decryption), and only the leader's
+        // properties would be applied, so only plain requests are shared
+        if (!isPlainRequest(request)) return false;
+        if (request instanceof GetObjectRequest) {
+            Range range = ((GetObjectRequest<?>) request).getRange();
+            return range == null || (range.getFirst() != null && range.getLast() != null
+                    && range.getLast() - range.getFirst() < s3Config.getCoalesceMaxBytes());
+        }
+        return request instanceof GetObjectAclRequest
+                || (request instanceof GenericBucketRequest && request.getMethod() == Method.GET
+                && "location".equals(request.getSubresource()));
+    }
+
+    /**
+     * Shares one request between concurrent identical callers. Small responses are buffered and every caller gets a
+     * copy; if the response is too large to buffer, the caller that made the request streams it and the others send
+     * their own.
+     */
+    private ClientResponse executeCoalesced(final Client client, final ObjectRequest request) {
+        final ClientResponse[] ownResponse = new ClientResponse[1];
+        BufferedResponse shared = requestCoalescer.execute(coalesceKey(request), () -> {
+            ClientResponse response = super.executeRequest(client, request);
+            byte[] body = new byte[0];
+            if (request.getMethod() != Method.HEAD) {
+                long length = response.getLength();
+                if (length < 0 || length > s3Config.getCoalesceMaxBytes()) {
+                    ownResponse[0] = response;
+                    return null;
+                }
+                try (InputStream in = response.getEntityInputStream()) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+                    byte[] buffer = new byte[8192];
+                    for (int read; (read = in.read(buffer)) >= 0; ) out.write(buffer, 0, read);
+                    body = out.toByteArray();
+                } catch (IOException e) {
+                    throw new ClientHandlerException("error reading response", e);
+                }
+            }
+            response.close();
+            return new BufferedResponse(response.getStatus(), response.getHeaders(), body);
+        });
+
+        if (ownResponse[0] != null) return ownResponse[0];
+        if (shared == null) {
+            requestCoalescer.oversized();
+            return super.executeRequest(client, request);
+        }
+        InBoundHeaders headers = new InBoundHeaders();
+        for (Map.Entry<String, List<String>> header : shared.headers.entrySet()) {
+            headers.put(header.getKey(), new ArrayList<String>(header.getValue()));
+        }
+        return new ClientResponse(shared.status, headers, new ByteArrayInputStream(shared.body),
+                client.getMessageBodyWorkers());
+    }
+
+    private String coalesceKey(ObjectRequest request) {
+        return request.getMethod() + " " + request.getNamespace() + " " + getBucketName(request) + " " + request.getPath()
+                + "?" + request.getRawQueryString() + " " + new TreeMap<String, List<Object>>(request.getHeaders());
+    }
+
+    private static final class BufferedResponse {
+        final int status;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+
+        BufferedResponse(int status, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
     }
 
     @Override
@@ -1,14 +1,27 @@
 package com.emc.object.s3.lfu;
 
-import com.emc.object.util.InputStreamSegment;
+import com.emc.object.util.FileChannelSegment;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
-public class LargeFileMultipartFileSource implements LargeFileMultipartSource {
+/**
+ * Reads parts directly from a file. All part streams share a single {@link FileChannel} and read from it using
+ * positional reads (see {@link FileChannelSegment}), so no file handles are opened and no data is skipped per part.
+ * By default, parts are memory-mapped, which avoids an extra copy of the data on each read.
+ * <p>
+ * The shared channel is opened on first use and is released by {@link #close()}. A closed source may be used again
+ * (the channel will be reopened).
+ */
+public class LargeFileMultipartFileSource implements LargeFileMultipartSource, Closeable {
     private final File file;
+    private boolean memoryMapped = true;
+    private FileChannel channel;
 
     public LargeFileMultipartFileSource(File file) {
         this.file = file;
@@ -29,6 +42,41 @@ public class LargeFileMultipartFileSource implements LargeFileMultipartSource {
 
     @Override
     public InputStream getPartDataStream(long offset, long length) throws IOException {
-        return new InputStreamSegment(new FileInputStream(file), offset, length);
+        return new FileChannelSegment(getChannel(), offset, length, memoryMapped);
+    }
+
+    protected synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return channel;
+    }
+
+    /**
+     * Closes the shared channel. Any part streams that are still open will fail on their next read.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Set to false to read parts using regular positional channel reads instead of memory-mapping them.
+     * Default is true
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public LargeFileMultipartFileSource withMemoryMapped(boolean memoryMapped) {
+        setMemoryMapped(memoryMapped);
+        return this;
     }
 }
@@ -1,5 +1,7 @@
 package com.emc.object.s3.lfu;
 
+import com.emc.object.util.RepeatableEntity;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -22,4 +24,23 @@ public interface LargeFileMultipartSource {
      * Note: this stream must be readable in parallel with streams of other parts/ranges.
      */
     InputStream getPartDataStream(long offset, long length) throws IOException;
+
+    /**
+     * Returns the specified range as a {@link RepeatableEntity}, which calls {@link #getPartDataStream(long, long)}
+     * each time it is opened. This lets a failed part request be retried by reopening the range instead of buffering
+     * it.
+     */
+    default RepeatableEntity getPartEntity(final long offset, final long length) {
+        return new RepeatableEntity() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return getPartDataStream(offset, length);
+            }
+
+            @Override
+            public long getLength() {
+                return length;
+            }
+        };
+    }
 }
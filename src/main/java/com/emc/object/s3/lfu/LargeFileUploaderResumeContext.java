@@ -29,6 +29,7 @@ package com.emc.object.s3.lfu;
 
 import com.emc.object.s3.bean.MultipartPartETag;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,10 +42,14 @@ import java.util.Map;
  * data to create an accurate part ETag manifest and verify all object data as per S3 best practices. If you do not
  * wish to re-verify existing parts found in the target, you can set <code>verifyPartsFoundInTarget</code> to false
  * (not recommended).
+ * <p>
+ * If the part size was tuned during the upload, <code>partSizes</code> holds the size of each part that was planned,
+ * so the upload is resumed with the same part boundaries.
  */
 public class LargeFileUploaderResumeContext {
     private String uploadId;
     private Map<Integer, MultipartPartETag> uploadedParts = null;
+    private List<Long> partSizes = null;
     private boolean verifyPartsFoundInTarget = true;
     private boolean overwriteMismatchedParts = true;
 
@@ -75,6 +80,20 @@ public class LargeFileUploaderResumeContext {
         this.uploadedParts = uploadedParts;
     }
 
+    public List<Long> getPartSizes() {
+        return partSizes;
+    }
+
+    /**
+     * Specifies the size of each part (starting with partNumber 1) that was planned before the upload was
+     * interrupted. This is set automatically when the part size is tuned during the upload. When resuming, these sizes
+     * are used instead of the configured part size, and any parts after them are sized as usual.
+     * If this is not specified, all parts are assumed to be the configured part size.
+     */
+    public void setPartSizes(List<Long> partSizes) {
+        this.partSizes = partSizes;
+    }
+
     public boolean isVerifyPartsFoundInTarget() {
         return verifyPartsFoundInTarget;
     }
@@ -117,6 +136,14 @@ public class LargeFileUploaderResumeContext {
         return this;
     }
 
+    /**
+     * @see #setPartSizes(List)
+     */
+    public LargeFileUploaderResumeContext withPartSizes(List<Long> partSizes) {
+        setPartSizes(partSizes);
+        return this;
+    }
+
     /**
      * @see #setVerifyPartsFoundInTarget(boolean)
      */
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.lfu;
+
+/**
+ * Receives back-pressure events from the bounded part pipeline used by
+ * {@link com.emc.object.s3.LargeFileUploader LargeFileUploader}. Only a limited number of parts are read, buffered and
+ * transferred at any one time (see
+ * {@link com.emc.object.s3.LargeFileUploader#setMaxInFlightParts(int) maxInFlightParts}); these events describe how
+ * full that window is and how long the reader stage had to wait for it.
+ * <p>
+ * Implementations must be thread-safe; <code>partCompleted</code> is called from transfer threads.
+ */
+public interface PartQueueListener {
+    /**
+     * Called by the reader stage after waiting for a free slot (and buffer) in the in-flight window.
+     *
+     * @param partNumber   the part that was waiting
+     * @param waitTimeNanos time spent blocked, in nanoseconds (0 if a slot was immediately available)
+     */
+    void bufferWait(int partNumber, long waitTimeNanos);
+
+    /**
+     * Called after a part has been read (if buffered) and queued for transfer.
+     *
+     * @param queueDepth number of parts currently queued or in transfer, including this one
+     */
+    void partQueued(int partNumber, int queueDepth);
+
+    /**
+     * Called after a part has finished (successfully or not) and its slot has been released.
+     *
+     * @param queueDepth number of parts still queued or in transfer
+     */
+    void partCompleted(int partNumber, int queueDepth);
+}
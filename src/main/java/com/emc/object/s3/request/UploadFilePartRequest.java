@@ -26,11 +26,10 @@
  */
 package com.emc.object.s3.request;
 
-import com.emc.object.util.InputStreamSegment;
+import com.emc.object.util.FileEntity;
+import com.emc.object.util.RepeatableInputStream;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 
 public class UploadFilePartRequest extends UploadPartRequest {
     private File file;
@@ -41,13 +40,13 @@ public class UploadFilePartRequest extends UploadPartRequest {
         super(bucketName, key, uploadId, partNumber, null);
     }
 
+    /**
+     * Returns a stream over the file segment that is reopened (rather than buffered) if the request is retried.
+     */
     @Override
     public Object getEntity() {
-        try {
-            return new InputStreamSegment(new FileInputStream(file), offset, length);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("bad file parameters", e);
-        }
+        if (file == null || !file.canRead()) throw new IllegalArgumentException("cannot read file: " + file);
+        return new RepeatableInputStream(new FileEntity(file, Math.max(offset, 0), length));
     }
 
     @Override
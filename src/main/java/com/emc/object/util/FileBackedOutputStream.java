@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * Buffers written data in memory until it exceeds <code>threshold</code> bytes, at which point the buffered data (and
+ * everything written after it) is moved to a temporary file. This bounds the heap used to buffer an entity of unknown
+ * size. Once closed, the buffered data can be replayed any number of times with {@link #writeTo(OutputStream)}.
+ * Call {@link #dispose()} to delete the temporary file (if any).
+ */
+public class FileBackedOutputStream extends OutputStream {
+    private final int threshold;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File file;
+    private OutputStream fileOut;
+    private long size;
+
+    public FileBackedOutputStream(int threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("threshold must be non-negative");
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (file == null && size + len > threshold) spill();
+        if (file == null) memory.write(b, off, len);
+        else fileOut.write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) fileOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) fileOut.close();
+    }
+
+    /**
+     * Writes all of the buffered data to <code>out</code> (without closing it). Call this after the stream is closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (file == null) memory.writeTo(out);
+        else Files.copy(file.toPath(), out);
+    }
+
+    /**
+     * Deletes the temporary file, if the data was spilled to disk. The buffered data is no longer available after
+     * this call.
+     */
+    public void dispose() {
+        memory = null;
+        if (file != null) {
+            try {
+                if (fileOut != null) fileOut.close();
+            } catch (IOException e) {
+                // ignore; we're deleting the file anyway
+            }
+            if (!file.delete()) file.deleteOnExit();
+        }
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("object-client-buffer", ".tmp");
+        fileOut = new BufferedOutputStream(new FileOutputStream(file));
+        memory.writeTo(fileOut);
+        memory = null;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
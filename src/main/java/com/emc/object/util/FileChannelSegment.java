@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides a specific segment of a {@link FileChannel} as an {@link InputStream} using positional reads. Unlike
+ * {@link InputStreamSegment}, no data is skipped to reach the <code>offset</code> and the channel's own position is
+ * never modified, so a single channel can be shared by any number of segments that are read in parallel.
+ * <p>
+ * If <code>memoryMapped</code> is true, the segment is mapped into memory (in windows of at most
+ * {@link #MAX_MAP_WINDOW} bytes) and reads are copied straight out of the mapping, which avoids the intermediate
+ * native buffer used by regular channel and file stream reads. Note that the underlying file must not be truncated
+ * while a mapped segment is being read.
+ * <p>
+ * This stream supports {@link #mark(int)}/{@link #reset()} for any number of bytes, so a request using it as an entity
+ * can always be retried. Closing this stream does <em>not</em> close the channel.
+ */
+public class FileChannelSegment extends InputStream {
+    public static final int MAX_MAP_WINDOW = 64 * 1024 * 1024; // 64MB
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private final boolean memoryMapped;
+    private long position = 0; // relative to offset
+    private long markPosition = 0;
+    private MappedByteBuffer window;
+    private long windowPosition; // relative to offset
+    private boolean closed;
+
+    public FileChannelSegment(FileChannel channel, long offset, long length) {
+        this(channel, offset, length, false);
+    }
+
+    public FileChannelSegment(FileChannel channel, long offset, long length, boolean memoryMapped) {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("offset and length must be non-negative");
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.memoryMapped = memoryMapped;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("stream is closed");
+        if (len == 0) return 0;
+        long remaining = length - position;
+        if (remaining <= 0) return -1;
+        len = (int) Math.min(len, remaining);
+
+        int count;
+        if (memoryMapped) {
+            ByteBuffer buffer = getWindow();
+            count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+        } else {
+            count = channel.read(ByteBuffer.wrap(b, off, len), offset + position);
+            if (count == -1) throw new IOException(String.format("unexpected end of channel at %,d (segment ends at %,d)",
+                    offset + position, offset + length));
+        }
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, length - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /**
+     * The read limit is ignored; a marked position can always be reset to.
+     */
+    @Override
+    public synchronized void mark(int readLimit) {
+        markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = markPosition;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        window = null;
+    }
+
+    // returns the mapped window positioned at the current read position, mapping a new window if necessary
+    private ByteBuffer getWindow() throws IOException {
+        if (window == null || position < windowPosition || position >= windowPosition + window.limit()) {
+            long size = Math.min(MAX_MAP_WINDOW, length - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, size);
+            windowPosition = position;
+        }
+        window.position((int) (position - windowPosition));
+        return window;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+}
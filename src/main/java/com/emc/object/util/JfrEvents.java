@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+/**
+ * Hooks for Java Flight Recorder events from the client's hot paths: one event per HTTP request, retry, multipart
+ * part and signing operation, each carrying the bucket, operation, host, byte count and duration.
+ * <p>
+ * This is the Java 8 implementation, which does nothing. On Java 11 and later, the multi-release JAR supplies an
+ * implementation (under <code>META-INF/versions/11</code>) that commits <code>jdk.jfr</code> events in the
+ * "ECS Object Client" category, so they show up in continuous JFR recordings next to the socket reads they explain.
+ * <p>
+ * {@link #begin(Type)} returns null when JFR is unavailable or the event type is disabled, and the other methods
+ * ignore a null event, so instrumented code costs a single static call while recording is off.
+ */
+public final class JfrEvents {
+    /**
+     * Request property used to hand the current request event to the filter chain (which knows the host).
+     */
+    public static final String PROPERTY_EVENT = "com.emc.object.jfrEvent";
+
+    public enum Type {
+        REQUEST, RETRY, UPLOAD_PART, DOWNLOAD_PART, SIGN
+    }
+
+    private JfrEvents() {
+    }
+
+    /**
+     * Starts timing an event. Returns null if the event will not be recorded.
+     */
+    public static Object begin(Type type) {
+        return null;
+    }
+
+    /**
+     * Sets the host of an event that has not been committed yet.
+     */
+    public static void setHost(Object event, String host) {
+    }
+
+    /**
+     * Ends and records an event started with {@link #begin(Type)}. A null <code>host</code> keeps any host already
+     * set; a negative <code>bytes</code> means unknown.
+     */
+    public static void commit(Object event, String bucket, String operation, String host, long bytes, String detail) {
+    }
+}
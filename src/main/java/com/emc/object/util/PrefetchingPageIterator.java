@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates the items of a paged listing, fetching up to <code>prefetchDepth</code> pages ahead of the consumer
+ * in the background. Since each page request needs the marker from the previous page, pages are still fetched one at
+ * a time, but the next request is already under way while the current page is being consumed.
+ * <p>
+ * Nothing is fetched until the first call to {@link #hasNext()}; the first page is fetched in the calling thread.
+ * {@link #close()} stops any further page requests (a request already in flight is allowed to finish, and its result
+ * is discarded). An error fetching a page is thrown from {@link #hasNext()} when the consumer reaches that page.
+ * Not thread-safe.
+ *
+ * @param <P> the page (result) type
+ * @param <T> the item type
+ */
+public class PrefetchingPageIterator<P, T> implements Iterator<T>, AutoCloseable {
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    /**
+     * Returns a shared pool of daemon threads that can run background page requests when the caller does not have an
+     * executor of its own.
+     */
+    public static Executor sharedExecutor() {
+        return SharedExecutorHolder.EXECUTOR;
+    }
+
+    private final Supplier<P> firstPage;
+    private final Function<P, P> nextPage;
+    private final Function<P, ? extends Collection<T>> pageItems;
+    private final Executor executor;
+    private final int prefetchDepth;
+
+    private final Deque<CompletableFuture<P>> prefetched = new ArrayDeque<>();
+    private CompletableFuture<P> lastFetch;
+    private Iterator<T> currentItems = Collections.emptyIterator();
+    private boolean started, finished;
+    private volatile boolean closed;
+
+    /**
+     * @param firstPage     fetches the first page
+     * @param nextPage      fetches the page after the given page, or returns null if it was the last page
+     * @param pageItems     returns the items in a page
+     * @param executor      runs the background page requests
+     * @param prefetchDepth the number of pages to fetch ahead of the consumer (0 fetches each page on demand)
+     */
+    public PrefetchingPageIterator(Supplier<P> firstPage, Function<P, P> nextPage,
+                                   Function<P, ? extends Collection<T>> pageItems, Executor executor, int prefetchDepth) {
+        if (prefetchDepth < 0) throw new IllegalArgumentException("prefetchDepth must be non-negative");
+        this.firstPage = firstPage;
+        this.nextPage = nextPage;
+        this.pageItems = pageItems;
+        this.executor = executor;
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentItems.hasNext()) {
+            if (closed || finished) return false;
+
+            P page;
+            if (!started) {
+                started = true;
+                page = firstPage.get();
+                lastFetch = CompletableFuture.completedFuture(page);
+            } else {
+                if (prefetched.isEmpty()) scheduleNextPage(false); // not prefetching, so fetch on demand
+                page = getPage(prefetched.poll());
+            }
+
+            if (page == null) {
+                finished = true;
+                return false;
+            }
+            currentItems = pageItems.apply(page).iterator();
+
+            // top up the prefetch queue
+            while (prefetched.size() < prefetchDepth) scheduleNextPage(true);
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return currentItems.next();
+    }
+
+    /**
+     * Stops fetching pages. The iterator returns no more items after this call.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        currentItems = Collections.emptyIterator();
+        for (CompletableFuture<P> future : prefetched) future.cancel(false);
+        prefetched.clear();
+    }
+
+    /**
+     * Returns a sequential stream over the remaining items. Closing the stream closes this iterator.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(this::close);
+    }
+
+    // chains a request for the page after the last scheduled page (which yields null if there are no more pages)
+    private void scheduleNextPage(boolean async) {
+        Function<P, P> fetch = previous -> previous == null || closed ? null : nextPage.apply(previous);
+        lastFetch = async ? lastFetch.thenApplyAsync(fetch, executor) : lastFetch.thenApply(fetch);
+        prefetched.add(lastFetch);
+    }
+
+    private P getPage(CompletableFuture<P> future) {
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            return null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    // created on first use
+    private static class SharedExecutorHolder {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "page-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An entity stream over a {@link RepeatableEntity}. The source is opened lazily, and {@link #rewind()} closes it so
+ * that the next read starts over from a newly opened stream. This lets a failed request be retried at no memory cost,
+ * no matter how large the entity is.
+ * <p>
+ * {@link #mark(int)}/{@link #reset()} are supported for any number of bytes (the read limit is ignored): resetting
+ * reopens the source and skips to the marked position.
+ */
+public class RepeatableInputStream extends InputStream {
+    private final RepeatableEntity entity;
+    private final ProgressListener progressListener;
+    private InputStream stream;
+    private long position;
+    private long markPosition;
+    private boolean closed;
+
+    public RepeatableInputStream(RepeatableEntity entity) {
+        this(entity, null);
+    }
+
+    /**
+     * @param progressListener notified of each read (including reads repeated after a rewind); may be null
+     */
+    public RepeatableInputStream(RepeatableEntity entity, ProgressListener progressListener) {
+        this.entity = entity;
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = getStream().read(b, off, len);
+        if (count > 0) {
+            position += count;
+            if (progressListener != null) progressListener.transferred(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = getStream().skip(n);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return stream == null ? (int) Math.min(Integer.MAX_VALUE, entity.getLength()) : stream.available();
+    }
+
+    /**
+     * Closes the current stream (if any), so the next read starts from the beginning of the entity.
+     */
+    public synchronized void rewind() throws IOException {
+        if (stream != null) stream.close();
+        stream = null;
+        position = 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (position == markPosition) return;
+        rewind();
+        while (position < markPosition) {
+            long skipped = skip(markPosition - position);
+            if (skipped <= 0) {
+                if (read() == -1) throw new IOException("entity ended before the marked position");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (stream != null) stream.close();
+        stream = null;
+    }
+
+    private InputStream getStream() throws IOException {
+        if (closed) throw new IOException("stream is closed");
+        if (stream == null) stream = entity.openStream();
+        return stream;
+    }
+
+    public RepeatableEntity getEntity() {
+        return entity;
+    }
+
+    public long getLength() {
+        return entity.getLength();
+    }
+}
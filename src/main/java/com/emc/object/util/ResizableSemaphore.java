@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@link Semaphore} whose total number of permits can be changed while it is in use. Used to bound the number of
+ * parts in flight in a multi-part transfer when that bound is tuned as the transfer progresses.
+ * <p>
+ * Shrinking the limit does not affect holders of existing permits; new acquisitions will simply block until enough
+ * permits have been released to satisfy the new limit.
+ */
+public class ResizableSemaphore extends Semaphore {
+    private static final long serialVersionUID = 1L;
+
+    private int limit;
+
+    public ResizableSemaphore(int limit) {
+        super(limit);
+        this.limit = limit;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized void setLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be at least 1");
+        int delta = limit - this.limit;
+        if (delta > 0) release(delta);
+        else if (delta < 0) reducePermits(-delta);
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the number of permits currently held (may briefly exceed the limit after it is reduced).
+     */
+    public synchronized int getInUse() {
+        return limit - availablePermits();
+    }
+}
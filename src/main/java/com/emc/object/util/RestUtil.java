@@ -60,6 +60,7 @@ public final class RestUtil {
     public static final String HEADER_IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
     public static final String HEADER_LAST_MODIFIED = "Last-Modified";
     public static final String HEADER_RANGE = "Range";
+    public static final String HEADER_RETRY_AFTER = "Retry-After";
     public static final String HEADER_USER_AGENT = "User-Agent";
     public static final String HEADER_HOST = "Host";
 
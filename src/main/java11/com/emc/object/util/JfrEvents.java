@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java 11+ implementation of the client's Java Flight Recorder hooks (see the Java 8 version in
+ * <code>src/main/java</code> for the contract). The public API of both versions must stay identical.
+ */
+public final class JfrEvents {
+    public static final String PROPERTY_EVENT = "com.emc.object.jfrEvent";
+
+    public enum Type {
+        REQUEST, RETRY, UPLOAD_PART, DOWNLOAD_PART, SIGN
+    }
+
+    private JfrEvents() {
+    }
+
+    public static Object begin(Type type) {
+        ClientEvent event;
+        switch (type) {
+            case REQUEST:
+                event = new RequestEvent();
+                break;
+            case RETRY:
+                event = new RetryEvent();
+                break;
+            case UPLOAD_PART:
+                event = new UploadPartEvent();
+                break;
+            case DOWNLOAD_PART:
+                event = new DownloadPartEvent();
+                break;
+            case SIGN:
+                event = new SignEvent();
+                break;
+            default:
+                return null;
+        }
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    public static void setHost(Object event, String host) {
+        if (event instanceof ClientEvent) ((ClientEvent) event).host = host;
+    }
+
+    public static void commit(Object event, String bucket, String operation, String host, long bytes, String detail) {
+        if (!(event instanceof ClientEvent)) return;
+        ClientEvent clientEvent = (ClientEvent) event;
+        clientEvent.end();
+        if (!clientEvent.shouldCommit()) return;
+        clientEvent.bucket = bucket;
+        clientEvent.operation = operation;
+        if (host != null) clientEvent.host = host;
+        clientEvent.bytes = bytes;
+        clientEvent.detail = detail;
+        clientEvent.commit();
+    }
+
+    @Category("ECS Object Client")
+    abstract static class ClientEvent extends Event {
+        @Label("Bucket")
+        String bucket;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Host")
+        String host;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Detail")
+        String detail;
+    }
+
+    @Name("com.emc.object.Request")
+    @Label("Request")
+    @Description("An HTTP request, from sending until response headers arrive (including retries)")
+    static class RequestEvent extends ClientEvent {
+    }
+
+    @Name("com.emc.object.Retry")
+    @Label("Retry")
+    @Description("A failed request attempt; the duration is the delay before the next attempt")
+    static class RetryEvent extends ClientEvent {
+    }
+
+    @Name("com.emc.object.UploadPart")
+    @Label("Upload Part")
+    @Description("A part uploaded by LargeFileUploader")
+    static class UploadPartEvent extends ClientEvent {
+    }
+
+    @Name("com.emc.object.DownloadPart")
+    @Label("Download Part")
+    @Description("A part downloaded by LargeFileDownloader")
+    static class DownloadPartEvent extends ClientEvent {
+    }
+
+    @Name("com.emc.object.Sign")
+    @Label("Sign Request")
+    @Description("Signing of a request")
+    static class SignEvent extends ClientEvent {
+    }
+}
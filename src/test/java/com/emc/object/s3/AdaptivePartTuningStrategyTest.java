@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptivePartTuningStrategyTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testConcurrencyClimbsWhileThroughputImproves() throws Exception {
+        AdaptivePartTuningStrategy strategy = new AdaptivePartTuningStrategy().withMaxConcurrency(4)
+                .withSampleIntervalMillis(0).withAdaptPartSize(false);
+        strategy.start(100 * MB, 4 * MB, 1);
+        Assert.assertEquals(1, strategy.getConcurrency());
+
+        // each part takes 10ms; aggregate throughput is roughly steady, so we should keep climbing up to the max
+        for (int i = 0; i < 50; i++) {
+            Thread.sleep(2);
+            strategy.partCompleted(4 * MB, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        Assert.assertTrue(strategy.getConcurrency() > 1);
+        Assert.assertTrue(strategy.getConcurrency() <= 4);
+        Assert.assertEquals(4 * MB, strategy.getNextPartSize());
+    }
+
+    @Test
+    public void testConcurrencyBacksOffWhenThroughputDrops() throws Exception {
+        AdaptivePartTuningStrategy strategy = new AdaptivePartTuningStrategy().withSampleIntervalMillis(0)
+                .withAdaptPartSize(false);
+        strategy.start(100 * MB, 4 * MB, 4);
+
+        // first sample (8 parts): fast
+        for (int i = 0; i < 8; i++) strategy.partCompleted(4 * MB, TimeUnit.MILLISECONDS.toNanos(10));
+        Thread.sleep(10);
+        strategy.partCompleted(4 * MB, TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(5, strategy.getConcurrency());
+
+        // second sample: much slower (same bytes over a much longer time)
+        Thread.sleep(200);
+        for (int i = 0; i < 10; i++) strategy.partCompleted(4 * MB, TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(4, strategy.getConcurrency());
+    }
+
+    @Test
+    public void testPartSizeFollowsThroughput() {
+        AdaptivePartTuningStrategy strategy = new AdaptivePartTuningStrategy().withSampleIntervalMillis(60000)
+                .withTargetPartDurationMillis(1000).withMinPartSize(MB).withMaxPartSize(64 * MB);
+        strategy.start(1024 * MB, 8 * MB, 4);
+
+        // 8MB in 100ms = 80MB/s per part; target is 1s per part, but growth is limited to 2x per part
+        strategy.partCompleted(8 * MB, TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(16 * MB, strategy.getNextPartSize());
+        strategy.partCompleted(16 * MB, TimeUnit.MILLISECONDS.toNanos(200));
+        Assert.assertEquals(32 * MB, strategy.getNextPartSize());
+        strategy.partCompleted(32 * MB, TimeUnit.MILLISECONDS.toNanos(400));
+        Assert.assertEquals(64 * MB, strategy.getNextPartSize());
+        // capped at maxPartSize
+        strategy.partCompleted(64 * MB, TimeUnit.MILLISECONDS.toNanos(800));
+        Assert.assertEquals(64 * MB, strategy.getNextPartSize());
+
+        // slow parts shrink the size (smoothed, so not all at once) down to minPartSize
+        strategy.partCompleted(64 * MB, TimeUnit.SECONDS.toNanos(120));
+        long size = strategy.getNextPartSize();
+        Assert.assertTrue(size < 64 * MB && size >= 32 * MB);
+        for (int i = 0; i < 20; i++) strategy.partCompleted(64 * MB, TimeUnit.SECONDS.toNanos(120));
+        Assert.assertEquals(MB, strategy.getNextPartSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        new AdaptivePartTuningStrategy().withMinConcurrency(4).withMaxConcurrency(2).start(MB, MB, 1);
+    }
+}
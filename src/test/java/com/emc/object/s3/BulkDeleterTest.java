@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.*;
+import com.emc.object.s3.request.DeleteObjectsRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BulkDeleterTest {
+    @Test
+    public void testBatchingAndRetries() {
+        final Set<String> deleted = Collections.synchronizedSet(new HashSet<String>());
+        final Map<String, AtomicInteger> attempts = new HashMap<>();
+        final AtomicInteger maxBatch = new AtomicInteger(), concurrent = new AtomicInteger(), maxConcurrent = new AtomicInteger();
+
+        S3Client client = mockClient(request -> {
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(10);
+                Assert.assertTrue(request.getDeleteObjects().getQuiet());
+                List<ObjectKey> keys = request.getDeleteObjects().getKeys();
+                maxBatch.accumulateAndGet(keys.size(), Math::max);
+                DeleteObjectsResult result = new DeleteObjectsResult();
+                for (ObjectKey key : keys) {
+                    int attempt;
+                    synchronized (attempts) {
+                        attempt = attempts.computeIfAbsent(key.getKey(), k -> new AtomicInteger()).incrementAndGet();
+                    }
+                    // every 10th key fails once, key-0500 always fails
+                    if (key.getKey().equals("key-0500") || (key.getKey().endsWith("0") && attempt == 1)) {
+                        DeleteError error = new DeleteError();
+                        error.setKey(key.getKey());
+                        error.setCode("InternalError");
+                        error.setMessage("try again");
+                        result.getResults().add(error);
+                    } else {
+                        deleted.add(key.getKey());
+                    }
+                }
+                return result;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+
+        BulkDeleter deleter = new BulkDeleter(client, "bucket").withThreads(4).withBatchSize(100).withRetryDelay(10);
+        try {
+            deleter.delete(IntStream.range(0, 2000).mapToObj(i -> String.format("key-%04d", i)));
+            Assert.fail("failed key was not reported");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1999, deleted.size());
+        Assert.assertEquals(1999, deleter.getKeysDeleted());
+        Assert.assertEquals(1, deleter.getFailures().size());
+        Assert.assertEquals("key-0500", deleter.getFailures().get(0).getKey());
+        Assert.assertEquals("InternalError", deleter.getFailures().get(0).getCode());
+        Assert.assertEquals(BulkDeleter.DEFAULT_MAX_RETRIES + 1, attempts.get("key-0500").get());
+        // only the failed keys were retried
+        Assert.assertEquals(1, attempts.get("key-0001").get());
+        Assert.assertEquals(2, attempts.get("key-0010").get());
+        Assert.assertEquals(100, maxBatch.get());
+        Assert.assertTrue(maxConcurrent.get() > 1);
+        Assert.assertTrue(deleter.getKeysPerSecond() > 0);
+    }
+
+    @Test
+    public void testFailedBatch() {
+        S3Client client = mockClient(request -> {
+            throw new S3Exception("unavailable", 503, "ServiceUnavailable", "request-1");
+        });
+
+        BulkDeleter deleter = new BulkDeleter(client, "bucket").withMaxRetries(1).withRetryDelay(0);
+        try {
+            deleter.delete(IntStream.range(0, 10).mapToObj(i -> "key-" + i));
+            Assert.fail("failed batch was not reported");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Assert.assertEquals(0, deleter.getKeysDeleted());
+        Assert.assertEquals(10, deleter.getKeysRetried());
+        Assert.assertEquals(10, deleter.getFailures().size());
+        Assert.assertEquals("ServiceUnavailable", deleter.getFailures().get(0).getCode());
+    }
+
+    @Test
+    public void testRequestEntity() throws Exception {
+        DeleteObjectsRequest request = new DeleteObjectsRequest("bucket")
+                .withKeys(new ObjectKey("a&b<c>\"d\""), new ObjectKey("key", "version-1"));
+        request.getDeleteObjects().setQuiet(true);
+
+        // the entity is the JAXB bean, so the body is marshalled like every other request
+        Assert.assertSame(request.getDeleteObjects(), request.getEntity());
+        JAXBContext context = JAXBContext.newInstance(DeleteObjects.class);
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        context.createMarshaller().marshal(request.getEntity(), xml);
+        DeleteObjects deleteObjects = (DeleteObjects) context.createUnmarshaller()
+                .unmarshal(new ByteArrayInputStream(xml.toByteArray()));
+        Assert.assertTrue(deleteObjects.getQuiet());
+        Assert.assertEquals(Arrays.asList("a&b<c>\"d\"", "key"),
+                deleteObjects.getKeys().stream().map(ObjectKey::getKey).collect(Collectors.toList()));
+        Assert.assertNull(deleteObjects.getKeys().get(0).getVersionId());
+        Assert.assertEquals("version-1", deleteObjects.getKeys().get(1).getVersionId());
+    }
+
+    private interface DeleteHandler {
+        DeleteObjectsResult delete(DeleteObjectsRequest request);
+    }
+
+    private S3Client mockClient(final DeleteHandler handler) {
+        return new StubS3Client().on("deleteObjects", args -> handler.delete((DeleteObjectsRequest) args[0])).build();
+    }
+}
@@ -31,13 +31,16 @@ import com.emc.object.util.ChecksumError;
 import com.emc.object.util.RestUtil;
 import com.sun.jersey.api.client.*;
 import com.sun.jersey.core.header.InBoundHeaders;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Random;
 
@@ -71,22 +74,73 @@ public class ChecksumFilterTest {
         }
     }
 
-    // assumes byte[] entity
+    @Test
+    public void testPrecomputedContentMd5() throws Exception {
+        byte[] data = new byte[1024];
+        new Random().nextBytes(data);
+        String md5 = Base64.encodeBase64String(DigestUtils.md5(data));
+
+        MockClientHandler mockHandler = new MockClientHandler();
+        Client client = new Client(mockHandler);
+        client.addFilter(new ChecksumFilter(new S3Config()));
+
+        // byte[] and resettable streams are hashed before the request is sent
+        for (Object entity : new Object[]{data, new ByteArrayInputStream(data)}) {
+            WebResource resource = client.resource("http://foo.com");
+            resource.setProperty(RestUtil.PROPERTY_GENERATE_CONTENT_MD5, Boolean.TRUE);
+            resource.put(ClientResponse.class, entity);
+            Assert.assertEquals(md5, mockHandler.initialContentMd5);
+            Assert.assertEquals(md5, mockHandler.contentMd5);
+            Assert.assertArrayEquals(data, mockHandler.content);
+        }
+    }
+
+    @Test
+    public void testBufferedContentMd5() throws Exception {
+        byte[] data = new byte[10 * 1024];
+        new Random().nextBytes(data);
+        String md5 = Base64.encodeBase64String(DigestUtils.md5(data));
+
+        MockClientHandler mockHandler = new MockClientHandler();
+        Client client = new Client(mockHandler);
+        // small buffer, so the entity spills to disk
+        client.addFilter(new ChecksumFilter(new S3Config().withContentMd5BufferSize(1024)));
+
+        WebResource resource = client.resource("http://foo.com");
+        resource.setProperty(RestUtil.PROPERTY_GENERATE_CONTENT_MD5, Boolean.TRUE);
+        resource.put(ClientResponse.class, new BufferedInputStream(new ByteArrayInputStream(data)));
+        Assert.assertNull(mockHandler.initialContentMd5);
+        Assert.assertEquals(md5, mockHandler.contentMd5);
+        Assert.assertArrayEquals(data, mockHandler.content);
+    }
+
+    // assumes byte[] or InputStream entity
     class MockClientHandler implements ClientHandler {
         boolean badMd5 = false;
+        String initialContentMd5, contentMd5;
+        byte[] content;
 
         @Override
         public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
-            byte[] content = (byte[]) cr.getEntity();
+            initialContentMd5 = RestUtil.getFirstAsString(cr.getHeaders(), RestUtil.HEADER_CONTENT_MD5);
 
             // make sure entity is actually written (so digest stream will get real MD5)
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             try {
-                OutputStream out = cr.getAdapter().adapt(cr, new ByteArrayOutputStream());
-                out.write((byte[]) cr.getEntity());
+                OutputStream out = cr.getAdapter() == null ? buffer : cr.getAdapter().adapt(cr, buffer);
+                if (cr.getEntity() instanceof InputStream) {
+                    byte[] chunk = new byte[1000];
+                    int count;
+                    while ((count = ((InputStream) cr.getEntity()).read(chunk)) != -1) out.write(chunk, 0, count);
+                } else {
+                    out.write((byte[]) cr.getEntity());
+                }
                 out.close();
             } catch (IOException e) {
                 throw new ClientHandlerException(e);
             }
+            content = buffer.toByteArray();
+            contentMd5 = RestUtil.getFirstAsString(cr.getHeaders(), RestUtil.HEADER_CONTENT_MD5);
 
             // set content MD5 header in response (bad or real)
             InBoundHeaders headers = new InBoundHeaders();
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.AuthorizationFilter;
+import com.emc.object.s3.jersey.ChecksumFilter;
+import com.emc.object.s3.jersey.ChunkedSigningFilter;
+import com.emc.object.util.RestUtil;
+import com.emc.rest.smart.jersey.SizeOverrideWriter;
+import com.sun.jersey.api.client.*;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ChunkedSigningFilterTest {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        byte[] data = new byte[3 * CHUNK_SIZE + 100];
+        new Random().nextBytes(data);
+
+        MockClientHandler mockHandler = new MockClientHandler();
+        Client client = createClient(mockHandler, 0);
+
+        SizeOverrideWriter.setEntitySize((long) data.length);
+        try {
+            WebResource resource = client.resource("http://foo.com/bucket/key");
+            resource.setProperty(RestUtil.PROPERTY_VERIFY_WRITE_CHECKSUM, Boolean.TRUE);
+            ClientResponse response = resource.put(ClientResponse.class, data);
+            Assert.assertEquals(200, response.getStatus());
+        } finally {
+            SizeOverrideWriter.setEntitySize(null);
+        }
+
+        Assert.assertEquals(1, mockHandler.requestCount);
+        Assert.assertArrayEquals(data, mockHandler.decodedData);
+        Assert.assertEquals(String.valueOf(data.length), mockHandler.decodedLengthHeader);
+        Assert.assertEquals(AwsChunkedOutputStream.getEncodedLength(data.length, CHUNK_SIZE), mockHandler.entitySize.longValue());
+        Assert.assertEquals(mockHandler.entitySize.longValue(), mockHandler.encodedLength);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        byte[] data = new byte[CHUNK_SIZE + 1];
+        new Random().nextBytes(data);
+
+        MockClientHandler mockHandler = new MockClientHandler();
+        Client client = createClient(mockHandler, 1);
+
+        SizeOverrideWriter.setEntitySize((long) data.length);
+        try {
+            ClientResponse response = client.resource("http://foo.com/bucket/key").put(ClientResponse.class, data);
+            Assert.assertEquals(200, response.getStatus());
+        } finally {
+            SizeOverrideWriter.setEntitySize(null);
+        }
+
+        // the entity must only be encoded once on the second attempt
+        Assert.assertEquals(2, mockHandler.requestCount);
+        Assert.assertArrayEquals(data, mockHandler.decodedData);
+        Assert.assertEquals(String.valueOf(data.length), mockHandler.decodedLengthHeader);
+    }
+
+    @Test
+    public void testContentMd5NotStreamed() throws Exception {
+        byte[] data = new byte[1024];
+        new Random().nextBytes(data);
+
+        MockClientHandler mockHandler = new MockClientHandler();
+        Client client = createClient(mockHandler, 0);
+
+        SizeOverrideWriter.setEntitySize((long) data.length);
+        try {
+            WebResource resource = client.resource("http://foo.com/bucket/key");
+            resource.setProperty(RestUtil.PROPERTY_GENERATE_CONTENT_MD5, Boolean.TRUE);
+            resource.put(ClientResponse.class, data);
+        } finally {
+            SizeOverrideWriter.setEntitySize(null);
+        }
+
+        Assert.assertNull(mockHandler.decodedLengthHeader);
+        Assert.assertArrayEquals(data, mockHandler.rawData);
+    }
+
+    private Client createClient(MockClientHandler mockHandler, int failures) throws Exception {
+        S3Config s3Config = new S3Config(new URI("http://foo.com")).withIdentity("user").withSecretKey("secret")
+                .withUseV2Signer(false).withSignStreamingPayload(true).withChunkedEncodingSize(CHUNK_SIZE);
+
+        mockHandler.failures = failures;
+        Client client = new Client(mockHandler);
+        // same order as S3JerseyClient
+        client.addFilter(new ChunkedSigningFilter(s3Config));
+        client.addFilter(new ChecksumFilter(s3Config));
+        client.addFilter(new AuthorizationFilter(s3Config));
+        client.addFilter(new SimpleRetryFilter(failures));
+        return client;
+    }
+
+    // retries the rest of the chain on a 500 error
+    class SimpleRetryFilter extends ClientFilter {
+        int failures;
+
+        SimpleRetryFilter(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+            while (true) {
+                ClientResponse response = getNext().handle(cr);
+                if (response.getStatus() != 500 || failures-- <= 0) return response;
+            }
+        }
+    }
+
+    // assumes byte[] entity
+    class MockClientHandler implements ClientHandler {
+        int requestCount = 0;
+        int failures;
+        byte[] rawData;
+        byte[] decodedData;
+        long encodedLength;
+        Long entitySize;
+        String decodedLengthHeader;
+
+        @Override
+        public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+            requestCount++;
+            entitySize = SizeOverrideWriter.getEntitySize();
+            decodedLengthHeader = RestUtil.getFirstAsString(cr.getHeaders(), S3Constants.AMZ_DECODED_CONTENT_LENGTH);
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                OutputStream out = cr.getAdapter().adapt(cr, buffer);
+                out.write((byte[]) cr.getEntity());
+                out.close();
+            } catch (IOException e) {
+                throw new ClientHandlerException(e);
+            }
+            rawData = buffer.toByteArray();
+            encodedLength = rawData.length;
+            if (decodedLengthHeader != null) decodedData = decode(rawData);
+
+            InBoundHeaders headers = new InBoundHeaders();
+            // the write checksum must be calculated on the decoded data
+            headers.add(RestUtil.EMC_CONTENT_MD5, DigestUtils.md5Hex((byte[]) cr.getEntity()));
+            ClientResponse.Status status = failures-- > 0
+                    ? ClientResponse.Status.INTERNAL_SERVER_ERROR : ClientResponse.Status.OK;
+            return new ClientResponse(status, headers, new ByteArrayInputStream(new byte[0]), null);
+        }
+
+        // strips chunk headers and verifies the chunk signatures are present
+        private byte[] decode(byte[] encoded) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            int pos = 0;
+            while (true) {
+                int headerEnd = indexOf(encoded, pos);
+                String header = new String(encoded, pos, headerEnd - pos, StandardCharsets.US_ASCII);
+                String[] parts = header.split(";chunk-signature=");
+                Assert.assertEquals(64, parts[1].length());
+                int size = Integer.parseInt(parts[0], 16);
+                decoded.write(encoded, headerEnd + 2, size);
+                pos = headerEnd + 2 + size + 2;
+                if (size == 0) break;
+            }
+            Assert.assertEquals(encoded.length, pos);
+            return decoded.toByteArray();
+        }
+
+        private int indexOf(byte[] data, int from) {
+            for (int i = from; i < data.length - 1; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n') return i;
+            }
+            throw new IllegalStateException("no chunk header found: " + Arrays.toString(Arrays.copyOfRange(data, from, data.length)));
+        }
+    }
+}
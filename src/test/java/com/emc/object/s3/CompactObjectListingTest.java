@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.CanonicalUser;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.bean.StorageClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class CompactObjectListingTest {
+    @Test
+    public void testRoundTrip() {
+        testRoundTrip(new CompactObjectListing());
+    }
+
+    @Test
+    public void testOffHeap() {
+        testRoundTrip(CompactObjectListing.offHeap());
+    }
+
+    private void testRoundTrip(CompactObjectListing listing) {
+        List<S3Object> objects = createObjects(1000);
+        for (S3Object object : objects) listing.add(object);
+
+        Assert.assertEquals(objects.size(), listing.size());
+        for (int i = 0; i < objects.size(); i++) {
+            assertEquals(objects.get(i), listing.get(i));
+        }
+        int i = 0;
+        for (S3Object view : listing) {
+            assertEquals(objects.get(i++), view);
+        }
+        Assert.assertEquals(objects.size(), i);
+    }
+
+    @Test
+    public void testLookup() {
+        CompactObjectListing listing = new CompactObjectListing();
+        List<S3Object> objects = createObjects(1000);
+        for (S3Object object : objects) listing.add(object);
+
+        Assert.assertEquals(0, listing.indexOf(objects.get(0).getKey()));
+        Assert.assertEquals(517, listing.indexOf(objects.get(517).getKey()));
+        Assert.assertEquals(999, listing.indexOf(objects.get(999).getKey()));
+        Assert.assertEquals(-1, listing.indexOf("a"));
+        Assert.assertEquals(-1001, listing.indexOf("zzz"));
+
+        List<String> keys = new ArrayList<>();
+        for (S3Object object : listing.withPrefix("dir-03/")) keys.add(object.getKey());
+        Assert.assertEquals(100, keys.size());
+        Assert.assertEquals("dir-03/file-0000", keys.get(0));
+        Assert.assertEquals("dir-03/file-0099", keys.get(99));
+
+        Assert.assertFalse(listing.withPrefix("dir-10/").iterator().hasNext());
+        Assert.assertEquals(1000, count(listing.withPrefix("")));
+    }
+
+    @Test
+    public void testOrderAndSpanningChunks() {
+        CompactObjectListing listing = new CompactObjectListing();
+        StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < CompactObjectListing.CHUNK_SIZE / 10; i++) longKey.append("0123456789");
+
+        // keys long enough to cross chunk boundaries, with multi-byte characters sorted in UTF-8 order
+        String[] keys = {"b", "bé", "bé" + longKey, "bé" + longKey + "x", "中"};
+        for (String key : keys) {
+            S3Object object = new S3Object();
+            object.setKey(key);
+            listing.add(object);
+        }
+        for (int i = 0; i < keys.length; i++) Assert.assertEquals(keys[i], listing.getKey(i));
+        Assert.assertEquals(3, listing.indexOf(keys[3]));
+
+        try {
+            S3Object object = new S3Object();
+            object.setKey("a");
+            listing.add(object);
+            Assert.fail("out-of-order key was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private List<S3Object> createObjects(int count) {
+        CanonicalUser[] owners = {new CanonicalUser("ID1", "One"), new CanonicalUser("ID2", "Two")};
+        List<S3Object> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            S3Object object = new S3Object();
+            object.setKey(String.format("dir-%02d/file-%04d", i / 100, i % 100));
+            object.setSize(i % 7 == 0 ? null : (long) i * 1000);
+            object.setLastModified(i % 11 == 0 ? null : new Date(1500000000000L + i));
+            if (i % 3 == 0) object.setETag(String.format("\"%032x\"", i));
+            else if (i % 3 == 1) object.setETag(String.format("%032x-%d", i, i % 10));
+            object.setStorageClass(i % 2 == 0 ? StorageClass.STANDARD : null);
+            object.setOwner(i % 5 == 0 ? null : owners[i % 2]);
+            objects.add(object);
+        }
+        return objects;
+    }
+
+    private void assertEquals(S3Object expected, S3Object actual) {
+        Assert.assertEquals(expected.getKey(), actual.getKey());
+        Assert.assertEquals(expected.getSize(), actual.getSize());
+        Assert.assertEquals(expected.getLastModified(), actual.getLastModified());
+        Assert.assertEquals(expected.getETag(), actual.getETag());
+        Assert.assertEquals(expected.getStorageClass(), actual.getStorageClass());
+        Assert.assertEquals(expected.getOwner(), actual.getOwner());
+        if (expected.getOwner() != null)
+            Assert.assertEquals(expected.getOwner().getDisplayName(), actual.getOwner().getDisplayName());
+    }
+
+    private int count(Iterable<S3Object> objects) {
+        int count = 0;
+        for (S3Object ignored : objects) count++;
+        return count;
+    }
+}
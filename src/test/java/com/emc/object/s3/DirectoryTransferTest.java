@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DirectoryTransferTest extends AbstractS3ClientTest {
+    static final int SMALL_FILE_SIZE = 4 * 1024 + 7;
+    static final int LARGE_FILE_SIZE = 3 * 1024 * 1024 + 11;
+
+    private File sourceDir;
+    private File targetDir;
+    private Map<String, byte[]> sourceData = new TreeMap<>();
+
+    @Override
+    protected String getTestBucketPrefix() {
+        return "dir-transfer-test";
+    }
+
+    @Override
+    protected S3Client createS3Client() throws Exception {
+        return new S3JerseyClient(createS3Config());
+    }
+
+    @Before
+    public void createTree() throws Exception {
+        sourceDir = Files.createTempDirectory("dir-transfer-source").toFile();
+        targetDir = Files.createTempDirectory("dir-transfer-target").toFile();
+
+        Random random = new Random();
+        for (String dir : Arrays.asList("", "a/", "a/b/", "a/b/c/", "d/")) {
+            for (int i = 0; i < 20; i++) {
+                createFile(dir + "small-" + i, SMALL_FILE_SIZE, random);
+            }
+            createFile(dir + "empty", 0, random);
+        }
+        createFile("a/large", LARGE_FILE_SIZE, random);
+        createFile("d/large", LARGE_FILE_SIZE, random);
+        Assert.assertTrue(new File(sourceDir, "empty-dir").mkdir());
+    }
+
+    @After
+    public void deleteTree() throws Exception {
+        for (File dir : Arrays.asList(sourceDir, targetDir)) {
+            if (dir == null) continue; // skipped before the tree was created
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private void createFile(String relativePath, int size, Random random) throws IOException {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        File file = new File(sourceDir, relativePath);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), data);
+        sourceData.put(relativePath, data);
+    }
+
+    @Test
+    public void testUploadDownload() throws Exception {
+        String prefix = "tree/";
+
+        DirectoryUploader uploader = new DirectoryUploader(client, getTestBucket(), prefix, sourceDir)
+                .withThreads(8).withLargeFileThreshold(1024 * 1024);
+        uploader.upload();
+
+        Assert.assertEquals(sourceData.size(), uploader.getFilesTransferred());
+        long totalSize = sourceData.values().stream().mapToLong(data -> data.length).sum();
+        Assert.assertEquals(totalSize, uploader.getBytesTransferred());
+        Assert.assertTrue(uploader.getFilesPerSecond() > 0);
+        Assert.assertTrue(uploader.getBytesPerSecond() > 0);
+        Assert.assertTrue(uploader.getFailures().isEmpty());
+
+        Set<String> keys = new TreeSet<>();
+        for (S3Object object : client.listObjects(getTestBucket(), prefix).getObjects()) {
+            keys.add(object.getKey().substring(prefix.length()));
+        }
+        Assert.assertEquals(sourceData.keySet(), keys);
+
+        DirectoryDownloader downloader = new DirectoryDownloader(client, getTestBucket(), prefix, targetDir)
+                .withThreads(8).withLargeFileThreshold(1024 * 1024);
+        downloader.download();
+
+        Assert.assertEquals(sourceData.size(), downloader.getFilesTransferred());
+        Assert.assertEquals(totalSize, downloader.getBytesTransferred());
+        for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+            Assert.assertArrayEquals(entry.getKey(), entry.getValue(),
+                    Files.readAllBytes(new File(targetDir, entry.getKey()).toPath()));
+        }
+        try (Stream<Path> paths = Files.walk(targetDir.toPath())) {
+            Assert.assertEquals(sourceData.size(), paths.filter(Files::isRegularFile).collect(Collectors.toList()).size());
+        }
+    }
+
+    @Test
+    public void testTransferManager() throws Exception {
+        TransferManager manager = new TransferManager().withMaxConcurrentParts(4);
+        try {
+            new DirectoryUploader(client, getTestBucket(), null, sourceDir)
+                    .withLargeFileThreshold(1024 * 1024).withTransferManager(manager).upload();
+            new DirectoryDownloader(client, getTestBucket(), null, targetDir)
+                    .withLargeFileThreshold(1024 * 1024).withTransferManager(manager).download();
+        } finally {
+            manager.shutdown();
+        }
+
+        for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+            Assert.assertArrayEquals(entry.getKey(), entry.getValue(),
+                    Files.readAllBytes(new File(targetDir, entry.getKey()).toPath()));
+        }
+    }
+}
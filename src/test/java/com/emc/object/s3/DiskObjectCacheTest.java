@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.GetObjectResult;
+import com.emc.object.s3.request.GetObjectRequest;
+import com.emc.object.util.RestUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DiskObjectCacheTest {
+    private File cacheDir;
+    private final Map<String, String> objects = new ConcurrentHashMap<>();
+    private final AtomicInteger gets = new AtomicInteger(), notModified = new AtomicInteger();
+    private volatile long getDelay;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("disk-object-cache").toFile();
+    }
+
+    @After
+    public void teardown() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        cacheDir.delete();
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        objects.put("key", "version 1");
+        DiskObjectCache cache = new DiskObjectCache(mockClient(), cacheDir);
+
+        Assert.assertEquals("version 1", read(cache, "key"));
+        Assert.assertEquals("version 1", read(cache, "key"));
+        Assert.assertEquals(2, gets.get());
+        Assert.assertEquals(1, notModified.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getRevalidations());
+        Assert.assertEquals(etag("version 1"), cache.getObjectMetadata("bucket", "key").getETag());
+
+        // a changed object is downloaded again
+        objects.put("key", "version 2");
+        Assert.assertEquals("version 2", read(cache, "key"));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals("version 2".length(), cache.getCachedBytes());
+
+        // revalidateAfter skips the round-trip
+        cache.setRevalidateAfter(60000);
+        int before = gets.get();
+        Assert.assertEquals("version 2", read(cache, "key"));
+        Assert.assertEquals(before, gets.get());
+        Assert.assertEquals(1, cache.getHits());
+
+        // a deleted object is dropped from the cache
+        cache.setRevalidateAfter(0);
+        objects.remove("key");
+        try {
+            read(cache, "key");
+            Assert.fail("read of deleted object should fail");
+        } catch (S3Exception e) {
+            Assert.assertEquals(404, e.getHttpCode());
+        }
+        Assert.assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testSingleDownloadPerKey() throws Exception {
+        objects.put("key", "shared content");
+        getDelay = 200;
+        final DiskObjectCache cache = new DiskObjectCache(mockClient(), cacheDir);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> read(cache, "key")));
+            }
+            for (Future<String> future : futures) {
+                Assert.assertEquals("shared content", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, gets.get());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictionAndReload() throws Exception {
+        for (String key : Arrays.asList("a", "b", "c")) {
+            objects.put(key, key + key + key + key + key + key + key + key + key + key); // 10 bytes
+        }
+        DiskObjectCache cache = new DiskObjectCache(mockClient(), cacheDir).withMaxSize(25);
+        read(cache, "a");
+        read(cache, "b");
+        read(cache, "a"); // a is now most-recently used
+        read(cache, "c"); // evicts b
+        Assert.assertEquals(2, cache.getEntryCount());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(20, cache.getCachedBytes());
+
+        // a new instance picks up what is on disk
+        DiskObjectCache reloaded = new DiskObjectCache(mockClient(), cacheDir).withMaxSize(25).withMmapThreshold(5);
+        Assert.assertEquals(2, reloaded.getEntryCount());
+        ByteBuffer buffer = reloaded.readObjectBuffer("bucket", "c");
+        Assert.assertTrue(buffer instanceof MappedByteBuffer);
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        Assert.assertEquals(objects.get("c"), new String(content, StandardCharsets.UTF_8));
+        Assert.assertEquals(0, reloaded.getMisses());
+        Assert.assertEquals(1, reloaded.getRevalidations());
+
+        // small objects are read onto the heap
+        reloaded.setMmapThreshold(1024);
+        Assert.assertFalse(reloaded.readObjectBuffer("bucket", "a") instanceof MappedByteBuffer);
+    }
+
+    @Test
+    public void testRefillWritesNewFiles() throws Exception {
+        objects.put("key", "version 1");
+        DiskObjectCache cache = new DiskObjectCache(mockClient(), cacheDir);
+        read(cache, "key");
+        File[] v1Files = cacheDir.listFiles();
+        Assert.assertEquals(2, v1Files.length);
+
+        // a reader of version 1 still gets all of version 1 after the object is refilled
+        try (InputStream in = cache.readObjectStream("bucket", "key")) {
+            objects.put("key", "version 2!");
+            Assert.assertEquals("version 2!", read(cache, "key"));
+            Assert.assertEquals(etag("version 2!"), cache.getObjectMetadata("bucket", "key").getETag());
+            byte[] content = new byte[64];
+            int total = 0, read;
+            while ((read = in.read(content, total, content.length - total)) > 0) total += read;
+            Assert.assertEquals("version 1", new String(content, 0, total, StandardCharsets.UTF_8));
+        }
+
+        // the files of version 1 are gone
+        for (File file : v1Files) Assert.assertFalse(file.getName(), file.exists());
+        Assert.assertEquals(2, cacheDir.listFiles().length);
+
+        // data without metadata and temp files (i.e. from a crash mid-fill) are cleaned up on load
+        Assert.assertTrue(new File(cacheDir, "orphan.data").createNewFile());
+        Assert.assertTrue(new File(cacheDir, "fill123.tmp").createNewFile());
+        DiskObjectCache reloaded = new DiskObjectCache(mockClient(), cacheDir);
+        Assert.assertEquals(1, reloaded.getEntryCount());
+        Assert.assertEquals(2, cacheDir.listFiles().length);
+        Assert.assertEquals("version 2!", read(reloaded, "key"));
+    }
+
+    private String read(DiskObjectCache cache, String key) throws IOException {
+        try (InputStream in = cache.readObjectStream("bucket", key)) {
+            StringBuilder content = new StringBuilder();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) content.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            return content.toString();
+        }
+    }
+
+    private static String etag(String content) {
+        return Integer.toHexString(content.hashCode());
+    }
+
+    private S3Client mockClient() {
+        return new StubS3Client().on("getObject", args -> {
+            gets.incrementAndGet();
+            if (getDelay > 0) Thread.sleep(getDelay);
+            GetObjectRequest<?> request = (GetObjectRequest<?>) args[0];
+            String content = objects.get(request.getKey());
+            if (content == null) throw new S3Exception("Not Found", 404, S3Constants.ERROR_NO_SUCH_KEY, null);
+            if (etag(content).equals(request.getIfNoneMatch())) {
+                notModified.incrementAndGet();
+                return null;
+            }
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headers.put(RestUtil.HEADER_ETAG, Collections.singletonList("\"" + etag(content) + "\""));
+            headers.put(RestUtil.HEADER_CONTENT_LENGTH, Collections.singletonList("" + data.length));
+            GetObjectResult<InputStream> result = new GetObjectResult<>();
+            result.setHeaders(headers);
+            result.setObject(new ByteArrayInputStream(data));
+            return result;
+        }).build();
+    }
+}
@@ -73,10 +73,45 @@ public class ErrorFilterTest {
         }
     }
 
+    @Test
+    public void testRetryAfter() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<Error>" +
+                "<Code>" + S3Constants.ERROR_SLOW_DOWN + "</Code>" +
+                "<Message>Please reduce your request rate.</Message>" +
+                "</Error>";
+
+        Assert.assertEquals(3000, getRetryAfter(xml, "3"));
+        Assert.assertEquals(0, getRetryAfter(xml, null));
+        Assert.assertEquals(0, getRetryAfter(xml, "soon"));
+        long retryAfter = getRetryAfter(xml, RestUtil.headerFormat(new Date(System.currentTimeMillis() + 10000)));
+        Assert.assertTrue(retryAfter > 8000 && retryAfter <= 10000);
+        // no response body
+        Assert.assertEquals(5000, getRetryAfter("", "5"));
+    }
+
+    private long getRetryAfter(String xml, String retryAfter) {
+        Client client = Client.create();
+        TestErrorGenerator generator = new TestErrorGenerator(503, xml, client.getMessageBodyWorkers());
+        generator.retryAfter = retryAfter;
+        client.addFilter(generator);
+        client.addFilter(new ErrorFilter());
+
+        try {
+            client.resource("http://127.0.0.1/foo").head();
+            Assert.fail("test error generator failed to short-circuit");
+            return -1;
+        } catch (S3Exception e) {
+            Assert.assertEquals(503, e.getHttpCode());
+            return e.getRetryAfter();
+        }
+    }
+
     static class TestErrorGenerator extends ClientFilter {
         private final int statusCode;
         private final String errorBody;
         private final MessageBodyWorkers messageBodyWorkers;
+        String retryAfter;
 
         TestErrorGenerator(int statusCode, String errorBody, MessageBodyWorkers messageBodyWorkers) {
             this.statusCode = statusCode;
@@ -88,6 +123,7 @@ public class ErrorFilterTest {
         public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
             InBoundHeaders headers = new InBoundHeaders();
             headers.putSingle("Date", RestUtil.headerFormat(new Date()));
+            if (retryAfter != null) headers.putSingle(RestUtil.HEADER_RETRY_AFTER, retryAfter);
             InputStream dataStream = new ByteArrayInputStream(errorBody.getBytes(StandardCharsets.UTF_8));
             return new ClientResponse(Response.Status.fromStatusCode(statusCode), headers, dataStream, messageBodyWorkers);
         }
@@ -30,13 +30,16 @@ import com.emc.object.s3.jersey.S3JerseyClient;
 import com.emc.object.util.ProgressListener;
 import com.emc.rest.util.StreamUtil;
 import com.emc.util.RandomInputStream;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.xml.bind.DatatypeConverter;
 import java.io.*;
+import java.nio.channels.Channels;
 import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
@@ -136,6 +139,56 @@ public class LargeFileDownloaderTest extends AbstractS3ClientTest {
         Assert.assertEquals(md5Hex, DatatypeConverter.printHexBinary(dis.getMessageDigest().digest()).toLowerCase());
     }
 
+    @Test
+    public void testStreamDownload() throws Exception {
+        // download to an output stream in 2MB parts, with at most 3 parts in memory
+        DigestOutputStream dos = new DigestOutputStream(new NullStream(), MessageDigest.getInstance("MD5"));
+        LargeFileDownloader lfd = new LargeFileDownloader(client, getTestBucket(), key, dos)
+                .withParallelThreshold(FILE_SIZE).withPartSize(LargeFileDownloader.MIN_PART_SIZE)
+                .withMaxInFlightParts(3);
+        lfd.download();
+
+        Assert.assertNotNull(lfd.getExecutorService());
+        Assert.assertEquals(FILE_SIZE, lfd.getBytesTransferred());
+        Assert.assertEquals(md5Hex, DatatypeConverter.printHexBinary(dos.getMessageDigest().digest()).toLowerCase());
+
+        // download to a channel
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        lfd = new LargeFileDownloader(client, getTestBucket(), key, Channels.newChannel(baos))
+                .withParallelThreshold(FILE_SIZE).withPartSize(LargeFileDownloader.MIN_PART_SIZE);
+        lfd.download();
+
+        Assert.assertEquals(FILE_SIZE, baos.size());
+        Assert.assertEquals(md5Hex, DigestUtils.md5Hex(baos.toByteArray()));
+
+        // below threshold (single GET) to a stream, which should not be closed
+        dos = new DigestOutputStream(new NullStream(), MessageDigest.getInstance("MD5"));
+        lfd = new LargeFileDownloader(client, getTestBucket(), key, dos).withParallelThreshold(FILE_SIZE + 1);
+        lfd.download();
+
+        Assert.assertNull(lfd.getExecutorService());
+        Assert.assertEquals(md5Hex, DatatypeConverter.printHexBinary(dos.getMessageDigest().digest()).toLowerCase());
+    }
+
+    @Test
+    public void testTunedDownload() throws Exception {
+        AdaptivePartTuningStrategy strategy = new AdaptivePartTuningStrategy().withMaxConcurrency(6)
+                .withSampleIntervalMillis(0).withTargetPartDurationMillis(100)
+                .withMinPartSize(LargeFileDownloader.MIN_PART_SIZE).withMaxPartSize(8 * 1024 * 1024);
+        LargeFileDownloader lfd = new LargeFileDownloader(client, getTestBucket(), key, destFile)
+                .withParallelThreshold(FILE_SIZE).withPartSize(LargeFileDownloader.MIN_PART_SIZE).withThreads(2)
+                .withPartTuningStrategy(strategy);
+        lfd.download();
+
+        Assert.assertEquals(FILE_SIZE, lfd.getBytesTransferred());
+        Assert.assertTrue(strategy.getConcurrency() >= 1 && strategy.getConcurrency() <= 6);
+
+        // verify content
+        DigestInputStream dis = new DigestInputStream(new FileInputStream(destFile), MessageDigest.getInstance("MD5"));
+        StreamUtil.copy(dis, new NullStream(), destFile.length());
+        Assert.assertEquals(md5Hex, DatatypeConverter.printHexBinary(dis.getMessageDigest().digest()).toLowerCase());
+    }
+
     @Test
     public void testBelowThreshold() throws Exception {
         final AtomicLong bytesTransferred = new AtomicLong(), bytesCompleted = new AtomicLong(), bytesTotal = new AtomicLong();
@@ -35,6 +35,7 @@ import com.emc.object.s3.lfu.LargeFileMultipartSource;
 import com.emc.object.s3.lfu.LargeFileUpload;
 import com.emc.object.s3.lfu.LargeFileUploaderResumeContext;
 import com.emc.object.s3.lfu.PartMismatchException;
+import com.emc.object.s3.lfu.PartQueueListener;
 import com.emc.object.s3.request.AbortMultipartUploadRequest;
 import com.emc.object.s3.request.GetObjectRequest;
 import com.emc.object.s3.request.ListMultipartUploadsRequest;
@@ -52,8 +53,10 @@ import java.io.*;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class LargeFileUploaderTest extends AbstractS3ClientTest {
@@ -201,6 +204,188 @@ public class LargeFileUploaderTest extends AbstractS3ClientTest {
         Assert.assertEquals(objectMetadata.getUserMetadata(), client.getObjectMetadata(getTestBucket(), key).getUserMetadata());
     }
 
+    @Test
+    public void testLargeFileUploaderBufferedStream() {
+        String key = "large-file-uploader-buffered-stream.bin";
+        int size = 20 * 1024 * 1024 + 123; // > 20MB
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        int maxInFlight = 3;
+
+        final AtomicInteger maxQueueDepth = new AtomicInteger();
+        final AtomicInteger partsQueued = new AtomicInteger(), partsCompleted = new AtomicInteger();
+        PartQueueListener queueListener = new PartQueueListener() {
+            @Override
+            public void bufferWait(int partNumber, long waitTimeNanos) {
+                Assert.assertTrue(waitTimeNanos >= 0);
+            }
+
+            @Override
+            public void partQueued(int partNumber, int queueDepth) {
+                partsQueued.incrementAndGet();
+                maxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+            }
+
+            @Override
+            public void partCompleted(int partNumber, int queueDepth) {
+                partsCompleted.incrementAndGet();
+            }
+        };
+
+        LargeFileUploader uploader = new TestLargeFileUploader(client, getTestBucket(), key,
+                new ByteArrayInputStream(data), size).withBufferStreamParts(true).withThreads(4)
+                .withMaxInFlightParts(maxInFlight).withPartQueueListener(queueListener);
+        uploader.setPartSize(LargeFileUploader.MIN_PART_SIZE);
+
+        // multipart (parts are read into buffers and uploaded in parallel)
+        uploader.doMultipartUpload();
+
+        int partCount = (int) ((size - 1) / LargeFileUploader.MIN_PART_SIZE) + 1;
+        Assert.assertEquals(4, uploader.getThreads());
+        Assert.assertEquals(size, uploader.getBytesTransferred());
+        Assert.assertTrue(uploader.getETag().contains("-")); // hyphen signifies multipart / updated object
+        Assert.assertArrayEquals(data, client.readObject(getTestBucket(), key, byte[].class));
+        Assert.assertEquals(partCount, partsQueued.get());
+        Assert.assertEquals(partCount, partsCompleted.get());
+        Assert.assertTrue(maxQueueDepth.get() <= maxInFlight);
+
+        client.deleteObject(getTestBucket(), key);
+
+        // parallel byte-range
+        uploader = new TestLargeFileUploader(client, getTestBucket(), key, new ByteArrayInputStream(data), size)
+                .withBufferStreamParts(true).withMaxInFlightParts(maxInFlight);
+        uploader.setPartSize(LargeFileUploader.MIN_PART_SIZE);
+        uploader.doByteRangeUpload();
+
+        Assert.assertEquals(size, uploader.getBytesTransferred());
+        Assert.assertArrayEquals(data, client.readObject(getTestBucket(), key, byte[].class));
+    }
+
+    @Test
+    public void testLargeFileUploaderTuned() throws Exception {
+        String key = "large-file-uploader-tuned.bin";
+        int size = 20 * 1024 * 1024 + 321; // > 20MB
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        File file = File.createTempFile("large-file-uploader-tuned", null);
+        file.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+
+        // sample after every couple of parts, and let the part size vary between 100KB and 2MB
+        AdaptivePartTuningStrategy strategy = new AdaptivePartTuningStrategy().withMaxConcurrency(6)
+                .withSampleIntervalMillis(0).withTargetPartDurationMillis(100)
+                .withMinPartSize(100 * 1024).withMaxPartSize(2 * 1024 * 1024);
+        LargeFileUploader uploader = new TestLargeFileUploader(client, getTestBucket(), key, file)
+                .withPartSize(1024L * 1024).withThreads(2).withPartTuningStrategy(strategy);
+        uploader.doMultipartUpload();
+
+        Assert.assertEquals(size, uploader.getBytesTransferred());
+        Assert.assertTrue(uploader.getETag().contains("-")); // hyphen signifies multipart / updated object
+        Assert.assertArrayEquals(data, client.readObject(getTestBucket(), key, byte[].class));
+        Assert.assertTrue(strategy.getConcurrency() >= 1 && strategy.getConcurrency() <= 6);
+
+        client.deleteObject(getTestBucket(), key);
+
+        // buffered stream, parallel byte-range
+        strategy = new AdaptivePartTuningStrategy().withMaxConcurrency(4).withSampleIntervalMillis(0)
+                .withTargetPartDurationMillis(100).withMinPartSize(100 * 1024).withMaxPartSize(2 * 1024 * 1024);
+        uploader = new TestLargeFileUploader(client, getTestBucket(), key, new ByteArrayInputStream(data), size)
+                .withBufferStreamParts(true).withPartSize(1024L * 1024).withPartTuningStrategy(strategy);
+        uploader.doByteRangeUpload();
+
+        Assert.assertEquals(size, uploader.getBytesTransferred());
+        Assert.assertArrayEquals(data, client.readObject(getTestBucket(), key, byte[].class));
+    }
+
+    @Test
+    public void testTransferManager() throws Exception {
+        int transferCount = 6, size = 5 * 1024 * 1024 + 17;
+        List<byte[]> data = new ArrayList<>();
+        TransferManager manager = new TransferManager().withMaxConcurrentParts(4).withMaxActiveTransfers(3)
+                .withMaxInFlightBytes(3 * 1024 * 1024);
+        try {
+            List<LargeFileUpload> uploads = new ArrayList<>();
+            for (int i = 0; i < transferCount; i++) {
+                byte[] bytes = new byte[size];
+                new Random().nextBytes(bytes);
+                data.add(bytes);
+                uploads.add(manager.upload(new TestLargeFileUploader(client, getTestBucket(), "transfer-manager-" + i,
+                        new ByteArrayInputStream(bytes), size).withBufferStreamParts(true)
+                        .withMpuThreshold(1024 * 1024).withPartSize(1024L * 1024)));
+            }
+            for (LargeFileUpload upload : uploads) {
+                upload.waitForCompletion();
+            }
+
+            List<ByteArrayOutputStream> targets = new ArrayList<>();
+            List<CompletableFuture<Void>> downloads = new ArrayList<>();
+            for (int i = 0; i < transferCount; i++) {
+                ByteArrayOutputStream target = new ByteArrayOutputStream();
+                targets.add(target);
+                downloads.add(manager.download(new LargeFileDownloader(client, getTestBucket(), "transfer-manager-" + i, target)
+                        .withParallelThreshold(1024 * 1024).withPartSize(LargeFileDownloader.MIN_PART_SIZE)));
+            }
+            CompletableFuture.allOf(downloads.toArray(new CompletableFuture[0])).get();
+
+            for (int i = 0; i < transferCount; i++) {
+                Assert.assertArrayEquals(data.get(i), targets.get(i).toByteArray());
+            }
+            Assert.assertEquals(0, manager.getPartsInFlight());
+            Assert.assertEquals(0, manager.getBytesInFlight());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testPauseResumeTuned() throws Exception {
+        String key = "mpu-pause-tuned";
+        int size = 2 * 1024 * 1024 + 321; // > 2MB
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        File file = File.createTempFile("mpu-pause-tuned", null);
+        file.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+
+        // one part at a time, each taking at least 500ms, with a different size for each part
+        LargeFileUploader lfu = new TestLargeFileUploader(client, getTestBucket(), key, file)
+                .withPartSize(1024L * 1024).withMpuThreshold(size).withThreads(1)
+                .withPartTuningStrategy(new SteppedPartSizeStrategy(150 * 1024, 50 * 1024, 500));
+        LargeFileUpload upload = lfu.uploadAsync();
+
+        // wait for a couple of parts to finish
+        Thread.sleep(1200);
+
+        // pausing is supported even though the part size varies
+        LargeFileUploaderResumeContext resumeContext = upload.pause();
+        Assert.assertNotNull(resumeContext.getUploadId());
+        Assert.assertNotNull(resumeContext.getUploadedParts());
+        Assert.assertNotNull(resumeContext.getPartSizes());
+        Assert.assertTrue(resumeContext.getPartSizes().size() >= resumeContext.getUploadedParts().size());
+
+        // uploaded parts should match the recorded sizes
+        List<MultipartPart> parts = client.listParts(getTestBucket(), key, resumeContext.getUploadId()).getParts();
+        Assert.assertEquals(resumeContext.getUploadedParts().size(), parts.size());
+        for (MultipartPart part : parts) {
+            Assert.assertEquals(resumeContext.getPartSizes().get(part.getPartNumber() - 1), part.getSize());
+        }
+
+        // resume with a different part size - the recorded part boundaries must still be used (existing parts are
+        // listed and verified against those sizes)
+        resumeContext.setUploadedParts(null);
+        lfu = new TestLargeFileUploader(client, getTestBucket(), key, file)
+                .withPartSize(1024L * 1024).withMpuThreshold(size)
+                .withPartTuningStrategy(new SteppedPartSizeStrategy(300 * 1024, 0, 0))
+                .withResumeContext(resumeContext);
+        lfu.doMultipartUpload();
+
+        Assert.assertArrayEquals(data, client.readObject(getTestBucket(), key, byte[].class));
+    }
+
     @Test
     public void testAboveThreshold() throws Exception {
         String key = "lfu-mpu-test";
@@ -767,6 +952,54 @@ public class LargeFileUploaderTest extends AbstractS3ClientTest {
         }
     }
 
+    // uses a single thread, grows the part size by a fixed step for each part, and slows down each part
+    static class SteppedPartSizeStrategy implements PartTuningStrategy {
+        private final long step;
+        private final long partDelayMs;
+        private long nextPartSize;
+
+        SteppedPartSizeStrategy(long firstPartSize, long step, long partDelayMs) {
+            this.nextPartSize = firstPartSize;
+            this.step = step;
+            this.partDelayMs = partDelayMs;
+        }
+
+        @Override
+        public void start(long totalSize, long partSize, int concurrency) {
+        }
+
+        @Override
+        public int getMaxConcurrency() {
+            return 1;
+        }
+
+        @Override
+        public int getConcurrency() {
+            return 1;
+        }
+
+        @Override
+        public synchronized long getNextPartSize() {
+            long size = nextPartSize;
+            nextPartSize += step;
+            return size;
+        }
+
+        @Override
+        public void partCompleted(long partSize, long durationNanos) {
+            try {
+                Thread.sleep(partDelayMs);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean isVariablePartSize() {
+            return true;
+        }
+    }
+
     static class ByteProgressListener implements ProgressListener {
         final AtomicLong completed = new AtomicLong();
         final AtomicLong total = new AtomicLong();
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.MetadataCache;
+import com.emc.object.s3.jersey.MetricsFilter;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.DeleteObjectRequest;
+import com.emc.object.s3.request.GetObjectMetadataRequest;
+import com.emc.object.util.RestUtil;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetadataCacheTest {
+    @Test
+    public void testObjectMetadataCache() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            MetadataCache cache = s3Client.getMetadataCache();
+            Assert.assertNotNull(cache);
+
+            S3ObjectMetadata metadata = s3Client.getObjectMetadata("bucket", "key");
+            Assert.assertEquals("etag1", metadata.getETag());
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata("bucket", "key").getETag());
+            Assert.assertEquals(1, handler.requests.size());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(1, cache.getMisses());
+
+            // versioned and conditional requests bypass the cache
+            s3Client.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key").withVersionId("v1"));
+            Assert.assertEquals(2, handler.requests.size());
+
+            // our own writes invalidate the entry
+            handler.eTag = "etag2";
+            s3Client.deleteObject("bucket", "key");
+            Assert.assertEquals(1, cache.getInvalidations());
+            Assert.assertEquals("etag2", s3Client.getObjectMetadata("bucket", "key").getETag());
+
+            // 404s are cached too
+            handler.status = 404;
+            for (int i = 0; i < 2; i++) {
+                try {
+                    s3Client.getObjectMetadata("bucket", "missing");
+                    Assert.fail("metadata request for missing key should fail");
+                } catch (S3Exception e) {
+                    Assert.assertEquals(404, e.getHttpCode());
+                }
+            }
+            Assert.assertEquals(1, cache.getNegativeHits());
+            Assert.assertEquals(5, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 1);
+        try {
+            S3ObjectMetadata metadata = s3Client.getObjectMetadata("bucket", "key");
+            Thread.sleep(5);
+
+            // stale entry is revalidated with If-None-Match; a 304 re-arms it
+            handler.status = 304;
+            GetObjectMetadataRequest request = new GetObjectMetadataRequest("bucket", "key");
+            Assert.assertEquals(metadata.getETag(), s3Client.getObjectMetadata(request).getETag());
+            Assert.assertEquals("etag1", handler.requests.get(1).getHeaders().getFirst(RestUtil.HEADER_IF_NONE_MATCH));
+            Assert.assertEquals(1, s3Client.getMetadataCache().getRevalidations());
+            // the caller's request is not changed
+            Assert.assertNull(request.getIfNoneMatch());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testCallerPropertiesBypassCache() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            // i.e. a rekey, which must see the (normally stripped) encryption headers
+            GetObjectMetadataRequest request = new GetObjectMetadataRequest("bucket", "key");
+            request.property(RestUtil.PROPERTY_KEEP_ENCODE_HEADERS, Boolean.TRUE);
+            s3Client.getObjectMetadata(request);
+            Assert.assertEquals(0, s3Client.getMetadataCache().getSize());
+
+            s3Client.getObjectMetadata("bucket", "key");
+            s3Client.getObjectMetadata(request);
+            Assert.assertEquals(3, handler.requests.size());
+            Assert.assertEquals(0, s3Client.getMetadataCache().getHits());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testReusedRequestWithMetrics() {
+        StubHandler handler = new StubHandler();
+        S3Config s3Config = new S3Config(URI.create("http://127.0.0.1:9020")).withIdentity("user").withSecretKey("secret")
+                .withMetadataCacheSize(100).withMetadataCacheTtl(10000).withMetricsEnabled(true);
+        S3JerseyClient s3Client = new S3JerseyClient(s3Config, handler);
+        try {
+            // the operation name set for the metrics filter must not stay on the caller's request
+            GetObjectMetadataRequest request = new GetObjectMetadataRequest("bucket", "key");
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(request).getETag());
+            Assert.assertFalse(request.getProperties().containsKey(MetricsFilter.PROP_OPERATION));
+            Assert.assertEquals("HEAD object", handler.requests.get(0).getProperties().get(MetricsFilter.PROP_OPERATION));
+
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(request).getETag());
+            Assert.assertEquals(1, handler.requests.size());
+            Assert.assertEquals(1, s3Client.getMetadataCache().getHits());
+            Assert.assertEquals("HEAD object", s3Client.getMetricsRegistry().getOperationMetrics().get(0).getOperation());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testNamespacesDoNotShareEntries() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(namespaced("ns1")).getETag());
+            handler.eTag = "etag2";
+            Assert.assertEquals("etag2", s3Client.getObjectMetadata(namespaced("ns2")).getETag());
+            Assert.assertEquals(2, handler.requests.size());
+
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(namespaced("ns1")).getETag());
+            Assert.assertEquals("etag2", s3Client.getObjectMetadata(namespaced("ns2")).getETag());
+            Assert.assertEquals(2, handler.requests.size());
+            Assert.assertEquals(2, s3Client.getMetadataCache().getSize());
+
+            // a write in one namespace leaves the other's entry alone
+            DeleteObjectRequest delete = new DeleteObjectRequest("bucket", "key");
+            delete.setNamespace("ns2");
+            s3Client.deleteObject(delete);
+            Assert.assertEquals(1, s3Client.getMetadataCache().getSize());
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(namespaced("ns1")).getETag());
+            Assert.assertEquals(3, handler.requests.size());
+
+            // nor is a 404 in one namespace seen in another
+            handler.status = 404;
+            try {
+                s3Client.getObjectMetadata(namespaced("ns2"));
+                Assert.fail("metadata request for missing key should fail");
+            } catch (S3Exception e) {
+                Assert.assertEquals(404, e.getHttpCode());
+            }
+            handler.status = 200;
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata(namespaced("ns1")).getETag());
+            Assert.assertEquals(4, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testCallersGetCopies() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            S3ObjectMetadata metadata = s3Client.getObjectMetadata("bucket", "key");
+            metadata.addUserMetadata("foo", "bar");
+            metadata.setETag("changed");
+
+            S3ObjectMetadata cached = s3Client.getObjectMetadata("bucket", "key");
+            Assert.assertNotSame(metadata, cached);
+            Assert.assertEquals("etag1", cached.getETag());
+            Assert.assertNull(cached.getUserMetadata("foo"));
+            Assert.assertEquals(1, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testInvalidationDuringFill() {
+        final StubHandler handler = new StubHandler();
+        final S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            // the object is deleted while the HEAD is in flight, so what it read must not be cached
+            handler.onHead = () -> s3Client.deleteObject("bucket", "key");
+            Assert.assertEquals("etag1", s3Client.getObjectMetadata("bucket", "key").getETag());
+            Assert.assertEquals(0, s3Client.getMetadataCache().getSize());
+
+            s3Client.getObjectMetadata("bucket", "key");
+            s3Client.getObjectMetadata("bucket", "key");
+            Assert.assertEquals(3, handler.requests.size()); // HEAD, DELETE, HEAD
+            Assert.assertEquals(1, s3Client.getMetadataCache().getHits());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testBucketInfo() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            Assert.assertTrue(s3Client.bucketExists("bucket"));
+            Assert.assertEquals("bucket", s3Client.getBucketInfo("bucket").getBucketName());
+            Assert.assertNotNull(s3Client.getBucketInfo("bucket").getHeaders().get(RestUtil.HEADER_ETAG));
+            Assert.assertEquals(1, handler.requests.size());
+
+            s3Client.deleteBucket("bucket");
+            handler.status = 404;
+            try {
+                s3Client.getBucketInfo("bucket");
+                Assert.fail("bucket info for missing bucket should fail");
+            } catch (S3Exception e) {
+                Assert.assertEquals(404, e.getHttpCode());
+            }
+            Assert.assertFalse(s3Client.bucketExists("bucket"));
+            Assert.assertEquals(3, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testBucketExists() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = createClient(handler, 10000);
+        try {
+            handler.status = 404;
+            Assert.assertFalse(s3Client.bucketExists("bucket"));
+            Assert.assertFalse(s3Client.bucketExists("bucket"));
+            Assert.assertEquals(1, handler.requests.size());
+
+            // creating the bucket invalidates the negative entry
+            handler.status = 200;
+            s3Client.createBucket("bucket");
+            Assert.assertTrue(s3Client.bucketExists("bucket"));
+            Assert.assertTrue(s3Client.bucketExists("bucket"));
+            Assert.assertEquals(3, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020"))
+                .withIdentity("user").withSecretKey("secret").withMetadataCacheSize(2), handler);
+        try {
+            s3Client.getObjectMetadata("bucket", "a");
+            s3Client.getObjectMetadata("bucket", "b");
+            s3Client.getObjectMetadata("bucket", "a"); // a is now most-recently used
+            s3Client.getObjectMetadata("bucket", "c"); // evicts b
+            Assert.assertEquals(2, s3Client.getMetadataCache().getSize());
+            Assert.assertEquals(1, s3Client.getMetadataCache().getEvictions());
+
+            s3Client.getObjectMetadata("bucket", "a");
+            Assert.assertEquals(3, handler.requests.size());
+            s3Client.getObjectMetadata("bucket", "b");
+            Assert.assertEquals(4, handler.requests.size());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020")), new StubHandler());
+        try {
+            Assert.assertNull(s3Client.getMetadataCache());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    private S3JerseyClient createClient(ClientHandler handler, int ttl) {
+        S3Config s3Config = new S3Config(URI.create("http://127.0.0.1:9020")).withIdentity("user").withSecretKey("secret")
+                .withMetadataCacheSize(100).withMetadataCacheTtl(ttl).withMetadataCacheNegativeTtl(10000);
+        return new S3JerseyClient(s3Config, handler);
+    }
+
+    private GetObjectMetadataRequest namespaced(String namespace) {
+        GetObjectMetadataRequest request = new GetObjectMetadataRequest("bucket", "key");
+        request.setNamespace(namespace);
+        return request;
+    }
+
+    static class StubHandler implements ClientHandler {
+        final List<ClientRequest> requests = new ArrayList<ClientRequest>();
+        volatile int status = 200;
+        volatile String eTag = "etag1";
+        volatile Runnable onHead; // run (once) while handling the next HEAD request
+
+        @Override
+        public synchronized ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+            requests.add(request);
+            Runnable onHead = this.onHead;
+            if (onHead != null && "HEAD".equals(request.getMethod())) {
+                this.onHead = null;
+                onHead.run();
+            }
+            InBoundHeaders headers = new InBoundHeaders();
+            if (status == 200) headers.putSingle(RestUtil.HEADER_ETAG, "\"" + eTag + "\"");
+            return new ClientResponse(status, headers, new ByteArrayInputStream(new byte[0]), null);
+        }
+    }
+}
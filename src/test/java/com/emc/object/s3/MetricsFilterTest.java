@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.LatencyHistogram;
+import com.emc.object.s3.jersey.MetricsRegistry;
+import com.emc.object.s3.jersey.OperationMetrics;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.PutObjectRequest;
+import com.emc.object.util.RestUtil;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.MessageBodyWorkers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetricsFilterTest {
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000000L); // 1ms - 1s
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMax());
+        Assert.assertEquals(500500, histogram.getMean(), 0.1);
+        assertWithin(500000, histogram.getPercentile(50));
+        assertWithin(990000, histogram.getPercentile(99));
+        assertWithin(999000, histogram.getPercentile(99.9));
+        Assert.assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue(actual + " is not within 12.5% of " + expected,
+                actual >= expected && actual <= expected * 1.125);
+    }
+
+    @Test
+    public void testOperationMetrics() throws Exception {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020"))
+                .withIdentity("user").withSecretKey("secret").withChecksumEnabled(false)
+                .withInitialRetryDelay(0).withMetricsEnabled(true), handler);
+        try {
+            MetricsRegistry registry = s3Client.getMetricsRegistry();
+            Assert.assertNotNull(registry);
+
+            Assert.assertEquals("hello world", s3Client.readObject("bucket", "key", String.class));
+            s3Client.putObject(new PutObjectRequest("bucket", "key", "12345".getBytes(StandardCharsets.UTF_8)));
+            handler.failures.set(1); // one 500, then success
+            s3Client.readObject("bucket", "key", String.class);
+            handler.status = 404;
+            try {
+                s3Client.getObjectMetadata("bucket", "missing");
+                Assert.fail("metadata request for missing key should fail");
+            } catch (S3Exception e) {
+                Assert.assertEquals(404, e.getHttpCode());
+            }
+
+            OperationMetrics.Snapshot get = find(registry, "GET object"), put = find(registry, "PUT object"),
+                    head = find(registry, "HEAD object");
+            Assert.assertEquals("127.0.0.1", get.getHost());
+            Assert.assertEquals(2, get.getRequests());
+            Assert.assertEquals(0, get.getErrors());
+            Assert.assertEquals(1, get.getRetries());
+            Assert.assertEquals(22, get.getBytesReceived());
+            Assert.assertTrue(get.getLatencyP50() > 0);
+            Assert.assertTrue(get.getLatencyP99() >= get.getTimeToFirstByteP99());
+
+            Assert.assertEquals(1, put.getRequests());
+            Assert.assertEquals(5, put.getBytesSent());
+
+            Assert.assertEquals(1, head.getRequests());
+            Assert.assertEquals(1, head.getErrors());
+            Assert.assertEquals(Long.valueOf(1), head.getErrorCodes().get(S3Constants.ERROR_NO_SUCH_KEY));
+
+            // JMX
+            registry.registerMBeans("metrics-test");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MetricsRegistry.JMX_DOMAIN + ":type=S3Client,name=\"metrics-test\"," +
+                    "operation=\"GET object\",host=\"127.0.0.1\"");
+            Assert.assertEquals(2L, server.getAttribute(name, "Requests"));
+            handler.status = 200;
+            Assert.assertTrue(s3Client.bucketExists("bucket")); // registered on first use
+            Assert.assertEquals(4, server.queryNames(
+                    new ObjectName(MetricsRegistry.JMX_DOMAIN + ":name=\"metrics-test\",*"), null).size());
+        } finally {
+            s3Client.destroy();
+        }
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName(MetricsRegistry.JMX_DOMAIN + ":name=\"metrics-test\",*"), null).isEmpty());
+    }
+
+    @Test
+    public void testMBeanRegistrationFailure() {
+        S3Config s3Config = new S3Config(URI.create("http://127.0.0.1:9020")).withIdentity("user")
+                .withSecretKey("secret").withChecksumEnabled(false).withMetricsEnabled(true);
+        StubHandler handler = new StubHandler();
+        S3JerseyClient first = new S3JerseyClient(s3Config, handler), second = new S3JerseyClient(s3Config, handler);
+        try {
+            first.getMetricsRegistry().registerMBeans("duplicate-test");
+            first.readObject("bucket", "key", String.class);
+
+            // the second client's MBean names collide with the first's; its requests must not be affected
+            second.getMetricsRegistry().registerMBeans("duplicate-test");
+            Assert.assertEquals("hello world", second.readObject("bucket", "key", String.class));
+            handler.status = 404;
+            try {
+                second.readObject("bucket", "missing", String.class);
+                Assert.fail("read of missing key should fail");
+            } catch (S3Exception e) {
+                Assert.assertEquals(404, e.getHttpCode());
+            }
+            Assert.assertEquals(2, find(second.getMetricsRegistry(), "GET object").getRequests());
+        } finally {
+            second.destroy();
+            first.destroy();
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020")), new StubHandler());
+        try {
+            Assert.assertNull(s3Client.getMetricsRegistry());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    private OperationMetrics.Snapshot find(MetricsRegistry registry, String operation) {
+        for (OperationMetrics.Snapshot snapshot : registry.getSnapshot()) {
+            if (snapshot.getOperation().equals(operation)) return snapshot;
+        }
+        throw new AssertionError("no metrics for " + operation);
+    }
+
+    static class StubHandler implements ClientHandler {
+        final MessageBodyWorkers workers = Client.create().getMessageBodyWorkers();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile int status = 200;
+
+        @Override
+        public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+            try {
+                if (request.getEntity() != null) {
+                    // write the entity through the adapter chain, as a real handler would
+                    try (OutputStream out = request.getAdapter().adapt(request, new ByteArrayOutputStream())) {
+                        out.write((byte[]) request.getEntity());
+                    }
+                }
+            } catch (IOException e) {
+                throw new ClientHandlerException(e);
+            }
+            InBoundHeaders headers = new InBoundHeaders();
+            byte[] content = new byte[0];
+            int status = failures.getAndDecrement() > 0 ? 500 : this.status;
+            if (status == 200) {
+                headers.putSingle(RestUtil.HEADER_ETAG, "\"etag\"");
+                if ("GET".equals(request.getMethod())) {
+                    content = "hello world".getBytes(StandardCharsets.UTF_8);
+                    headers.putSingle(RestUtil.HEADER_CONTENT_TYPE, "text/plain");
+                }
+                headers.putSingle(RestUtil.HEADER_CONTENT_LENGTH, "" + content.length);
+            }
+            return new ClientResponse(status, headers, new ByteArrayInputStream(content), workers);
+        }
+    }
+}
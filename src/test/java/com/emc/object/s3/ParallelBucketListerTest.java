@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.CommonPrefix;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.request.ListObjectsRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ParallelBucketListerTest {
+    @Test
+    public void testMidpoint() {
+        String mid = ParallelBucketLister.midpoint("", "a", "c");
+        Assert.assertEquals("b", mid);
+
+        // adjacent characters split the rest of the low key's range
+        mid = ParallelBucketLister.midpoint("", "ab", "b");
+        Assert.assertTrue(mid.compareTo("ab") > 0 && mid.compareTo("b") < 0);
+
+        // unbounded ranges stay under the prefix
+        mid = ParallelBucketLister.midpoint("p/", "p/a", null);
+        Assert.assertTrue(mid.startsWith("p/") && mid.compareTo("p/a") > 0);
+
+        Assert.assertNull(ParallelBucketLister.midpoint("", "b", "a"));
+
+        // code point (UTF-8) order, never a lone surrogate
+        String low = "a\uE000", high = "a\uD83D\uDE00"; // U+E000 < U+1F600
+        mid = ParallelBucketLister.midpoint("", low, high);
+        Assert.assertTrue(ParallelBucketLister.compareKeys(mid, low) > 0 && ParallelBucketLister.compareKeys(mid, high) < 0);
+        mid = ParallelBucketLister.midpoint("", "a\uD7F0", "a\uE010");
+        Assert.assertEquals("a\uD7FF", mid);
+    }
+
+    @Test
+    public void testCompareKeys() {
+        // UTF-16 order puts U+1F600 (a surrogate pair) before U+FF01; UTF-8 byte order puts it after
+        String bmp = "k\uFF01", supplementary = "k\uD83D\uDE00";
+        Assert.assertTrue(supplementary.compareTo(bmp) < 0);
+        Assert.assertTrue(ParallelBucketLister.compareKeys(supplementary, bmp) > 0);
+        Assert.assertTrue(ParallelBucketLister.compareKeys(supplementary, "k\uD83D\uDE01") < 0);
+        Assert.assertEquals(0, ParallelBucketLister.compareKeys(bmp, "k\uFF01"));
+        Assert.assertTrue(ParallelBucketLister.compareKeys("k", bmp) < 0);
+    }
+
+    @Test
+    public void testNonBmpKeysAcrossSplitPoint() {
+        MockBucket bucket = new MockBucket(0);
+        for (int i = 0; i < 20; i++) {
+            bucket.keys.add("k\uFF01" + i);
+            bucket.keys.add("k\uD83D\uDE00" + i);
+            bucket.keys.add("k\uE000" + i);
+        }
+
+        // U+FF80 falls between U+FF01 and U+1F600 in S3's order, but after U+1F600 in String.compareTo order
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withMaxKeys(7)).withSplitPoints(Collections.singletonList("k\uFF80"))
+                .withSplitDelimiter(null).withThreads(4);
+        Assert.assertEquals(new ArrayList<>(bucket.keys), keys(lister.stream()));
+    }
+
+    @Test
+    public void testOrdered() {
+        MockBucket bucket = new MockBucket(0);
+        for (String dir : Arrays.asList("a/", "b/", "c/", "d/")) {
+            for (int i = 0; i < 50; i++) bucket.keys.add(String.format("%s%03d", dir, i));
+        }
+        bucket.keys.add("b/");
+        bucket.keys.add("top");
+
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withMaxKeys(7)).withThreads(4).withMaxBufferedPages(2);
+        Assert.assertEquals(new ArrayList<>(bucket.keys), keys(lister.stream()));
+    }
+
+    @Test
+    public void testUnordered() {
+        MockBucket bucket = new MockBucket(0);
+        for (int i = 0; i < 500; i++) bucket.keys.add(String.format("%c/%03d", 'a' + i % 5, i));
+
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withMaxKeys(10)).withThreads(4).withOrdered(false);
+        List<String> keys = keys(lister.stream());
+        Assert.assertEquals(bucket.keys.size(), keys.size());
+        Assert.assertEquals(bucket.keys, new TreeSet<>(keys));
+    }
+
+    @Test
+    public void testPrefixMarkerAndSplitPoints() {
+        MockBucket bucket = new MockBucket(0);
+        for (int i = 0; i < 300; i++) bucket.keys.add(String.format("logs/%04d", i));
+        bucket.keys.add("other");
+
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withPrefix("logs/").withMarker("logs/0049").withMaxKeys(20))
+                .withSplitPoints(Arrays.asList("logs/0010", "logs/0100", "logs/0200")).withSplitDelimiter(null)
+                .withRebalance(false);
+        List<String> expected = bucket.keys.subSet("logs/0050", "logs/9999").stream().collect(Collectors.toList());
+        Assert.assertEquals(expected, keys(lister.stream()));
+    }
+
+    @Test
+    public void testRebalanceSkewedPrefix() {
+        MockBucket bucket = new MockBucket(5);
+        for (int i = 0; i < 1000; i++) bucket.keys.add(String.format("big/%s", UUID.randomUUID()));
+        bucket.keys.add("small/1");
+
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withMaxKeys(20)).withThreads(4);
+        Assert.assertEquals(new ArrayList<>(bucket.keys), keys(lister.stream()));
+        // the one large prefix was split across threads
+        Assert.assertTrue(bucket.maxConcurrent.get() > 2);
+    }
+
+    @Test
+    public void testClose() {
+        MockBucket bucket = new MockBucket(0);
+        for (int i = 0; i < 1000; i++) bucket.keys.add(String.format("%c/%03d", 'a' + i % 10, i));
+
+        ParallelBucketLister lister = new ParallelBucketLister(bucket.client(),
+                new ListObjectsRequest("bucket").withMaxKeys(10)).withThreads(4).withMaxBufferedPages(4);
+        try (Stream<S3Object> stream = lister.stream()) {
+            Assert.assertEquals(15, stream.limit(15).count());
+        }
+        // listing stopped well short of the whole bucket
+        Assert.assertTrue(bucket.calls.get() < 100);
+    }
+
+    private List<String> keys(Stream<S3Object> stream) {
+        try (Stream<S3Object> s = stream) {
+            return s.map(S3Object::getKey).collect(Collectors.toList());
+        }
+    }
+
+    private static class MockBucket {
+        final TreeSet<String> keys = new TreeSet<>(ParallelBucketLister.KEY_ORDER);
+        final AtomicInteger calls = new AtomicInteger(), concurrent = new AtomicInteger(), maxConcurrent = new AtomicInteger();
+        final long delayMs;
+
+        MockBucket(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        S3Client client() {
+            return new StubS3Client()
+                    .on("listObjects", args -> list((ListObjectsRequest) args[0]))
+                    .on("listMoreObjects", args -> {
+                        ListObjectsResult last = (ListObjectsResult) args[0];
+                        return list(new ListObjectsRequest(last.getBucketName()).withPrefix(last.getPrefix())
+                                .withDelimiter(last.getDelimiter()).withMaxKeys(last.getMaxKeys())
+                                .withMarker(last.getNextMarker()));
+                    }).build();
+        }
+
+        ListObjectsResult list(ListObjectsRequest request) throws InterruptedException {
+            calls.incrementAndGet();
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                if (delayMs > 0) Thread.sleep(delayMs);
+                String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+                int maxKeys = request.getMaxKeys() == null ? 1000 : request.getMaxKeys();
+                SortedSet<String> candidates = request.getMarker() == null ? keys : keys.tailSet(request.getMarker() + '\0');
+
+                MockResult result = new MockResult();
+                result.setBucketName(request.getBucketName());
+                result.setPrefix(request.getPrefix());
+                result.setDelimiter(request.getDelimiter());
+                result.setMaxKeys(request.getMaxKeys());
+                List<S3Object> objects = new ArrayList<>();
+                List<CommonPrefix> prefixes = new ArrayList<>();
+                String last = null;
+                for (String key : candidates) {
+                    if (!key.startsWith(prefix)) {
+                        if (ParallelBucketLister.compareKeys(key, prefix) > 0) break;
+                        continue;
+                    }
+                    if (objects.size() + prefixes.size() >= maxKeys) {
+                        result.setTruncated(true);
+                        result.setNextMarker(last);
+                        break;
+                    }
+                    int index = request.getDelimiter() == null ? -1
+                            : key.indexOf(request.getDelimiter(), prefix.length());
+                    if (index >= 0) {
+                        String commonPrefix = key.substring(0, index + request.getDelimiter().length());
+                        if (prefixes.isEmpty() || !prefixes.get(prefixes.size() - 1).getPrefix().equals(commonPrefix)) {
+                            CommonPrefix cp = new CommonPrefix();
+                            cp.setPrefix(commonPrefix);
+                            prefixes.add(cp);
+                        }
+                    } else {
+                        S3Object object = new S3Object();
+                        object.setKey(key);
+                        objects.add(object);
+                    }
+                    last = key;
+                }
+                result.setObjects(objects);
+                result.setCommonPrefixes(prefixes);
+                return result;
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private static class MockResult extends ListObjectsResult {
+        void setCommonPrefixes(List<CommonPrefix> prefixes) {
+            set_commonPrefixes(prefixes);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.bean.*;
+import com.emc.object.s3.request.QueryObjectsRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ParallelMetadataSearchTest {
+    @Test
+    public void testSortedMerge() {
+        MockBucket bucket = new MockBucket();
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) bucket.add("dir" + (i % 3) + "/object-" + i, random.nextInt(10000));
+
+        QueryObjectsRequest request = new QueryObjectsRequest("bucket").withQuery("x-amz-meta-size>0")
+                .withSorted("x-amz-meta-size").withMaxKeys(20);
+        ParallelMetadataSearch search = new ParallelMetadataSearch(bucket.client(), request)
+                .withPrefixes(Arrays.asList("dir0/", "dir1/", "dir2/"));
+
+        List<QueryObject> results = collect(search.stream());
+        Assert.assertEquals(300, results.size());
+        long last = Long.MIN_VALUE;
+        for (QueryObject object : results) {
+            long size = (Long) object.getMetadataValue("x-amz-meta-size", MetadataSearchDatatype.integer);
+            Assert.assertTrue(size >= last);
+            last = size;
+        }
+        // the datatype was looked up, so sizes are compared as numbers
+        Assert.assertEquals(1, bucket.searchKeyLookups.get());
+        // every prefix was paged separately (15 pages + the first page of each)
+        Assert.assertTrue(bucket.queries.get() >= 15);
+    }
+
+    @Test
+    public void testUnsortedConditions() {
+        MockBucket bucket = new MockBucket();
+        for (int i = 0; i < 100; i++) bucket.add("object-" + i, i);
+
+        QueryObjectsRequest request = new QueryObjectsRequest("bucket").withQuery("x-amz-meta-size>=0").withMaxKeys(7);
+        ParallelMetadataSearch search = new ParallelMetadataSearch(bucket.client(), request)
+                .withConditions(Arrays.asList("x-amz-meta-size<50", "x-amz-meta-size>=50"));
+
+        Set<String> names = collect(search.stream()).stream().map(QueryObject::getObjectName).collect(Collectors.toSet());
+        Assert.assertEquals(100, names.size());
+        Assert.assertEquals(0, bucket.searchKeyLookups.get());
+    }
+
+    private List<QueryObject> collect(Stream<QueryObject> stream) {
+        try (Stream<QueryObject> s = stream) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Supports prefixes, <code>x-amz-meta-size</code> conditions (as "(base) and (x-amz-meta-size&lt;N)") and sorting
+     * by <code>x-amz-meta-size</code>.
+     */
+    private static class MockBucket {
+        final Map<String, Long> sizes = new TreeMap<>();
+        final AtomicInteger queries = new AtomicInteger(), searchKeyLookups = new AtomicInteger();
+
+        void add(String name, long size) {
+            sizes.put(name, size);
+        }
+
+        S3Client client() {
+            return new StubS3Client()
+                    .on("queryObjects", args -> query((QueryObjectsRequest) args[0]))
+                    .on("queryMoreObjects", args -> {
+                        QueryObjectsResult last = (QueryObjectsResult) args[0];
+                        return query(new QueryObjectsRequest(last.getBucketName()).withQuery(last.getQuery())
+                                .withSorted(last.getSorted()).withPrefix(last.getPrefix())
+                                .withMaxKeys(last.getMaxKeys()).withMarker(last.getNextMarker()));
+                    })
+                    .on("listBucketMetadataSearchKeys", args -> {
+                        searchKeyLookups.incrementAndGet();
+                        MetadataSearchKey key = new MetadataSearchKey();
+                        key.setName("x-amz-meta-size");
+                        key.setDatatype(MetadataSearchDatatype.integer);
+                        MetadataSearchList list = new MetadataSearchList();
+                        list.setIndexableKeys(Collections.singletonList(key));
+                        return list;
+                    }).build();
+        }
+
+        QueryObjectsResult query(QueryObjectsRequest request) {
+            queries.incrementAndGet();
+            List<Map.Entry<String, Long>> matches = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                if (request.getPrefix() != null && !entry.getKey().startsWith(request.getPrefix())) continue;
+                if (request.getQuery().contains("x-amz-meta-size<50)") && entry.getValue() >= 50) continue;
+                if (request.getQuery().contains("x-amz-meta-size>=50)") && entry.getValue() < 50) continue;
+                matches.add(entry);
+            }
+            if (request.getSorted() != null) matches.sort(Map.Entry.comparingByValue());
+
+            // the marker is the index of the next match
+            int start = request.getMarker() == null ? 0 : Integer.parseInt(request.getMarker());
+            int end = Math.min(matches.size(), start + request.getMaxKeys());
+            QueryObjectsResult result = new QueryObjectsResult();
+            result.setBucketName(request.getBucketName());
+            result.setMaxKeys(request.getMaxKeys());
+            result.setQuery(request.getQuery());
+            result.setSorted(request.getSorted());
+            result.setPrefix(request.getPrefix());
+            result.setNextMarker(end < matches.size() ? String.valueOf(end) : "NO MORE PAGES");
+            for (Map.Entry<String, Long> entry : matches.subList(start, end)) {
+                QueryMetadata metadata = new QueryMetadata();
+                metadata.setType(QueryMetadataType.USERMD);
+                metadata.getMdMap().put("x-amz-meta-size", entry.getValue().toString());
+                QueryObject object = new QueryObject();
+                object.setObjectName(entry.getKey());
+                object.getQueryMds().add(metadata);
+                result.getObjects().add(object);
+            }
+            return result;
+        }
+    }
+}
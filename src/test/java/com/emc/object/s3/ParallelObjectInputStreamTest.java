@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.Range;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.GetObjectRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParallelObjectInputStreamTest extends AbstractS3ClientTest {
+    @Override
+    protected String getTestBucketPrefix() {
+        return "pois-test";
+    }
+
+    @Override
+    protected S3Client createS3Client() throws Exception {
+        return new S3JerseyClient(createS3Config());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        String key = "parallel-read.bin";
+        byte[] data = new byte[5 * 1024 * 1024 + 123];
+        new Random().nextBytes(data);
+        client.putObject(getTestBucket(), key, data, null);
+
+        try (ParallelObjectInputStream in = new ParallelObjectInputStream(client, getTestBucket(), key)
+                .withPartSize(512 * 1024).withReadAheadParts(3)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) baos.write(buffer, 0, count);
+
+            Assert.assertArrayEquals(data, baos.toByteArray());
+            Assert.assertEquals(data.length, in.getPosition());
+        }
+    }
+
+    @Test
+    public void testRangeAndSkip() throws Exception {
+        String key = "parallel-read-skip.bin";
+        byte[] data = new byte[5 * 1024 * 1024 + 123];
+        new Random().nextBytes(data);
+        client.putObject(getTestBucket(), key, data, null);
+
+        int first = 1000;
+        GetObjectRequest request = new GetObjectRequest(getTestBucket(), key).withRange(Range.fromOffset(first));
+        try (ParallelObjectInputStream in = new ParallelObjectInputStream(client, request)
+                .withPartSize(256 * 1024).withReadAheadParts(2)) {
+            byte[] buffer = new byte[1024];
+
+            // read within the first part
+            Assert.assertEquals(1024, in.read(buffer));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, first, first + 1024), buffer);
+
+            // skip within the read-ahead window
+            Assert.assertEquals(300 * 1024, in.skip(300 * 1024));
+            int pos = first + 1024 + 300 * 1024;
+            Assert.assertEquals(data[pos] & 0xff, in.read());
+            pos++;
+
+            // skip beyond the read-ahead window
+            Assert.assertEquals(3 * 1024 * 1024, in.skip(3 * 1024 * 1024));
+            pos += 3 * 1024 * 1024;
+            int count = in.read(buffer);
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, pos, pos + count), Arrays.copyOf(buffer, count));
+            pos += count;
+
+            // skip past the end
+            Assert.assertEquals(data.length - pos, in.skip(data.length));
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testConditionalRead() throws Exception {
+        String key = "parallel-read-conditional.bin";
+        byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        client.putObject(getTestBucket(), key, data, null);
+        String eTag = client.getObjectMetadata(getTestBucket(), key).getETag();
+
+        // a condition that is not met fails the read instead of being dropped
+        GetObjectRequest request = new GetObjectRequest(getTestBucket(), key).withIfNoneMatch(eTag);
+        try (ParallelObjectInputStream in = new ParallelObjectInputStream(client, request).withPartSize(256 * 1024)) {
+            in.read();
+            Assert.fail("read with a failed If-None-Match condition should fail");
+        } catch (S3Exception e) {
+            Assert.assertEquals(412, e.getHttpCode());
+        }
+
+        // a condition that is met is sent with every part
+        request = new GetObjectRequest(getTestBucket(), key).withIfNoneMatch("\"not-the-etag\"");
+        try (ParallelObjectInputStream in = new ParallelObjectInputStream(client, request).withPartSize(256 * 1024)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) baos.write(buffer, 0, count);
+            Assert.assertArrayEquals(data, baos.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.RequestCoalescer;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.GetObjectRequest;
+import com.emc.object.util.RestUtil;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.MessageBodyWorkers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+    private static final int THREADS = 8;
+
+    @Test
+    public void testCoalescer() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> futures = runConcurrently(() -> coalescer.execute("key", () -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return "result";
+        }), release);
+        for (Future<String> future : futures) {
+            Assert.assertEquals("result", future.get());
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, coalescer.getCalls());
+        Assert.assertEquals(THREADS - 1, coalescer.getCoalesced());
+
+        // failures are shared too, and the next call starts a new flight
+        try {
+            coalescer.execute("key", () -> {
+                throw new S3Exception("boom", 500);
+            });
+            Assert.fail("exception should propagate");
+        } catch (S3Exception e) {
+            Assert.assertEquals(500, e.getHttpCode());
+        }
+        Assert.assertEquals("again", coalescer.execute("key", () -> "again"));
+        Assert.assertEquals(3, coalescer.getCalls());
+    }
+
+    @Test
+    public void testInterruptedWait() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "result";
+            }));
+            started.await();
+            Future<String> waiter = executor.submit(() -> coalescer.execute("key", () -> "own call"));
+            while (coalescer.getCoalesced() == 0) Thread.sleep(10);
+
+            // an interrupted waiter gives up, but the call carries on for everyone else
+            waiter.cancel(true);
+            try {
+                waiter.get(10, TimeUnit.SECONDS);
+                Assert.fail("cancelled waiter should not complete");
+            } catch (CancellationException e) {
+                // expected
+            }
+            release.countDown();
+            Assert.assertEquals("result", leader.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, coalescer.getCalls());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRequestPropertiesNotCoalesced() throws Exception {
+        final StubHandler handler = new StubHandler("private content");
+        final S3JerseyClient s3Client = createClient(handler, 1024);
+        try {
+            // i.e. a caller that needs the encryption headers other callers would not see
+            List<Future<String>> futures = runConcurrently(() -> {
+                GetObjectRequest<?> request = new GetObjectRequest<>("bucket", "key");
+                request.property(RestUtil.PROPERTY_KEEP_ENCODE_HEADERS, Boolean.TRUE);
+                return s3Client.getObject(request, String.class).getObject();
+            }, handler.release);
+            for (Future<String> future : futures) {
+                Assert.assertEquals("private content", future.get());
+            }
+            Assert.assertEquals(THREADS, handler.calls.get());
+            Assert.assertEquals(0, s3Client.getRequestCoalescer().getCoalesced());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testCoalescedGet() throws Exception {
+        final StubHandler handler = new StubHandler("shared content");
+        final S3JerseyClient s3Client = createClient(handler, 1024);
+        try {
+            List<Future<String>> futures = runConcurrently(
+                    () -> s3Client.readObject("bucket", "key", String.class), handler.release);
+            for (Future<String> future : futures) {
+                Assert.assertEquals("shared content", future.get());
+            }
+            RequestCoalescer coalescer = s3Client.getRequestCoalescer();
+            Assert.assertEquals(1, handler.calls.get());
+            Assert.assertEquals(THREADS - 1, coalescer.getCoalesced());
+            Assert.assertEquals(THREADS - 1, coalescer.getMaxFanOut());
+
+            // HEADs are coalesced separately from GETs, and every caller gets its own metadata instance
+            handler.calls.set(0);
+            handler.release = new CountDownLatch(1);
+            List<Future<S3ObjectMetadata>> heads = runConcurrently(
+                    () -> s3Client.getObjectMetadata("bucket", "key"), handler.release);
+            for (Future<S3ObjectMetadata> head : heads) {
+                Assert.assertEquals("etag", head.get().getETag());
+            }
+            Assert.assertEquals(1, handler.calls.get());
+            Assert.assertNotSame(heads.get(0).get(), heads.get(1).get());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testOversizedResponse() throws Exception {
+        final StubHandler handler = new StubHandler("too large to share");
+        final S3JerseyClient s3Client = createClient(handler, 4);
+        try {
+            List<Future<String>> futures = runConcurrently(
+                    () -> s3Client.readObject("bucket", "key", String.class), handler.release);
+            for (Future<String> future : futures) {
+                Assert.assertEquals("too large to share", future.get());
+            }
+            // everyone who waited on the oversized response had to make their own request
+            RequestCoalescer coalescer = s3Client.getRequestCoalescer();
+            Assert.assertEquals(coalescer.getCoalesced(), coalescer.getOversized());
+            Assert.assertEquals(1 + coalescer.getOversized(), handler.calls.get());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020")),
+                new StubHandler(""));
+        try {
+            Assert.assertNull(s3Client.getRequestCoalescer());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    /**
+     * Starts THREADS tasks, gives them time to pile up behind the first one, then releases the latch.
+     */
+    private <T> List<Future<T>> runConcurrently(Callable<T> task, CountDownLatch release) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            Thread.sleep(300);
+            release.countDown();
+            for (Future<T> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            return futures;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private S3JerseyClient createClient(ClientHandler handler, int coalesceMaxBytes) {
+        S3Config s3Config = new S3Config(URI.create("http://127.0.0.1:9020")).withIdentity("user").withSecretKey("secret")
+                .withChecksumEnabled(false).withCoalesceReads(true).withCoalesceMaxBytes(coalesceMaxBytes);
+        return new S3JerseyClient(s3Config, handler);
+    }
+
+    static class StubHandler implements ClientHandler {
+        final byte[] content;
+        final AtomicInteger calls = new AtomicInteger();
+        final MessageBodyWorkers workers = Client.create().getMessageBodyWorkers();
+        volatile CountDownLatch release = new CountDownLatch(1);
+
+        StubHandler(String content) {
+            this.content = content.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+            // only the first request of a round waits for the release
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new ClientHandlerException(e);
+                }
+            }
+            InBoundHeaders headers = new InBoundHeaders();
+            headers.putSingle(RestUtil.HEADER_ETAG, "\"etag\"");
+            headers.putSingle(RestUtil.HEADER_CONTENT_LENGTH, "" + content.length);
+            headers.putSingle(RestUtil.HEADER_CONTENT_TYPE, "text/plain");
+            boolean head = "HEAD".equals(request.getMethod());
+            return new ClientResponse(200, headers, new ByteArrayInputStream(head ? new byte[0] : content), workers);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.RetryBudget;
+import com.emc.object.s3.jersey.RetryFilter;
+import com.emc.object.s3.jersey.RetryMetrics;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Arrays;
+
+public class RetryBudgetTest {
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.5f, 2);
+        Assert.assertTrue(budget.tryAcquireRetry());
+        Assert.assertTrue(budget.tryAcquireRetry());
+        Assert.assertFalse(budget.tryAcquireRetry());
+
+        // each request earns half a retry
+        budget.requestStarted();
+        Assert.assertFalse(budget.tryAcquireRetry());
+        budget.requestStarted();
+        Assert.assertTrue(budget.tryAcquireRetry());
+        Assert.assertFalse(budget.tryAcquireRetry());
+
+        // never exceeds capacity
+        for (int i = 0; i < 100; i++) budget.requestStarted();
+        Assert.assertEquals(2.0, budget.getAvailableRetries(), 0.0);
+    }
+
+    @Test
+    public void testJitteredBackoff() {
+        S3Config s3Config = new S3Config().withInitialRetryDelay(10).withMaxRetryDelay(40).withRetryLimit(6);
+        RetryFilter retryFilter = new RetryFilter(s3Config);
+        FailingHandler handler = new FailingHandler(new S3Exception("unavailable", 503), Integer.MAX_VALUE);
+
+        try {
+            execute(retryFilter, handler);
+            Assert.fail("request should have failed after retryLimit retries");
+        } catch (S3Exception e) {
+            Assert.assertEquals(503, e.getHttpCode());
+        }
+
+        RetryMetrics metrics = retryFilter.getRetryMetrics();
+        Assert.assertEquals(7, handler.calls);
+        Assert.assertEquals(1, metrics.getRequests());
+        Assert.assertEquals(6, metrics.getRetries());
+        Assert.assertEquals(1, metrics.getRetryLimitExceeded());
+        Assert.assertEquals(0, metrics.getThrottledRetries());
+        Assert.assertTrue(metrics.getTotalDelay() >= 6 * 10);
+        Assert.assertTrue(metrics.getTotalDelay() <= 6 * 40);
+        Assert.assertEquals(6, Arrays.stream(metrics.getDelayHistogram()).sum());
+        // nothing above the cap
+        Assert.assertEquals(6, metrics.getDelayHistogram()[1] + metrics.getDelayHistogram()[2]);
+    }
+
+    @Test
+    public void testRetryAfter() {
+        S3Config s3Config = new S3Config().withInitialRetryDelay(10).withMaxRetryDelay(1000);
+        RetryFilter retryFilter = new RetryFilter(s3Config);
+        S3Exception slowDown = new S3Exception("slow down", 503, S3Constants.ERROR_SLOW_DOWN, null);
+        slowDown.setRetryAfter(300);
+
+        long start = System.currentTimeMillis();
+        execute(retryFilter, new FailingHandler(slowDown, 1));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+        Assert.assertEquals(1, retryFilter.getRetryMetrics().getThrottledRetries());
+        Assert.assertEquals(300, retryFilter.getRetryMetrics().getTotalDelay());
+
+        // Retry-After is capped by maxRetryDelay
+        s3Config.setMaxRetryDelay(50);
+        slowDown.setRetryAfter(60000);
+        start = System.currentTimeMillis();
+        execute(retryFilter, new FailingHandler(slowDown, 1));
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+
+        // 429 is retried
+        execute(retryFilter, new FailingHandler(new S3Exception("too many requests", 429), 1));
+        Assert.assertEquals(3, retryFilter.getRetryMetrics().getThrottledRetries());
+    }
+
+    @Test
+    public void testRetryBudget() {
+        S3Config s3Config = new S3Config().withInitialRetryDelay(0).withRetryLimit(1).withRetryBudgetRatio(0.1f);
+        RetryFilter retryFilter = new RetryFilter(s3Config);
+
+        Client client = createClient(retryFilter,
+                new FailingHandler(new S3Exception("internal error", 500), Integer.MAX_VALUE));
+        int failures = 0;
+        for (int i = 0; i < RetryBudget.DEFAULT_CAPACITY * 2; i++) {
+            try {
+                execute(client);
+            } catch (S3Exception e) {
+                failures++;
+            }
+        }
+        Assert.assertEquals(RetryBudget.DEFAULT_CAPACITY * 2, failures);
+
+        RetryMetrics metrics = retryFilter.getRetryMetrics();
+        Assert.assertEquals(RetryBudget.DEFAULT_CAPACITY * 2, metrics.getRequests());
+        // the initial allowance, plus 10% of the requests made after it is spent
+        Assert.assertTrue(metrics.getBudgetExceeded() > 0);
+        Assert.assertTrue(metrics.getRetries() <= RetryBudget.DEFAULT_CAPACITY + metrics.getRequests() / 10 + 1);
+        Assert.assertEquals(metrics.getRequests(), metrics.getBudgetExceeded() + metrics.getRetryLimitExceeded());
+    }
+
+    private void execute(RetryFilter retryFilter, ClientFilter handler) {
+        execute(createClient(retryFilter, handler));
+    }
+
+    private Client createClient(RetryFilter retryFilter, ClientFilter handler) {
+        Client client = Client.create();
+        // order of execution is reversed from this order
+        client.addFilter(handler);
+        client.addFilter(retryFilter);
+        return client;
+    }
+
+    private void execute(Client client) {
+        try {
+            client.handle(ClientRequest.create().build(URI.create("http://127.0.0.1/foo"), "GET"));
+        } catch (ClientHandlerException e) {
+            if (e.getCause() instanceof S3Exception) throw (S3Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    static class FailingHandler extends ClientFilter {
+        private final RuntimeException error;
+        private final int failures;
+        int calls;
+
+        FailingHandler(RuntimeException error, int failures) {
+            this.error = error;
+            this.failures = failures;
+        }
+
+        @Override
+        public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+            if (calls++ < failures) throw error;
+            return new ClientResponse(200, new InBoundHeaders(), new ByteArrayInputStream(new byte[0]), null);
+        }
+    }
+}
@@ -197,7 +197,7 @@ public class RetryFilterTest extends AbstractS3ClientTest {
 
         @Override
         public int read() throws IOException {
-            int retryDelay = s3Config.getInitialRetryDelay() * (int) Math.pow(2, callCount - 1);
+            int retryDelay = s3Config.getInitialRetryDelay(); // jittered delays are never shorter than this
             switch (callCount++) {
                 case 0:
                     lastTime = System.currentTimeMillis();
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.s3.jersey.S3AsyncJerseyClient;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+public class S3AsyncJerseyClientTest extends AbstractS3ClientTest {
+    private ExecutorService executor = S3AsyncJerseyClient.createDefaultExecutor();
+    private S3AsyncClient asyncClient;
+
+    @Override
+    protected String getTestBucketPrefix() {
+        return "s3-async-client-test";
+    }
+
+    @Override
+    protected S3Client createS3Client() throws Exception {
+        S3Client s3Client = new S3JerseyClient(createS3Config());
+        asyncClient = new S3AsyncJerseyClient(s3Client, executor);
+        return s3Client;
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentPutAndGet() throws Exception {
+        int objectCount = 200;
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (int i = 0; i < objectCount; i++) {
+            puts.add(asyncClient.putObject(getTestBucket(), "async-" + i, "content " + i, null));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).get();
+
+        List<CompletableFuture<String>> reads = new ArrayList<>();
+        for (int i = 0; i < objectCount; i++) {
+            reads.add(asyncClient.readObject(getTestBucket(), "async-" + i, String.class));
+        }
+        for (int i = 0; i < objectCount; i++) {
+            Assert.assertEquals("content " + i, reads.get(i).get());
+        }
+
+        Assert.assertEquals(objectCount, asyncClient.listObjects(getTestBucket(), "async-").get().getObjects().size());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        try {
+            asyncClient.getObjectMetadata(getTestBucket(), "does-not-exist").get();
+            Assert.fail("request for a missing object should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof S3Exception);
+            Assert.assertEquals(404, ((S3Exception) e.getCause()).getHttpCode());
+        }
+    }
+}
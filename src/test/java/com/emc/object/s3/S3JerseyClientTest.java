@@ -66,6 +66,7 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class S3JerseyClientTest extends AbstractS3ClientTest {
     private static final Logger log = LoggerFactory.getLogger(S3JerseyClientTest.class);
@@ -774,6 +775,25 @@ public class S3JerseyClientTest extends AbstractS3ClientTest {
         Assert.assertEquals("should be 4 pages", 4, requestCount);
     }
 
+    @Test
+    public void testStreamObjects() {
+        int numObjects = 10;
+
+        this.createTestObjects("stream/", numObjects);
+
+        ListObjectsRequest request = new ListObjectsRequest(getTestBucket()).withPrefix("stream/").withMaxKeys(3);
+        try (Stream<S3Object> objects = client.streamObjects(request)) {
+            List<String> keys = objects.map(S3Object::getKey).collect(Collectors.toList());
+            Assert.assertEquals("The correct number of objects were NOT returned", numObjects, keys.size());
+            Assert.assertEquals(new TreeSet<>(keys).size(), keys.size());
+        }
+
+        // deeper prefetch, stopped early
+        try (Stream<S3Object> objects = client.streamObjects(request, 3)) {
+            Assert.assertEquals(4, objects.limit(4).count());
+        }
+    }
+
     @Test
     public void testListObjectsWithEncoding() {
         String key = "foo\u001do", content = "Hello List!";
@@ -890,6 +910,35 @@ public class S3JerseyClientTest extends AbstractS3ClientTest {
         assertForListVersionsPaging(versions.size(), requestCount);
     }
 
+    @Test
+    public void testStreamVersions() {
+        client.setBucketVersioning(getTestBucket(),
+                new VersioningConfiguration().withStatus(VersioningConfiguration.Status.Enabled));
+
+        String key = "prefix/foo", content = "Hello Version Streaming!";
+        client.putObject(getTestBucket(), key, content, null);
+        client.deleteObject(getTestBucket(), key);
+        client.putObject(getTestBucket(), key, content, null);
+
+        List<AbstractVersion> expected = new ArrayList<>();
+        ListVersionsResult result = null;
+        do {
+            if (result == null) result = client.listVersions(new ListVersionsRequest(getTestBucket()).withMaxKeys(1));
+            else result = client.listMoreVersions(result);
+            expected.addAll(result.getVersions());
+        } while (result.isTruncated());
+
+        try (Stream<AbstractVersion> versions = client.streamVersions(
+                new ListVersionsRequest(getTestBucket()).withMaxKeys(1), 2)) {
+            Iterator<AbstractVersion> iterator = versions.iterator();
+            for (AbstractVersion version : expected) {
+                Assert.assertTrue(iterator.hasNext());
+                Assert.assertEquals(version.getVersionId(), iterator.next().getVersionId());
+            }
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
     protected void assertForListVersionsPaging(int size, int requestCount) {
         Assert.assertEquals("The correct number of versions were NOT returned", 6, size);
         Assert.assertEquals("should be 3 pages", 3, requestCount);
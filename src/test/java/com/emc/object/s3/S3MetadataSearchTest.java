@@ -11,6 +11,8 @@ import org.junit.Assume;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Tests related to bucket metadata search.
@@ -194,6 +196,37 @@ public class S3MetadataSearchTest extends AbstractS3ClientTest {
         Assert.assertEquals("test", usermd.getMdMap().get("x-amz-meta-string1"));
     }
 
+    @Test
+    public void testStreamQuery() throws Exception {
+        String bucketName = getTestBucket();
+
+        for (int i = 0; i < 30; i++) {
+            Map<String, String> userMeta = new HashMap<String, String>();
+            userMeta.put("integer1", String.valueOf(i * 7 % 30));
+            S3ObjectMetadata objectMetadata = new S3ObjectMetadata();
+            objectMetadata.setUserMetadata(userMeta);
+            client.putObject(new PutObjectRequest(bucketName, "dir" + (i % 2) + "/object" + i, new byte[0])
+                    .withObjectMetadata(objectMetadata));
+        }
+
+        QueryObjectsRequest request = new QueryObjectsRequest(bucketName)
+                .withQuery("x-amz-meta-integer1>=0").withSorted("x-amz-meta-integer1").withMaxKeys(4);
+        try (Stream<QueryObject> stream = client.streamQuery(request)) {
+            Assert.assertEquals(30, stream.count());
+        }
+
+        ParallelMetadataSearch search = new ParallelMetadataSearch(client, request)
+                .withPrefixes(Arrays.asList("dir0/", "dir1/"));
+        List<QueryObject> results;
+        try (Stream<QueryObject> stream = search.stream()) {
+            results = stream.collect(Collectors.toList());
+        }
+        Assert.assertEquals(30, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals((long) i, results.get(i).getMetadataValue("x-amz-meta-integer1", MetadataSearchDatatype.integer));
+        }
+    }
+
     @Test
     public void testQueryObjectsWithPrefix() throws Exception {
         String bucketName = getTestBucket();
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3;
+
+import com.emc.object.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransferManagerTest {
+    @Test
+    public void testGlobalLimit() throws Exception {
+        TransferManager manager = new TransferManager().withMaxConcurrentParts(3);
+        TransferThrottle job1 = manager.createJob("host1"), job2 = manager.createJob("host2");
+
+        Assert.assertTrue(job1.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertTrue(job1.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertTrue(job2.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(job2.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(3, manager.getPartsInFlight());
+        Assert.assertEquals(300, manager.getBytesInFlight());
+
+        job1.release(100);
+        Assert.assertTrue(job2.tryAcquire(100, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPerHostLimit() throws Exception {
+        TransferManager manager = new TransferManager().withMaxPartsPerHost(2);
+        TransferThrottle job1 = manager.createJob("host1"), job2 = manager.createJob("host1"),
+                job3 = manager.createJob("host2");
+
+        Assert.assertTrue(job1.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertTrue(job2.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(job1.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(job2.tryAcquire(100, 0, TimeUnit.SECONDS));
+        // a different host is not affected
+        Assert.assertTrue(job3.tryAcquire(100, 0, TimeUnit.SECONDS));
+        Assert.assertTrue(job3.tryAcquire(100, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testByteLimit() throws Exception {
+        TransferManager manager = new TransferManager().withMaxInFlightBytes(1000);
+        TransferThrottle job1 = manager.createJob("host1"), job2 = manager.createJob("host1");
+
+        // a part larger than the budget is allowed when nothing else is in flight
+        Assert.assertTrue(job1.tryAcquire(1500, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(job2.tryAcquire(1, 0, TimeUnit.SECONDS));
+        job1.release(1500);
+
+        Assert.assertTrue(job1.tryAcquire(600, 0, TimeUnit.SECONDS));
+        Assert.assertTrue(job2.tryAcquire(400, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(job2.tryAcquire(1, 0, TimeUnit.SECONDS));
+        job1.release(600);
+        Assert.assertTrue(job2.tryAcquire(500, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFairShare() throws Exception {
+        TransferManager manager = new TransferManager().withMaxConcurrentParts(4);
+        TransferThrottle busyJob = manager.createJob("host1"), newJob = manager.createJob("host1");
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(busyJob.tryAcquire(1, 0, TimeUnit.SECONDS));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // both jobs wait for a slot (the busy job starts waiting first)
+            Future<Boolean> busyWait = executor.submit(() -> busyJob.tryAcquire(1, 10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            Future<Boolean> newWait = executor.submit(() -> newJob.tryAcquire(1, 10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+
+            // the job with fewer parts in flight gets the freed slot
+            busyJob.release(1);
+            Assert.assertTrue(newWait.get(5, TimeUnit.SECONDS));
+            Assert.assertFalse(busyWait.isDone());
+
+            busyJob.release(1);
+            Assert.assertTrue(busyWait.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedDownloadHoldsPermitsOfRunningParts() throws Exception {
+        TransferManager manager = new TransferManager().withMaxConcurrentParts(2);
+        TransferThrottle job = manager.createJob("host1");
+        CountDownLatch partStarted = new CountDownLatch(1), partFinish = new CountDownLatch(1);
+        AtomicInteger runningGets = new AtomicInteger(), overLimit = new AtomicInteger();
+
+        S3Client s3Client = new StubS3Client()
+                .on("getObjectMetadata", args -> new S3ObjectMetadata().withContentLength(4L * LargeFileDownloader.MIN_PART_SIZE))
+                .on("readObjectStream", args -> {
+                    if (runningGets.incrementAndGet() > manager.getPartsInFlight()) overLimit.incrementAndGet();
+                    try {
+                        Range range = (Range) args[2];
+                        if (range.getFirst() == 0) {
+                            // the first part fails once the second is running
+                            partStarted.await(5, TimeUnit.SECONDS);
+                            throw new RuntimeException("part failed");
+                        }
+                        // a GET that does not respond to interrupts
+                        partStarted.countDown();
+                        boolean interrupted = false;
+                        while (true) {
+                            try {
+                                partFinish.await();
+                                break;
+                            } catch (InterruptedException e) {
+                                interrupted = true;
+                            }
+                        }
+                        if (interrupted) Thread.currentThread().interrupt();
+                        return new ByteArrayInputStream(new byte[(int) (range.getLast() - range.getFirst() + 1)]);
+                    } finally {
+                        runningGets.decrementAndGet();
+                    }
+                }).build();
+
+        LargeFileDownloader downloader = new LargeFileDownloader(s3Client, "bucket", "key", new ByteArrayOutputStream())
+                .withParallelThreshold(0).withPartSize(LargeFileDownloader.MIN_PART_SIZE).withThreads(4)
+                .withTransferThrottle(job);
+        try {
+            downloader.run();
+            Assert.fail("download should fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // the second part is still running, so it still holds its permit
+        Assert.assertEquals(1, runningGets.get());
+        Assert.assertEquals(1, manager.getPartsInFlight());
+        TransferThrottle otherJob = manager.createJob("host1");
+        Assert.assertTrue(otherJob.tryAcquire(1, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(otherJob.tryAcquire(1, 0, TimeUnit.SECONDS));
+        otherJob.release(1);
+
+        // the permit is returned when the part actually stops
+        partFinish.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getPartsInFlight() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        Assert.assertEquals(0, manager.getPartsInFlight());
+        Assert.assertEquals(0, overLimit.get());
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.s3.bean;
+
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.ListObjectsRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ListingParserTest {
+    private static final String OBJECTS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" +
+            "<Name>bucket</Name>" +
+            "<Prefix>my</Prefix>" +
+            "<Marker>key2</Marker>" +
+            "<NextMarker>key%203</NextMarker>" +
+            "<MaxKeys>1000</MaxKeys>" +
+            "<Delimiter>/</Delimiter>" +
+            "<IsTruncated>true</IsTruncated>" +
+            "<Contents>" +
+            "<Key>sourcekey</Key>" +
+            "<LastModified>2050-01-01T00:00:00Z</LastModified>" +
+            "<ETag>&amp;quot;396fefef536d5ce46c7537ecf978a360&amp;quot;</ETag>" +
+            "<Size>217</Size>" +
+            "<Owner><ID>ID12345</ID><DisplayName>Foo Bar</DisplayName></Owner>" +
+            "<StorageClass>STANDARD</StorageClass>" +
+            "<Unknown><Nested>ignored</Nested></Unknown>" +
+            "</Contents>" +
+            "<Contents>" +
+            "<Key>key%20with%20spaces</Key>" +
+            "<LastModified>2050-01-01T00:00:00.123Z</LastModified>" +
+            "<ETag>&amp;quot;396fefef536d5ce46c7537ecf978a360&amp;quot;</ETag>" +
+            "<Size>124</Size>" +
+            "<StorageClass>GLACIER</StorageClass>" +
+            "</Contents>" +
+            "<CommonPrefixes><Prefix>photos/</Prefix></CommonPrefixes>" +
+            "<CommonPrefixes><Prefix>videos%20space/</Prefix></CommonPrefixes>" +
+            "<EncodingType>url</EncodingType>" +
+            "</ListBucketResult>";
+
+    private static final String VERSIONS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<ListVersionsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" +
+            "<Name>bucket</Name>" +
+            "<Prefix>my</Prefix>" +
+            "<KeyMarker>key2</KeyMarker>" +
+            "<VersionIdMarker>t46ZenlYTZBnj</VersionIdMarker>" +
+            "<NextKeyMarker>key3</NextKeyMarker>" +
+            "<NextVersionIdMarker>d-d309mfjFrUmoQ0DBsVqmcMV15OI.</NextVersionIdMarker>" +
+            "<MaxKeys>1000</MaxKeys>" +
+            "<IsTruncated>true</IsTruncated>" +
+            "<DeleteMarker>" +
+            "<Key>key%20with%20spaces</Key>" +
+            "<VersionId>qDhprLU80sAlCFLu2DWgXAEDgKzWarn-HS_JU0TvYqs.</VersionId>" +
+            "<IsLatest>true</IsLatest>" +
+            "<LastModified>2050-01-01T00:00:00Z</LastModified>" +
+            "<Owner><ID>ID12345</ID><DisplayName>Foo Bar</DisplayName></Owner>" +
+            "</DeleteMarker>" +
+            "<Version>" +
+            "<Key>sourcekey</Key>" +
+            "<VersionId>wxxQ7ezLaL5JN2Sislq66Syxxo0k7uHTUpb9qiiMxNg.</VersionId>" +
+            "<IsLatest>false</IsLatest>" +
+            "<LastModified>2050-01-01T00:00:00Z</LastModified>" +
+            "<ETag>&amp;quot;396fefef536d5ce46c7537ecf978a360&amp;quot;</ETag>" +
+            "<Size>217</Size>" +
+            "<Owner><ID>ID12345</ID><DisplayName>Foo Bar</DisplayName></Owner>" +
+            "<StorageClass>STANDARD</StorageClass>" +
+            "</Version>" +
+            "<EncodingType>url</EncodingType>" +
+            "</ListVersionsResult>";
+
+    private static final String QUERY_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<BucketQueryResult>" +
+            "<Name>bucket</Name>" +
+            "<Marker>marker1</Marker>" +
+            "<NextMarker>marker2</NextMarker>" +
+            "<MaxKeys>1000</MaxKeys>" +
+            "<ObjectMatches>" +
+            "<object>" +
+            "<objectName>object1</objectName>" +
+            "<objectId>5c5e56696ee4413109b37a4e3e602032c3642378e410b90c4f19e4b08fb1ec16</objectId>" +
+            "<versionId>0</versionId>" +
+            "<queryMds><type>SYSMD</type>" +
+            "<mdMap>" +
+            "<entry><key>ctype</key><value>application/octet-stream</value></entry>" +
+            "<entry><key>size</key><value>0</value></entry>" +
+            "</mdMap>" +
+            "</queryMds>" +
+            "<queryMds><type>USERMD</type>" +
+            "<mdMap>" +
+            "<entry><key>x-amz-meta-integer1</key><value>42</value></entry>" +
+            "</mdMap>" +
+            "</queryMds>" +
+            "</object>" +
+            "<object>" +
+            "<objectName>object2</objectName>" +
+            "<objectId>6d6e56696ee4413109b37a4e3e602032c3642378e410b90c4f19e4b08fb1ec16</objectId>" +
+            "<versionId>0</versionId>" +
+            "</object>" +
+            "</ObjectMatches>" +
+            "<CommonPrefixMatches>" +
+            "<PrefixGroups>prefix/</PrefixGroups>" +
+            "</CommonPrefixMatches>" +
+            "</BucketQueryResult>";
+
+    @Test
+    public void testObjectsMatchJaxb() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(ListObjectsResult.class, CanonicalUser.class);
+        ListObjectsResult expected = (ListObjectsResult) context.createUnmarshaller().unmarshal(new StringReader(OBJECTS_XML));
+
+        ListObjectsResult result = ListingParser.parseObjects(stream(OBJECTS_XML), null);
+        Assert.assertEquals(expected.getBucketName(), result.getBucketName());
+        Assert.assertEquals(expected.getPrefix(), result.getPrefix());
+        Assert.assertEquals(expected.getDelimiter(), result.getDelimiter());
+        Assert.assertEquals(expected.getMaxKeys(), result.getMaxKeys());
+        Assert.assertEquals(expected.getEncodingType(), result.getEncodingType());
+        Assert.assertEquals(expected.getMarker(), result.getMarker());
+        Assert.assertEquals("key 3", result.getNextMarker());
+        Assert.assertEquals(expected.isTruncated(), result.isTruncated());
+        Assert.assertEquals(expected.getCommonPrefixes(), result.getCommonPrefixes());
+        Assert.assertEquals(expected.getObjects().size(), result.getObjects().size());
+        for (int i = 0; i < expected.getObjects().size(); i++) {
+            S3Object exObject = expected.getObjects().get(i), object = result.getObjects().get(i);
+            Assert.assertEquals(exObject.getKey(), object.getKey());
+            Assert.assertEquals(exObject.getLastModified(), object.getLastModified());
+            Assert.assertEquals(exObject.getETag(), object.getETag());
+            Assert.assertEquals(exObject.getSize(), object.getSize());
+            Assert.assertEquals(exObject.getStorageClass(), object.getStorageClass());
+            Assert.assertEquals(exObject.getOwner(), object.getOwner());
+        }
+    }
+
+    @Test
+    public void testObjectsConsumer() {
+        List<String> keys = new ArrayList<>();
+        ListObjectsResult result = ListingParser.parseObjects(stream(OBJECTS_XML), object -> keys.add(object.getKey()));
+
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals("sourcekey", keys.get(0));
+        Assert.assertEquals("key with spaces", keys.get(1));
+        Assert.assertTrue(result.getObjects().isEmpty());
+        Assert.assertEquals(2, result.getCommonPrefixes().size());
+    }
+
+    @Test
+    public void testObjectsNotEncoded() {
+        // without an EncodingType in the response, keys are passed through as-is
+        List<String> keys = new ArrayList<>();
+        ListObjectsResult result = ListingParser.parseObjects(stream(OBJECTS_XML.replace("<EncodingType>url</EncodingType>", "")),
+                object -> keys.add(object.getKey()));
+
+        Assert.assertEquals("key%20with%20spaces", keys.get(1));
+        Assert.assertEquals("videos%20space/", result.getCommonPrefixes().get(1));
+        Assert.assertEquals("key%203", result.getNextMarker());
+    }
+
+    @Test
+    public void testUrlRequestedButNotEncoded() {
+        // a server that ignores encoding-type=url returns raw keys, which must not be decoded
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" +
+                "<Name>bucket</Name>" +
+                "<Prefix></Prefix>" +
+                "<MaxKeys>2</MaxKeys>" +
+                "<IsTruncated>true</IsTruncated>" +
+                "<Contents><Key>a+b</Key><Size>1</Size></Contents>" +
+                "<Contents><Key>x%41</Key><Size>1</Size></Contents>" +
+                "<CommonPrefixes><Prefix>c+d/</Prefix></CommonPrefixes>" +
+                "</ListBucketResult>";
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020"))
+                .withIdentity("user").withSecretKey("secret"),
+                request -> new ClientResponse(200, new InBoundHeaders(), stream(xml), null));
+        try {
+            ListObjectsResult result = s3Client.listObjects(new ListObjectsRequest("bucket")
+                    .withEncodingType(EncodingType.url).withMaxKeys(2));
+            Assert.assertNull(result.getEncodingType());
+            Assert.assertEquals("a+b", result.getObjects().get(0).getKey());
+            Assert.assertEquals("x%41", result.getObjects().get(1).getKey());
+            Assert.assertEquals("c+d/", result.getCommonPrefixes().get(0));
+            // the next marker is taken from the last (raw) key
+            Assert.assertEquals("x%41", result.getNextMarker());
+        } finally {
+            s3Client.destroy();
+        }
+    }
+
+    @Test
+    public void testVersionsMatchJaxb() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(ListVersionsResult.class, CanonicalUser.class, Version.class,
+                DeleteMarker.class);
+        ListVersionsResult expected = (ListVersionsResult) context.createUnmarshaller().unmarshal(new StringReader(VERSIONS_XML));
+
+        List<AbstractVersion> versions = new ArrayList<>();
+        ListVersionsResult result = ListingParser.parseVersions(stream(VERSIONS_XML), versions::add);
+        Assert.assertEquals(expected.getBucketName(), result.getBucketName());
+        Assert.assertEquals(expected.getKeyMarker(), result.getKeyMarker());
+        Assert.assertEquals(expected.getVersionIdMarker(), result.getVersionIdMarker());
+        Assert.assertEquals(expected.getNextKeyMarker(), result.getNextKeyMarker());
+        Assert.assertEquals(expected.getNextVersionIdMarker(), result.getNextVersionIdMarker());
+        Assert.assertEquals(expected.isTruncated(), result.isTruncated());
+        Assert.assertTrue(result.getVersions().isEmpty());
+        Assert.assertEquals(expected.getVersions().size(), versions.size());
+        for (int i = 0; i < versions.size(); i++) {
+            AbstractVersion exVersion = expected.getVersions().get(i), version = versions.get(i);
+            Assert.assertEquals(exVersion.getClass(), version.getClass());
+            Assert.assertEquals(exVersion.getKey(), version.getKey());
+            Assert.assertEquals(exVersion.getVersionId(), version.getVersionId());
+            Assert.assertEquals(exVersion.isLatest(), version.isLatest());
+            Assert.assertEquals(exVersion.getLastModified(), version.getLastModified());
+            Assert.assertEquals(exVersion.getOwner(), version.getOwner());
+            if (exVersion instanceof Version) {
+                Assert.assertEquals(((Version) exVersion).getETag(), ((Version) version).getETag());
+                Assert.assertEquals(((Version) exVersion).getSize(), ((Version) version).getSize());
+                Assert.assertEquals(((Version) exVersion).getStorageClass(), ((Version) version).getStorageClass());
+            }
+        }
+    }
+
+    @Test
+    public void testQueryMatchesJaxb() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(QueryObjectsResult.class);
+        QueryObjectsResult expected = (QueryObjectsResult) context.createUnmarshaller().unmarshal(new StringReader(QUERY_XML));
+
+        QueryObjectsResult result = ListingParser.parseQuery(stream(QUERY_XML));
+        Assert.assertEquals(expected.getBucketName(), result.getBucketName());
+        Assert.assertEquals(expected.getMarker(), result.getMarker());
+        Assert.assertEquals(expected.getNextMarker(), result.getNextMarker());
+        Assert.assertEquals(expected.getMaxKeys(), result.getMaxKeys());
+        Assert.assertEquals(expected.isTruncated(), result.isTruncated());
+        Assert.assertEquals(expected.getObjects(), result.getObjects());
+        Assert.assertEquals(expected.getPrefixGroups(), result.getPrefixGroups());
+        Assert.assertEquals("42", result.getObjects().get(0).getMetadataValue("x-amz-meta-integer1"));
+    }
+
+    private InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -133,4 +133,39 @@ public class QueryObjectResultTest {
         marshaller.marshal(result, writer);
         Assert.assertEquals(xml, writer.toString());
     }
+
+    @Test
+    public void testTypedValues() {
+        QueryMetadata sysMd = new QueryMetadata();
+        sysMd.setType(QueryMetadataType.SYSMD);
+        sysMd.getMdMap().put("size", "1024");
+        sysMd.getMdMap().put("mtime", "1449081777620");
+        sysMd.getMdMap().put("createtime", "1449081777620");
+        QueryMetadata userMd = new QueryMetadata();
+        userMd.setType(QueryMetadataType.USERMD);
+        userMd.getMdMap().put("x-amz-meta-decimal1", "3.14159");
+        userMd.getMdMap().put("x-amz-meta-string1", "test");
+        userMd.getMdMap().put("x-amz-meta-datetime1", "2015-01-01T00:00:00Z");
+
+        QueryObject object = new QueryObject();
+        object.setObjectName("object1");
+        object.setQueryMds(Arrays.asList(sysMd, userMd));
+
+        Assert.assertEquals(1024L, object.getMetadataValue("Size", MetadataSearchDatatype.integer));
+        Assert.assertEquals(new Date(1449081777620L), object.getMetadataValue("LastModified", MetadataSearchDatatype.datetime));
+        Assert.assertEquals(new Date(1449081777620L), object.getMetadataValue("CreateTime", MetadataSearchDatatype.datetime));
+        Assert.assertEquals(new Date(1420070400000L),
+                object.getMetadataValue("x-amz-meta-datetime1", MetadataSearchDatatype.datetime));
+        Assert.assertEquals(new java.math.BigDecimal("3.14159"),
+                object.getMetadataValue("x-amz-meta-decimal1", MetadataSearchDatatype.decimal));
+        Assert.assertEquals("test", object.getMetadataValue("x-amz-meta-string1"));
+        Assert.assertEquals("object1", object.getMetadataValue("ObjectName"));
+        Assert.assertNull(object.getMetadataValue("x-amz-meta-missing", MetadataSearchDatatype.string));
+
+        // converted values are cached, but follow changes to the raw value
+        Object value = object.getMetadataValue("Size", MetadataSearchDatatype.integer);
+        Assert.assertSame(value, object.getMetadataValue("Size", MetadataSearchDatatype.integer));
+        sysMd.getMdMap().put("size", "2048");
+        Assert.assertEquals(2048L, object.getMetadataValue("Size", MetadataSearchDatatype.integer));
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class FileBackedOutputStreamTest {
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] data = new byte[1000];
+        new Random().nextBytes(data);
+
+        FileBackedOutputStream out = new FileBackedOutputStream(1000);
+        out.write(data, 0, 500);
+        out.write(data, 500, 500);
+        out.close();
+        Assert.assertTrue(out.isInMemory());
+        Assert.assertEquals(1000, out.getSize());
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        out.writeTo(result);
+        Assert.assertArrayEquals(data, result.toByteArray());
+        out.dispose();
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        byte[] data = new byte[10000];
+        new Random().nextBytes(data);
+
+        FileBackedOutputStream out = new FileBackedOutputStream(1000);
+        out.write(data, 0, 700);
+        Assert.assertTrue(out.isInMemory());
+        out.write(data[700]);
+        out.write(data, 701, 9299);
+        out.close();
+        Assert.assertFalse(out.isInMemory());
+        Assert.assertEquals(10000, out.getSize());
+
+        // can be replayed
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            out.writeTo(result);
+            Assert.assertArrayEquals(data, result.toByteArray());
+        }
+        out.dispose();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015, EMC Corporation.
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * + Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ * + Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * + The name of EMC Corporation may not be used to endorse or promote
+ *   products derived from this software without specific prior written
+ *   permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import com.emc.rest.util.StreamUtil;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public class FileChannelSegmentTest {
+    private static final String CONTENT = "0123456789Hello Middle!3456789";
+    //                                               1         2
+
+    private static File file;
+    private static FileChannel channel;
+
+    @BeforeClass
+    public static void createFile() throws Exception {
+        file = File.createTempFile("channel-segment-test", null);
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    @AfterClass
+    public static void closeChannel() throws Exception {
+        channel.close();
+    }
+
+    @Test
+    public void testMiddle() throws Exception {
+        testSegment(10, 13, "Hello Middle!");
+    }
+
+    @Test
+    public void testBeginning() throws Exception {
+        testSegment(0, 10, "0123456789");
+    }
+
+    @Test
+    public void testEnd() throws Exception {
+        testSegment(23, 7, "3456789");
+    }
+
+    @Test
+    public void testMarkReset() throws Exception {
+        for (boolean mapped : new boolean[]{false, true}) {
+            InputStream is = new FileChannelSegment(channel, 10, 13, mapped);
+            is.mark(0); // read limit is ignored
+            byte[] buffer = new byte[13];
+            Assert.assertEquals(13, is.read(buffer));
+            Assert.assertEquals(-1, is.read());
+            Assert.assertEquals("Hello Middle!", new String(buffer, StandardCharsets.UTF_8));
+            is.reset();
+            Assert.assertEquals(6, is.skip(6));
+            Assert.assertEquals("Middle!", StreamUtil.readAsString(is));
+            Assert.assertEquals(0, is.skip(1));
+        }
+    }
+
+    @Test
+    public void testSharedChannel() throws Exception {
+        // segments must not disturb each other or the channel position
+        InputStream first = new FileChannelSegment(channel, 0, 10), second = new FileChannelSegment(channel, 10, 13, true);
+        byte[] buffer = new byte[5];
+        Assert.assertEquals(5, first.read(buffer));
+        Assert.assertEquals("Hello Middle!", StreamUtil.readAsString(second));
+        Assert.assertEquals("56789", StreamUtil.readAsString(first));
+        Assert.assertEquals(0, channel.position());
+    }
+
+    private void testSegment(long offset, long length, String expected) throws Exception {
+        Assert.assertEquals(expected, StreamUtil.readAsString(new FileChannelSegment(channel, offset, length)));
+        Assert.assertEquals(expected, StreamUtil.readAsString(new FileChannelSegment(channel, offset, length, true)));
+    }
+}
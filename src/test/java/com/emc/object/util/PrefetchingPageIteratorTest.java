@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class PrefetchingPageIteratorTest {
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAllItems() {
+        for (int depth = 0; depth < 4; depth++) {
+            Pages pages = new Pages(7, 10, 0);
+            try (Stream<Integer> items = pages.iterator(depth).stream()) {
+                Assert.assertEquals(IntStream.range(0, 70).boxed().collect(Collectors.toList()),
+                        items.collect(Collectors.toList()));
+            }
+            Assert.assertEquals(7, pages.fetched.get());
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        Pages pages = new Pages(0, 10, 0);
+        Assert.assertFalse(pages.iterator(1).hasNext());
+        Assert.assertEquals(1, pages.fetched.get());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        Pages pages = new Pages(10, 10, 0);
+        PrefetchingPageIterator<Integer, Integer> iterator = pages.iterator(3);
+        Assert.assertEquals(0, pages.fetched.get()); // lazy
+
+        Assert.assertEquals(0, (int) iterator.next());
+        // the next 3 pages are fetched in the background while the first page is consumed
+        waitFor(pages.fetched, 4);
+        Thread.sleep(100);
+        Assert.assertEquals(4, pages.fetched.get());
+
+        for (int i = 1; i < 10; i++) iterator.next();
+        Assert.assertEquals(10, (int) iterator.next());
+        waitFor(pages.fetched, 5);
+        iterator.close();
+    }
+
+    @Test
+    public void testOverlap() {
+        // each page takes 50ms to fetch and 50ms to consume; with prefetching, these overlap
+        Pages pages = new Pages(6, 1, 50);
+        long start = System.nanoTime();
+        Iterator<Integer> iterator = pages.iterator(1);
+        while (iterator.hasNext()) {
+            iterator.next();
+            sleep(50);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("took " + elapsed + "ms", elapsed < 6 * 100 - 100);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        Pages pages = new Pages(100, 10, 0);
+        PrefetchingPageIterator<Integer, Integer> iterator = pages.iterator(2);
+        try (Stream<Integer> items = iterator.stream()) {
+            Assert.assertEquals(15, items.limit(15).count());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        Thread.sleep(100);
+        int fetched = pages.fetched.get();
+        Assert.assertTrue("fetched " + fetched, fetched <= 4);
+        Thread.sleep(100);
+        Assert.assertEquals(fetched, pages.fetched.get());
+    }
+
+    @Test
+    public void testError() {
+        Pages pages = new Pages(5, 10, 0);
+        pages.failOnPage = 2;
+        Iterator<Integer> iterator = pages.iterator(2);
+        for (int i = 0; i < 20; i++) iterator.next();
+        try {
+            iterator.hasNext();
+            Assert.fail("page error was not thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("page 2", e.getMessage());
+        }
+    }
+
+    private void waitFor(AtomicInteger counter, int value) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < value && System.currentTimeMillis() < deadline) sleep(5);
+        Assert.assertTrue(counter.get() >= value);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // page n is represented by its number; items are consecutive integers
+    private class Pages {
+        final int pageCount, pageSize;
+        final long latency;
+        final AtomicInteger fetched = new AtomicInteger();
+        int failOnPage = -1;
+
+        Pages(int pageCount, int pageSize, long latency) {
+            this.pageCount = pageCount;
+            this.pageSize = pageSize;
+            this.latency = latency;
+        }
+
+        Integer fetch(int page) {
+            sleep(latency);
+            fetched.incrementAndGet();
+            if (page == failOnPage) throw new IllegalStateException("page " + page);
+            return page;
+        }
+
+        List<Integer> items(Integer page) {
+            if (page >= pageCount) return Collections.emptyList();
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < pageSize; i++) items.add(page * pageSize + i);
+            return items;
+        }
+
+        PrefetchingPageIterator<Integer, Integer> iterator(int depth) {
+            return new PrefetchingPageIterator<>(() -> fetch(0),
+                    page -> page + 1 < pageCount ? fetch(page + 1) : null,
+                    this::items, executor, depth);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.S3Exception;
+import com.emc.object.s3.jersey.RetryFilter;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RepeatableInputStreamTest {
+    @Test
+    public void testRewind() throws Exception {
+        byte[] data = new byte[100 * 1024];
+        new Random().nextBytes(data);
+        AtomicInteger opens = new AtomicInteger();
+        RepeatableEntity entity = new ByteArrayEntity(data, 10, data.length - 20) {
+            @Override
+            public InputStream openStream() {
+                opens.incrementAndGet();
+                return super.openStream();
+            }
+        };
+
+        RepeatableInputStream stream = new RepeatableInputStream(entity);
+        Assert.assertEquals(0, opens.get()); // opened lazily
+        byte[] expected = Arrays.copyOfRange(data, 10, data.length - 10);
+        Assert.assertArrayEquals(expected, readAll(stream));
+
+        stream.rewind();
+        Assert.assertArrayEquals(expected, readAll(stream));
+        Assert.assertEquals(2, opens.get());
+
+        // reset to a mark in the middle, beyond any read limit
+        stream.rewind();
+        Assert.assertEquals(1000, stream.skip(1000));
+        stream.mark(1);
+        readAll(stream);
+        stream.reset();
+        Assert.assertArrayEquals(Arrays.copyOfRange(expected, 1000, expected.length), readAll(stream));
+        stream.close();
+    }
+
+    @Test
+    public void testFileEntity() throws Exception {
+        File file = File.createTempFile("repeatable-entity-test", null);
+        file.deleteOnExit();
+        byte[] data = new byte[50 * 1024];
+        new Random().nextBytes(data);
+        Files.write(file.toPath(), data);
+
+        try (InputStream is = new FileEntity(file).openStream()) {
+            Assert.assertArrayEquals(data, readAll(is));
+        }
+        FileEntity segment = new FileEntity(file, 1234, 20000);
+        Assert.assertEquals(20000, segment.getLength());
+        for (int i = 0; i < 2; i++) {
+            try (InputStream is = segment.openStream()) {
+                Assert.assertArrayEquals(Arrays.copyOfRange(data, 1234, 21234), readAll(is));
+            }
+        }
+    }
+
+    @Test
+    public void testRetryWithoutBuffer() {
+        byte[] data = new byte[256 * 1024];
+        new Random().nextBytes(data);
+        // retry buffer is much smaller than the entity
+        S3Config s3Config = new S3Config().withInitialRetryDelay(0).withRetryBufferSize(1024);
+
+        Client client = Client.create();
+        // order of execution is reversed from this order
+        ReadingHandler handler = new ReadingHandler(2);
+        client.addFilter(handler);
+        client.addFilter(new RetryFilter(s3Config));
+
+        ClientRequest request = ClientRequest.create().build(URI.create("http://127.0.0.1/foo"), "PUT");
+        request.setEntity(new RepeatableInputStream(new ByteArrayEntity(data)));
+        client.handle(request);
+
+        Assert.assertEquals(3, handler.calls);
+        Assert.assertEquals(DigestUtils.md5Hex(data), handler.md5Hex);
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = is.read(buffer)) != -1) out.write(buffer, 0, count);
+        return out.toByteArray();
+    }
+
+    // reads the entire entity each time, but fails the first <code>failures</code> times
+    static class ReadingHandler extends ClientFilter {
+        private final int failures;
+        int calls;
+        String md5Hex;
+
+        ReadingHandler(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
+            try {
+                md5Hex = DigestUtils.md5Hex((InputStream) cr.getEntity());
+            } catch (IOException e) {
+                throw new ClientHandlerException(e);
+            }
+            if (calls++ < failures) throw new S3Exception("unavailable", 503);
+            return new ClientResponse(200, new InBoundHeaders(), new ByteArrayInputStream(new byte[0]), null);
+        }
+    }
+}
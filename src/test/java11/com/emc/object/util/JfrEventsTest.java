@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2022 Dell Technologies
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of EMC Corporation may not be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.emc.object.util;
+
+import com.emc.object.s3.LargeFileDownloader;
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.MessageBodyWorkers;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs against the multi-release jar on Java 11+, so the events come from the <code>META-INF/versions/11</code>
+ * implementation of {@link JfrEvents}.
+ */
+public class JfrEventsTest {
+    private static final int OBJECT_SIZE = 3 * 1024 * 1024;
+    private static final int PART_SIZE = 1024 * 1024;
+
+    @Test
+    public void testClientEvents() throws Exception {
+        StubHandler handler = new StubHandler();
+        S3JerseyClient s3Client = new S3JerseyClient(new S3Config(URI.create("http://127.0.0.1:9020"))
+                .withIdentity("user").withSecretKey("secret").withChecksumEnabled(false)
+                .withInitialRetryDelay(0), handler);
+        Path dump = Files.createTempFile("jfr-events", ".jfr");
+        File target = File.createTempFile("jfr-events", ".data");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"Request", "Retry", "Sign", "DownloadPart"}) {
+                recording.enable("com.emc.object." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            handler.failures.set(1); // one 500, then success
+            new LargeFileDownloader(s3Client, "bucket", "key", target)
+                    .withPartSize(PART_SIZE).withParallelThreshold(PART_SIZE).withThreads(2).run();
+            Assert.assertEquals(OBJECT_SIZE, target.length());
+
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        } finally {
+            s3Client.destroy();
+            Files.deleteIfExists(dump);
+            target.delete();
+        }
+
+        // the downloader may adjust the part size, so count the parts first
+        List<RecordedEvent> parts = find(events, "DownloadPart");
+        Assert.assertTrue(parts.size() > 1);
+        long partBytes = 0;
+        for (RecordedEvent part : parts) {
+            Assert.assertEquals("bucket", part.getString("bucket"));
+            Assert.assertTrue(part.getLong("bytes") > 0);
+            partBytes += part.getLong("bytes");
+        }
+        Assert.assertEquals(OBJECT_SIZE, partBytes);
+
+        // a HEAD, then a ranged GET per part (one of which was retried)
+        List<RecordedEvent> requests = find(events, "Request");
+        Assert.assertEquals(1 + parts.size(), requests.size());
+        for (RecordedEvent request : requests) {
+            Assert.assertEquals("bucket", request.getString("bucket"));
+            Assert.assertEquals("127.0.0.1", request.getString("host"));
+            Assert.assertNotNull(request.getString("operation"));
+        }
+        long received = 0;
+        for (RecordedEvent request : requests) {
+            if (!"HEAD object".equals(request.getString("operation"))) received += request.getLong("bytes");
+        }
+        Assert.assertEquals(OBJECT_SIZE, received);
+
+        List<RecordedEvent> retries = find(events, "Retry");
+        Assert.assertEquals(1, retries.size());
+        Assert.assertEquals("bucket", retries.get(0).getString("bucket"));
+        Assert.assertEquals("127.0.0.1", retries.get(0).getString("host"));
+
+        // every attempt is signed, including the retry
+        List<RecordedEvent> signs = find(events, "Sign");
+        Assert.assertEquals(requests.size() + retries.size(), signs.size());
+        for (RecordedEvent sign : signs) {
+            Assert.assertEquals("bucket", sign.getString("bucket"));
+            Assert.assertEquals("127.0.0.1", sign.getString("host"));
+        }
+
+    }
+
+    private List<RecordedEvent> find(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.emc.object." + name)) found.add(event);
+        }
+        return found;
+    }
+
+    /**
+     * Serves an object of OBJECT_SIZE zeros, honoring ranges, after failing the first <code>failures</code> GETs.
+     */
+    static class StubHandler implements ClientHandler {
+        final MessageBodyWorkers workers = Client.create().getMessageBodyWorkers();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+            InBoundHeaders headers = new InBoundHeaders();
+            if ("GET".equals(request.getMethod()) && failures.getAndDecrement() > 0)
+                return new ClientResponse(500, headers, new ByteArrayInputStream(new byte[0]), workers);
+
+            int status = 200, length = OBJECT_SIZE;
+            Object range = request.getHeaders().getFirst(RestUtil.HEADER_RANGE);
+            if (range != null) {
+                String[] bounds = range.toString().substring("bytes=".length()).split("-");
+                length = (int) (Long.parseLong(bounds[1]) - Long.parseLong(bounds[0]) + 1);
+                status = 206;
+            }
+            headers.putSingle(RestUtil.HEADER_ETAG, "\"etag\"");
+            headers.putSingle(RestUtil.HEADER_CONTENT_TYPE, "application/octet-stream");
+            headers.putSingle(RestUtil.HEADER_CONTENT_LENGTH, "" + ("HEAD".equals(request.getMethod()) ? OBJECT_SIZE : length));
+            byte[] content = "HEAD".equals(request.getMethod()) ? new byte[0] : new byte[length];
+            return new ClientResponse(status, headers, new ByteArrayInputStream(content), workers);
+        }
+    }
+}